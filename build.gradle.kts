@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("org.jetbrains.intellij") version "1.17.3" // 官方最新插件开发插件
+    id("me.champeau.jmh") version "0.7.2" // JMH 微基准（src/jmh/java）
 }
 
 group = "cn.cn.codepins"
@@ -18,6 +19,9 @@ dependencies {
     implementation("com.google.zxing:core:3.5.2") // 二维码生成
     implementation("com.google.zxing:javase:3.5.2") // 二维码生成Java实现
     implementation("org.kohsuke:github-api:1.314") // GitHub API
+    implementation("org.roaringbitmap:RoaringBitmap:1.0.6") // 标签位图索引
+
+    testImplementation("junit:junit:4.13.2") // 平台测试框架（BasePlatformTestCase）需要 JUnit 4
 
     // 我们将使用自己的许可证实现
 }
@@ -28,6 +32,31 @@ intellij {
     plugins.set(listOf()) // 可在此添加平台插件依赖（如 terminal、git 等）
 }
 
+// 基准代码使用与测试相同的平台类路径（包含 TestApplicationManager 等测试框架类）
+configurations {
+    named("jmhImplementation") {
+        extendsFrom(configurations.testImplementation.get())
+    }
+    named("jmhRuntimeOnly") {
+        extendsFrom(configurations.testRuntimeOnly.get())
+    }
+}
+
+// 运行：./gradlew jmh                      全部基准
+//       ./gradlew jmh -PjmhInclude=PinStorage 只运行名称匹配的基准
+// 结果写入 build/results/jmh/results.json，gc 分析器同时给出每次调用的分配字节数（gc.alloc.rate.norm）
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    timeOnIteration.set("2s")
+    jvmArgsAppend.addAll(provider { tasks.test.get().allJvmArgs })
+    findProperty("jmhInclude")?.let { includes.set(listOf(it.toString())) }
+}
+
 java {
     toolchain.languageVersion.set(JavaLanguageVersion.of(17))
 }
@@ -42,6 +71,36 @@ tasks {
         untilBuild.set("253.*") // 支持到 IntelliJ 2025.3+
     }
 
+    // 常规测试不包含大项目性能测试（生成合成项目耗时较长）
+    test {
+        exclude("**/*PerformanceTest.class")
+    }
+
+    // 大项目性能测试：./gradlew perfTest [-PperfFiles=2000] [-PperfPins=20000] [-PperfBudgetScale=1.5]
+    // 报告写入 build/reports/codepins-perf/report.json，并追加到同目录的 history.jsonl
+    register<Test>("perfTest") {
+        description = "Runs the large-project performance tests and writes a JSON report"
+        group = "verification"
+        testClassesDirs = sourceSets.test.get().output.classesDirs
+        classpath = sourceSets.test.get().runtimeClasspath
+        include("**/*PerformanceTest.class")
+        shouldRunAfter(test)
+        outputs.upToDateWhen { false }
+        maxHeapSize = "2g"
+
+        systemProperty("codepins.perf.version", project.version.toString())
+        systemProperty("codepins.perf.report",
+            layout.buildDirectory.file("reports/codepins-perf/report.json").get().asFile.absolutePath)
+        findProperty("perfFiles")?.let { systemProperty("codepins.perf.files", it) }
+        findProperty("perfPins")?.let { systemProperty("codepins.perf.pins", it) }
+        findProperty("perfBudgetScale")?.let { systemProperty("codepins.perf.budgetScale", it) }
+    }
+
+    // 基准需要测试沙箱（插件和配置目录）以及与单元测试相同的 JVM 参数来启动平台
+    named("jmh") {
+        dependsOn(prepareTestingSandbox)
+    }
+
     // 禁用buildSearchableOptions任务以提高构建性能
     buildSearchableOptions {
         enabled = false
@@ -0,0 +1,113 @@
+package cn.ilikexff.codepins;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.testFramework.TestApplicationManager;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试公用工具
+ * 需要平台服务的基准（图钉存储、文档、许可证服务等）先启动一个无界面的测试 Application，
+ * 整个 JVM 只启动一次；图钉存储使用默认项目，不需要创建真实项目。
+ * 合成代码按固定种子生成，每次运行的输入完全相同。
+ */
+public final class BenchmarkSupport {
+
+    private static volatile boolean applicationStarted;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 启动无界面的测试 Application（重复调用无副作用）
+     */
+    public static synchronized void startApplication() {
+        if (!applicationStarted) {
+            System.setProperty("java.awt.headless", "true");
+            TestApplicationManager.getInstance();
+            applicationStarted = true;
+        }
+    }
+
+    /**
+     * 图钉存储使用的项目（默认项目，存储目录位于测试配置目录下）
+     */
+    public static Project project() {
+        startApplication();
+        return ProjectManager.getInstance().getDefaultProject();
+    }
+
+    /**
+     * 生成指定行数的合成 Java 源码
+     * 每个方法约 20 行，混合了分析规则会命中的写法：TODO/FIXME 注释、长字符串、空 catch、
+     * 深层嵌套、硬编码的密码和密钥等，其余为普通代码
+     */
+    public static String javaSource(int lineCount, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(lineCount * 40);
+        text.append("package bench;\n\nimport java.util.*;\n\npublic class Generated {\n");
+        int line = 5;
+        int method = 0;
+        while (line < lineCount - 1) {
+            text.append("    public int method").append(method).append("(int a, int b, String name) {\n");
+            text.append("        int total = 0;\n");
+            switch (random.nextInt(6)) {
+                case 0:
+                    text.append("        // TODO: handle overflow in method").append(method).append('\n');
+                    break;
+                case 1:
+                    text.append("        String message = \"This is a rather long hard coded message number ")
+                            .append(method).append("\";\n");
+                    break;
+                case 2:
+                    text.append("        try { total = Integer.parseInt(name); } catch (Exception e) { }\n");
+                    break;
+                case 3:
+                    text.append("        String password = \"secret").append(method).append("\";\n");
+                    break;
+                case 4:
+                    text.append("        String apiKey = \"AKIA").append(Long.toHexString(random.nextLong())).append("\";\n");
+                    break;
+                default:
+                    text.append("        // FIXME: rename\n");
+                    break;
+            }
+            text.append("        for (int i = 0; i < a; i++) {\n");
+            text.append("            if (i % 2 == 0) {\n");
+            text.append("                if (i % 3 == 0) {\n");
+            text.append("                    if (i % 5 == 0) {\n");
+            text.append("                        total += i * b;\n");
+            text.append("                    }\n");
+            text.append("                }\n");
+            text.append("            }\n");
+            text.append("        }\n");
+            for (int i = 0; i < 6; i++) {
+                text.append("        total += a * ").append(random.nextInt(100)).append(" - b;\n");
+            }
+            text.append("        return total;\n");
+            text.append("    }\n");
+            line += 20;
+            method++;
+        }
+        text.append("}\n");
+        return text.toString();
+    }
+
+    /**
+     * 从候选标签中随机选出 0-2 个
+     */
+    public static List<String> randomTags(Random random, String[] candidates) {
+        int count = random.nextInt(3);
+        if (count == 0) {
+            return List.of();
+        }
+        if (count == 1) {
+            return List.of(candidates[random.nextInt(candidates.length)]);
+        }
+        String first = candidates[random.nextInt(candidates.length)];
+        String second = candidates[random.nextInt(candidates.length)];
+        return first.equals(second) ? List.of(first) : List.of(first, second);
+    }
+}
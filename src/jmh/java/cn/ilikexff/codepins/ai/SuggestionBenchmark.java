@@ -0,0 +1,73 @@
+package cn.ilikexff.codepins.ai;
+
+import cn.ilikexff.codepins.BenchmarkSupport;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.testFramework.LightVirtualFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 智能建议基准：大文件的完整分析、修改一行后的增量分析，以及单独的代码质量分析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SuggestionBenchmark {
+
+    @Param({"2000", "20000"})
+    public int lineCount;
+
+    private String source;
+    private LightVirtualFile file;
+    private Document document;
+    private SmartSuggestionEngine engine;
+    private CodeQualityAnalyzer qualityAnalyzer;
+    private int editLine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.startApplication();
+        source = BenchmarkSupport.javaSource(lineCount, 11);
+        file = new LightVirtualFile("Generated.java", PlainTextFileType.INSTANCE, source);
+        document = new DocumentImpl(source, true); // 允许在基准线程上修改
+        engine = new SmartSuggestionEngine(null);
+        qualityAnalyzer = new CodeQualityAnalyzer();
+        editLine = document.getLineCount() / 2;
+    }
+
+    /**
+     * 没有缓存时的完整分析
+     */
+    @Benchmark
+    public List<SmartSuggestion> analyzeFileCold() {
+        engine.forget(file.getPath());
+        return engine.analyzeFile(file, document);
+    }
+
+    /**
+     * 文件中间一行被修改后的增量分析
+     */
+    @Benchmark
+    public List<SmartSuggestion> analyzeFileAfterEdit() {
+        int offset = document.getLineStartOffset(editLine);
+        document.insertString(offset, " ");
+        return engine.analyzeFile(file, document);
+    }
+
+    @Benchmark
+    public List<SmartSuggestion> analyzeQuality() {
+        return qualityAnalyzer.analyzeQuality(file.getPath(), source);
+    }
+}
@@ -0,0 +1,131 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图钉重新定位基准
+ * 在一个 5 万行、含大量重复代码的文件上测量 PinAnchorFinder 在以下场景中的耗时：
+ * 代码整体下移、重复代码中按上下文选出正确的一处、代码块被部分修改、代码本身被改写但上下文不变。
+ * 每个场景找到的位置在 setUp 中先校验一次，结果不对时基准直接失败（正确性由 PinAnchorFinderTest 覆盖）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinAnchorFinderBenchmark {
+
+    @Param({"50000"})
+    private int lineCount;
+
+    private int pinned;
+    private Document original;
+    private Document shifted;
+    private Document edited;
+    private Document rewritten;
+    private PinFingerprint single;
+    private PinFingerprint block;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pinned = lineCount / 2;
+        original = new DocumentImpl(generate(lineCount, pinned, 0, null));
+        single = PinFingerprint.of(original, pinned, pinned);
+        block = PinFingerprint.of(original, pinned, pinned + 7);
+        shifted = new DocumentImpl(generate(lineCount, pinned, 300, null));
+        edited = new DocumentImpl(generate(lineCount, pinned, 300, "edited"));
+        rewritten = new DocumentImpl(generate(lineCount, pinned, 0, "rewritten"));
+
+        check("代码整体下移", shiftedLine(), pinned + 300);
+        check("代码块整体下移", shiftedBlock(), pinned + 300);
+        check("重复代码中选出原位置", duplicateLine(), pinned);
+        check("代码块部分修改", editedBlock(), pinned + 300);
+        check("代码改写但上下文不变", rewrittenLine(), pinned);
+    }
+
+    private static void check(String name, int found, int expected) {
+        if (found != expected) {
+            throw new IllegalStateException(name + ": 找到行 " + (found + 1) + "，应为 " + (expected + 1));
+        }
+    }
+
+    /**
+     * 文件开头插入 300 行后，单行图钉整体下移
+     */
+    @Benchmark
+    public int shiftedLine() {
+        return PinAnchorFinder.find(shifted, single, pinned);
+    }
+
+    @Benchmark
+    public int shiftedBlock() {
+        return PinAnchorFinder.find(shifted, block, pinned);
+    }
+
+    /**
+     * 单行图钉的内容在文件中每 50 行重复一次，只有上下文能区分
+     */
+    @Benchmark
+    public int duplicateLine() {
+        return PinAnchorFinder.find(original, single, pinned + 120);
+    }
+
+    /**
+     * 代码块中间两行被改写
+     */
+    @Benchmark
+    public int editedBlock() {
+        return PinAnchorFinder.find(edited, block, pinned);
+    }
+
+    /**
+     * 单行图钉本身被改写，只剩上下文
+     */
+    @Benchmark
+    public int rewrittenLine() {
+        return PinAnchorFinder.find(rewritten, single, pinned + 40);
+    }
+
+    /**
+     * 生成测试文件：每 50 行一个结构相同的方法（因此有大量重复行），pinned 行起的 8 行是唯一的代码块
+     *
+     * @param offset 在文件开头额外插入的行数
+     * @param change 不为空时改写代码块的第 1 行（rewritten）或中间两行（edited）
+     */
+    private static String generate(int lineCount, int pinned, int offset, String change) {
+        StringBuilder text = new StringBuilder(lineCount * 32);
+        for (int i = 0; i < offset; i++) {
+            text.append("// inserted line ").append(i).append('\n');
+        }
+        for (int line = 0; line < lineCount; line++) {
+            int block = line - pinned;
+            if (block >= 0 && block < 8) {
+                if ("edited".equals(change) && (block == 3 || block == 4)) {
+                    text.append("        int changed").append(block).append(" = compute(").append(block).append(");\n");
+                } else if ("rewritten".equals(change) && block == 0) {
+                    text.append("        return cache.computeIfAbsent(key, this::load);\n");
+                } else if (block == 0) {
+                    // 与文件中每 50 行重复出现的那一行内容相同
+                    text.append("        return value;\n");
+                } else {
+                    text.append("        long unique").append(block).append(" = seed * ").append(block * 31).append(";\n");
+                }
+            } else if (line % 50 == pinned % 50) {
+                text.append("        return value;\n");
+            } else {
+                text.append("    void method").append(line / 50).append("_").append(line % 50).append("() {}\n");
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package cn.ilikexff.codepins.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跳转到图钉的模糊匹配基准：逐字输入查询，每次按键对全部图钉打分并取前 50 个
+ * 配合 gc 分析器检查打分过程是否分配对象
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinFuzzyMatcherBenchmark {
+
+    private static final String[] WORDS = {"fix", "login", "cache", "render", "parser", "timeout", "retry",
+            "修复登录问题", "缓存失效", "待办", "review", "PinStorage", "HttpClient", "XMLParser"};
+    private static final String[] TAGS = {"todo", "bug", "review", "perf", "api"};
+    private static final String[] KEYSTROKES = {"f", "fs", "fsv", "fsvc", "fsvc l", "fsvc lo", "fsvc log"};
+
+    @Param({"10000", "50000"})
+    public int pinCount;
+
+    private PinFuzzyMatcher matcher;
+    private PinSnapshot snapshot;
+    private long now;
+    private int keystroke;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        now = 1_700_000_000_000L + pinCount;
+        List<PinEntry> pins = new ArrayList<>(pinCount);
+        for (int i = 0; i < pinCount; i++) {
+            PinState state = new PinState("/bench/src/module" + (i % 40) + "/File" + (i % 3000) + "Service.java",
+                    i % 200, WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)],
+                    1_700_000_000_000L + i, "bench", false, List.of(TAGS[random.nextInt(TAGS.length)]));
+            state.id = "bench-" + i;
+            pins.add(PinEntry.unresolved(state));
+        }
+        matcher = new PinFuzzyMatcher("/bench");
+        snapshot = new PinSnapshot(1, pins);
+        matcher.match("warm", snapshot, 50, now); // 构建每个图钉的字符缓存
+    }
+
+    @Benchmark
+    public List<PinEntry> typeQuery() {
+        return matcher.match(KEYSTROKES[keystroke++ % KEYSTROKES.length], snapshot, 50, now);
+    }
+}
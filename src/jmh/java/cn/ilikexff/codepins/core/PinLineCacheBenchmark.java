@@ -0,0 +1,86 @@
+package cn.ilikexff.codepins.core;
+
+import cn.ilikexff.codepins.BenchmarkSupport;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.util.Disposer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已钉行位图基准：行标记按行查询（命中缓存）和图钉变化后的整体重建
+ * 模拟一次行标记计算：对文件中的每一行查询一次是否有图钉
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinLineCacheBenchmark {
+
+    private static final String FILE = "/bench/src/Generated.java";
+
+    @Param({"10000", "50000"})
+    public int lineCount;
+
+    @Param({"100", "1000"})
+    public int pinCount;
+
+    private Document document;
+    private Disposable disposable;
+    private PinLineCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.startApplication();
+        document = new DocumentImpl(BenchmarkSupport.javaSource(lineCount, 7));
+        PinIndex index = new PinIndex();
+        disposable = Disposer.newDisposable("PinLineCacheBenchmark");
+        cache = new PinLineCache(index, disposable);
+        int lines = document.getLineCount();
+        for (int i = 0; i < pinCount; i++) {
+            int line = (int) ((long) i * lines / pinCount);
+            int start = document.getLineStartOffset(line);
+            int end = document.getLineEndOffset(line);
+            index.add(new PinEntry(FILE, document.createRangeMarker(start, end), "", 0L, "bench", false, List.of()));
+        }
+        cache.pinnedLines(FILE, document); // 预先构建
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Disposer.dispose(disposable); // 注销文档监听
+    }
+
+    /**
+     * 对每一行查询一次（位图已缓存）
+     */
+    @Benchmark
+    public void queryEveryLine(Blackhole blackhole) {
+        int lines = document.getLineCount();
+        for (int line = 0; line < lines; line++) {
+            blackhole.consume(cache.isLinePinned(FILE, document, line));
+        }
+    }
+
+    /**
+     * 图钉变化使位图失效后重新构建
+     */
+    @Benchmark
+    public BitSet rebuildAfterInvalidate() {
+        cache.invalidate(FILE);
+        return cache.pinnedLines(FILE, document);
+    }
+}
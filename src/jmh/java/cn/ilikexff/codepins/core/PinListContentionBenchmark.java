@@ -0,0 +1,167 @@
+package cn.ilikexff.codepins.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图钉列表读写争用基准
+ * 8 个读线程持续遍历图钉列表，1 个写线程（模拟 EDT）持续增删移动图钉，
+ * 对比写时复制快照（PinList）与加锁遍历的同步列表的读、写吞吐；
+ * 读线程看到不一致的列表（大小不对或 ConcurrentModificationException）时基准直接失败。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PinListContentionBenchmark {
+
+    @Param({"20000"})
+    private int pinCount;
+
+    @Param({"snapshot", "locked"})
+    private String list;
+
+    private Target target;
+    private int baseSize;
+    private long writes; // 只有写线程访问
+    private PinEntry removed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<PinEntry> seed = new ArrayList<>(pinCount);
+        for (int i = 0; i < pinCount; i++) {
+            seed.add(new PinEntry());
+        }
+        target = "snapshot".equals(list) ? new SnapshotTarget(seed) : new LockedTarget(seed);
+        baseSize = seed.size();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(8)
+    public int read() {
+        int[] visited = new int[1];
+        int size = target.read(pin -> visited[0]++);
+        // 写线程删除后立即补回，完整的一次读取只可能看到 n 或 n - 1 个图钉
+        if (visited[0] != size || size < baseSize - 1 || size > baseSize) {
+            throw new IllegalStateException("读取到不一致的图钉列表: " + visited[0] + "/" + size);
+        }
+        return size;
+    }
+
+    /**
+     * 写线程循环执行：删除首个图钉、追加到末尾、把末尾移到开头
+     */
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public void write() {
+        switch ((int) (writes++ % 3)) {
+            case 0:
+                removed = target.removeFirst();
+                break;
+            case 1:
+                target.addLast(removed);
+                break;
+            default:
+                target.moveLastToFront();
+        }
+    }
+
+    private interface PinVisitor {
+        void visit(PinEntry pin);
+    }
+
+    /**
+     * 被测的列表实现
+     */
+    private interface Target {
+        int read(PinVisitor visitor);
+
+        PinEntry removeFirst();
+
+        void addLast(PinEntry pin);
+
+        void moveLastToFront();
+    }
+
+    private static final class SnapshotTarget implements Target {
+        private final PinList list = new PinList();
+
+        SnapshotTarget(List<PinEntry> seed) {
+            list.replaceAll(seed);
+        }
+
+        @Override
+        public int read(PinVisitor visitor) {
+            List<PinEntry> pins = list.snapshot().getPins();
+            for (PinEntry pin : pins) {
+                visitor.visit(pin);
+            }
+            return pins.size();
+        }
+
+        @Override
+        public PinEntry removeFirst() {
+            return list.remove(0);
+        }
+
+        @Override
+        public void addLast(PinEntry pin) {
+            list.add(pin);
+        }
+
+        @Override
+        public void moveLastToFront() {
+            list.move(list.size() - 1, 0);
+        }
+    }
+
+    private static final class LockedTarget implements Target {
+        private final List<PinEntry> list;
+
+        LockedTarget(List<PinEntry> seed) {
+            list = Collections.synchronizedList(new ArrayList<>(seed));
+        }
+
+        @Override
+        public int read(PinVisitor visitor) {
+            synchronized (list) {
+                for (PinEntry pin : list) {
+                    visitor.visit(pin);
+                }
+                return list.size();
+            }
+        }
+
+        @Override
+        public PinEntry removeFirst() {
+            return list.remove(0);
+        }
+
+        @Override
+        public void addLast(PinEntry pin) {
+            list.add(pin);
+        }
+
+        @Override
+        public void moveLastToFront() {
+            synchronized (list) {
+                list.add(0, list.remove(list.size() - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package cn.ilikexff.codepins.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全文搜索索引基准：在 10k / 50k 个图钉上逐字输入查询（每次按键一次查询），以及修改一个图钉后的第一次查询
+ * 只使用图钉元数据，不需要启动平台
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinSearchIndexBenchmark {
+
+    private static final String[] WORDS = {"fix", "login", "cache", "render", "parser", "timeout", "retry",
+            "修复登录问题", "缓存失效", "待办", "review", "PinStorage", "HttpClient", "XMLParser"};
+    private static final String[] TAGS = {"todo", "bug", "review", "perf", "api"};
+    private static final String[] KEYSTROKES = {"l", "lo", "log", "logi", "login", "login c", "login ca", "login cac"};
+
+    @Param({"10000", "50000"})
+    public int pinCount;
+
+    private PinSearchIndex index;
+    private PinSnapshot snapshot;
+    private long version;
+    private int keystroke;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<PinEntry> pins = new ArrayList<>(pinCount);
+        for (int i = 0; i < pinCount; i++) {
+            PinState state = new PinState("/bench/src/module" + (i % 40) + "/File" + (i % 3000) + "Service.java",
+                    i % 200, WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)],
+                    1_700_000_000_000L + i, "bench", false, List.of(TAGS[random.nextInt(TAGS.length)]));
+            state.id = "bench-" + i;
+            pins.add(PinEntry.unresolved(state));
+        }
+        index = new PinSearchIndex("/bench");
+        snapshot = new PinSnapshot(++version, pins);
+        index.search("warm", snapshot, false); // 构建索引
+    }
+
+    /**
+     * 依次输入 KEYSTROKES 中的查询，每次调用一个按键
+     */
+    @Benchmark
+    public BitSet typeQuery() {
+        String query = KEYSTROKES[keystroke++ % KEYSTROKES.length];
+        return index.search(query, snapshot, false);
+    }
+
+    /**
+     * 修改一个图钉的备注后立即查询（增量更新 + 位置映射重建）
+     */
+    @Benchmark
+    public BitSet queryAfterUpdate() {
+        PinEntry pin = snapshot.getPins().get(keystroke++ % snapshot.size());
+        pin.note = "retry " + keystroke;
+        index.pinsChanged(PinChangeEvent.updated(pin, 0));
+        snapshot = new PinSnapshot(++version, snapshot.getPins());
+        return index.search("retry", snapshot, false);
+    }
+}
@@ -0,0 +1,92 @@
+package cn.ilikexff.codepins.core;
+
+import cn.ilikexff.codepins.BenchmarkSupport;
+import com.intellij.openapi.project.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图钉存储基准：在已有 1k / 10k / 100k 个图钉的项目中新增、删除、移动单个图钉，以及按标签筛选
+ * 图钉为未解析状态（只有元数据），测量的是存储本身（列表、索引、日志、排序键）的开销，不含文档访问
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinStorageBenchmark {
+
+    private static final String[] TAGS = {"todo", "bug", "review", "perf", "api", "ui", "docs", "test"};
+
+    @Param({"1000", "10000", "100000"})
+    public int pinCount;
+
+    private Project project;
+    private List<PinEntry> pins;
+    private List<String> filterTags;
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        project = BenchmarkSupport.project();
+        PinStorage.clearAll(project);
+
+        Random random = new Random(42);
+        pins = new ArrayList<>(pinCount);
+        PinBatch batch = new PinBatch();
+        for (int i = 0; i < pinCount; i++) {
+            PinEntry pin = newPin(i, random);
+            pins.add(pin);
+            batch.add(pin);
+        }
+        PinStorage.applyBatch(project, batch);
+        filterTags = List.of("perf", "docs");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PinStorage.clearAll(project);
+    }
+
+    /**
+     * 新增一个图钉再删除它，图钉总数保持不变
+     */
+    @Benchmark
+    public void addThenRemove() {
+        PinEntry pin = newPin(pinCount + sequence++, new Random(sequence));
+        PinStorage.addPin(project, pin);
+        PinStorage.removePin(pin);
+    }
+
+    /**
+     * 把列表中间的一个图钉移到开头（只改写一个排序键）
+     */
+    @Benchmark
+    public void moveToFront() {
+        List<PinEntry> current = PinStorage.getPins(project);
+        PinStorage.movePin(project, current.get(current.size() / 2), current.get(0));
+    }
+
+    @Benchmark
+    public List<PinEntry> filterByTags() {
+        return PinStorage.filterByTags(project, filterTags);
+    }
+
+    private static PinEntry newPin(int i, Random random) {
+        PinState state = new PinState("/bench/src/File" + (i % 2000) + ".java", i % 500, "note " + i,
+                1_700_000_000_000L + i, "bench", i % 7 == 0, BenchmarkSupport.randomTags(random, TAGS));
+        state.id = "bench-" + i;
+        return PinEntry.unresolved(state);
+    }
+}
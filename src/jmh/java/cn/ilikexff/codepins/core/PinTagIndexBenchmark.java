@@ -0,0 +1,143 @@
+package cn.ilikexff.codepins.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标签位图索引基准：100k 个图钉、500 个标签（使用频率按 Zipf 分布，每个图钉 1~4 个标签）
+ * 对比位图索引与逐个图钉调用 hasTag 的筛选和计数，以及修改一个图钉标签的维护开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinTagIndexBenchmark {
+
+    private static final int PIN_COUNT = 100_000;
+    private static final int TAG_COUNT = 500;
+
+    private final List<String> anyOf = List.of("tag3", "tag40", "tag250");
+    private final List<String> allOf = List.of("tag0", "tag1");
+    private final List<String> noneOf = List.of("tag2");
+
+    private List<PinEntry> pins;
+    private PinSnapshot snapshot;
+    private PinTagIndex index;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        double[] cumulative = new double[TAG_COUNT];
+        double total = 0;
+        for (int i = 0; i < TAG_COUNT; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+
+        pins = new ArrayList<>(PIN_COUNT);
+        index = new PinTagIndex();
+        for (int i = 0; i < PIN_COUNT; i++) {
+            List<String> tags = new ArrayList<>();
+            for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                tags.add("tag" + zipf(cumulative, random.nextDouble() * total));
+            }
+            PinState state = new PinState("/bench/src/File" + (i % 3000) + ".java", i % 200, "note " + i,
+                    1_700_000_000_000L + i, "bench", false, tags);
+            state.id = "bench-" + i;
+            PinEntry pin = PinEntry.unresolved(state);
+            pins.add(pin);
+            index.add(pin);
+        }
+        snapshot = new PinSnapshot(1, pins);
+        index.filter(null, anyOf, null, snapshot); // 构建序号到位置的映射
+    }
+
+    private static int zipf(double[] cumulative, double value) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Benchmark
+    public List<PinEntry> filterAnyBitmap() {
+        return index.filter(null, anyOf, null, snapshot);
+    }
+
+    @Benchmark
+    public List<PinEntry> filterAnyLoop() {
+        List<PinEntry> result = new ArrayList<>();
+        for (PinEntry pin : pins) {
+            for (String tag : anyOf) {
+                if (pin.hasTag(tag)) {
+                    result.add(pin);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<PinEntry> filterAllNotBitmap() {
+        return index.filter(allOf, null, noneOf, snapshot);
+    }
+
+    @Benchmark
+    public List<PinEntry> filterAllNotLoop() {
+        List<PinEntry> result = new ArrayList<>();
+        for (PinEntry pin : pins) {
+            if (allOf.stream().allMatch(pin::hasTag) && noneOf.stream().noneMatch(pin::hasTag)) {
+                result.add(pin);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, Integer> countsBitmap() {
+        return index.counts();
+    }
+
+    @Benchmark
+    public Map<String, Integer> countsLoop() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (PinEntry pin : pins) {
+            for (String tag : pin.getTags()) {
+                counts.merge(tag, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 修改一个图钉的标签：先按旧标签移除，再按新标签登记（与存储中 updateTags 的维护方式相同）
+     */
+    @Benchmark
+    public boolean retagOnePin() {
+        PinEntry pin = pins.get(random.nextInt(PIN_COUNT));
+        index.remove(pin);
+        pin.setTags(List.of("tag" + random.nextInt(TAG_COUNT)));
+        return index.add(pin);
+    }
+}
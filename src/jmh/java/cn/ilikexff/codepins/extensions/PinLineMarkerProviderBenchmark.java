@@ -0,0 +1,206 @@
+package cn.ilikexff.codepins.extensions;
+
+import cn.ilikexff.codepins.BenchmarkSupport;
+import cn.ilikexff.codepins.core.PinBatch;
+import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinStorage;
+import com.intellij.codeInsight.daemon.LineMarkerInfo;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.SyntaxTraverser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.swing.*;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 行标记提供者基准：在 2 万行、1000 个图钉的文件上，对每个 PSI 元素调用一次提供者（一次完整的行标记计算）
+ * 对比改造前的实现（每个叶子节点都按行查询图钉、每次调用都加载图标）与现在的实现
+ * （每行只在第一个非空白叶子节点上标记，按文档缓存的已钉行位图判断），以及图钉变化使位图失效后的一整遍。
+ *
+ * 平台测试环境只包含平台自带的语言，合成文件使用 XML。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PinLineMarkerProviderBenchmark {
+
+    @Param({"20000"})
+    public int lineCount;
+
+    @Param({"1000"})
+    public int pinCount;
+
+    private final PinLineMarkerProvider provider = new PinLineMarkerProvider();
+
+    private Project project;
+    private List<PsiElement> elements;
+    private PinEntry touched;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        project = BenchmarkSupport.project();
+        PinStorage.clearAll(project);
+
+        PsiFile file = PsiFileFactory.getInstance(project).createFileFromText("Generated.xml",
+                FileTypeManager.getInstance().getFileTypeByExtension("xml"), xmlSource(lineCount),
+                System.currentTimeMillis(), true);
+        Document document = file.getViewProvider().getDocument();
+        String path = file.getVirtualFile().getPath();
+
+        PinBatch batch = new PinBatch();
+        int lines = document.getLineCount();
+        for (int i = 0; i < pinCount; i++) {
+            int line = (int) ((long) i * lines / pinCount);
+            PinEntry pin = new PinEntry(path, document.createRangeMarker(document.getLineStartOffset(line),
+                    document.getLineEndOffset(line)), "", 0L, "bench", false, List.of());
+            batch.add(pin);
+            if (touched == null) {
+                touched = pin;
+            }
+        }
+        PinStorage.applyBatch(project, batch);
+
+        elements = ReadAction.compute(() -> SyntaxTraverser.psiTraverser(file).toList());
+        // 两种实现标记出的已钉行数应相同
+        int expected = ReadAction.compute(() -> countPinned(true));
+        int actual = ReadAction.compute(() -> countPinned(false));
+        if (expected == 0 || expected != actual) {
+            throw new IllegalStateException("已钉行数不一致: " + expected + " / " + actual);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PinStorage.clearAll(project);
+    }
+
+    /**
+     * 改造前：每个叶子节点都查询图钉并加载图标
+     */
+    @Benchmark
+    public int legacyProvider() {
+        return ReadAction.compute(() -> {
+            int markers = 0;
+            for (PsiElement element : elements) {
+                if (legacyLineMarkerInfo(element) != null) {
+                    markers++;
+                }
+            }
+            return markers;
+        });
+    }
+
+    /**
+     * 现在：每行一个标记，位图已缓存
+     */
+    @Benchmark
+    public int lineBitmapProvider() {
+        return ReadAction.compute(this::runProvider);
+    }
+
+    /**
+     * 现在：修改一个图钉使该文件的位图失效，随后的一整遍需要先重建位图
+     */
+    @Benchmark
+    public int lineBitmapProviderAfterPinChange() {
+        PinStorage.updateNote(touched, "touched " + round++);
+        return ReadAction.compute(this::runProvider);
+    }
+
+    private int runProvider() {
+        int markers = 0;
+        for (PsiElement element : elements) {
+            if (provider.getLineMarkerInfo(element) != null) {
+                markers++;
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * 已钉行数：legacy 为 true 时按改造前的方式（每个叶子节点查询图钉）统计
+     */
+    private int countPinned(boolean legacy) {
+        BitSet lines = new BitSet();
+        for (PsiElement element : elements) {
+            LineMarkerInfo<?> info = legacy ? legacyLineMarkerInfo(element) : provider.getLineMarkerInfo(element);
+            if (info != null && "移除图钉".equals(info.getLineMarkerTooltip())) {
+                Document document = element.getContainingFile().getViewProvider().getDocument();
+                lines.set(document.getLineNumber(element.getTextOffset()));
+            }
+        }
+        return lines.cardinality();
+    }
+
+    /**
+     * 改造前的 PinLineMarkerProvider.getLineMarkerInfo（点击处理省略，只保留计算部分）
+     */
+    private LineMarkerInfo<?> legacyLineMarkerInfo(PsiElement element) {
+        if (element.getFirstChild() != null) {
+            return null;
+        }
+        PsiFile file = element.getContainingFile();
+        if (file == null) {
+            return null;
+        }
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) {
+            return null;
+        }
+        Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
+        if (document == null) {
+            return null;
+        }
+        int lineNumber = document.getLineNumber(element.getTextOffset());
+        boolean hasPinAtLine = !PinStorage.getPinsAtLine(project, virtualFile.getPath(), document, lineNumber).isEmpty();
+        Icon icon = hasPinAtLine
+                ? IconLoader.getIcon("/icons/pin-filled.svg", PinLineMarkerProvider.class)
+                : IconLoader.getIcon("/icons/pin-outline.svg", PinLineMarkerProvider.class);
+        return new LineMarkerInfo<>(
+                element,
+                element.getTextRange(),
+                icon,
+                psiElement -> hasPinAtLine ? "移除图钉" : "添加图钉",
+                (e, elt) -> {
+                },
+                GutterIconRenderer.Alignment.LEFT,
+                () -> "CodePin"
+        );
+    }
+
+    /**
+     * 合成 XML：每行一个带两个属性的元素
+     */
+    private static String xmlSource(int lines) {
+        StringBuilder text = new StringBuilder(lines * 48);
+        text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        text.append("<module name=\"bench\">\n");
+        for (int line = 2; line < lines - 1; line++) {
+            text.append("    <entry id=\"e").append(line).append("\" value=\"").append(line * 31 % 997).append("\"/>\n");
+        }
+        text.append("</module>\n");
+        return text.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package cn.ilikexff.codepins.template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模板变量替换基准：一个包含常见内置变量和自定义变量的中等长度模板
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+
+    private String template;
+    private Map<String, String> customVariables;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("// {author} {date} {time} 第 ").append(i).append(" 段 {ticket} {unknown} {year}-{month}-{day}\n");
+        }
+        template = text.toString();
+        customVariables = new HashMap<>();
+        customVariables.put("ticket", "CP-1234");
+    }
+
+    @Benchmark
+    public String processTemplate() {
+        return TemplateVariableProcessor.processTemplate(template);
+    }
+
+    @Benchmark
+    public String processTemplateWithCustomVariables() {
+        return TemplateVariableProcessor.processTemplate(template, customVariables);
+    }
+}
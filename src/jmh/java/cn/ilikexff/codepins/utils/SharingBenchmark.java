@@ -0,0 +1,74 @@
+package cn.ilikexff.codepins.utils;
+
+import cn.ilikexff.codepins.BenchmarkSupport;
+import cn.ilikexff.codepins.core.PinEntry;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.project.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分享相关基准：敏感信息检测、多个图钉格式化为 Markdown / JSON，以及代码卡片预览图生成
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharingBenchmark {
+
+    @Param({"200", "2000"})
+    public int lineCount;
+
+    private Project project;
+    private String code;
+    private List<PinEntry> pins;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        project = BenchmarkSupport.project();
+        code = BenchmarkSupport.javaSource(lineCount, 3);
+
+        // 每 20 行一个代码块图钉
+        Document document = new DocumentImpl(code, true);
+        pins = new ArrayList<>();
+        for (int line = 5; line + 10 < document.getLineCount(); line += 20) {
+            int start = document.getLineStartOffset(line);
+            int end = document.getLineEndOffset(line + 10);
+            pins.add(new PinEntry("/bench/src/Generated.java", document.createRangeMarker(start, end),
+                    "block " + line, 1_700_000_000_000L, "bench", true, List.of("review")));
+        }
+    }
+
+    @Benchmark
+    public List<SensitiveInfoDetector.SensitiveResult> detectSensitiveInfo() {
+        return SensitiveInfoDetector.detect(code);
+    }
+
+    @Benchmark
+    public String formatPinsMarkdown() {
+        return SharingUtil.formatPins(project, pins, SharingUtil.SharingFormat.MARKDOWN);
+    }
+
+    @Benchmark
+    public String formatPinsJson() {
+        return SharingUtil.formatPins(project, pins, SharingUtil.SharingFormat.JSON);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BufferedImage createPreviewImage() {
+        return ImageGenerator.createPreviewImage(project, code, "java", ImageGenerator.Theme.DARK, 800);
+    }
+}
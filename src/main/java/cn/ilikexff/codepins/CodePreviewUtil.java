@@ -1,6 +1,8 @@
 package cn.ilikexff.codepins;
 
 import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinLocation;
+import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.settings.CodePinsSettings;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.EditorFactory;
@@ -32,6 +34,9 @@ public class CodePreviewUtil {
         System.out.println("[CodePins] 尝试预览代码，图钉信息: " +
                           (pin != null ? (pin.filePath + ", isBlock=" + pin.isBlock) : "null"));
 
+        // 只读取当前位置，不为休眠图钉挂接 marker
+        PinLocation location = PinStorage.locatePin(pin);
+
         // 使用 ReadAction 包装文档访问操作，确保线程安全
         com.intellij.openapi.application.ReadAction.run(() -> {
             try {
@@ -41,25 +46,12 @@ public class CodePreviewUtil {
                     return;
                 }
 
-                if (pin.marker == null) {
-                    System.out.println("[CodePins] 无法预览代码：图钉标记为空");
-                    showErrorMessage("无法预览代码：图钉标记为空");
-                    return;
-                }
-
-                if (!pin.marker.isValid()) {
-                    System.out.println("[CodePins] 无法预览代码：图钉标记无效");
+                if (location == null) {
+                    System.out.println("[CodePins] 无法预览代码：无法定位图钉");
                     showErrorMessage("无法预览代码：图钉标记无效");
                     return;
                 }
 
-                Document document = pin.marker.getDocument();
-                if (document == null) {
-                    System.out.println("[CodePins] 无法预览代码：无法获取文档");
-                    showErrorMessage("无法预览代码：无法获取文档");
-                    return;
-                }
-
                 FileType fileType = FileTypeManager.getInstance().getFileTypeByFileName(pin.filePath);
                 if (fileType == null) {
                     System.out.println("[CodePins] 无法预览代码：无法确定文件类型");
@@ -68,7 +60,7 @@ public class CodePreviewUtil {
                 }
 
                 // 继续处理预览逻辑
-                processPreview(project, pin, document, fileType);
+                processPreview(project, pin, location, fileType);
             } catch (Exception e) {
                 System.out.println("[CodePins] ReadAction 中预览代码时出错: " + e.getMessage());
                 e.printStackTrace();
@@ -155,24 +147,25 @@ public class CodePreviewUtil {
     /**
      * 处理预览逻辑（在 ReadAction 中调用）
      */
-    private static void processPreview(Project project, PinEntry pin, Document document, FileType fileType) {
+    private static void processPreview(Project project, PinEntry pin, PinLocation location, FileType fileType) {
 
         try {
+            Document document = location.getDocument();
             int startOffset, endOffset;
             // 定义行号变量，用于标题显示
             int startLine, endLine;
 
-            if (pin.isBlock && pin.marker.getStartOffset() != pin.marker.getEndOffset()) {
+            if (pin.isBlock && location.getStartOffset() != location.getEndOffset()) {
                 // 如果是代码块图钉，并且有有效范围，则直接使用该范围
-                startOffset = pin.marker.getStartOffset();
-                endOffset = pin.marker.getEndOffset();
+                startOffset = location.getStartOffset();
+                endOffset = location.getEndOffset();
                 // 计算行号范围
                 startLine = document.getLineNumber(startOffset);
                 endLine = document.getLineNumber(endOffset);
                 System.out.println("[CodePins] 使用代码块范围预览: " + startOffset + "-" + endOffset);
             } else {
                 // 否则，显示当前行及前后共3行
-                int line = document.getLineNumber(pin.marker.getStartOffset());
+                int line = location.getStartLine();
                 int contextLines = 3;
                 startLine = Math.max(0, line - contextLines);
                 endLine = Math.min(document.getLineCount() - 1, line + contextLines);
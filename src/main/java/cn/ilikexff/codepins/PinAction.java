@@ -113,7 +113,7 @@ public class PinAction extends AnAction {
                 tags
         );
 
-        boolean success = PinStorage.addPin(pin);
+        boolean success = PinStorage.addPin(project, pin);
 
         // Status bar and notification tips
         StatusBar statusBar = WindowManager.getInstance().getStatusBar(project);
@@ -1,8 +1,9 @@
 package cn.ilikexff.codepins;
 
 import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinLocation;
+import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.i18n.CodePinsBundle;
-import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.popup.JBPopup;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
@@ -170,24 +171,20 @@ public class PinHoverPreview {
                 return createErrorPanel("图钉对象为空");
             }
 
+            // 只读取当前位置，不为休眠图钉挂接 marker
+            PinLocation location = PinStorage.locatePin(pin);
+
             // 将所有文档访问操作包装在 ReadAction 中
             return com.intellij.openapi.application.ReadAction.compute(() -> {
                 try {
-                    // 首先检查 marker 是否有效
-                    if (pin.marker == null || !pin.marker.isValid()) {
-                        System.out.println("[CodePins] 创建预览面板失败: marker 无效");
+                    // 首先检查图钉能否定位
+                    if (location == null) {
+                        System.out.println("[CodePins] 创建预览面板失败: 无法定位图钉");
                         return createErrorPanel("图钉标记无效");
                     }
 
-                    // 获取文档
-                    Document doc = pin.marker.getDocument();
-                    if (doc == null) {
-                        System.out.println("[CodePins] 创建预览面板失败: 无法获取文档");
-                        return createErrorPanel("无法获取文档");
-                    }
-
                     // 获取基本信息
-                    int line = pin.getCurrentLine(doc);
+                    int line = location.getStartLine();
                     String note = pin.note != null && !pin.note.isEmpty() ? pin.note : "-";
                     String time = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(pin.timestamp));
                     String author = pin.author != null ? pin.author : "-";
@@ -1,6 +1,7 @@
 package cn.ilikexff.codepins;
 
 import cn.ilikexff.codepins.i18n.CodePinsBundle;
+import cn.ilikexff.codepins.core.PinBatch;
 import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.core.PinState;
@@ -11,6 +12,7 @@ import cn.ilikexff.codepins.ui.EmptyStatePanel;
 import cn.ilikexff.codepins.ui.ExportDialog;
 import cn.ilikexff.codepins.ui.ImportDialog;
 import cn.ilikexff.codepins.ui.PinListCellRenderer;
+import cn.ilikexff.codepins.ui.PinListModel;
 import cn.ilikexff.codepins.ui.SearchTextField;
 import cn.ilikexff.codepins.ui.ShareDialog;
 import cn.ilikexff.codepins.ui.SimpleTagEditorDialog;
@@ -57,8 +59,7 @@ import java.util.stream.Collectors;
 public class PinsToolWindow implements ToolWindowFactory {
 
     private Project project;
-    private DefaultListModel<PinEntry> model;
-    private List<PinEntry> allPins;
+    private PinListModel model;
     private JList<PinEntry> list;
     private final TagFilterPanel[] tagFilterPanelRef = new TagFilterPanel[1]; // 使用数组引用来解决前向引用问题
     private SearchTextField searchField;
@@ -69,12 +70,13 @@ public class PinsToolWindow implements ToolWindowFactory {
     @Override
     public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
         this.project = project;
-        model = new DefaultListModel<>();
+        model = new PinListModel(project, toolWindow.getDisposable());
         list = new JList<>(model);
-        PinStorage.setModel(model);
+        // 列表模型直接订阅图钉变化，工具窗口销毁时自动注销
+        PinStorage.subscribe(project, model, toolWindow.getDisposable());
 
-        PinStorage.initFromSaved();
-        allPins = PinStorage.getPins();
+        PinStorage.ensureLoaded(project);
+        model.reload();
 
         // 设置多选模式，允许批量操作
         list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
@@ -82,6 +84,8 @@ public class PinsToolWindow implements ToolWindowFactory {
         // 使用自定义的现代卡片式渲染器
         PinListCellRenderer cellRenderer = new PinListCellRenderer();
         list.setCellRenderer(cellRenderer);
+        // 渲染缓存随图钉删除、更新和重载清理
+        PinStorage.subscribe(project, cellRenderer, toolWindow.getDisposable());
 
         // 设置拖放功能
         setupDragAndDrop();
@@ -332,7 +336,6 @@ public class PinsToolWindow implements ToolWindowFactory {
 
                         if (shouldDelete) {
                             PinStorage.removePin(selected);
-                            allPins = PinStorage.getPins();
                             // 更新图钉数量标签
                             updatePinCountLabel();
                         }
@@ -348,11 +351,7 @@ public class PinsToolWindow implements ToolWindowFactory {
                         AnimationUtil.buttonClickEffect(refreshItem);
 
                         // 重新加载所有图钉
-                        allPins = PinStorage.getPins();
-                        model.clear();
-                        for (PinEntry pin : allPins) {
-                            model.addElement(pin);
-                        }
+                        model.reload();
                         list.repaint();
 
                         // 刷新标签筛选面板
@@ -372,10 +371,12 @@ public class PinsToolWindow implements ToolWindowFactory {
         });
 
         // 创建标签筛选面板
-        tagFilterPanelRef[0] = new TagFilterPanel(selectedTags -> {
+        tagFilterPanelRef[0] = new TagFilterPanel(project, selectedTags -> {
             // 当标签选择变化时，更新图钉列表
             updatePinsList(selectedTags);
         });
+        // 标签面板直接订阅图钉变更，标签变化时自动刷新
+        tagFilterPanelRef[0].listenToPinChanges(toolWindow.getDisposable());
 
         // 创建空状态面板
         EmptyStatePanel emptyStatePanel = new EmptyStatePanel();
@@ -464,7 +465,8 @@ public class PinsToolWindow implements ToolWindowFactory {
         tabbedPane.addTab(CodePinsBundle.message("ui.pins.list"), IconUtil.loadIcon("/icons/pin.svg", getClass()), mainPanel);
 
         // 创建统计面板
-        StatisticsPanel statisticsPanel = new StatisticsPanel();
+        StatisticsPanel statisticsPanel = new StatisticsPanel(project);
+        statisticsPanel.listenToPinChanges(toolWindow.getDisposable());
         tabbedPane.addTab(CodePinsBundle.message("statistics.tab.title"), IconUtil.loadIcon("/icons/chart.svg", getClass()), statisticsPanel);
 
         // 创建智能建议面板
@@ -477,8 +479,8 @@ public class PinsToolWindow implements ToolWindowFactory {
 
         // 监听选项卡切换，刷新统计数据
         tabbedPane.addChangeListener(e -> {
-            if (tabbedPane.getSelectedIndex() == 1) { // 统计面板
-                statisticsPanel.refreshStatistics();
+            if (tabbedPane.getSelectedIndex() == 1) { // 统计面板（只在隐藏期间图钉有变化时重新统计）
+                statisticsPanel.refreshIfStale();
             } else if (tabbedPane.getSelectedIndex() == 2) { // 智能建议面板
                 // 当切换到智能建议面板时，激活面板并分析当前文件
                 suggestionPanel.onPanelActivated();
@@ -510,17 +512,9 @@ public class PinsToolWindow implements ToolWindowFactory {
 
         searchField.addDocumentListener(new DocumentListener() {
             void filter() {
-                String keyword = searchField.getText().trim().toLowerCase();
-                model.clear();
-
-                List<PinEntry> filtered = allPins.stream()
-                        .filter(p -> p.filePath.toLowerCase().contains(keyword) ||
-                                (p.note != null && p.note.toLowerCase().contains(keyword)))
-                        .collect(Collectors.toList());
-
-                for (PinEntry pin : filtered) {
-                    model.addElement(pin);
-                }
+                // 关键字交给存储的全文索引匹配（备注、路径、文件名、标签、作者），与标签筛选同时生效
+                // 模型在输入停顿后于后台计算，不阻塞输入
+                model.setSearchText(searchField.getText());
             }
 
             public void insertUpdate(DocumentEvent e) { filter(); }
@@ -579,20 +573,8 @@ public class PinsToolWindow implements ToolWindowFactory {
      * 根据选中的标签更新图钉列表
      */
     private void updatePinsList(List<String> selectedTags) {
-        model.clear();
-
-        if (selectedTags == null || selectedTags.isEmpty()) {
-            // 如果没有选中标签，显示所有图钉
-            for (PinEntry pin : allPins) {
-                model.addElement(pin);
-            }
-        } else {
-            // 如果有选中标签，显示匹配的图钉
-            List<PinEntry> filteredPins = PinStorage.filterByTags(selectedTags);
-            for (PinEntry pin : filteredPins) {
-                model.addElement(pin);
-            }
-        }
+        // 显示匹配任一选中标签的图钉（由标签位图索引求出），没有选中标签时显示所有图钉
+        model.setTagFilter(selectedTags);
     }
 
     /**
@@ -647,7 +629,8 @@ public class PinsToolWindow implements ToolWindowFactory {
 
             @Override
             public boolean canImport(TransferSupport support) {
-                if (!support.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+                // 排序视图中的顺序不是自定义顺序，不能拖拽调整
+                if (!support.isDataFlavorSupported(DataFlavor.stringFlavor) || model.isSorted()) {
                     return false;
                 }
 
@@ -672,18 +655,18 @@ public class PinsToolWindow implements ToolWindowFactory {
 
                     // 获取放置的位置
                     JList.DropLocation dl = (JList.DropLocation) support.getDropLocation();
-                    int toIndex = dl.getIndex();
-
-                    // 如果放置位置在拖动索引之后，需要调整
-                    if (fromIndex < toIndex) {
-                        toIndex--;
+                    int dropIndex = dl.getIndex();
+                    if (fromIndex < 0 || fromIndex >= model.getSize() || dropIndex < 0) {
+                        return false;
                     }
 
-                    // 移动图钉位置
-                    PinStorage.movePinPosition(fromIndex, toIndex);
+                    // 按图钉定位：放到放置位置上的图钉之前（列表经过筛选时下标与存储顺序不对应）
+                    PinEntry pin = model.getElementAt(fromIndex);
+                    PinEntry before = dropIndex < model.getSize() ? model.getElementAt(dropIndex) : null;
+                    PinStorage.movePin(project, pin, before);
 
                     // 选中移动后的项
-                    list.setSelectedIndex(toIndex);
+                    list.setSelectedValue(pin, true);
 
                     // 添加动画效果
                     AnimationUtil.scale(list, 1.0f, 0.98f, 100, () -> {
@@ -742,19 +725,7 @@ public class PinsToolWindow implements ToolWindowFactory {
             public void actionPerformed(@NotNull AnActionEvent e) {
                 ImportDialog dialog = new ImportDialog(project);
                 if (dialog.showAndGet()) {
-                    // 刷新图钉列表
-                    allPins = PinStorage.getPins();
-                    model.clear();
-                    for (PinEntry pin : allPins) {
-                        model.addElement(pin);
-                    }
-
-                    // 刷新标签筛选面板
-                    if (tagFilterPanelRef[0] != null) {
-                        tagFilterPanelRef[0].refreshTagsView();
-                    }
-
-                    // 更新图钉数量标签
+                    // 图钉列表和标签面板已通过变更事件自动刷新，这里只更新图钉数量标签
                     updatePinCountLabel();
                 }
             }
@@ -890,6 +861,18 @@ public class PinsToolWindow implements ToolWindowFactory {
             }
         });
 
+        sortGroup.add(new AnAction(CodePinsBundle.message("toolbar.sort.custom")) {
+            @Override
+            public void actionPerformed(@NotNull AnActionEvent e) {
+                sortPins(SortType.CUSTOM);
+            }
+
+            @Override
+            public @NotNull ActionUpdateThread getActionUpdateThread() {
+                return ActionUpdateThread.EDT;
+            }
+        });
+
         group.add(sortGroup);
 
         // 清空按钮
@@ -900,14 +883,8 @@ public class PinsToolWindow implements ToolWindowFactory {
                 int confirm = JOptionPane.showConfirmDialog(null,
                         CodePinsBundle.message("dialog.confirm.clear"), CodePinsBundle.message("dialog.confirm.title"), JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    PinStorage.clearAll();
-                    allPins = PinStorage.getPins();
-                    model.clear();
-
-                    // 刷新标签筛选面板
-                    if (tagFilterPanelRef[0] != null) {
-                        tagFilterPanelRef[0].refreshTagsView();
-                    }
+                    // 列表和标签面板通过变更事件自动刷新
+                    PinStorage.clearAll(project);
 
                     // 更新图钉数量标签
                     updatePinCountLabel();
@@ -928,7 +905,7 @@ public class PinsToolWindow implements ToolWindowFactory {
      */
     private JComponent createPinCountLabel() {
         // 获取图钉数量信息
-        int currentCount = PinStorage.getPins().size();
+        int currentCount = PinStorage.getPins(project).size();
         
         // 创建标签
         JLabel countLabel = new JLabel();
@@ -967,64 +944,52 @@ public class PinsToolWindow implements ToolWindowFactory {
         TIME_DESC,  // 按创建时间降序（新→旧）
         TIME_ASC,   // 按创建时间升序（旧→新）
         FILENAME,   // 按文件名
-        NOTE        // 按备注
+        NOTE,       // 按备注
+        CUSTOM      // 自定义顺序（可拖拽调整）
     }
 
     /**
      * 对图钉列表进行排序
+     * 只改变列表的显示顺序（排序视图），不改写存储中的自定义顺序，选择"自定义顺序"即可恢复
      *
      * @param type 排序类型
      */
     private void sortPins(SortType type) {
-        if (allPins.isEmpty()) {
-            return;
-        }
-
-        List<PinEntry> sortedPins = new ArrayList<>(allPins);
-
+        Comparator<PinEntry> comparator = null;
+        String sortTypeText = "";
         switch (type) {
             case TIME_DESC:
                 // 按创建时间降序（新→旧）
-                sortedPins.sort((p1, p2) -> Long.compare(p2.timestamp, p1.timestamp));
+                comparator = (p1, p2) -> Long.compare(p2.timestamp, p1.timestamp);
+                sortTypeText = "创建时间（新→旧）";
                 break;
             case TIME_ASC:
                 // 按创建时间升序（旧→新）
-                sortedPins.sort(Comparator.comparingLong(p -> p.timestamp));
+                comparator = Comparator.comparingLong(p -> p.timestamp);
+                sortTypeText = "创建时间（旧→新）";
                 break;
             case FILENAME:
                 // 按文件名
-                sortedPins.sort((p1, p2) -> {
+                comparator = (p1, p2) -> {
                     String fileName1 = new File(p1.filePath).getName();
                     String fileName2 = new File(p2.filePath).getName();
                     return fileName1.compareToIgnoreCase(fileName2);
-                });
+                };
+                sortTypeText = "文件名";
                 break;
             case NOTE:
                 // 按备注
-                sortedPins.sort(Comparator.comparing(p -> p.note, String.CASE_INSENSITIVE_ORDER));
+                comparator = Comparator.comparing(p -> p.note != null ? p.note : "", String.CASE_INSENSITIVE_ORDER);
+                sortTypeText = "备注";
+                break;
+            case CUSTOM:
+                sortTypeText = "自定义顺序";
                 break;
         }
 
-        // 更新存储和模型
-        PinStorage.updatePinsOrder(sortedPins);
-        updateListModel();
+        // 只更新列表模型的排序方式
+        model.setComparator(comparator);
 
-        // 显示排序成功消息
-        String sortTypeText = "";
-        switch (type) {
-            case TIME_DESC:
-                sortTypeText = "创建时间（新→旧）";
-                break;
-            case TIME_ASC:
-                sortTypeText = "创建时间（旧→新）";
-                break;
-            case FILENAME:
-                sortTypeText = "文件名";
-                break;
-            case NOTE:
-                sortTypeText = "备注";
-                break;
-        }
         Messages.showInfoMessage(
                 project,
                 "已按" + sortTypeText + "排序图钉",
@@ -1038,20 +1003,10 @@ public class PinsToolWindow implements ToolWindowFactory {
      * @param selectedPins 选中的图钉列表
      */
     private void deleteSelectedPins(List<PinEntry> selectedPins) {
-        for (PinEntry pin : selectedPins) {
-            PinStorage.removePin(pin);
-        }
-
-        // 更新列表
-        allPins = PinStorage.getPins();
-        updateListModel();
+        // 一次提交全部删除，只持久化一次并只刷新一次界面
+        PinStorage.applyBatch(project, new PinBatch().removeAll(selectedPins));
 
-        // 刷新标签筛选面板
-        if (tagFilterPanelRef[0] != null) {
-            tagFilterPanelRef[0].refreshTagsView();
-        }
-
-        // 更新图钉数量标签
+        // 图钉列表和标签面板已通过变更事件自动刷新，这里只更新图钉数量标签
         updatePinCountLabel();
 
         // 显示删除成功消息
@@ -1073,33 +1028,8 @@ public class PinsToolWindow implements ToolWindowFactory {
             filterTags = tagFilterPanelRef[0].getSelectedTags();
         }
 
-        // 获取搜索文本
-        String searchText = searchField.getText().trim().toLowerCase();
-
-        // 根据标签和搜索文本筛选图钉
-        List<PinEntry> filteredPins;
-        if (filterTags.isEmpty()) {
-            filteredPins = new ArrayList<>(allPins);
-        } else {
-            filteredPins = PinStorage.filterByTags(filterTags);
-        }
-
-        // 应用搜索筛选
-        if (!searchText.isEmpty()) {
-            filteredPins = filteredPins.stream()
-                    .filter(pin -> {
-                        String fileName = new File(pin.filePath).getName().toLowerCase();
-                        String note = pin.note.toLowerCase();
-                        return fileName.contains(searchText) || note.contains(searchText);
-                    })
-                    .collect(Collectors.toList());
-        }
-
-        // 更新模型
-        model.clear();
-        for (PinEntry pin : filteredPins) {
-            model.addElement(pin);
-        }
+        // 标签交给标签位图索引，搜索文本交给全文索引，模型只对变化的区间发出通知
+        model.setTagFilter(filterTags, searchField.getText());
 
         // 更新空状态面板和图钉数量标签
         if (contentPanel != null && cardLayout != null) {
@@ -1147,17 +1077,20 @@ public class PinsToolWindow implements ToolWindowFactory {
                 return;
             }
 
+            // 未解析的图钉先挂接 marker，保证复制的是当前位置
+            PinStorage.resolvePin(original);
+
             // 创建新的标记
             RangeMarker newMarker;
             if (original.isBlock) {
                 // 如果是代码块图钉，复制整个范围
                 newMarker = document.createRangeMarker(
-                        original.marker.getStartOffset(),
-                        original.marker.getEndOffset()
+                        original.getStartOffset(),
+                        original.getEndOffset()
                 );
             } else {
                 // 如果是单行图钉，复制当前行
-                int line = document.getLineNumber(original.marker.getStartOffset());
+                int line = document.getLineNumber(original.getStartOffset());
                 int lineStartOffset = document.getLineStartOffset(line);
                 int lineEndOffset = document.getLineEndOffset(line);
                 newMarker = document.createRangeMarker(lineStartOffset, lineEndOffset);
@@ -1178,7 +1111,7 @@ public class PinsToolWindow implements ToolWindowFactory {
             );
 
             // 添加到存储
-            boolean success = PinStorage.addPin(newPin);
+            boolean success = PinStorage.addPin(project, newPin);
             if (success) {
                 // 更新图钉数量标签
                 updatePinCountLabel();
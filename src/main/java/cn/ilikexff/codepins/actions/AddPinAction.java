@@ -95,7 +95,7 @@ public class AddPinAction extends AnAction {
                 false,
                 tags
         );
-        boolean success = PinStorage.addPin(pinEntry);
+        boolean success = PinStorage.addPin(project, pinEntry);
 
         // 状态栏和通知提示
         StatusBar statusBar = WindowManager.getInstance().getStatusBar(project);
@@ -0,0 +1,36 @@
+package cn.ilikexff.codepins.actions;
+
+import cn.ilikexff.codepins.core.PinStorage;
+import cn.ilikexff.codepins.ui.GoToPinPopup;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 跳转到图钉的快捷键 Action：打开按模糊匹配排序的图钉搜索弹窗
+ */
+public class GoToPinAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+        GoToPinPopup.show(project);
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        // 只有在有项目且存在图钉时才启用此操作
+        Project project = e.getProject();
+        e.getPresentation().setEnabled(project != null && !PinStorage.getPins(project).isEmpty());
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
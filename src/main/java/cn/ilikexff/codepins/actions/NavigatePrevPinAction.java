@@ -28,7 +28,7 @@ public class NavigatePrevPinAction extends AnAction {
         }
 
         // 获取所有图钉
-        List<PinEntry> pins = PinStorage.getPins();
+        List<PinEntry> pins = PinStorage.getPins(project);
         if (pins.isEmpty()) {
             return;
         }
@@ -79,7 +79,7 @@ public class NavigatePrevPinAction extends AnAction {
             PinEntry pin = pins.get(i);
             
             // 如果是同一个文件，且位置在当前光标之前
-            if (pin.filePath.equals(currentFilePath) && pin.marker.getStartOffset() < currentOffset) {
+            if (pin.filePath.equals(currentFilePath) && pin.getStartOffset() < currentOffset) {
                 prevPin = pin;
                 break;
             }
@@ -109,10 +109,12 @@ public class NavigatePrevPinAction extends AnAction {
     private void navigateToPin(Project project, PinEntry pin) {
         VirtualFile file = LocalFileSystem.getInstance().findFileByPath(pin.filePath);
         if (file != null && file.exists()) {
+            // 未解析的图钉先挂接 marker
+            PinStorage.resolvePin(pin);
             // 使用ReadAction包装marker访问操作
             com.intellij.openapi.application.ReadAction.run(() -> {
                 try {
-                    int startOffset = pin.marker.getStartOffset();
+                    int startOffset = pin.getStartOffset();
                     com.intellij.openapi.application.ApplicationManager.getApplication().invokeLater(() -> {
                         OpenFileDescriptor descriptor = new OpenFileDescriptor(
                                 project,
@@ -133,6 +135,6 @@ public class NavigatePrevPinAction extends AnAction {
     public void update(@NotNull AnActionEvent e) {
         // 只有在有项目打开时才启用此操作
         Project project = e.getProject();
-        e.getPresentation().setEnabled(project != null && !PinStorage.getPins().isEmpty());
+        e.getPresentation().setEnabled(project != null && !PinStorage.getPins(project).isEmpty());
     }
 }
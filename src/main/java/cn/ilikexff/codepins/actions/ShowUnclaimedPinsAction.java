@@ -0,0 +1,36 @@
+package cn.ilikexff.codepins.actions;
+
+import cn.ilikexff.codepins.core.PinStateService;
+import cn.ilikexff.codepins.ui.UnclaimedPinsPopup;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 只读查看旧版本中尚未归属到任何项目的图钉
+ */
+public class ShowUnclaimedPinsAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+        UnclaimedPinsPopup.show(project);
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        // 只有全局存储中还留有旧图钉时才显示
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null
+                && PinStateService.getInstance().getUnclaimedPinCount() > 0);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
@@ -65,64 +65,37 @@ public class CodePatternAnalyzer {
         new SecurityPattern("反序列化", Pattern.compile("ObjectInputStream|readObject"), "反序列化可能存在安全风险", 0.8)
     );
     
+    /**
+     * 文本规则（跳过CodePins特殊注释指令）
+     */
+    private static final LineRuleEngine RULE_ENGINE = new LineRuleEngine(Collections.singletonList(
+        // 检查长行
+        new LineRule("LONG_LINE", line -> "", (filePath, i, line, match) -> {
+            SmartSuggestion suggestion = new SmartSuggestion(
+                SmartSuggestion.SuggestionType.REFACTOR,
+                SmartSuggestion.Priority.LOW,
+                "长行代码",
+                "这行代码过长，建议拆分以提高可读性",
+                filePath, i, i
+            );
+            suggestion.setConfidence(0.6);
+            return suggestion;
+        }).minLength(121).skipPinComments()
+    ));
+    
     /**
      * 分析文本内容 (简化版本，PSI分析暂时禁用)
      */
-    public List<SmartSuggestion> analyzeText(String filePath, String content) {
+    public List<SmartSuggestion> analyzeText(String filePath, CharSequence content) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
-
-        String[] lines = content.split("\n");
+        LineIndex lines = new LineIndex(content);
 
         // 基本的文本模式分析
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-
-            // 跳过CodePins特殊注释指令
-            if (isCodePinsComment(line)) {
-                continue;
-            }
-
-            // 检查长行
-            if (line.length() > 120) {
-                SmartSuggestion suggestion = new SmartSuggestion(
-                    SmartSuggestion.SuggestionType.REFACTOR,
-                    SmartSuggestion.Priority.LOW,
-                    "长行代码",
-                    "这行代码过长，建议拆分以提高可读性",
-                    filePath, i, i
-                );
-                suggestion.setConfidence(0.6);
-                suggestions.add(suggestion);
-            }
-        }
+        RULE_ENGINE.scan(filePath, lines, 0, lines.getLineCount(), suggestions);
 
         return suggestions;
     }
 
-    /**
-     * 检查是否为CodePins特殊注释指令
-     */
-    private boolean isCodePinsComment(String line) {
-        String trimmed = line.trim();
-
-        // 检查CodePins的特殊注释格式
-        // 格式: //@cp... 或 //@cpb... 或 //@cpr...
-        if (trimmed.matches("^//\\s*@cp[br]?\\d+.*")) {
-            return true;
-        }
-
-        // 检查包含CodePins标签的注释
-        if (trimmed.startsWith("//") && (
-            trimmed.contains("#") ||  // 包含标签
-            trimmed.contains("@cp") || // CodePins指令
-            trimmed.matches(".*\\d+-\\d+.*") // 包含范围格式
-        )) {
-            return true;
-        }
-
-        return false;
-    }
-
     // PSI相关的分析方法暂时移除，避免编译问题
     // 后续可以在解决依赖问题后重新添加
     
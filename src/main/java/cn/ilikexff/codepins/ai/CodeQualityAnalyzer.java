@@ -11,125 +11,144 @@ import java.util.regex.Pattern;
 public class CodeQualityAnalyzer {
     
     /**
-     * 质量规则定义
+     * 质量规则定义（逐行规则，关键字用于预筛选）
      */
-    private static final List<QualityRule> QUALITY_RULES = Arrays.asList(
+    static final List<LineRule> LINE_RULES = Arrays.asList(
         // 命名规范
-        new QualityRule(
+        qualityRule(
             "NAMING_CONVENTION",
             "命名规范",
             Pattern.compile("\\b[a-z][a-zA-Z0-9]*\\s*="),
             SmartSuggestion.SuggestionType.BEST_PRACTICE,
             SmartSuggestion.Priority.LOW,
             "变量命名应使用驼峰命名法",
-            0.6
+            0.6,
+            "="
         ),
         
         // 魔法数字 - 使用更智能的检测逻辑
-        new QualityRule(
+        qualityRule(
             "MAGIC_NUMBER",
             "魔法数字",
-            Pattern.compile("\\b(?!0|1|2|10|100|1000)\\d{2,}\\b"),
+            line -> isActualMagicNumber(line.toString()) ? "" : null,
             SmartSuggestion.SuggestionType.REFACTOR,
             SmartSuggestion.Priority.MEDIUM,
             "避免使用魔法数字，建议定义为常量",
-            0.7
-        ) {
-            @Override
-            public boolean matches(String line) {
-                // 使用智能上下文检测
-                return isActualMagicNumber(line, pattern);
-            }
-        },
+            0.7,
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9"
+        ),
         
         // 重复字符串
-        new QualityRule(
+        qualityRule(
             "DUPLICATE_STRING",
             "重复字符串",
             Pattern.compile("\"([^\"]{5,})\".*\"\\1\""),
             SmartSuggestion.SuggestionType.REFACTOR,
             SmartSuggestion.Priority.MEDIUM,
             "重复的字符串应提取为常量",
-            0.8
+            0.8,
+            "\""
         ),
         
         // 空方法体
-        new QualityRule(
+        qualityRule(
             "EMPTY_METHOD",
             "空方法体",
             Pattern.compile("\\{\\s*\\}"),
             SmartSuggestion.SuggestionType.CODE_SMELL,
             SmartSuggestion.Priority.LOW,
             "空方法体可能表示未完成的实现",
-            0.5
+            0.5,
+            "{"
         ),
         
         // 过长的方法参数
-        new QualityRule(
+        qualityRule(
             "LONG_PARAMETER_LIST",
             "参数列表过长",
             Pattern.compile("\\([^)]{80,}\\)"),
             SmartSuggestion.SuggestionType.REFACTOR,
             SmartSuggestion.Priority.MEDIUM,
             "参数列表过长，考虑使用参数对象",
-            0.6
-        ),
+            0.6,
+            "("
+        ).minLength(82),
         
         // 深度嵌套
-        new QualityRule(
+        qualityRule(
             "DEEP_NESTING",
             "深度嵌套",
             Pattern.compile("(\\s{12,})(if|for|while|try)"),
             SmartSuggestion.SuggestionType.COMPLEXITY,
             SmartSuggestion.Priority.HIGH,
             "嵌套层次过深，影响代码可读性",
-            0.8
-        ),
+            0.8,
+            "if", "for", "while", "try"
+        ).minLength(14),
         
         // 未使用的导入
-        new QualityRule(
+        qualityRule(
             "UNUSED_IMPORT",
             "未使用的导入",
             Pattern.compile("^import\\s+[^;]+;$"),
             SmartSuggestion.SuggestionType.CODE_SMELL,
             SmartSuggestion.Priority.LOW,
             "可能存在未使用的导入语句",
-            0.4
+            0.4,
+            "import"
         ),
         
         // 异常处理
-        new QualityRule(
+        qualityRule(
             "GENERIC_EXCEPTION",
             "通用异常捕获",
             Pattern.compile("catch\\s*\\(\\s*Exception\\s+"),
             SmartSuggestion.SuggestionType.BEST_PRACTICE,
             SmartSuggestion.Priority.MEDIUM,
             "避免捕获通用Exception，应捕获具体异常类型",
-            0.7
+            0.7,
+            "catch"
         ),
         
         // 性能问题
-        new QualityRule(
+        qualityRule(
             "STRING_CONCATENATION",
             "字符串拼接",
             Pattern.compile("\\+\\s*\"[^\"]*\"\\s*\\+"),
             SmartSuggestion.SuggestionType.OPTIMIZE,
             SmartSuggestion.Priority.MEDIUM,
             "频繁的字符串拼接，建议使用StringBuilder",
-            0.6
+            0.6,
+            "+"
         ),
         
         // 安全问题
-        new QualityRule(
+        qualityRule(
             "SQL_INJECTION_RISK",
             "SQL注入风险",
             Pattern.compile("(SELECT|INSERT|UPDATE|DELETE).*\\+.*"),
             SmartSuggestion.SuggestionType.SECURITY,
             SmartSuggestion.Priority.CRITICAL,
             "SQL语句拼接可能存在注入风险，使用参数化查询",
-            0.9
+            0.9,
+            "select", "insert", "update", "delete"
         )
     );
+
+    private static final LineRuleEngine RULE_ENGINE = new LineRuleEngine(LINE_RULES);
+
+    // 行分类（注释密度统计用）
+    static final byte LINE_BLANK = 0;
+    static final byte LINE_COMMENT = 1;
+    static final byte LINE_CODE = 2;
+
+    // 魔法数字及方法识别用到的正则，预编译一次
+    private static final Pattern MAGIC_NUMBER_PATTERN = Pattern.compile("\\b(?!0|1|2|10|100|1000)\\d{2,}\\b");
+    private static final Pattern ENUM_VALUE_PATTERN = Pattern.compile("[A-Z_]+\\s*\\(.*\\d+.*\\)");
+    private static final Pattern VERSION_PATTERN = Pattern.compile("version.*\\d+|v\\d+");
+    private static final Pattern METHOD_DEFINITION_PATTERN =
+        Pattern.compile(".*\\b(public|private|protected|static).*\\(.*\\).*\\{?");
+    private static final Pattern METHOD_NAME_PATTERN = Pattern.compile("\\b([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(");
     
     /**
      * 复杂度分析规则
@@ -151,88 +170,66 @@ public class CodeQualityAnalyzer {
     /**
      * 分析代码质量
      */
-    public List<SmartSuggestion> analyzeQuality(String filePath, String content) {
+    public List<SmartSuggestion> analyzeQuality(String filePath, CharSequence content) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
-        
-        String[] lines = content.split("\n");
+        LineIndex lines = new LineIndex(content);
         
         // 逐行分析
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            suggestions.addAll(analyzeLineQuality(filePath, line, i));
-        }
+        RULE_ENGINE.scan(filePath, lines, 0, lines.getLineCount(), suggestions);
         
-        // 整体分析
-        suggestions.addAll(analyzeOverallQuality(filePath, content, lines));
-        
-        // 方法级分析
-        suggestions.addAll(analyzeMethodComplexity(filePath, content, lines));
+        // 整体分析与方法级分析
+        suggestions.addAll(analyzeStructure(filePath, lines));
         
         return suggestions;
     }
-    
+
     /**
-     * 分析单行代码质量
+     * 整体分析与方法级分析（逐行规则由调用方通过规则引擎执行）
      */
-    private List<SmartSuggestion> analyzeLineQuality(String filePath, String line, int lineNumber) {
+    List<SmartSuggestion> analyzeStructure(String filePath, LineIndex lines) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
-
-        // 跳过CodePins特殊注释指令
-        if (isCodePinsComment(line)) {
-            return suggestions;
-        }
-
-        for (QualityRule rule : QUALITY_RULES) {
-            if (rule.matches(line)) {
-                Matcher matcher = rule.pattern.matcher(line);
-                SmartSuggestion suggestion = new SmartSuggestion(
-                    rule.type,
-                    rule.priority,
-                    rule.name,
-                    rule.description,
-                    filePath,
-                    lineNumber,
-                    lineNumber
-                );
-                suggestion.setConfidence(rule.confidence);
-                suggestion.setReason("代码质量检测: " + rule.name);
-                suggestion.setCodeSnippet(line.trim());
-                suggestions.add(suggestion);
-            }
-        }
-        
+        suggestions.addAll(analyzeOverallQuality(filePath, lines));
+        suggestions.addAll(analyzeMethodComplexity(filePath, lines));
         return suggestions;
     }
 
     /**
-     * 检查是否为CodePins特殊注释指令
+     * 创建基于正则表达式的质量规则
      */
-    private boolean isCodePinsComment(String line) {
-        String trimmed = line.trim();
-
-        // 检查CodePins的特殊注释格式
-        // 格式: //@cp... 或 //@cpb... 或 //@cpr...
-        if (trimmed.matches("^//\\s*@cp[br]?\\d+.*")) {
-            return true;
-        }
-
-        // 检查包含CodePins标签的注释
-        if (trimmed.startsWith("//") && (
-            trimmed.contains("#") ||  // 包含标签
-            trimmed.contains("@cp") || // CodePins指令
-            trimmed.matches(".*\\d+-\\d+.*") // 包含范围格式
-        )) {
-            return true;
-        }
+    private static LineRule qualityRule(String id, String name, Pattern pattern,
+                                        SmartSuggestion.SuggestionType type, SmartSuggestion.Priority priority,
+                                        String description, double confidence, String... keywords) {
+        return qualityRule(id, name, LineRule.regex(pattern), type, priority, description, confidence, keywords);
+    }
 
-        return false;
+    /**
+     * 创建质量规则，命中时生成统一格式的建议
+     */
+    private static LineRule qualityRule(String id, String name, LineRule.LineMatcher matcher,
+                                        SmartSuggestion.SuggestionType type, SmartSuggestion.Priority priority,
+                                        String description, double confidence, String... keywords) {
+        return new LineRule(id, matcher, (filePath, lineNumber, line, match) -> {
+            SmartSuggestion suggestion = new SmartSuggestion(
+                type,
+                priority,
+                name,
+                description,
+                filePath,
+                lineNumber,
+                lineNumber
+            );
+            suggestion.setConfidence(confidence);
+            suggestion.setReason("代码质量检测: " + name);
+            suggestion.setCodeSnippet(line.toString().trim());
+            return suggestion;
+        }, keywords).skipPinComments(); // 跳过CodePins特殊注释指令
     }
 
     /**
      * 智能检测是否为真正的魔法数字
      */
-    private static boolean isActualMagicNumber(String line, Pattern pattern) {
-        Matcher matcher = pattern.matcher(line);
+    private static boolean isActualMagicNumber(String line) {
+        Matcher matcher = MAGIC_NUMBER_PATTERN.matcher(line);
         if (!matcher.find()) {
             return false;
         }
@@ -250,7 +247,7 @@ public class CodeQualityAnalyzer {
         }
 
         // 排除枚举值
-        if (trimmed.matches(".*[A-Z_]+\\s*\\(.*\\d+.*\\).*")) {
+        if (ENUM_VALUE_PATTERN.matcher(trimmed).find()) {
             return false;
         }
 
@@ -276,7 +273,7 @@ public class CodeQualityAnalyzer {
         }
 
         // 排除版本号
-        if (trimmed.matches(".*version.*\\d+.*") || trimmed.matches(".*v\\d+.*")) {
+        if (VERSION_PATTERN.matcher(trimmed).find()) {
             return false;
         }
 
@@ -317,17 +314,34 @@ public class CodeQualityAnalyzer {
     /**
      * 分析整体代码质量
      */
-    private List<SmartSuggestion> analyzeOverallQuality(String filePath, String content, String[] lines) {
+    private List<SmartSuggestion> analyzeOverallQuality(String filePath, LineIndex lines) {
+        int commentLines = 0;
+        int codeLines = 0;
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            byte kind = classifyLine(lines, i);
+            if (kind == LINE_COMMENT) {
+                commentLines++;
+            } else if (kind == LINE_CODE) {
+                codeLines++;
+            }
+        }
+        return analyzeOverallQuality(filePath, effectiveLineCount(lines), commentLines, codeLines);
+    }
+
+    /**
+     * 根据行数和注释统计分析整体代码质量
+     */
+    List<SmartSuggestion> analyzeOverallQuality(String filePath, int lineCount, int commentLines, int codeLines) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
         
         // 检查文件长度
-        if (lines.length > 500) {
+        if (lineCount > 500) {
             SmartSuggestion suggestion = new SmartSuggestion(
                 SmartSuggestion.SuggestionType.REFACTOR,
                 SmartSuggestion.Priority.MEDIUM,
                 "文件过大",
-                "文件包含" + lines.length + "行代码，建议拆分为多个文件",
-                filePath, 0, lines.length - 1
+                "文件包含" + lineCount + "行代码，建议拆分为多个文件",
+                filePath, 0, lineCount - 1
             );
             suggestion.setConfidence(0.7);
             suggestion.setReason("文件行数超过建议阈值");
@@ -335,25 +349,13 @@ public class CodeQualityAnalyzer {
         }
         
         // 检查注释密度
-        int commentLines = 0;
-        int codeLines = 0;
-        
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (trimmed.startsWith("//") || trimmed.startsWith("/*") || trimmed.startsWith("*")) {
-                commentLines++;
-            } else if (!trimmed.isEmpty()) {
-                codeLines++;
-            }
-        }
-        
         if (codeLines > 50 && commentLines < codeLines * 0.1) {
             SmartSuggestion suggestion = new SmartSuggestion(
                 SmartSuggestion.SuggestionType.DOCUMENTATION,
                 SmartSuggestion.Priority.LOW,
                 "注释不足",
                 "代码注释密度较低，建议增加必要的注释",
-                filePath, 0, lines.length - 1
+                filePath, 0, lineCount - 1
             );
             suggestion.setConfidence(0.5);
             suggestion.setReason("注释密度低于10%");
@@ -362,63 +364,111 @@ public class CodeQualityAnalyzer {
         
         return suggestions;
     }
+
+    /**
+     * 文件行数（末尾的空行不计入）
+     */
+    static int effectiveLineCount(LineIndex lines) {
+        int lineCount = lines.getLineCount();
+        while (lineCount > 1 && lines.getLineStart(lineCount - 1) == lines.getLineEnd(lineCount - 1)) {
+            lineCount--;
+        }
+        return lineCount;
+    }
+
+    /**
+     * 行分类：空行、注释行或代码行（直接看第一个非空白字符，不做 trim）
+     */
+    static byte classifyLine(LineIndex lines, int line) {
+        CharSequence text = lines.getText();
+        int start = lines.getLineStart(line);
+        int end = lines.getLineEnd(line);
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        if (start == end) {
+            return LINE_BLANK;
+        }
+        char first = text.charAt(start);
+        char second = start + 1 < end ? text.charAt(start + 1) : 0;
+        return first == '*' || (first == '/' && (second == '/' || second == '*')) ? LINE_COMMENT : LINE_CODE;
+    }
     
     /**
      * 分析方法复杂度
      */
-    private List<SmartSuggestion> analyzeMethodComplexity(String filePath, String content, String[] lines) {
+    private List<SmartSuggestion> analyzeMethodComplexity(String filePath, LineIndex lines) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
         
         // 简单的方法检测（基于缩进和关键字）
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i].trim();
-            
-            // 检测方法定义
-            if (isMethodDefinition(line)) {
-                MethodInfo method = extractMethodInfo(lines, i);
-                if (method != null) {
-                    suggestions.addAll(analyzeMethodComplexity(filePath, method));
-                }
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            MethodInfo method = findMethod(lines, i);
+            if (method != null) {
+                suggestions.addAll(analyzeMethodComplexity(filePath, method));
             }
         }
         
         return suggestions;
     }
+
+    /**
+     * 如果指定行是方法定义，提取方法信息
+     *
+     * @return 方法信息（大括号未闭合时 closed 为 false），不是方法定义时返回 null
+     */
+    MethodInfo findMethod(LineIndex lines, int line) {
+        return isMethodDefinition(lines.getLine(line)) ? extractMethodInfo(lines, line) : null;
+    }
     
     /**
      * 检查是否为方法定义
      */
-    private boolean isMethodDefinition(String line) {
-        return line.matches(".*\\b(public|private|protected|static).*\\(.*\\).*\\{?") &&
-               !line.contains("=") && !line.startsWith("//");
+    private boolean isMethodDefinition(CharSequence line) {
+        // 先做廉价的字符检查，绝大多数行在这里就被排除
+        boolean hasParen = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '=') {
+                return false;
+            }
+            if (c == '(') {
+                hasParen = true;
+            }
+        }
+        if (!hasParen) {
+            return false;
+        }
+        String trimmed = line.toString().trim();
+        return !trimmed.startsWith("//") && METHOD_DEFINITION_PATTERN.matcher(trimmed).matches();
     }
     
     /**
      * 提取方法信息
      */
-    private MethodInfo extractMethodInfo(String[] lines, int startLine) {
+    private MethodInfo extractMethodInfo(LineIndex lines, int startLine) {
         MethodInfo method = new MethodInfo();
         method.startLine = startLine;
-        method.name = extractMethodName(lines[startLine]);
+        method.name = extractMethodName(lines.getLine(startLine));
         
         // 计算方法行数和复杂度
+        CharSequence text = lines.getText();
         int braceCount = 0;
         int lineCount = 0;
         int complexity = 1; // 基础复杂度
         
-        for (int i = startLine; i < lines.length; i++) {
-            String line = lines[i];
+        for (int i = startLine; i < lines.getLineCount(); i++) {
             lineCount++;
             
             // 计算大括号
-            for (char c : line.toCharArray()) {
+            int end = lines.getLineEnd(i);
+            for (int offset = lines.getLineStart(i); offset < end; offset++) {
+                char c = text.charAt(offset);
                 if (c == '{') braceCount++;
                 if (c == '}') braceCount--;
             }
             
             // 计算圈复杂度
-            if (line.contains("if") || line.contains("while") || line.contains("for") ||
-                line.contains("case") || line.contains("catch")) {
+            if (hasBranchKeyword(lines.getLine(i))) {
                 complexity++;
             }
             
@@ -427,27 +477,39 @@ public class CodeQualityAnalyzer {
                 method.endLine = i;
                 method.lineCount = lineCount;
                 method.complexity = complexity;
+                method.closed = true;
                 break;
             }
         }
         
-        return method.endLine > method.startLine ? method : null;
+        return method;
+    }
+
+    /**
+     * 是否包含分支关键字
+     */
+    private static boolean hasBranchKeyword(CharSequence line) {
+        return LineRuleEngine.contains(line, "if") || LineRuleEngine.contains(line, "while")
+            || LineRuleEngine.contains(line, "for") || LineRuleEngine.contains(line, "case")
+            || LineRuleEngine.contains(line, "catch");
     }
     
     /**
      * 提取方法名
      */
-    private String extractMethodName(String line) {
-        Pattern pattern = Pattern.compile("\\b([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(");
-        Matcher matcher = pattern.matcher(line);
+    private String extractMethodName(CharSequence line) {
+        Matcher matcher = METHOD_NAME_PATTERN.matcher(line);
         return matcher.find() ? matcher.group(1) : "unknown";
     }
     
     /**
-     * 分析方法复杂度
+     * 分析方法复杂度（大括号未闭合的方法不产生建议）
      */
-    private List<SmartSuggestion> analyzeMethodComplexity(String filePath, MethodInfo method) {
+    List<SmartSuggestion> analyzeMethodComplexity(String filePath, MethodInfo method) {
         List<SmartSuggestion> suggestions = new ArrayList<>();
+        if (!method.closed) {
+            return suggestions;
+        }
         
         // 检查行数
         if (method.lineCount > COMPLEXITY_RULES.get("LINE_COUNT").threshold) {
@@ -480,37 +542,6 @@ public class CodeQualityAnalyzer {
         return suggestions;
     }
     
-    /**
-     * 质量规则定义
-     */
-    private static class QualityRule {
-        final String id;
-        final String name;
-        final Pattern pattern;
-        final SmartSuggestion.SuggestionType type;
-        final SmartSuggestion.Priority priority;
-        final String description;
-        final double confidence;
-
-        QualityRule(String id, String name, Pattern pattern, SmartSuggestion.SuggestionType type,
-                   SmartSuggestion.Priority priority, String description, double confidence) {
-            this.id = id;
-            this.name = name;
-            this.pattern = pattern;
-            this.type = type;
-            this.priority = priority;
-            this.description = description;
-            this.confidence = confidence;
-        }
-
-        /**
-         * 检查是否匹配，子类可以重写此方法实现自定义逻辑
-         */
-        public boolean matches(String line) {
-            return pattern.matcher(line).find();
-        }
-    }
-    
     /**
      * 复杂度规则定义
      */
@@ -529,11 +560,12 @@ public class CodeQualityAnalyzer {
     /**
      * 方法信息
      */
-    private static class MethodInfo {
+    static class MethodInfo {
         String name;
         int startLine;
         int endLine;
         int lineCount;
         int complexity;
+        boolean closed; // 大括号是否在文件结束前闭合
     }
 }
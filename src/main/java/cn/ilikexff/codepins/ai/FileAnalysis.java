@@ -0,0 +1,108 @@
+package cn.ilikexff.codepins.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个文件的分析结果缓存（SmartSuggestionEngine 内部使用）
+ * 以文档修改戳和内容哈希标识分析时的版本；逐行规则的结果按行保存，方法复杂度的结果按方法保存，
+ * 文件修改后只需重新分析变化的行以及包含这些行的方法，其余结果平移行号后保留。
+ */
+final class FileAnalysis {
+
+    long stamp = -1;
+    int contentHash;
+    LineIndex lines = new LineIndex("");
+
+    // 行号 -> 该行逐行规则产生的建议（没有建议为 null）
+    List<List<SmartSuggestion>> lineSuggestions = new ArrayList<>(Collections.singletonList(null));
+
+    // 行号 -> 行分类（CodeQualityAnalyzer.LINE_*），用于注释密度统计
+    byte[] lineKinds = {CodeQualityAnalyzer.LINE_BLANK};
+
+    // 按起始行排序的方法分析结果
+    List<MethodResult> methods = new ArrayList<>();
+
+    // 整体分析结果（每次重新计算，只依赖行分类统计）
+    List<SmartSuggestion> overall = new ArrayList<>();
+
+    /**
+     * 是否已经分析过（初始状态对应空文本）
+     */
+    boolean isAnalyzed() {
+        return stamp >= 0;
+    }
+
+    /**
+     * 汇总全部建议
+     */
+    List<SmartSuggestion> getSuggestions() {
+        List<SmartSuggestion> suggestions = new ArrayList<>();
+        for (List<SmartSuggestion> line : lineSuggestions) {
+            if (line != null) {
+                suggestions.addAll(line);
+            }
+        }
+        suggestions.addAll(overall);
+        for (MethodResult method : methods) {
+            suggestions.addAll(method.suggestions);
+        }
+        return suggestions;
+    }
+
+    /**
+     * 平移建议的行号
+     * 之前返回给调用方的建议对象可能仍在界面中使用，不修改原对象，返回平移后的副本（delta 为 0 时返回原列表）
+     */
+    static List<SmartSuggestion> shift(List<SmartSuggestion> suggestions, int delta) {
+        if (suggestions == null || delta == 0) {
+            return suggestions;
+        }
+        List<SmartSuggestion> shifted = new ArrayList<>(suggestions.size());
+        for (SmartSuggestion suggestion : suggestions) {
+            SmartSuggestion copy = suggestion.copy();
+            copy.setStartLine(suggestion.getStartLine() + delta);
+            copy.setEndLine(suggestion.getEndLine() + delta);
+            shifted.add(copy);
+        }
+        return shifted;
+    }
+
+    /**
+     * 单个方法的分析结果
+     */
+    static final class MethodResult {
+        final CodeQualityAnalyzer.MethodInfo info;
+        final List<SmartSuggestion> suggestions;
+
+        MethodResult(CodeQualityAnalyzer.MethodInfo info, List<SmartSuggestion> suggestions) {
+            this.info = info;
+            this.suggestions = suggestions;
+        }
+
+        /**
+         * 方法占据的最后一行（大括号未闭合时延伸到文件末尾）
+         */
+        int lastLine(int lineCount) {
+            return info.closed ? info.endLine : lineCount - 1;
+        }
+
+        /**
+         * 平移行号后的结果（新对象，不修改本对象）
+         */
+        MethodResult shift(int delta) {
+            if (delta == 0) {
+                return this;
+            }
+            CodeQualityAnalyzer.MethodInfo moved = new CodeQualityAnalyzer.MethodInfo();
+            moved.name = info.name;
+            moved.startLine = info.startLine + delta;
+            moved.endLine = info.closed ? info.endLine + delta : info.endLine;
+            moved.lineCount = info.lineCount;
+            moved.complexity = info.complexity;
+            moved.closed = info.closed;
+            return new MethodResult(moved, FileAnalysis.shift(suggestions, delta));
+        }
+    }
+}
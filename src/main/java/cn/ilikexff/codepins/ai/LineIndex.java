@@ -0,0 +1,65 @@
+package cn.ilikexff.codepins.ai;
+
+import java.util.Arrays;
+
+/**
+ * 文本行索引
+ * 一次遍历记录每行的起始偏移量，之后按行号取行时只创建 CharSequence 视图，不拆分、不复制整个文本
+ */
+final class LineIndex {
+
+    private final CharSequence text;
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    LineIndex(CharSequence text) {
+        this.text = text;
+        int[] starts = new int[16];
+        int count = 1;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        this.lineStarts = starts;
+        this.lineCount = count;
+    }
+
+    CharSequence getText() {
+        return text;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * 行结束偏移量（不包含换行符）
+     */
+    int getLineEnd(int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : text.length();
+    }
+
+    /**
+     * 偏移量所在的行号
+     */
+    int getLineNumber(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * 获取指定行的文本视图（不包含换行符）
+     */
+    CharSequence getLine(int line) {
+        return text.subSequence(getLineStart(line), getLineEnd(line));
+    }
+}
@@ -0,0 +1,76 @@
+package cn.ilikexff.codepins.ai;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 逐行分析规则（由 LineRuleEngine 执行）
+ * 每条规则声明若干字面量关键字作为预筛选条件：只有当一行中出现任一关键字时才会执行规则本身，
+ * 没有关键字的规则每行都会执行，应保证足够廉价（例如只检查行长度）。
+ */
+final class LineRule {
+
+    /**
+     * 行匹配逻辑
+     */
+    @FunctionalInterface
+    interface LineMatcher {
+        /**
+         * @param line 行文本（不包含换行符）
+         * @return 匹配到的内容，未匹配返回 null
+         */
+        String match(CharSequence line);
+    }
+
+    /**
+     * 根据匹配结果创建建议
+     */
+    @FunctionalInterface
+    interface SuggestionFactory {
+        SmartSuggestion create(String filePath, int lineNumber, CharSequence line, String match);
+    }
+
+    final String id;
+    final String[] keywords; // 小写关键字，按不区分大小写的方式预筛选
+    final LineMatcher matcher;
+    final SuggestionFactory factory;
+    int minLength;           // 行长度下限，短于此长度的行直接跳过
+    boolean skipPinComments; // 是否跳过 CodePins 注释指令所在的行
+
+    LineRule(String id, LineMatcher matcher, SuggestionFactory factory, String... keywords) {
+        this.id = id;
+        this.matcher = matcher;
+        this.factory = factory;
+        this.keywords = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            this.keywords[i] = keywords[i].toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 设置行长度下限
+     */
+    LineRule minLength(int minLength) {
+        this.minLength = minLength;
+        return this;
+    }
+
+    /**
+     * 跳过 CodePins 注释指令所在的行
+     */
+    LineRule skipPinComments() {
+        this.skipPinComments = true;
+        return this;
+    }
+
+    /**
+     * 基于预编译正则表达式的匹配逻辑
+     */
+    static LineMatcher regex(Pattern pattern) {
+        return line -> {
+            Matcher matcher = pattern.matcher(line);
+            return matcher.find() ? matcher.group() : null;
+        };
+    }
+}
@@ -0,0 +1,355 @@
+package cn.ilikexff.codepins.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * 逐行规则引擎
+ * 规则在构造时一次性准备好：正则预编译、全部关键字构建为一个 Aho-Corasick 自动机。
+ * 扫描时对每一行只遍历一次字符，得到命中的关键字后只执行相关规则，
+ * 文本以 CharSequence 视图按行访问，不做 split，也不复制整个文档。
+ *
+ * 引擎实例不可变，可以在多个线程间共享；统计数据按规则累计。
+ */
+final class LineRuleEngine {
+
+    private static final Pattern PIN_COMMENT_PATTERN = Pattern.compile("^//\\s*@cp[br]?\\d+");
+    private static final Pattern LINE_RANGE_PATTERN = Pattern.compile("\\d+-\\d+");
+
+    private final LineRule[] rules;
+    private final int[] alwaysRules;       // 没有关键字、每行都执行的规则
+    private final KeywordAutomaton automaton;
+    private final int[][] keywordRules;    // 关键字 -> 规则下标
+    private final long[] evaluations;      // 以下统计按规则下标累计
+    private final long[] hits;
+    private final long[] nanos;
+
+    LineRuleEngine(List<LineRule> rules) {
+        this.rules = rules.toArray(new LineRule[0]);
+
+        List<String> keywords = new ArrayList<>();
+        Map<String, List<Integer>> rulesByKeyword = new HashMap<>();
+        List<Integer> always = new ArrayList<>();
+        for (int i = 0; i < this.rules.length; i++) {
+            LineRule rule = this.rules[i];
+            if (rule.keywords.length == 0) {
+                always.add(i);
+                continue;
+            }
+            for (String keyword : rule.keywords) {
+                List<Integer> ruleIds = rulesByKeyword.get(keyword);
+                if (ruleIds == null) {
+                    ruleIds = new ArrayList<>();
+                    rulesByKeyword.put(keyword, ruleIds);
+                    keywords.add(keyword);
+                }
+                if (!ruleIds.contains(i)) {
+                    ruleIds.add(i);
+                }
+            }
+        }
+
+        this.alwaysRules = toArray(always);
+        this.automaton = new KeywordAutomaton(keywords);
+        this.keywordRules = new int[keywords.size()][];
+        for (int k = 0; k < keywords.size(); k++) {
+            keywordRules[k] = toArray(rulesByKeyword.get(keywords.get(k)));
+        }
+        this.evaluations = new long[this.rules.length];
+        this.hits = new long[this.rules.length];
+        this.nanos = new long[this.rules.length];
+    }
+
+    /**
+     * 扫描 [fromLine, toLine) 范围内的行
+     *
+     * @param filePath 文件路径（写入建议中）
+     * @param lines    文本行索引
+     * @param fromLine 起始行（包含）
+     * @param toLine   结束行（不包含）
+     * @param out      命中的建议追加到此列表
+     * @return 本次扫描的统计信息
+     */
+    ScanReport scan(String filePath, LineIndex lines, int fromLine, int toLine, List<SmartSuggestion> out) {
+        long scanStart = System.nanoTime();
+        CharSequence text = lines.getText();
+        ScanReport report = new ScanReport(rules.length);
+        int[] candidateMark = new int[rules.length]; // 记录规则在哪一行被选中（行号 + 1），避免每行清空
+        int[] candidates = new int[rules.length];
+
+        int last = Math.min(toLine, lines.getLineCount());
+        for (int line = Math.max(0, fromLine); line < last; line++) {
+            int start = lines.getLineStart(line);
+            int end = lines.getLineEnd(line);
+            int stamp = line + 1;
+            int count = 0;
+
+            // 一次遍历找出本行出现的全部关键字
+            int state = 0;
+            for (int i = start; i < end; i++) {
+                state = automaton.next(state, text.charAt(i));
+                int[] matched = automaton.outputs[state];
+                for (int keyword : matched) {
+                    for (int ruleIndex : keywordRules[keyword]) {
+                        if (candidateMark[ruleIndex] != stamp) {
+                            candidateMark[ruleIndex] = stamp;
+                            candidates[count++] = ruleIndex;
+                        }
+                    }
+                }
+            }
+            for (int ruleIndex : alwaysRules) {
+                candidates[count++] = ruleIndex;
+            }
+            if (count == 0) {
+                continue;
+            }
+            // 保持规则声明顺序，输出顺序与规则列表一致
+            Arrays.sort(candidates, 0, count);
+
+            CharSequence lineText = text.subSequence(start, end);
+            int pinComment = -1; // 惰性计算：-1 未知，0 否，1 是
+            for (int c = 0; c < count; c++) {
+                LineRule rule = rules[candidates[c]];
+                if (lineText.length() < rule.minLength) {
+                    continue;
+                }
+                if (rule.skipPinComments) {
+                    if (pinComment < 0) {
+                        pinComment = isCodePinsComment(lineText) ? 1 : 0;
+                    }
+                    if (pinComment == 1) {
+                        continue;
+                    }
+                }
+                long ruleStart = System.nanoTime();
+                String match = rule.matcher.match(lineText);
+                if (match != null) {
+                    out.add(rule.factory.create(filePath, line, lineText, match));
+                }
+                report.record(candidates[c], match != null, System.nanoTime() - ruleStart);
+            }
+        }
+
+        report.lines = Math.max(0, last - Math.max(0, fromLine));
+        report.elapsedNanos = System.nanoTime() - scanStart;
+        accumulate(report);
+        return report;
+    }
+
+    /**
+     * 累计统计：规则ID -> {执行次数, 命中次数, 耗时纳秒}
+     */
+    synchronized Map<String, long[]> getStatistics() {
+        Map<String, long[]> stats = new HashMap<>();
+        for (int i = 0; i < rules.length; i++) {
+            stats.put(rules[i].id, new long[]{evaluations[i], hits[i], nanos[i]});
+        }
+        return stats;
+    }
+
+    private synchronized void accumulate(ScanReport report) {
+        for (int i = 0; i < rules.length; i++) {
+            evaluations[i] += report.evaluations[i];
+            hits[i] += report.hits[i];
+            nanos[i] += report.nanos[i];
+        }
+    }
+
+    /**
+     * 检查是否为CodePins特殊注释指令
+     * 格式: //@cp... 或 //@cpb... 或 //@cpr...，以及包含标签、指令或范围格式的注释
+     */
+    static boolean isCodePinsComment(CharSequence line) {
+        int start = firstNonWhitespace(line);
+        if (line.length() - start < 2 || line.charAt(start) != '/' || line.charAt(start + 1) != '/') {
+            return false;
+        }
+        String trimmed = line.toString().trim();
+        return PIN_COMMENT_PATTERN.matcher(trimmed).find()
+                || trimmed.contains("#")
+                || trimmed.contains("@cp")
+                || LINE_RANGE_PATTERN.matcher(trimmed).find();
+    }
+
+    /**
+     * 在 CharSequence 中查找子串，不复制文本
+     */
+    static boolean contains(CharSequence text, String literal) {
+        int last = text.length() - literal.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < literal.length(); j++) {
+                if (text.charAt(i + j) != literal.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 第一个非空白字符的下标（空白的判断与 String.trim 一致），整行空白时返回行长度
+     */
+    static int firstNonWhitespace(CharSequence text) {
+        int i = 0;
+        while (i < text.length() && text.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 单次扫描的统计信息
+     */
+    final class ScanReport {
+        final long[] evaluations;
+        final long[] hits;
+        final long[] nanos;
+        int lines;
+        long elapsedNanos;
+
+        ScanReport(int ruleCount) {
+            evaluations = new long[ruleCount];
+            hits = new long[ruleCount];
+            nanos = new long[ruleCount];
+        }
+
+        void record(int ruleIndex, boolean hit, long elapsed) {
+            evaluations[ruleIndex]++;
+            if (hit) {
+                hits[ruleIndex]++;
+            }
+            nanos[ruleIndex] += elapsed;
+        }
+
+        int getHitCount() {
+            long total = 0;
+            for (long hit : hits) {
+                total += hit;
+            }
+            return (int) total;
+        }
+
+        /**
+         * 生成日志摘要：只列出实际执行过的规则
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("扫描 ").append(lines).append(" 行，耗时 ")
+                    .append(elapsedNanos / 1_000_000.0).append("ms，命中 ").append(getHitCount());
+            for (int i = 0; i < rules.length; i++) {
+                if (evaluations[i] == 0) {
+                    continue;
+                }
+                sb.append("\n  ").append(rules[i].id)
+                        .append(": 执行 ").append(evaluations[i])
+                        .append(", 命中 ").append(hits[i])
+                        .append(", ").append(nanos[i] / 1000).append("µs");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 不区分大小写的 Aho-Corasick 自动机
+     * 构建时把失败链接展开成完整的转移表，扫描时每个字符只查一次表；
+     * 关键字只包含 ASCII 字符，非 ASCII 字符直接回到初始状态。
+     */
+    private static final class KeywordAutomaton {
+        private static final int ALPHABET = 128;
+
+        private final int[][] transitions;
+        final int[][] outputs; // 状态 -> 在此结束的关键字下标（已合并失败链接上的输出）
+
+        KeywordAutomaton(List<String> keywords) {
+            List<int[]> gotoTable = new ArrayList<>();
+            List<List<Integer>> out = new ArrayList<>();
+            gotoTable.add(newRow());
+            out.add(new ArrayList<>());
+
+            for (int k = 0; k < keywords.size(); k++) {
+                String keyword = keywords.get(k);
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    if (c >= ALPHABET) {
+                        throw new IllegalArgumentException("关键字只能包含 ASCII 字符: " + keyword);
+                    }
+                    if (gotoTable.get(state)[c] < 0) {
+                        gotoTable.get(state)[c] = gotoTable.size();
+                        gotoTable.add(newRow());
+                        out.add(new ArrayList<>());
+                    }
+                    state = gotoTable.get(state)[c];
+                }
+                out.get(state).add(k);
+            }
+
+            // 广度优先计算失败链接，并补全转移表
+            int[] fail = new int[gotoTable.size()];
+            Queue<Integer> queue = new ArrayDeque<>();
+            int[] root = gotoTable.get(0);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    fail[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                out.get(state).addAll(out.get(fail[state]));
+                int[] row = gotoTable.get(state);
+                for (int c = 0; c < ALPHABET; c++) {
+                    int next = row[c];
+                    if (next < 0) {
+                        row[c] = gotoTable.get(fail[state])[c];
+                    } else {
+                        fail[next] = gotoTable.get(fail[state])[c];
+                        queue.add(next);
+                    }
+                }
+            }
+
+            this.transitions = gotoTable.toArray(new int[0][]);
+            this.outputs = new int[out.size()][];
+            for (int s = 0; s < out.size(); s++) {
+                outputs[s] = toArray(out.get(s));
+            }
+        }
+
+        int next(int state, char c) {
+            if (c >= ALPHABET) {
+                return 0;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            return transitions[state][c];
+        }
+
+        private static int[] newRow() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            return row;
+        }
+    }
+}
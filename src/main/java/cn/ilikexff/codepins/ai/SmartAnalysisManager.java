@@ -13,6 +13,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -29,6 +30,7 @@ public final class SmartAnalysisManager implements FileEditorManagerListener {
     private final SmartSuggestionService suggestionService;
     private final ScheduledExecutorService executor;
     private final ConcurrentHashMap<String, Long> lastAnalysisTime;
+    private final Set<String> pendingAnalysis; // 已计划但尚未执行的分析，避免重复排队
     
     // 分析间隔（毫秒）
     private static final long ANALYSIS_INTERVAL = 5000; // 5秒
@@ -38,6 +40,7 @@ public final class SmartAnalysisManager implements FileEditorManagerListener {
         this.suggestionService = SmartSuggestionService.getInstance(project);
         this.executor = Executors.newSingleThreadScheduledExecutor();
         this.lastAnalysisTime = new ConcurrentHashMap<>();
+        this.pendingAnalysis = ConcurrentHashMap.newKeySet();
         
         // 注册监听器
         registerListeners();
@@ -114,8 +117,14 @@ public final class SmartAnalysisManager implements FileEditorManagerListener {
         
         // 如果距离上次分析时间不足间隔，则延迟分析
         if (lastTime != null && (currentTime - lastTime) < ANALYSIS_INTERVAL) {
-            long delay = ANALYSIS_INTERVAL - (currentTime - lastTime);
-            executor.schedule(() -> performAnalysis(file), delay, TimeUnit.MILLISECONDS);
+            // 同一文件只保留一个延迟任务，反复切换标签页不会堆积分析
+            if (pendingAnalysis.add(filePath)) {
+                long delay = ANALYSIS_INTERVAL - (currentTime - lastTime);
+                executor.schedule(() -> {
+                    pendingAnalysis.remove(filePath);
+                    performAnalysis(file);
+                }, delay, TimeUnit.MILLISECONDS);
+            }
         } else {
             // 立即分析
             performAnalysis(file);
@@ -179,6 +188,7 @@ public final class SmartAnalysisManager implements FileEditorManagerListener {
     public void disableAutoAnalysis() {
         // 清除所有计划的分析任务
         lastAnalysisTime.clear();
+        pendingAnalysis.clear();
     }
     
     /**
@@ -2,6 +2,7 @@ package cn.ilikexff.codepins.ai;
 
 import cn.ilikexff.codepins.template.PinTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -102,6 +103,32 @@ public class SmartSuggestion {
         this.id = generateId();
     }
     
+    /**
+     * 复制建议（缓存中的建议已交给调用方，平移行号等修改在副本上进行）
+     */
+    public SmartSuggestion copy() {
+        SmartSuggestion copy = new SmartSuggestion();
+        copy.id = id;
+        copy.type = type;
+        copy.priority = priority;
+        copy.title = title;
+        copy.description = description;
+        copy.reason = reason;
+        copy.filePath = filePath;
+        copy.startLine = startLine;
+        copy.endLine = endLine;
+        copy.startOffset = startOffset;
+        copy.endOffset = endOffset;
+        copy.codeSnippet = codeSnippet;
+        copy.suggestedActions = suggestedActions != null ? new ArrayList<>(suggestedActions) : null;
+        copy.confidence = confidence;
+        copy.createdTime = createdTime;
+        copy.isApplied = isApplied;
+        copy.appliedPinId = appliedPinId;
+        copy.adjustedScore = adjustedScore;
+        return copy;
+    }
+    
     /**
      * 生成建议ID
      */
@@ -2,12 +2,12 @@ package cn.ilikexff.codepins.ai;
 
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiTreeUtil;
 
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -16,25 +16,94 @@ import java.util.regex.Pattern;
  */
 public class SmartSuggestionEngine {
     
-    // 常见的问题模式
-    private static final Map<Pattern, SmartSuggestion.SuggestionType> PATTERN_SUGGESTIONS = new HashMap<>();
+    private static final Pattern HARDCODED_STRING_PATTERN = Pattern.compile("\"[^\"]{10,}\"");
     
-    static {
+    // 常见的问题模式（关键字用于规则引擎预筛选）
+    private static final List<LineRule> TEXT_RULES = Arrays.asList(
         // TODO相关模式
-        PATTERN_SUGGESTIONS.put(Pattern.compile("(?i)\\b(todo|fixme|hack|xxx)\\b"), SmartSuggestion.SuggestionType.TODO);
+        patternRule("TODO", Pattern.compile("(?i)\\b(todo|fixme|hack|xxx)\\b"),
+            SmartSuggestion.SuggestionType.TODO, "todo", "fixme", "hack", "xxx"),
         
         // 性能问题模式
-        PATTERN_SUGGESTIONS.put(Pattern.compile("(?i)\\b(sleep|thread\\.sleep|wait)\\s*\\("), SmartSuggestion.SuggestionType.OPTIMIZE);
+        patternRule("SLEEP_WAIT", Pattern.compile("(?i)\\b(sleep|thread\\.sleep|wait)\\s*\\("),
+            SmartSuggestion.SuggestionType.OPTIMIZE, "sleep", "wait"),
         
         // 安全问题模式
-        PATTERN_SUGGESTIONS.put(Pattern.compile("(?i)\\b(password|secret|key)\\s*=\\s*[\"'][^\"']*[\"']"), SmartSuggestion.SuggestionType.SECURITY);
+        patternRule("HARDCODED_SECRET", Pattern.compile("(?i)\\b(password|secret|key)\\s*=\\s*[\"'][^\"']*[\"']"),
+            SmartSuggestion.SuggestionType.SECURITY, "password", "secret", "key"),
         
         // 过时API模式
-        PATTERN_SUGGESTIONS.put(Pattern.compile("(?i)\\b(deprecated|obsolete)\\b"), SmartSuggestion.SuggestionType.DEPRECATED);
-    }
+        patternRule("DEPRECATED", Pattern.compile("(?i)\\b(deprecated|obsolete)\\b"),
+            SmartSuggestion.SuggestionType.DEPRECATED, "deprecated", "obsolete"),
+        
+        // 检查长行（可能需要重构），没有关键字，只靠长度下限筛选
+        new LineRule("LONG_LINE", line -> "", (filePath, i, line, match) -> {
+            SmartSuggestion suggestion = new SmartSuggestion(
+                SmartSuggestion.SuggestionType.REFACTOR,
+                SmartSuggestion.Priority.LOW,
+                "长行代码",
+                "这行代码过长，建议拆分以提高可读性",
+                filePath, i, i
+            );
+            suggestion.setConfidence(0.6);
+            suggestion.setReason("代码行长度超过120字符");
+            return suggestion;
+        }).minLength(121),
+        
+        // 检查空的catch块
+        new LineRule("EMPTY_CATCH", line -> {
+            String text = line.toString();
+            return text.trim().equals("} catch") || text.contains("catch") && text.contains("{}") ? "" : null;
+        }, (filePath, i, line, match) -> {
+            SmartSuggestion suggestion = new SmartSuggestion(
+                SmartSuggestion.SuggestionType.CODE_SMELL,
+                SmartSuggestion.Priority.MEDIUM,
+                "空的异常处理",
+                "空的catch块可能隐藏重要错误",
+                filePath, i, i
+            );
+            suggestion.setConfidence(0.8);
+            suggestion.setReason("发现空的异常处理块");
+            return suggestion;
+        }, "catch"),
+        
+        // 检查硬编码字符串
+        new LineRule("HARDCODED_STRING", line -> {
+            int start = LineRuleEngine.firstNonWhitespace(line);
+            if (start < line.length() && (line.charAt(start) == '*'
+                    || line.charAt(start) == '/' && start + 1 < line.length() && line.charAt(start + 1) == '/')) {
+                return null;
+            }
+            return HARDCODED_STRING_PATTERN.matcher(line).find() ? "" : null;
+        }, (filePath, i, line, match) -> {
+            SmartSuggestion suggestion = new SmartSuggestion(
+                SmartSuggestion.SuggestionType.BEST_PRACTICE,
+                SmartSuggestion.Priority.LOW,
+                "硬编码字符串",
+                "考虑将长字符串提取为常量",
+                filePath, i, i
+            );
+            suggestion.setConfidence(0.4);
+            suggestion.setReason("发现较长的硬编码字符串");
+            return suggestion;
+        }, "\"").minLength(12)
+    );
+    
+    // 文本规则与代码质量规则共用一个引擎，每行只扫描一次
+    private static final LineRuleEngine RULE_ENGINE = new LineRuleEngine(concat(TEXT_RULES, CodeQualityAnalyzer.LINE_RULES));
+    
+    // 最多缓存的文件数，超出后淘汰最久未分析的文件
+    private static final int MAX_CACHED_FILES = 50;
     
     private final Project project;
     private final CodeQualityAnalyzer qualityAnalyzer;
+    private final Map<String, FileAnalysis> analyses = Collections.synchronizedMap(
+        new LinkedHashMap<String, FileAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileAnalysis> eldest) {
+                return size() > MAX_CACHED_FILES;
+            }
+        });
     
     public SmartSuggestionEngine(Project project) {
         this.project = project;
@@ -43,115 +112,190 @@ public class SmartSuggestionEngine {
     
     /**
      * 分析文件并生成建议
+     * 结果按文件缓存：文档未变化时直接返回缓存，文档修改后只重新分析变化的行和受影响的方法
      */
     public List<SmartSuggestion> analyzeFile(VirtualFile file, Document document) {
-        List<SmartSuggestion> suggestions = new ArrayList<>();
-
         if (file == null || document == null) {
             System.out.println("[SmartSuggestionEngine] 文件或文档为空");
-            return suggestions;
+            return new ArrayList<>();
         }
 
         String filePath = file.getPath();
-        String content = document.getText();
-        String[] lines = content.split("\n");
+        CharSequence text = document.getImmutableCharSequence();
+        long stamp = document.getModificationStamp();
+        FileAnalysis analysis = analyses.computeIfAbsent(filePath, k -> new FileAnalysis());
 
-        System.out.println("[SmartSuggestionEngine] 开始分析文件: " + filePath + ", 行数: " + lines.length);
+        synchronized (analysis) {
+            if (!isUnchanged(analysis, text, stamp)) {
+                update(analysis, filePath, text);
+                analysis.stamp = stamp;
+            }
 
-        // 基于文本模式的分析
-        List<SmartSuggestion> textSuggestions = analyzeTextPatterns(filePath, lines);
-        suggestions.addAll(textSuggestions);
-        System.out.println("[SmartSuggestionEngine] 文本模式分析完成，建议数: " + textSuggestions.size());
+            // 基于PSI的代码结构分析 (暂时禁用，避免编译问题)
+            // PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+            // if (psiFile != null) {
+            //     suggestions.addAll(analyzePsiStructure(psiFile));
+            // }
 
-        // 代码质量分析
-        List<SmartSuggestion> qualitySuggestions = qualityAnalyzer.analyzeQuality(filePath, content);
-        suggestions.addAll(qualitySuggestions);
-        System.out.println("[SmartSuggestionEngine] 代码质量分析完成，建议数: " + qualitySuggestions.size());
+            // 移除测试建议，让系统更加真实
+            // 如果没有找到建议，说明代码质量良好，不需要强制添加建议
 
-        // 基于PSI的代码结构分析 (暂时禁用，避免编译问题)
-        // PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
-        // if (psiFile != null) {
-        //     suggestions.addAll(analyzePsiStructure(psiFile));
-        // }
+            // 按优先级和置信度排序
+            List<SmartSuggestion> suggestions = analysis.getSuggestions();
+            suggestions.sort((s1, s2) -> Integer.compare(s2.getSeverityScore(), s1.getSeverityScore()));
+            return suggestions;
+        }
+    }
 
-        // 移除测试建议，让系统更加真实
-        // 如果没有找到建议，说明代码质量良好，不需要强制添加建议
+    /**
+     * 文档自上次分析后是否没有变化
+     */
+    public boolean isUpToDate(VirtualFile file, Document document) {
+        if (file == null || document == null) {
+            return false;
+        }
+        FileAnalysis analysis = analyses.get(file.getPath());
+        if (analysis == null) {
+            return false;
+        }
+        synchronized (analysis) {
+            return isUnchanged(analysis, document.getImmutableCharSequence(), document.getModificationStamp());
+        }
+    }
 
-        // 按优先级和置信度排序
-        suggestions.sort((s1, s2) -> Integer.compare(s2.getSeverityScore(), s1.getSeverityScore()));
+    /**
+     * 丢弃文件的缓存结果
+     */
+    public void forget(String filePath) {
+        analyses.remove(filePath);
+    }
 
-        System.out.println("[SmartSuggestionEngine] 分析完成，总建议数: " + suggestions.size());
-        return suggestions;
+    /**
+     * 修改戳相同，或内容哈希与文本都相同（例如撤销回原内容、重新加载）视为未变化
+     */
+    private static boolean isUnchanged(FileAnalysis analysis, CharSequence text, long stamp) {
+        if (!analysis.isAnalyzed()) {
+            return false;
+        }
+        if (analysis.stamp == stamp) {
+            return true;
+        }
+        if (text.length() == analysis.lines.getText().length()
+                && StringUtil.stringHashCode(text) == analysis.contentHash
+                && StringUtil.equals(text, analysis.lines.getText())) {
+            analysis.stamp = stamp;
+            return true;
+        }
+        return false;
     }
-    
+
     /**
-     * 基于文本模式分析
+     * 按上次分析的文本与当前文本的差异更新分析结果
+     * 以公共前缀和公共后缀确定变化的行范围 [first, oldLast] -> [first, newLast]，
+     * 范围外的行内容不变，逐行规则结果直接保留（之后的行平移行号）；
+     * 方法复杂度只对包含变化的方法重新计算，变化范围内的行重新识别方法定义。
      */
-    private List<SmartSuggestion> analyzeTextPatterns(String filePath, String[] lines) {
-        List<SmartSuggestion> suggestions = new ArrayList<>();
-        
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            
-            // 检查各种模式
-            for (Map.Entry<Pattern, SmartSuggestion.SuggestionType> entry : PATTERN_SUGGESTIONS.entrySet()) {
-                Matcher matcher = entry.getKey().matcher(line);
-                if (matcher.find()) {
-                    SmartSuggestion suggestion = createSuggestionFromPattern(
-                        entry.getValue(), filePath, i, line, matcher.group()
-                    );
-                    suggestions.add(suggestion);
-                }
+    private void update(FileAnalysis analysis, String filePath, CharSequence text) {
+        LineIndex oldLines = analysis.lines;
+        CharSequence oldText = oldLines.getText();
+        LineIndex lines = new LineIndex(text);
+
+        int prefix = 0;
+        int maxPrefix = Math.min(oldText.length(), text.length());
+        while (prefix < maxPrefix && oldText.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix
+                && oldText.charAt(oldText.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        int first = oldLines.getLineNumber(prefix);
+        int oldLast = oldLines.getLineNumber(oldText.length() - suffix);
+        int newLast = lines.getLineNumber(text.length() - suffix);
+        int delta = newLast - oldLast;
+        int oldLineCount = oldLines.getLineCount();
+        int lineCount = lines.getLineCount();
+
+        // 逐行规则：只扫描变化的行
+        List<SmartSuggestion> found = new ArrayList<>();
+        RULE_ENGINE.scan(filePath, lines, first, newLast + 1, found);
+
+        List<List<SmartSuggestion>> lineSuggestions = new ArrayList<>(lineCount);
+        lineSuggestions.addAll(analysis.lineSuggestions.subList(0, first));
+        for (int line = first; line <= newLast; line++) {
+            lineSuggestions.add(null);
+        }
+        for (SmartSuggestion suggestion : found) {
+            int line = suggestion.getStartLine();
+            if (lineSuggestions.get(line) == null) {
+                lineSuggestions.set(line, new ArrayList<>());
             }
-            
-            // 检查长行（可能需要重构）
-            if (line.length() > 120) {
-                SmartSuggestion suggestion = new SmartSuggestion(
-                    SmartSuggestion.SuggestionType.REFACTOR,
-                    SmartSuggestion.Priority.LOW,
-                    "长行代码",
-                    "这行代码过长，建议拆分以提高可读性",
-                    filePath, i, i
-                );
-                suggestion.setConfidence(0.6);
-                suggestion.setReason("代码行长度超过120字符");
-                suggestions.add(suggestion);
+            lineSuggestions.get(line).add(suggestion);
+        }
+        for (List<SmartSuggestion> kept : analysis.lineSuggestions.subList(oldLast + 1, oldLineCount)) {
+            lineSuggestions.add(FileAnalysis.shift(kept, delta));
+        }
+
+        // 行分类：同样只重新计算变化的行
+        byte[] lineKinds = new byte[lineCount];
+        System.arraycopy(analysis.lineKinds, 0, lineKinds, 0, first);
+        for (int line = first; line <= newLast; line++) {
+            lineKinds[line] = CodeQualityAnalyzer.classifyLine(lines, line);
+        }
+        System.arraycopy(analysis.lineKinds, oldLast + 1, lineKinds, newLast + 1, oldLineCount - oldLast - 1);
+
+        // 方法复杂度：变化之前结束的方法保留，之后开始的方法平移，包含变化的方法重新计算
+        List<FileAnalysis.MethodResult> methods = new ArrayList<>();
+        for (FileAnalysis.MethodResult method : analysis.methods) {
+            if (method.lastLine(oldLineCount) < first) {
+                methods.add(method);
+            } else if (method.info.startLine > oldLast) {
+                methods.add(method.shift(delta));
+            } else if (method.info.startLine < first) {
+                methods.add(analyzeMethod(filePath, lines, method.info.startLine));
             }
-            
-            // 检查空的catch块
-            if (line.trim().equals("} catch") || line.contains("catch") && line.contains("{}")) {
-                SmartSuggestion suggestion = new SmartSuggestion(
-                    SmartSuggestion.SuggestionType.CODE_SMELL,
-                    SmartSuggestion.Priority.MEDIUM,
-                    "空的异常处理",
-                    "空的catch块可能隐藏重要错误",
-                    filePath, i, i
-                );
-                suggestion.setConfidence(0.8);
-                suggestion.setReason("发现空的异常处理块");
-                suggestions.add(suggestion);
+            // 定义行本身在变化范围内的方法，由下面重新识别
+        }
+        for (int line = first; line <= newLast; line++) {
+            FileAnalysis.MethodResult method = analyzeMethod(filePath, lines, line);
+            if (method != null) {
+                methods.add(method);
             }
-            
-            // 检查硬编码字符串
-            if (line.contains("\"") && !line.trim().startsWith("//") && !line.trim().startsWith("*")) {
-                Pattern hardcodedPattern = Pattern.compile("\"[^\"]{10,}\"");
-                Matcher matcher = hardcodedPattern.matcher(line);
-                if (matcher.find()) {
-                    SmartSuggestion suggestion = new SmartSuggestion(
-                        SmartSuggestion.SuggestionType.BEST_PRACTICE,
-                        SmartSuggestion.Priority.LOW,
-                        "硬编码字符串",
-                        "考虑将长字符串提取为常量",
-                        filePath, i, i
-                    );
-                    suggestion.setConfidence(0.4);
-                    suggestion.setReason("发现较长的硬编码字符串");
-                    suggestions.add(suggestion);
-                }
+        }
+        methods.sort(Comparator.comparingInt(method -> method.info.startLine));
+
+        // 整体分析：只依赖行数和行分类统计
+        int commentLines = 0;
+        int codeLines = 0;
+        for (byte kind : lineKinds) {
+            if (kind == CodeQualityAnalyzer.LINE_COMMENT) {
+                commentLines++;
+            } else if (kind == CodeQualityAnalyzer.LINE_CODE) {
+                codeLines++;
             }
         }
-        
-        return suggestions;
+
+        analysis.lines = lines;
+        analysis.contentHash = StringUtil.stringHashCode(text);
+        analysis.lineSuggestions = lineSuggestions;
+        analysis.lineKinds = lineKinds;
+        analysis.methods = methods;
+        analysis.overall = qualityAnalyzer.analyzeOverallQuality(
+            filePath, CodeQualityAnalyzer.effectiveLineCount(lines), commentLines, codeLines);
+    }
+
+    /**
+     * 分析从指定行开始的方法，不是方法定义时返回 null
+     */
+    private FileAnalysis.MethodResult analyzeMethod(String filePath, LineIndex lines, int line) {
+        CodeQualityAnalyzer.MethodInfo method = qualityAnalyzer.findMethod(lines, line);
+        if (method == null) {
+            return null;
+        }
+        return new FileAnalysis.MethodResult(method, qualityAnalyzer.analyzeMethodComplexity(filePath, method));
     }
     
     /**
@@ -180,17 +324,33 @@ public class SmartSuggestionEngine {
     // PSI相关的分析方法暂时禁用，避免编译问题
     // 后续可以在解决依赖问题后重新启用
     
+    /**
+     * 创建基于正则表达式的文本模式规则
+     */
+    private static LineRule patternRule(String id, Pattern pattern, SmartSuggestion.SuggestionType type,
+                                        String... keywords) {
+        return new LineRule(id, LineRule.regex(pattern),
+            (filePath, line, content, match) -> createSuggestionFromPattern(type, filePath, line, content, match),
+            keywords);
+    }
+    
+    private static List<LineRule> concat(List<LineRule> first, List<LineRule> second) {
+        List<LineRule> rules = new ArrayList<>(first);
+        rules.addAll(second);
+        return rules;
+    }
+    
     /**
      * 从模式创建建议
      */
-    private SmartSuggestion createSuggestionFromPattern(SmartSuggestion.SuggestionType type, 
-                                                       String filePath, int line, String content, String match) {
+    private static SmartSuggestion createSuggestionFromPattern(SmartSuggestion.SuggestionType type,
+                                                              String filePath, int line, CharSequence content, String match) {
         SmartSuggestion suggestion = new SmartSuggestion();
         suggestion.setType(type);
         suggestion.setFilePath(filePath);
         suggestion.setStartLine(line);
         suggestion.setEndLine(line);
-        suggestion.setCodeSnippet(content.trim());
+        suggestion.setCodeSnippet(content.toString().trim());
         
         switch (type) {
             case TODO:
@@ -61,6 +61,16 @@ public final class SmartSuggestionService {
                 System.out.println("[SmartSuggestionService] 开始分析文件: " + filePath);
 
                 SmartSuggestionEngine engine = getOrCreateEngine(project);
+
+                // 文档自上次分析后没有变化：沿用已优化的结果（保留已应用状态），只通知监听器
+                List<SmartSuggestion> cached = fileSuggestions.get(filePath);
+                if (cached != null && engine.isUpToDate(file, document)) {
+                    System.out.println("[SmartSuggestionService] 文件未变化，使用缓存建议: " + cached.size());
+                    notifyListeners(filePath, cached);
+                    return;
+                }
+
+                // 引擎按文件缓存结果，修改后只重新分析变化的部分
                 List<SmartSuggestion> suggestions = engine.analyzeFile(file, document);
 
                 System.out.println("[SmartSuggestionService] 原始建议数: " + suggestions.size());
@@ -175,6 +185,9 @@ public final class SmartSuggestionService {
      */
     public void clearSuggestions(String filePath) {
         fileSuggestions.remove(filePath);
+        for (SmartSuggestionEngine engine : engines.values()) {
+            engine.forget(filePath);
+        }
     }
     
     /**
@@ -329,7 +329,7 @@ public class SmartSuggestionApplyDialog extends DialogWrapper {
             );
             
             // 保存图钉
-            if (PinStorage.addPin(pin)) {
+            if (PinStorage.addPin(project, pin)) {
                 // 标记建议为已应用
                 suggestionService.markSuggestionApplied(suggestion.getId(), pin.getId());
                 
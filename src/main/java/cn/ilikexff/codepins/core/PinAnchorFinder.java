@@ -0,0 +1,170 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 根据内容指纹为丢失位置的图钉重新定位（ProjectPinStore / PinEntry 内部使用）
+ *
+ * 先只在最后已知行上下 SEARCH_RADIUS 行的范围内查找，找不到时才扩大到整个文件；
+ * 查找时逐行计算一次行哈希，再按行滚动组合哈希，开销与搜索范围的行数成正比，与图钉代码的行数无关，
+ * 也不需要复制整个文档的文本。候选位置按以下规则评分，取最高分（同分取离原位置最近的）：
+ * 1. 代码完全一致（忽略空白）：基础分，每有一个上下文行也一致再加分，用于区分重复出现的相同代码；
+ * 2. 代码本身已变化但上下两行都一致：高于上下文都不一致的完全匹配，
+ *    避免被改写的常见代码（例如 return 语句）跳到文件中另一处相同的代码上；
+ * 3. 代码被部分修改：按 winnowing 特征的命中比例评分，至少命中一半，上下文一致时同样加分。
+ * 离最后已知位置越远扣分越多（最多扣 MAX_DISTANCE_PENALTY 分，不会跨越上下文加分）。
+ */
+final class PinAnchorFinder {
+
+    static final int SEARCH_RADIUS = 2000; // 首轮搜索的半径（行）
+
+    private static final int SCORE_EXACT = 6_000;
+    private static final int SCORE_CONTEXT = 7_000;      // 只有上下两行一致
+    private static final int SCORE_FUZZY = 5_000;        // 乘以特征命中比例
+    private static final int SCORE_CONTEXT_LINE = 1_000; // 每个一致的上下文行
+    private static final int MAX_DISTANCE_PENALTY = 999;
+
+    private PinAnchorFinder() {
+    }
+
+    /**
+     * 查找与指纹最匹配的代码起始行
+     *
+     * @param doc      图钉所在文件的文档
+     * @param expected 图钉的内容指纹
+     * @param hintLine 最后已知的起始行
+     * @return 匹配的起始行，找不到时返回 -1
+     */
+    static int find(Document doc, PinFingerprint expected, int hintLine) {
+        if (doc == null || expected == null || doc.getLineCount() < expected.lines) {
+            return -1;
+        }
+        int lastLine = doc.getLineCount() - 1;
+        int hint = Math.max(0, Math.min(hintLine, lastLine));
+        int from = Math.max(0, hint - SEARCH_RADIUS);
+        int to = Math.min(lastLine, hint + SEARCH_RADIUS + expected.lines);
+
+        int found = search(doc, expected, hint, from, to);
+        if (found < 0 && (from > 0 || to < lastLine)) {
+            found = search(doc, expected, hint, 0, lastLine);
+        }
+        return found;
+    }
+
+    /**
+     * 在 [from, to] 行范围内查找，返回得分最高的起始行
+     */
+    private static int search(Document doc, PinFingerprint expected, int hint, int from, int to) {
+        PinFingerprint.LineHashes hashes = PinFingerprint.LineHashes.of(doc, from, to);
+        int k = expected.lines;
+        int lastStart = to - k + 1;
+        if (lastStart < from) {
+            return -1;
+        }
+
+        Candidate best = new Candidate();
+
+        // 1. 按行滚动计算组合哈希，查找完全一致的代码
+        long power = 1; // BASE^(k-1)
+        for (int i = 1; i < k; i++) {
+            power *= PinFingerprint.BASE;
+        }
+        long rolling = 0;
+        int length = 0;
+        for (int line = from; line < from + k; line++) {
+            rolling = rolling * PinFingerprint.BASE + hashes.hash(line);
+            length += hashes.length(line);
+        }
+        for (int start = from; ; start++) {
+            if (rolling == expected.hash && length == expected.length) {
+                best.offer(start, SCORE_EXACT + contextScore(hashes, expected, start), hint);
+            }
+            if (start == lastStart) {
+                break;
+            }
+            rolling = (rolling - hashes.hash(start) * power) * PinFingerprint.BASE + hashes.hash(start + k);
+            length += hashes.length(start + k) - hashes.length(start);
+        }
+
+        // 2. winnowing 特征投票：每个命中的特征推算出一个候选起始行
+        if (expected.marks.length > 1) {
+            Map<Long, List<Integer>> markLines = new HashMap<>();
+            for (long mark : expected.marks) {
+                markLines.computeIfAbsent(mark & ~PinFingerprint.MARK_LINE_MASK, h -> new ArrayList<>())
+                        .add((int) (mark & PinFingerprint.MARK_LINE_MASK));
+            }
+            Map<Integer, Integer> votes = new HashMap<>();
+            for (int line = from; line <= to; line++) {
+                if (hashes.length(line) == 0) {
+                    continue;
+                }
+                List<Integer> relativeLines = markLines.get(hashes.hash(line) & ~PinFingerprint.MARK_LINE_MASK);
+                if (relativeLines == null) {
+                    continue;
+                }
+                for (int relative : relativeLines) {
+                    int start = line - relative;
+                    if (start >= from && start <= lastStart) {
+                        votes.merge(start, 1, Integer::sum);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Integer> vote : votes.entrySet()) {
+                int hits = vote.getValue();
+                if (hits * 2 >= expected.marks.length) {
+                    int start = vote.getKey();
+                    best.offer(start, SCORE_FUZZY * hits / expected.marks.length
+                            + contextScore(hashes, expected, start), hint);
+                }
+            }
+        }
+
+        // 3. 上下文：代码本身已变化，但上一行和下一行都与记录一致
+        if (expected.before != 0 && expected.after != 0) {
+            for (int start = from + 1; start + k <= to; start++) {
+                if (hashes.contextHash(start - 1) == expected.before
+                        && hashes.contextHash(start + k) == expected.after) {
+                    best.offer(start, SCORE_CONTEXT, hint);
+                }
+            }
+        }
+        return best.line;
+    }
+
+    private static int contextScore(PinFingerprint.LineHashes hashes, PinFingerprint expected, int start) {
+        int score = 0;
+        int above = start - 1;
+        int below = start + expected.lines;
+        if (expected.before != 0 && above >= hashes.first && hashes.contextHash(above) == expected.before) {
+            score += SCORE_CONTEXT_LINE;
+        }
+        if (expected.after != 0 && below <= hashes.last() && hashes.contextHash(below) == expected.after) {
+            score += SCORE_CONTEXT_LINE;
+        }
+        return score;
+    }
+
+    /**
+     * 当前得分最高的候选位置
+     */
+    private static final class Candidate {
+        int line = -1;
+        int score = Integer.MIN_VALUE;
+        int distance = Integer.MAX_VALUE;
+
+        void offer(int start, int baseScore, int hint) {
+            int d = Math.abs(start - hint);
+            int s = baseScore - Math.min(d, MAX_DISTANCE_PENALTY);
+            if (s > score || (s == score && d < distance)) {
+                line = start;
+                score = s;
+                distance = d;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 图钉批量修改
+ * 先收集一组新增、删除、修改备注和标签的操作，再通过 PinStorage.applyBatch 一次性提交：
+ * 所有操作在项目存储的一次加锁内完成，标签集合按增量更新一次，持久化只追加一批记录，
+ * 每个受影响的图钉各发出一个变更事件，订阅者在下一帧收到合并后的增量变化，不需要整体重建。
+ *
+ * 同一个图钉既被修改又被删除时以删除为准；同一个图钉多次修改时以最后一次为准。
+ */
+public final class PinBatch {
+
+    final List<PinEntry> added = new ArrayList<>();
+    final Set<PinEntry> removed = new LinkedHashSet<>();
+    final Map<PinEntry, String> notes = new LinkedHashMap<>();
+    final Map<PinEntry, List<String>> tags = new LinkedHashMap<>();
+
+    /**
+     * 新增图钉（追加到列表末尾）
+     */
+    public PinBatch add(PinEntry pin) {
+        if (pin != null) {
+            added.add(pin);
+        }
+        return this;
+    }
+
+    /**
+     * 删除图钉
+     */
+    public PinBatch remove(PinEntry pin) {
+        if (pin != null) {
+            removed.add(pin);
+        }
+        return this;
+    }
+
+    /**
+     * 删除多个图钉
+     */
+    public PinBatch removeAll(Collection<PinEntry> pins) {
+        for (PinEntry pin : pins) {
+            remove(pin);
+        }
+        return this;
+    }
+
+    /**
+     * 修改图钉备注
+     */
+    public PinBatch updateNote(PinEntry pin, String note) {
+        if (pin != null) {
+            notes.put(pin, note);
+        }
+        return this;
+    }
+
+    /**
+     * 修改图钉标签（整体替换）
+     */
+    public PinBatch updateTags(PinEntry pin, List<String> newTags) {
+        if (pin != null) {
+            tags.put(pin, newTags != null ? new ArrayList<>(newTags) : Collections.emptyList());
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && notes.isEmpty() && tags.isEmpty();
+    }
+
+    /**
+     * 收集的操作数量
+     */
+    public int size() {
+        return added.size() + removed.size() + notes.size() + tags.size();
+    }
+}
@@ -0,0 +1,117 @@
+package cn.ilikexff.codepins.core;
+
+/**
+ * 图钉变更事件
+ * 由项目图钉存储在增删改排时逐个产生，携带变更类型、涉及的图钉以及在图钉列表中的位置；
+ * 存储内部的行号位图缓存同步使用，对外则按帧合并成 PinDelta 通过 PinEvents 主题发布。
+ */
+public class PinChangeEvent {
+
+    /**
+     * 变更类型
+     */
+    public enum Type {
+        ADDED,      // 新增图钉，index 为插入位置
+        REMOVED,    // 删除图钉，index 为删除前的位置
+        UPDATED,    // 图钉内容（备注、标签、位置标记）变化，index 为当前位置
+        MOVED,      // 图钉在列表中移动，index 为原位置，toIndex 为新位置
+        RELOADED    // 整体变化（加载、清空、排序），订阅者应重新读取全部图钉
+    }
+
+    // 变化涉及的内容（按位组合）：UPDATED 事件由修改方指明，新增、删除、整体变化视为全部内容都变化
+    public static final int NOTE = 1;      // 备注
+    public static final int TAGS = 2;      // 标签
+    public static final int POSITION = 4;  // 位置（挂接、重新定位 marker 等）
+    public static final int ALL = NOTE | TAGS | POSITION;
+
+    private final Type type;
+    private final PinEntry pin;
+    private final int index;
+    private final int toIndex;
+    private final int changes;
+
+    private PinChangeEvent(Type type, PinEntry pin, int index, int toIndex, int changes) {
+        this.type = type;
+        this.pin = pin;
+        this.index = index;
+        this.toIndex = toIndex;
+        this.changes = changes;
+    }
+
+    public static PinChangeEvent added(PinEntry pin, int index) {
+        return new PinChangeEvent(Type.ADDED, pin, index, index, ALL);
+    }
+
+    public static PinChangeEvent removed(PinEntry pin, int index) {
+        return new PinChangeEvent(Type.REMOVED, pin, index, index, ALL);
+    }
+
+    /**
+     * 内容变化，不确定具体变化了什么时使用（视为全部内容都变化）
+     */
+    public static PinChangeEvent updated(PinEntry pin, int index) {
+        return updated(pin, index, ALL);
+    }
+
+    /**
+     * 内容变化
+     *
+     * @param changes 变化的内容，NOTE、TAGS、POSITION 的组合
+     */
+    public static PinChangeEvent updated(PinEntry pin, int index, int changes) {
+        return new PinChangeEvent(Type.UPDATED, pin, index, index, changes);
+    }
+
+    public static PinChangeEvent moved(PinEntry pin, int fromIndex, int toIndex) {
+        return new PinChangeEvent(Type.MOVED, pin, fromIndex, toIndex, 0);
+    }
+
+    public static PinChangeEvent reloaded() {
+        return new PinChangeEvent(Type.RELOADED, null, -1, -1, ALL);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 涉及的图钉，RELOADED 事件为 null
+     */
+    public PinEntry getPin() {
+        return pin;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    /**
+     * 变化涉及的内容（NOTE、TAGS、POSITION 的组合），只有顺序变化时为 0
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    /**
+     * 该变更是否可能影响标签集合
+     */
+    public boolean affectsTags() {
+        return (changes & TAGS) != 0;
+    }
+
+    /**
+     * 该变更是否可能影响图钉所在的行（新增、删除、位置变化）
+     */
+    public boolean affectsPosition() {
+        return (changes & POSITION) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PinChangeEvent{" + type + ", index=" + index + ", toIndex=" + toIndex + "}";
+    }
+}
@@ -0,0 +1,245 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一帧内合并后的图钉变化（不可变），通过 PinEvents 主题发布
+ *
+ * 同一个图钉的多次变化合并为最终效果：新增后又删除的图钉不出现；新增后修改的仍算新增；
+ * 删除后又加回的算修改并移动。整体重载时 isReloaded 为 true，其余列表为空，订阅者应重新读取全部图钉。
+ * 修改只涉及备注时 affectsTags、affectsPositions 都为 false，只关心标签或行位置的订阅者可以跳过。
+ */
+public final class PinDelta {
+
+    private final boolean reloaded;
+    private final List<PinEntry> added;
+    private final List<PinEntry> removed;
+    private final List<PinEntry> updated;
+    private final List<PinEntry> moved;
+    private final boolean tagsChanged;
+    private final Set<String> positionFiles;
+
+    private PinDelta(boolean reloaded, List<PinEntry> added, List<PinEntry> removed,
+                     List<PinEntry> updated, List<PinEntry> moved, boolean tagsChanged, Set<String> positionFiles) {
+        this.reloaded = reloaded;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.updated = Collections.unmodifiableList(updated);
+        this.moved = Collections.unmodifiableList(moved);
+        this.tagsChanged = tagsChanged;
+        this.positionFiles = Collections.unmodifiableSet(positionFiles);
+    }
+
+    /**
+     * 是否发生了整体变化（加载、清空、批量修改等）
+     */
+    public boolean isReloaded() {
+        return reloaded;
+    }
+
+    /**
+     * 新增的图钉（按发生顺序）
+     */
+    public List<PinEntry> getAdded() {
+        return added;
+    }
+
+    /**
+     * 删除的图钉
+     */
+    public List<PinEntry> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * 内容（备注、标签、位置）变化的图钉，为最新的实例
+     */
+    public List<PinEntry> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * 在自定义顺序中移动过的图钉（不含新增的图钉）
+     */
+    public List<PinEntry> getMoved() {
+        return moved;
+    }
+
+    /**
+     * 是否只有顺序变化
+     */
+    public boolean isOrderOnly() {
+        return !reloaded && added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    /**
+     * 该变化是否可能影响标签集合（新增、删除或修改了标签）
+     */
+    public boolean affectsTags() {
+        return reloaded || tagsChanged;
+    }
+
+    /**
+     * 该变化是否可能影响图钉所在的行（新增、删除或位置变化），只修改备注、标签或顺序时为 false
+     */
+    public boolean affectsPositions() {
+        return reloaded || !positionFiles.isEmpty();
+    }
+
+    /**
+     * 图钉所在行可能变化的文件，整体重载时为空，应视为全部文件
+     */
+    public Set<String> getPositionChangedFiles() {
+        return positionFiles;
+    }
+
+    /**
+     * 内容受影响的文件（新增、删除、修改的图钉所在文件），整体重载时为空，应视为全部文件
+     */
+    public Set<String> getAffectedFiles() {
+        Set<String> files = new LinkedHashSet<>();
+        for (List<PinEntry> pins : List.of(added, removed, updated)) {
+            for (PinEntry pin : pins) {
+                files.add(pin.filePath);
+            }
+        }
+        return files;
+    }
+
+    public boolean isEmpty() {
+        return isOrderOnly() && moved.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PinDelta{reloaded=" + reloaded + ", added=" + added.size() + ", removed=" + removed.size()
+                + ", updated=" + updated.size() + ", moved=" + moved.size() + "}";
+    }
+
+    /**
+     * 逐个接收 PinChangeEvent 并合并（非线程安全，由调用方加锁）
+     */
+    static final class Builder {
+
+        private enum Kind { ADDED, REMOVED, UPDATED, MOVED }
+
+        private static final class Change {
+            Kind kind;
+            PinEntry pin;
+            boolean moved;
+            int changes; // 合并后涉及的内容（PinChangeEvent.NOTE/TAGS/POSITION）
+
+            Change(Kind kind, PinEntry pin, int changes) {
+                this.kind = kind;
+                this.pin = pin;
+                this.changes = changes;
+            }
+        }
+
+        private final Map<PinEntry, Change> changes = new LinkedHashMap<>(); // 按图钉 ID 合并
+        private boolean reloaded;
+
+        void offer(PinChangeEvent event) {
+            if (event.getType() == PinChangeEvent.Type.RELOADED) {
+                reloaded = true;
+                changes.clear();
+                return;
+            }
+            if (reloaded || event.getPin() == null) {
+                return; // 订阅者反正要整体重新读取
+            }
+            PinEntry pin = event.getPin();
+            Change previous = changes.get(pin);
+            switch (event.getType()) {
+                case ADDED:
+                    if (previous == null) {
+                        changes.put(pin, new Change(Kind.ADDED, pin, PinChangeEvent.ALL));
+                    } else if (previous.kind == Kind.REMOVED) {
+                        previous.kind = Kind.UPDATED;
+                        previous.pin = pin;
+                        previous.moved = true;
+                        previous.changes = PinChangeEvent.ALL; // 加回的可能是内容不同的实例
+                    } else {
+                        previous.pin = pin;
+                    }
+                    break;
+                case REMOVED:
+                    if (previous != null && previous.kind == Kind.ADDED) {
+                        changes.remove(pin);
+                    } else if (previous != null) {
+                        previous.kind = Kind.REMOVED;
+                        previous.moved = false;
+                        previous.changes = PinChangeEvent.ALL;
+                    } else {
+                        changes.put(pin, new Change(Kind.REMOVED, pin, PinChangeEvent.ALL));
+                    }
+                    break;
+                case UPDATED:
+                    if (previous == null) {
+                        changes.put(pin, new Change(Kind.UPDATED, pin, event.getChanges()));
+                    } else if (previous.kind == Kind.MOVED) {
+                        previous.kind = Kind.UPDATED;
+                        previous.pin = pin;
+                        previous.moved = true;
+                        previous.changes = event.getChanges();
+                    } else if (previous.kind != Kind.REMOVED) {
+                        previous.pin = pin;
+                        previous.changes |= event.getChanges();
+                    }
+                    break;
+                case MOVED:
+                    if (previous == null) {
+                        changes.put(pin, new Change(Kind.MOVED, pin, 0));
+                    } else if (previous.kind == Kind.UPDATED) {
+                        previous.moved = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        boolean isEmpty() {
+            return !reloaded && changes.isEmpty();
+        }
+
+        PinDelta build() {
+            List<PinEntry> added = new ArrayList<>();
+            List<PinEntry> removed = new ArrayList<>();
+            List<PinEntry> updated = new ArrayList<>();
+            List<PinEntry> moved = new ArrayList<>();
+            boolean tagsChanged = false;
+            Set<String> positionFiles = new LinkedHashSet<>();
+            for (Change change : changes.values()) {
+                tagsChanged |= (change.changes & PinChangeEvent.TAGS) != 0;
+                if ((change.changes & PinChangeEvent.POSITION) != 0) {
+                    positionFiles.add(change.pin.filePath);
+                }
+                switch (change.kind) {
+                    case ADDED:
+                        added.add(change.pin);
+                        break;
+                    case REMOVED:
+                        removed.add(change.pin);
+                        break;
+                    case UPDATED:
+                        updated.add(change.pin);
+                        if (change.moved) {
+                            moved.add(change.pin);
+                        }
+                        break;
+                    case MOVED:
+                        moved.add(change.pin);
+                        break;
+                }
+            }
+            return new PinDelta(reloaded, added, removed, updated, moved, tagsChanged, positionFiles);
+        }
+    }
+}
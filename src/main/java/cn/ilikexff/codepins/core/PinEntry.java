@@ -7,9 +7,9 @@ import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.util.TextRange;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,14 +24,17 @@ public class PinEntry {
 
     private final String id;            // 图钉唯一标识
     public final String filePath;       // 文件路径（绝对路径）
-    public final RangeMarker marker;    // 可变行位置追踪
-    public String note;                 // 用户备注
+    public volatile RangeMarker marker; // 可变行位置追踪（未解析的图钉为 null，打开文件或导航时再挂接）
+    public volatile String note;        // 用户备注
     public final long timestamp;        // 创建时间戳
     public final String author;         // 创建者（可用于团队协作）
     public final boolean isBlock;       // 是否为代码块图钉
-    private final List<String> tags;    // 标签列表
+    private volatile List<String> tags; // 标签列表（只读列表，修改时整体替换，后台线程读取安全）
     public String name;                 // 图钉名称
-    private String originalCode;        // 原始代码内容，用于恢复验证
+    private volatile PinFingerprint fingerprint; // 图钉代码的内容指纹，用于休眠图钉的定位校验和恢复
+    private volatile int savedLine = -1;         // 未解析时使用的静态行号（来自持久化数据或休眠前的位置）
+    private volatile int savedStartOffset = -1;  // 未解析时使用的静态起始偏移量
+    private volatile int savedEndOffset = -1;    // 未解析时使用的静态结束偏移量
 
     /**
      * 无参构造函数，用于创建空的PinEntry对象
@@ -44,7 +47,7 @@ public class PinEntry {
         this.timestamp = new Date().getTime();
         this.author = System.getProperty("user.name");
         this.isBlock = false;
-        this.tags = new ArrayList<>();
+        this.tags = Collections.emptyList();
     }
 
     public PinEntry(String filePath, RangeMarker marker, String note, long timestamp, String author, boolean isBlock) {
@@ -55,73 +58,306 @@ public class PinEntry {
         this.timestamp = timestamp;
         this.author = author;
         this.isBlock = isBlock;
-        this.tags = new ArrayList<>();
+        this.tags = Collections.emptyList();
 
-        // 保存原始代码内容
-        saveOriginalCode();
+        // 记录代码内容指纹
+        captureFingerprint();
     }
 
     /**
      * 带标签的构造函数
      */
     public PinEntry(String filePath, RangeMarker marker, String note, long timestamp, String author, boolean isBlock, List<String> tags) {
-        this.id = generateId();
+        this(null, filePath, marker, note, timestamp, author, isBlock, tags);
+    }
+
+    /**
+     * 带标识的构造函数，用于从持久化数据恢复或替换图钉时保留原有 ID
+     *
+     * @param id 图钉唯一标识，为空时自动生成
+     */
+    public PinEntry(String id, String filePath, RangeMarker marker, String note, long timestamp, String author, boolean isBlock, List<String> tags) {
+        this.id = id != null && !id.isEmpty() ? id : generateId();
         this.filePath = filePath;
         this.marker = marker;
         this.note = note;
         this.timestamp = timestamp;
         this.author = author;
         this.isBlock = isBlock;
-        this.tags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+        this.tags = tags != null ? Collections.unmodifiableList(new ArrayList<>(tags)) : Collections.emptyList();
 
-        // 保存原始代码内容
-        saveOriginalCode();
+        // 记录代码内容指纹
+        captureFingerprint();
     }
 
     /**
-     * 保存原始代码内容
+     * 从持久化数据创建未解析的图钉
+     * 只保存元数据和静态位置，不访问文件系统和文档，marker 在需要时通过 attachMarker 挂接
      */
-    private void saveOriginalCode() {
-        if (marker != null && marker.isValid()) {
-            Document doc = marker.getDocument();
-            if (doc != null) {
-                try {
-                    int start = marker.getStartOffset();
-                    // 对于单行图钉，获取整行内容而不仅仅是一个字符
-                    int end;
-                    if (isBlock) {
-                        end = marker.getEndOffset();
-                    } else {
-                        // 获取行的开始和结束
-                        int line = doc.getLineNumber(start);
-                        start = doc.getLineStartOffset(line);
-                        end = doc.getLineEndOffset(line);
-                    }
-                    
-                    // 确保不越界
-                    if (start >= 0 && end <= doc.getTextLength()) {
-                        this.originalCode = doc.getText(new TextRange(start, end));
-                        System.out.println("[CodePins] 保存原始代码：" + this.originalCode);
-                        
-                        // 记录行号信息，用于调试
-                        int startLine = doc.getLineNumber(start) + 1;
-                        int endLine = doc.getLineNumber(end) + 1;
-                        System.out.println("[CodePins] 原始代码位置：行 " + startLine + 
-                                (startLine != endLine ? "-" + endLine : ""));
-                    }
-                } catch (Exception e) {
-                    System.out.println("[CodePins] 保存原始代码失败：" + e.getMessage());
-                    e.printStackTrace();
-                }
+    static PinEntry unresolved(PinState state) {
+        PinEntry entry = new PinEntry(
+                state.id,
+                state.filePath,
+                null,
+                state.note,
+                state.timestamp,
+                state.author,
+                state.isBlock,
+                state.tags
+        );
+        entry.savedLine = Math.max(0, state.line);
+        entry.savedStartOffset = state.startOffset;
+        entry.savedEndOffset = state.endOffset;
+        if (state.codeLines > 0) {
+            entry.fingerprint = new PinFingerprint(state.codeHash, state.codeLength, state.codeLines,
+                    state.codeBefore, state.codeAfter, state.codeMarks);
+        }
+        return entry;
+    }
+
+    /**
+     * 是否已挂接 RangeMarker
+     */
+    public boolean isResolved() {
+        return marker != null;
+    }
+
+    /**
+     * 根据保存的静态位置在文档中创建 RangeMarker 并挂接到图钉（休眠 -> 活跃）
+     * 有内容指纹时先校验保存的行，文件在休眠期间被外部修改导致内容不一致时，
+     * 由 PinAnchorFinder 在附近查找最匹配的代码重新定位；找不到时仍挂接到保存的位置，并保留原指纹供之后恢复。
+     * 需要在读操作中调用；已解析的图钉直接返回 true
+     *
+     * @param doc 图钉所在文件的文档
+     * @return 是否挂接成功
+     */
+    synchronized boolean attachMarker(Document doc) {
+        if (marker != null) {
+            return true;
+        }
+        if (doc == null) {
+            return false;
+        }
+
+        boolean[] relocated = new boolean[1];
+        TextRange range = findRange(doc, relocated);
+        marker = createMarker(doc, range.getStartOffset(), range.getEndOffset());
+        if (fingerprint == null || relocated[0]) {
+            captureFingerprint();
+        }
+        return true;
+    }
+
+    /**
+     * 图钉在文档中的当前范围，不挂接 RangeMarker（休眠图钉保持休眠）
+     * 用于预览、分享等只读取一次代码的操作：活跃图钉返回 marker 的范围，
+     * 休眠图钉按保存的位置和内容指纹在 doc 中定位，与 attachMarker 挂接时得到的范围一致。
+     * 需要在读操作中调用
+     *
+     * @param doc 图钉所在文件的文档（活跃图钉忽略此参数）
+     * @return 图钉范围，marker 已失效或 doc 为 null 时返回 null
+     */
+    synchronized TextRange locate(Document doc) {
+        RangeMarker m = marker;
+        if (m != null) {
+            return m.isValid() ? new TextRange(m.getStartOffset(), m.getEndOffset()) : null;
+        }
+        return doc != null ? findRange(doc, new boolean[1]) : null;
+    }
+
+    /**
+     * 按保存的位置和内容指纹计算休眠图钉在文档中的范围
+     * 保存的行内容与指纹不一致时由 PinAnchorFinder 在附近查找最匹配的代码，找到时 relocated[0] 置为 true
+     */
+    private TextRange findRange(Document doc, boolean[] relocated) {
+        int docLength = doc.getTextLength();
+        int line = Math.max(0, Math.min(savedLine, doc.getLineCount() - 1)); // 防止越界
+        PinFingerprint expected = fingerprint;
+        if (expected != null && !expected.matches(doc, line)) {
+            int found = PinAnchorFinder.find(doc, expected, line);
+            if (found >= 0) {
+                System.out.println("[CodePins] 图钉内容已变化，重新定位：行 " + (line + 1) + " -> " + (found + 1));
+                line = found;
+                relocated[0] = true;
+            }
+        }
+        int startOffset, endOffset;
+
+        if (relocated[0] && isBlock) {
+            // 重新定位的代码块图钉覆盖指纹对应的整行
+            startOffset = doc.getLineStartOffset(line);
+            endOffset = blockEndOffset(doc, line, expected);
+        } else if (isBlock && savedStartOffset >= 0 && savedEndOffset >= 0) {
+            // 如果是代码块图钉，并且有保存的偏移量范围，则使用保存的范围
+            startOffset = Math.max(0, Math.min(savedStartOffset, docLength));
+            endOffset = Math.max(0, Math.min(savedEndOffset, docLength));
+        } else if (isBlock) {
+            // 如果是代码块图钉，但没有保存范围，则使用整行作为范围
+            startOffset = doc.getLineStartOffset(line);
+            endOffset = doc.getLineEndOffset(line);
+        } else {
+            // 如果是单行图钉，则使用行起始位置
+            startOffset = doc.getLineStartOffset(line);
+            endOffset = startOffset;
+        }
+
+        // 确保范围有效
+        if (startOffset > endOffset) {
+            startOffset = endOffset;
+        }
+        return new TextRange(startOffset, endOffset);
+    }
+
+    /**
+     * 判断活跃图钉是否仍指向指纹记录的代码（marker 已失效或所在行内容与指纹不一致时返回 false）
+     * 没有指纹的图钉无法判断，视为有效。需要在读操作中调用
+     */
+    synchronized boolean isAnchored() {
+        RangeMarker m = marker;
+        if (m == null) {
+            return true;
+        }
+        if (!m.isValid()) {
+            return false;
+        }
+        PinFingerprint expected = fingerprint;
+        Document doc = m.getDocument();
+        return expected == null
+                || expected.matches(doc, doc.getLineNumber(Math.min(m.getStartOffset(), doc.getTextLength())));
+    }
+
+    /**
+     * 按内容指纹为活跃图钉重新定位并替换 RangeMarker（不改变图钉对象本身）
+     * 用于文件内容被外部整体替换（切换分支等）后批量修复图钉位置。需要在读操作中调用
+     *
+     * @return 是否找到并移动到了新位置
+     */
+    synchronized boolean reanchor() {
+        RangeMarker m = marker;
+        PinFingerprint expected = fingerprint;
+        if (m == null || expected == null) {
+            return false;
+        }
+        Document doc = m.getDocument();
+        int hint = m.isValid()
+                ? doc.getLineNumber(Math.min(m.getStartOffset(), doc.getTextLength()))
+                : Math.max(0, savedLine);
+        int found = PinAnchorFinder.find(doc, expected, hint);
+        if (found < 0) {
+            return false;
+        }
+        int startOffset = doc.getLineStartOffset(found);
+        int endOffset = isBlock ? blockEndOffset(doc, found, expected) : startOffset;
+        marker = createMarker(doc, startOffset, endOffset);
+        m.dispose();
+        captureFingerprint();
+        return true;
+    }
+
+    private static RangeMarker createMarker(Document doc, int startOffset, int endOffset) {
+        RangeMarker newMarker = doc.createRangeMarker(startOffset, endOffset);
+        newMarker.setGreedyToLeft(true);
+        newMarker.setGreedyToRight(true);
+        return newMarker;
+    }
+
+    /**
+     * 代码块图钉从 line 开始覆盖指纹行数时的结束偏移量
+     */
+    private static int blockEndOffset(Document doc, int line, PinFingerprint expected) {
+        return doc.getLineEndOffset(Math.min(line + expected.lines - 1, doc.getLineCount() - 1));
+    }
+
+    /**
+     * 释放 RangeMarker，转为只保存"行号 + 内容指纹"的休眠图钉（活跃 -> 休眠）
+     * 在文件关闭后调用，图钉不再引用文档，文档可以被回收；再次打开文件时由 attachMarker 挂接。
+     * 需要在读操作中调用
+     *
+     * @return 是否发生了转换（未解析的图钉返回 false）
+     */
+    synchronized boolean detachMarker() {
+        RangeMarker m = marker;
+        if (m == null) {
+            return false;
+        }
+        if (m.isValid()) {
+            // 记录最新位置和内容，代码在此期间被编辑过时以当前内容为准
+            savedStartOffset = m.getStartOffset();
+            savedEndOffset = m.getEndOffset();
+            captureFingerprint();
+        } else {
+            // 代码已被删除：保留上次的位置和指纹，代码恢复后仍可找回
+            savedLine = Math.max(0, savedLine);
+        }
+        marker = null;
+        m.dispose();
+        return true;
+    }
+
+    /**
+     * 获取当前行号（从 0 开始）；未解析的图钉返回保存的行号
+     */
+    public int getLine() {
+        RangeMarker m = marker;
+        if (m == null) {
+            return savedLine;
+        }
+        return getCurrentLine(m.getDocument());
+    }
+
+    /**
+     * 获取起始偏移量；未解析的图钉返回保存的偏移量（可能为 -1）
+     */
+    public int getStartOffset() {
+        RangeMarker m = marker;
+        return m != null ? m.getStartOffset() : savedStartOffset;
+    }
+
+    /**
+     * 获取结束偏移量；未解析的图钉返回保存的偏移量（可能为 -1）
+     */
+    public int getEndOffset() {
+        RangeMarker m = marker;
+        return m != null ? m.getEndOffset() : savedEndOffset;
+    }
+
+    /**
+     * 根据当前 marker 覆盖的行记录内容指纹和行号
+     * 单行图钉取整行内容，代码块图钉取起止偏移量所在的各行
+     */
+    private void captureFingerprint() {
+        RangeMarker m = marker;
+        if (m == null || !m.isValid()) {
+            return;
+        }
+        Document doc = m.getDocument();
+        try {
+            int start = Math.min(m.getStartOffset(), doc.getTextLength());
+            int end = Math.min(m.getEndOffset(), doc.getTextLength());
+            int startLine = doc.getLineNumber(start);
+            int endLine = isBlock ? Math.max(startLine, doc.getLineNumber(end)) : startLine;
+            PinFingerprint captured = PinFingerprint.of(doc, startLine, endLine);
+            if (captured != null) {
+                fingerprint = captured;
             }
+            savedLine = startLine;
+        } catch (Exception e) {
+            System.out.println("[CodePins] 记录代码指纹失败：" + e.getMessage());
         }
     }
 
     /**
-     * 获取标签列表（只读副本）
+     * 图钉代码的内容指纹，没有记录时返回 null
+     */
+    PinFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 获取标签列表（只读）
      */
     public List<String> getTags() {
-        return Collections.unmodifiableList(tags);
+        return tags;
     }
 
     /**
@@ -129,7 +365,9 @@ public class PinEntry {
      */
     public void addTag(String tag) {
         if (tag != null && !tag.trim().isEmpty() && !tags.contains(tag.trim())) {
-            tags.add(tag.trim());
+            List<String> updated = new ArrayList<>(tags);
+            updated.add(tag.trim());
+            tags = Collections.unmodifiableList(updated);
         }
     }
 
@@ -137,21 +375,26 @@ public class PinEntry {
      * 移除标签
      */
     public void removeTag(String tag) {
-        tags.remove(tag);
+        if (tags.contains(tag)) {
+            List<String> updated = new ArrayList<>(tags);
+            updated.remove(tag);
+            tags = Collections.unmodifiableList(updated);
+        }
     }
 
     /**
      * 设置标签列表（替换现有标签）
      */
     public void setTags(List<String> newTags) {
-        tags.clear();
+        List<String> updated = new ArrayList<>();
         if (newTags != null) {
             for (String tag : newTags) {
                 if (tag != null && !tag.trim().isEmpty()) {
-                    tags.add(tag.trim());
+                    updated.add(tag.trim());
                 }
             }
         }
+        tags = Collections.unmodifiableList(updated);
     }
 
     /**
@@ -167,13 +410,16 @@ public class PinEntry {
     public int getCurrentLine(Document document) {
         // 验证参数
         if (document == null) {
+            if (marker == null) {
+                return Math.max(0, savedLine);
+            }
             System.out.println("[CodePins] getCurrentLine 失败: document 为空");
             return 0;
         }
 
         if (marker == null) {
-            System.out.println("[CodePins] getCurrentLine 失败: marker 为空");
-            return 0;
+            // 未解析的图钉使用保存的行号
+            return Math.max(0, savedLine);
         }
 
         if (!marker.isValid()) {
@@ -210,6 +456,18 @@ public class PinEntry {
         // 使用 ReadAction 包装文档访问操作，确保线程安全
         return com.intellij.openapi.application.ReadAction.compute(() -> {
             try {
+                if (marker == null && savedLine >= 0) {
+                    // 尚未解析的图钉，显示保存的行号
+                    String typeLabel = isBlock ? "[代码块]" : "[单行]";
+                    String tagsStr = "";
+                    if (!tags.isEmpty()) {
+                        tagsStr = " [" + String.join(", ", tags) + "]";
+                    }
+                    return typeLabel + " " + filePath.replace("\\", "/") + " @ Line " + (savedLine + 1)
+                           + (note != null && !note.isEmpty() ? " - " + note : "")
+                           + tagsStr;
+                }
+
                 if (marker == null || !marker.isValid()) {
                     // marker无效时，显示警告信息
                     String typeLabel = isBlock ? "[代码块]" : "[单行]";
@@ -281,18 +539,17 @@ public class PinEntry {
     }
 
     /**
-     * 判断是否为同一个图钉（基于路径和初始偏移）
+     * 判断是否为同一个图钉（基于唯一 ID，不受 marker 位置变化影响）
      */
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof PinEntry other)) return false;
-        return filePath.equals(other.filePath)
-                && marker.getStartOffset() == other.marker.getStartOffset();
+        return id.equals(other.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(filePath, marker.getStartOffset());
+        return Objects.hash(id);
     }
 
     /**
@@ -328,7 +585,7 @@ public class PinEntry {
                 isBlock
         );
         
-        PinStorage.addPin(pin);
+        PinStorage.addPin(project, pin);
         return pin;
     }
 
@@ -348,6 +605,11 @@ public class PinEntry {
                     return;
                 }
 
+                // 未解析的图钉在导航时挂接 RangeMarker
+                if (marker == null) {
+                    PinStorage.resolvePin(this);
+                }
+
                 // 检查RangeMarker状态，尝试自动恢复
                 boolean markerValid = marker != null && marker.isValid();
                 boolean codeExists = checkIfCodeExists(file);
@@ -441,10 +703,11 @@ public class PinEntry {
     }
     
     /**
-     * 检查文件中是否存在原始代码
+     * 检查文件中是否存在与内容指纹一致的代码
      */
     private boolean checkIfCodeExists(VirtualFile file) {
-        if (originalCode == null || originalCode.isEmpty()) {
+        PinFingerprint expected = fingerprint;
+        if (expected == null) {
             return false;
         }
         
@@ -454,8 +717,7 @@ public class PinEntry {
                 return false;
             }
             
-            String docText = document.getText();
-            return docText.contains(originalCode) || docText.contains(originalCode.trim());
+            return PinAnchorFinder.find(document, expected, Math.max(0, savedLine)) >= 0;
         } catch (Exception e) {
             return false;
         }
@@ -469,7 +731,7 @@ public class PinEntry {
             // 检查是否能通过恢复解决问题
             boolean showRecoverOption = false;
             VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
-            if (file != null && file.exists() && originalCode != null && !originalCode.isEmpty()) {
+            if (file != null && file.exists() && fingerprint != null) {
                 // 检查文件中是否存在原始代码，以决定是否显示恢复选项
                 showRecoverOption = checkIfCodeExists(file);
             }
@@ -558,98 +820,29 @@ public class PinEntry {
                     com.intellij.openapi.editor.Document document = 
                         com.intellij.openapi.fileEditor.FileDocumentManager.getInstance().getDocument(file);
                     
-                    if (document == null || originalCode == null || originalCode.isEmpty()) {
-                        System.out.println("[CodePins] 恢复失败: 文档或原始代码为空");
+                    PinFingerprint expected = fingerprint;
+                    if (document == null || expected == null) {
+                        System.out.println("[CodePins] 恢复失败: 文档或代码指纹为空");
                         return false;
                     }
                     
-                    // 在整个文档中查找原始代码
-                    String docText = document.getText();
-                    int foundOffset = docText.indexOf(originalCode);
-                    boolean useOriginalCode = true;
-                    
-                    // 如果找不到原始代码，尝试使用修剪后的代码
-                    if (foundOffset < 0) {
-                        String trimmedCode = originalCode.trim();
-                        if (!trimmedCode.isEmpty()) {
-                            foundOffset = docText.indexOf(trimmedCode);
-                            if (foundOffset >= 0) {
-                                useOriginalCode = false;
-                                System.out.println("[CodePins] 使用修剪后的代码匹配成功");
-                            }
-                        }
-                    }
-                    
-                    // 如果仍然找不到，尝试使用更宽松的匹配策略
-                    if (foundOffset < 0) {
-                        // 尝试匹配代码的前几行（对于多行代码块）
-                        String[] lines = originalCode.split("\n");
-                        if (lines.length > 1) {
-                            String firstTwoLines = lines[0];
-                            if (lines.length > 1) {
-                                firstTwoLines += "\n" + lines[1];
-                            }
-                            
-                            if (!firstTwoLines.trim().isEmpty()) {
-                                foundOffset = docText.indexOf(firstTwoLines.trim());
-                                if (foundOffset >= 0) {
-                                    useOriginalCode = false;
-                                    System.out.println("[CodePins] 使用代码前几行匹配成功");
-                                }
-                            }
-                        }
-                    }
-                    
-                    if (foundOffset >= 0) {
-                        // 找到匹配的代码
-                        System.out.println("[CodePins] 在文档中找到匹配的" + 
-                                          (useOriginalCode ? "原始" : "部分") + 
-                                          "代码，位置: " + foundOffset);
-                        
-                        // 创建新的RangeMarker
-                        int newEndOffset;
-                        if (useOriginalCode) {
-                            newEndOffset = foundOffset + originalCode.length();
-                        } else {
-                            // 尝试找到合适的结束位置
-                            String[] lines = originalCode.split("\n");
-                            if (lines.length > 1) {
-                                // 对于多行代码，尝试找到最后一行
-                                String lastLine = lines[lines.length - 1].trim();
-                                if (!lastLine.isEmpty()) {
-                                    int lastLinePos = docText.indexOf(lastLine, foundOffset);
-                                    if (lastLinePos > foundOffset) {
-                                        newEndOffset = lastLinePos + lastLine.length();
-                                    } else {
-                                        // 如果找不到最后一行，至少包含找到的部分
-                                        newEndOffset = foundOffset + originalCode.trim().length();
-                                    }
-                                } else {
-                                    newEndOffset = foundOffset + originalCode.trim().length();
-                                }
-                            } else {
-                                newEndOffset = foundOffset + originalCode.trim().length();
-                            }
-                        }
+                    // 在最后已知的行附近按指纹查找最匹配的代码
+                    int foundLine = PinAnchorFinder.find(document, expected, Math.max(0, savedLine));
+                    if (foundLine >= 0) {
+                        System.out.println("[CodePins] 在文档中找到匹配的代码，行: " + (foundLine + 1));
                         
-                        // 确保偏移量不超出文档范围
-                        if (newEndOffset > document.getTextLength()) {
-                            newEndOffset = document.getTextLength();
-                        }
+                        // 单行图钉定位到行首，代码块图钉覆盖指纹对应的整行
+                        int foundOffset = document.getLineStartOffset(foundLine);
+                        int newEndOffset = isBlock
+                                ? blockEndOffset(document, foundLine, expected)
+                                : foundOffset;
                         
                         // 创建一个新的可靠的RangeMarker
-                        RangeMarker newMarker = document.createRangeMarker(foundOffset, newEndOffset);
-                        newMarker.setGreedyToLeft(true);
-                        newMarker.setGreedyToRight(true);
-                        
-                        // 更新原始代码为当前找到的代码段，确保下次比较能够匹配
-                        if (!useOriginalCode) {
-                            // 如果使用修剪后的代码匹配成功，更新原始代码
-                            originalCode = document.getText(new TextRange(foundOffset, newEndOffset));
-                        }
+                        RangeMarker newMarker = createMarker(document, foundOffset, newEndOffset);
                         
                         // 创建一个新的PinEntry替换当前的
                         PinEntry newPin = new PinEntry(
+                            id,
                             filePath, 
                             newMarker, 
                             note, 
@@ -666,8 +859,7 @@ public class PinEntry {
                         
                         // 使用PinStorage的replacePin方法替换图钉
                         if (PinStorage.replacePin(this, newPin)) {
-                            int newLineNumber = document.getLineNumber(foundOffset) + 1;
-                            System.out.println("[CodePins] 图钉标记已成功恢复到行 " + newLineNumber);
+                            System.out.println("[CodePins] 图钉标记已成功恢复到行 " + (foundLine + 1));
                             return true;
                         } else {
                             System.out.println("[CodePins] 无法在存储中替换图钉");
@@ -718,22 +910,21 @@ public class PinEntry {
                         return false;
                     }
                     
-                    // 如果没有保存原始代码，无法进行内容比较
-                    if (originalCode == null || originalCode.isEmpty()) {
-                        System.out.println("[CodePins] 恢复失败: 没有原始代码记录");
+                    // 如果没有记录代码指纹，无法进行内容比较
+                    PinFingerprint expected = fingerprint;
+                    if (expected == null) {
+                        System.out.println("[CodePins] 恢复失败: 没有代码指纹记录");
                         return false;
                     }
                     
                     // 先检查marker是否仍然有效
                     if (marker != null && marker.isValid()) {
-                        // 验证当前位置的代码是否与原始代码匹配
+                        // 验证当前位置的代码是否与指纹匹配
                         int startOffset = marker.getStartOffset();
-                        int endOffset = marker.getEndOffset();
                         
                         // 确保不越界
-                        if (endOffset <= document.getTextLength()) {
-                            String currentCode = document.getText(new TextRange(startOffset, endOffset));
-                            if (originalCode.equals(currentCode)) {
+                        if (startOffset <= document.getTextLength()) {
+                            if (expected.matches(document, document.getLineNumber(startOffset))) {
                                 // 当前位置的代码与原始代码匹配，不需要恢复
                                 System.out.println("[CodePins] 图钉位置有效且代码匹配，无需恢复");
                                 return true;
@@ -767,7 +958,7 @@ public class PinEntry {
     /**
      * 生成唯一ID
      */
-    private static String generateId() {
+    static String generateId() {
         return "pin-" + System.currentTimeMillis() + "-" + Math.random();
     }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 图钉变更的项目级消息总线主题
+ * 项目图钉存储把同一帧内（一次 EDT 事件处理期间）发出的所有变更合并成一个 PinDelta，
+ * 在 EDT 上发布一次；订阅者（列表模型、标签面板、统计面板、行标记等）按增量更新，
+ * 不需要在每次操作后手动刷新，也不会在批量操作时被逐个事件反复触发。
+ *
+ * 订阅方式：project.getMessageBus().connect(parentDisposable).subscribe(PinEvents.TOPIC, listener)，
+ * 或在 plugin.xml 的 projectListeners 中声明。
+ */
+public interface PinEvents {
+
+    @Topic.ProjectLevel
+    Topic<PinEvents> TOPIC = Topic.create("CodePins pin changes", PinEvents.class);
+
+    /**
+     * 一帧内的图钉变化（在 EDT 上回调）
+     *
+     * @param delta 合并后的变化
+     */
+    void pinsChanged(@NotNull PinDelta delta);
+}
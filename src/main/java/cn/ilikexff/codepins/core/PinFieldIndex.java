@@ -0,0 +1,316 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 结构化查询使用的字段索引（ProjectPinStore 内部使用）
+ * 与 PinTagIndex 一样按图钉序号建索引：作者、扩展名（均小写）和是否代码块各自映射到序号位图，
+ * 创建时间保存为按时间排序的（时间, 序号）数组做范围查找；标签条件由 PinTagIndex 回答，这里不重复保存。
+ *
+ * 图钉序号在图钉加入时分配、删除后回收，与图钉在列表中的位置无关：新增、删除、替换图钉时按事件增量维护，
+ * 移动顺序以及只修改备注、标签、位置时索引不变。查询结果读取时才把序号换算为快照中的位置，
+ * 映射按快照版本缓存。首次结构化查询前不建索引；整体重载后在下一次查询时按当前列表对账一次，
+ * 已有图钉保留原序号，只增删有差异的图钉。
+ */
+final class PinFieldIndex {
+
+    private final PinList pins;
+
+    // 为 true 时需要按当前列表对账（尚未构建，或发生了整体重载），期间忽略单个事件
+    private boolean stale = true;
+
+    // 图钉序号：图钉 ID -> 序号；序号 -> 建索引时的字段值（删除时按这里的值撤销，不依赖图钉实例）
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] idByOrdinal = new String[64];
+    private String[] authorByOrdinal = new String[64];
+    private String[] extensionByOrdinal = new String[64];
+    private long[] timeByOrdinal = new long[64];
+    private final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+    private int nextOrdinal;
+    private int layoutVersion; // 序号分配给不同图钉时递增，位置映射需要重建
+
+    private final Map<String, BitSet> authors = new HashMap<>();
+    private final Map<String, BitSet> extensions = new HashMap<>();
+    private final BitSet blocks = new BitSet();
+    private final BitSet lines = new BitSet();
+
+    // 按（时间, 序号）升序；图钉通常按创建顺序追加，新增一般落在末尾
+    private long[] times = new long[64];
+    private int[] timeOrdinals = new int[64];
+    private int timeCount;
+
+    private long positionsVersion = -1;
+    private int positionsLayout = -1;
+    private int[] positionByOrdinal = new int[0]; // 序号 -> 快照中的位置，-1 表示不在快照中
+
+    PinFieldIndex(PinList pins) {
+        this.pins = pins;
+    }
+
+    /**
+     * 按事件增量维护索引（在存储的锁内调用，列表已发布修改后的快照）
+     */
+    synchronized void pinsChanged(PinChangeEvent event) {
+        if (event.getType() == PinChangeEvent.Type.RELOADED) {
+            stale = true;
+            return;
+        }
+        if (stale || event.getPin() == null) {
+            return; // 下一次查询时对账
+        }
+        switch (event.getType()) {
+            case ADDED:
+            case UPDATED:
+                index(event.getPin());
+                break;
+            case REMOVED:
+                unindex(event.getPin().getId());
+                break;
+            default:
+                break; // 移动顺序不影响按序号保存的索引
+        }
+    }
+
+    /**
+     * 查询前准备：需要时先对账，再按快照更新序号到位置的映射（调用方持有本对象的锁）
+     */
+    synchronized void update(PinSnapshot snapshot) {
+        if (stale) {
+            reconcile(pins.snapshot());
+            stale = false;
+        }
+        updatePositions(snapshot);
+    }
+
+    /**
+     * 让索引与列表一致：登记列表中的每个图钉（字段未变时不做修改），撤销列表中已不存在的图钉
+     */
+    private void reconcile(PinSnapshot current) {
+        Set<String> present = new HashSet<>(current.size() * 2);
+        for (PinEntry pin : current.getPins()) {
+            present.add(pin.getId());
+            index(pin);
+        }
+        for (Iterator<String> iterator = ordinals.keySet().iterator(); iterator.hasNext(); ) {
+            String id = iterator.next();
+            if (!present.contains(id)) {
+                int ordinal = ordinals.get(id);
+                iterator.remove();
+                release(ordinal);
+            }
+        }
+    }
+
+    /**
+     * 登记图钉；已登记的图钉字段有变化时先撤销旧值（重复登记相同的图钉不做修改）
+     */
+    private void index(PinEntry pin) {
+        String author = pin.author != null ? pin.author.toLowerCase(Locale.ROOT) : null;
+        String extension = extensionOf(pin.filePath);
+        Integer existing = ordinals.get(pin.getId());
+        if (existing != null) {
+            int ordinal = existing;
+            if (Objects.equals(author, authorByOrdinal[ordinal])
+                    && Objects.equals(extension, extensionByOrdinal[ordinal])
+                    && timeByOrdinal[ordinal] == pin.timestamp
+                    && blocks.get(ordinal) == pin.isBlock) {
+                return;
+            }
+            clearFields(ordinal);
+            setFields(ordinal, author, extension, pin.timestamp, pin.isBlock);
+            return;
+        }
+        int ordinal = ordinalFor(pin.getId());
+        setFields(ordinal, author, extension, pin.timestamp, pin.isBlock);
+    }
+
+    private void unindex(String pinId) {
+        Integer ordinal = ordinals.remove(pinId);
+        if (ordinal != null) {
+            release(ordinal);
+        }
+    }
+
+    private void release(int ordinal) {
+        clearFields(ordinal);
+        freeOrdinals.push(ordinal); // 后进先出：删除后又加回的图钉拿回同一个序号，位置映射不必重建
+    }
+
+    private void setFields(int ordinal, String author, String extension, long timestamp, boolean block) {
+        authorByOrdinal[ordinal] = author;
+        extensionByOrdinal[ordinal] = extension;
+        timeByOrdinal[ordinal] = timestamp;
+        if (author != null) {
+            authors.computeIfAbsent(author, key -> new BitSet()).set(ordinal);
+        }
+        if (extension != null) {
+            extensions.computeIfAbsent(extension, key -> new BitSet()).set(ordinal);
+        }
+        (block ? blocks : lines).set(ordinal);
+        insertTime(timestamp, ordinal);
+    }
+
+    private void clearFields(int ordinal) {
+        clearBit(authors, authorByOrdinal[ordinal], ordinal);
+        clearBit(extensions, extensionByOrdinal[ordinal], ordinal);
+        blocks.clear(ordinal);
+        lines.clear(ordinal);
+        removeTime(timeByOrdinal[ordinal], ordinal);
+        authorByOrdinal[ordinal] = null;
+        extensionByOrdinal[ordinal] = null;
+    }
+
+    private static void clearBit(Map<String, BitSet> bitmaps, String key, int ordinal) {
+        if (key == null) {
+            return;
+        }
+        BitSet bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private void insertTime(long time, int ordinal) {
+        int at = lowerBound(time, ordinal);
+        if (timeCount == times.length) {
+            times = Arrays.copyOf(times, timeCount * 2);
+            timeOrdinals = Arrays.copyOf(timeOrdinals, timeCount * 2);
+        }
+        System.arraycopy(times, at, times, at + 1, timeCount - at);
+        System.arraycopy(timeOrdinals, at, timeOrdinals, at + 1, timeCount - at);
+        times[at] = time;
+        timeOrdinals[at] = ordinal;
+        timeCount++;
+    }
+
+    private void removeTime(long time, int ordinal) {
+        int at = lowerBound(time, ordinal);
+        if (at < timeCount && times[at] == time && timeOrdinals[at] == ordinal) {
+            System.arraycopy(times, at + 1, times, at, timeCount - at - 1);
+            System.arraycopy(timeOrdinals, at + 1, timeOrdinals, at, timeCount - at - 1);
+            timeCount--;
+        }
+    }
+
+    private int ordinalFor(String pinId) {
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.pop();
+        if (ordinal >= idByOrdinal.length) {
+            int length = Math.max(ordinal + 1, idByOrdinal.length * 2);
+            idByOrdinal = Arrays.copyOf(idByOrdinal, length);
+            authorByOrdinal = Arrays.copyOf(authorByOrdinal, length);
+            extensionByOrdinal = Arrays.copyOf(extensionByOrdinal, length);
+            timeByOrdinal = Arrays.copyOf(timeByOrdinal, length);
+        }
+        if (!pinId.equals(idByOrdinal[ordinal])) {
+            idByOrdinal[ordinal] = pinId;
+            layoutVersion++;
+        }
+        ordinals.put(pinId, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * 快照或序号分配变化后重建序号到位置的映射
+     */
+    private void updatePositions(PinSnapshot snapshot) {
+        if (snapshot.getVersion() == positionsVersion && layoutVersion == positionsLayout) {
+            return;
+        }
+        if (positionByOrdinal.length < nextOrdinal) {
+            positionByOrdinal = new int[Math.max(nextOrdinal, positionByOrdinal.length * 2)];
+        }
+        Arrays.fill(positionByOrdinal, -1);
+        List<PinEntry> list = snapshot.getPins();
+        for (int i = 0; i < list.size(); i++) {
+            Integer ordinal = ordinals.get(list.get(i).getId());
+            if (ordinal != null) {
+                positionByOrdinal[ordinal] = i;
+            }
+        }
+        positionsVersion = snapshot.getVersion();
+        positionsLayout = layoutVersion;
+    }
+
+    // 以下查询在 update 之后调用，返回匹配图钉在快照中位置的新位图
+
+    BitSet author(String author) {
+        return toPositions(authors.get(author));
+    }
+
+    BitSet extension(String extension) {
+        return toPositions(extensions.get(extension));
+    }
+
+    BitSet block(boolean block) {
+        return toPositions(block ? blocks : lines);
+    }
+
+    /**
+     * 创建时间在 [from, to) 内的图钉
+     */
+    BitSet createdBetween(long from, long to) {
+        int start = lowerBound(from, Integer.MIN_VALUE);
+        int end = lowerBound(to, Integer.MIN_VALUE);
+        BitSet result = new BitSet();
+        for (int i = start; i < end; i++) {
+            addPosition(timeOrdinals[i], result);
+        }
+        return result;
+    }
+
+    private BitSet toPositions(BitSet ordinalSet) {
+        BitSet result = new BitSet();
+        if (ordinalSet != null) {
+            for (int ordinal = ordinalSet.nextSetBit(0); ordinal >= 0; ordinal = ordinalSet.nextSetBit(ordinal + 1)) {
+                addPosition(ordinal, result);
+            }
+        }
+        return result;
+    }
+
+    private void addPosition(int ordinal, BitSet result) {
+        int position = ordinal < positionByOrdinal.length ? positionByOrdinal[ordinal] : -1;
+        if (position >= 0) {
+            result.set(position);
+        }
+    }
+
+    /**
+     * 第一个不小于（time, ordinal）的下标
+     */
+    private int lowerBound(long time, int ordinal) {
+        int low = 0;
+        int high = timeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time || (times[mid] == time && timeOrdinals[mid] < ordinal)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String extensionOf(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        int dot = filePath.lastIndexOf('.');
+        int slash = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+        return dot > slash && dot < filePath.length() - 1 ? filePath.substring(dot + 1).toLowerCase(Locale.ROOT) : null;
+    }
+}
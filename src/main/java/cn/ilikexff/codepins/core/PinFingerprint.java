@@ -0,0 +1,181 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图钉代码的内容指纹（不可变）
+ * 代替整段代码文本，休眠的图钉只靠"行号 + 指纹"定位，不需要保留 RangeMarker，也就不会让文档常驻内存；
+ * 图钉丢失位置时由 PinAnchorFinder 根据指纹重新定位。
+ *
+ * 指纹以行为单位：每行去除所有空白后计算 FNV-1a 哈希（缩进、换行风格和行尾空格不影响匹配），
+ * 代码整体的哈希是各行哈希的多项式组合，可以在文档上按行滚动计算。除代码本身外还记录：
+ * 上下相邻两行的哈希（上下文）和按 winnowing 从各行哈希中选出的少量特征，用于代码被部分修改后的模糊匹配。
+ */
+final class PinFingerprint {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+    static final long BASE = 0x9e3779b97f4a7c15L; // 行哈希组合的乘数（奇数，按 2^64 取模）
+
+    static final int WINNOW_WINDOW = 4;   // winnowing 窗口（行）
+    static final int MAX_MARKS = 32;      // 最多保留的特征数量
+    static final long MARK_LINE_MASK = 0xffffL; // 特征低 16 位存放该行相对代码起始行的偏移
+
+    final long hash;    // 代码各行哈希的组合
+    final int length;   // 去除空白后的字符数
+    final int lines;    // 覆盖的行数（至少为 1）
+    final long before;  // 上一行的哈希，空行或不存在时为 0
+    final long after;   // 下一行的哈希，空行或不存在时为 0
+    final long[] marks; // winnowing 特征：高 48 位为行哈希，低 16 位为相对行号
+
+    PinFingerprint(long hash, int length, int lines, long before, long after, long[] marks) {
+        this.hash = hash;
+        this.length = length;
+        this.lines = Math.max(1, lines);
+        this.before = before;
+        this.after = after;
+        this.marks = marks != null ? marks : new long[0];
+    }
+
+    /**
+     * 计算文档中 [startLine, endLine] 各行的指纹；行号越界或内容全为空白时返回 null
+     */
+    static PinFingerprint of(Document doc, int startLine, int endLine) {
+        if (doc == null || startLine < 0 || endLine < startLine || endLine >= doc.getLineCount()) {
+            return null;
+        }
+        int first = Math.max(0, startLine - 1);
+        int last = Math.min(doc.getLineCount() - 1, endLine + 1);
+        LineHashes hashes = LineHashes.of(doc, first, last);
+
+        long hash = 0;
+        int length = 0;
+        for (int line = startLine; line <= endLine; line++) {
+            hash = hash * BASE + hashes.hash(line);
+            length += hashes.length(line);
+        }
+        if (length == 0) {
+            return null;
+        }
+        long before = startLine > first ? hashes.contextHash(startLine - 1) : 0;
+        long after = endLine < last ? hashes.contextHash(endLine + 1) : 0;
+        return new PinFingerprint(hash, length, endLine - startLine + 1, before, after,
+                winnow(hashes, startLine, endLine));
+    }
+
+    /**
+     * 判断文档中从 startLine 开始、与本指纹行数相同的几行内容是否一致
+     */
+    boolean matches(Document doc, int startLine) {
+        if (doc == null || startLine < 0 || startLine + lines > doc.getLineCount()) {
+            return false;
+        }
+        LineHashes hashes = LineHashes.of(doc, startLine, startLine + lines - 1);
+        long current = 0;
+        int currentLength = 0;
+        for (int line = startLine; line < startLine + lines; line++) {
+            current = current * BASE + hashes.hash(line);
+            currentLength += hashes.length(line);
+        }
+        return current == hash && currentLength == length;
+    }
+
+    /**
+     * winnowing：在每个连续 WINNOW_WINDOW 行的窗口中选出哈希最小的非空行（相同时取靠后的），
+     * 相邻窗口选中同一行时只记录一次；代码行数不足一个窗口时选取全部非空行
+     */
+    private static long[] winnow(LineHashes hashes, int startLine, int endLine) {
+        List<Long> selected = new ArrayList<>();
+        if (endLine - startLine + 1 <= WINNOW_WINDOW) {
+            for (int line = startLine; line <= endLine; line++) {
+                if (hashes.length(line) > 0) {
+                    selected.add(mark(hashes.hash(line), line - startLine));
+                }
+            }
+        } else {
+            int lastSelected = -1;
+            for (int from = startLine; from + WINNOW_WINDOW - 1 <= endLine && selected.size() < MAX_MARKS; from++) {
+                int best = -1;
+                for (int line = from; line < from + WINNOW_WINDOW; line++) {
+                    if (hashes.length(line) > 0
+                            && (best < 0 || Long.compareUnsigned(hashes.hash(line), hashes.hash(best)) <= 0)) {
+                        best = line;
+                    }
+                }
+                if (best >= 0 && best != lastSelected) {
+                    selected.add(mark(hashes.hash(best), best - startLine));
+                    lastSelected = best;
+                }
+            }
+        }
+        long[] result = new long[selected.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = selected.get(i);
+        }
+        return result;
+    }
+
+    private static long mark(long lineHash, int relativeLine) {
+        return (lineHash & ~MARK_LINE_MASK) | Math.min(relativeLine, (int) MARK_LINE_MASK);
+    }
+
+    /**
+     * 一段连续行的行哈希和非空白字符数
+     */
+    static final class LineHashes {
+        final int first;
+        final long[] hashes;
+        final int[] lengths;
+
+        private LineHashes(int first, int count) {
+            this.first = first;
+            this.hashes = new long[count];
+            this.lengths = new int[count];
+        }
+
+        /**
+         * 计算文档中 [first, last] 各行的哈希（直接读取文档字符序列，不复制文本）
+         */
+        static LineHashes of(Document doc, int first, int last) {
+            LineHashes result = new LineHashes(first, Math.max(0, last - first + 1));
+            CharSequence text = doc.getImmutableCharSequence();
+            for (int line = first; line <= last; line++) {
+                long h = FNV_OFFSET;
+                int length = 0;
+                int end = doc.getLineEndOffset(line);
+                for (int i = doc.getLineStartOffset(line); i < end; i++) {
+                    char c = text.charAt(i);
+                    if (!Character.isWhitespace(c)) {
+                        h = (h ^ c) * FNV_PRIME;
+                        length++;
+                    }
+                }
+                result.hashes[line - first] = h;
+                result.lengths[line - first] = length;
+            }
+            return result;
+        }
+
+        long hash(int line) {
+            return hashes[line - first];
+        }
+
+        int length(int line) {
+            return lengths[line - first];
+        }
+
+        /**
+         * 作为上下文使用的行哈希，空行返回 0
+         */
+        long contextHash(int line) {
+            return lengths[line - first] > 0 ? hashes[line - first] : 0;
+        }
+
+        int last() {
+            return first + hashes.length - 1;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package cn.ilikexff.codepins.core;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图钉模糊匹配（类似 fzf 的子序列打分）
+ * 查询按空白拆成多个词，每个词必须作为子序列出现在文件名、相对路径、备注或标签之一中，取得分最高的字段；
+ * 匹配在单词边界、驼峰处和连续字符上加分，文件名命中、标签完全命中和较新的图钉另有加分。
+ *
+ * 每个图钉的小写字符数组和逐字符边界加分在第一次匹配时计算并缓存，图钉内容变化时才重新计算；
+ * 打分过程不分配对象，结果用固定大小的小顶堆保留前 k 个，不对全部命中排序。
+ * 实例不是线程安全的，由调用方加锁。
+ */
+final class PinFuzzyMatcher {
+
+    private static final int SCORE_MATCH = 16;
+    private static final int SCORE_GAP_START = -3;
+    private static final int SCORE_GAP_EXTENSION = -1;
+    private static final int BONUS_BOUNDARY = 8;      // 分隔符之后或开头
+    private static final int BONUS_CAMEL = 7;         // 小写到大写、字母到数字
+    private static final int BONUS_CONSECUTIVE = 4;
+    private static final int BONUS_FIRST_CHAR_MULTIPLIER = 2;
+
+    private static final int BONUS_FILE_NAME = 24;    // 命中文件名比命中目录更相关
+    private static final int BONUS_TAG_HIT = 32;      // 查询词与某个标签完全相同
+    private static final int BONUS_RECENCY = 24;      // 刚创建的图钉的加分，每 RECENCY_HALF_LIFE 减半
+    private static final long RECENCY_HALF_LIFE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final char TAG_SEPARATOR = '\n';
+
+    private final String basePath; // 项目根目录，路径只匹配其下的相对部分
+    private Map<String, Candidate> candidates = new HashMap<>(); // 图钉 ID -> 缓存的匹配数据
+    private Candidate[] byPosition = new Candidate[0]; // 与快照位置对应
+    private long snapshotVersion = -1;
+
+    // 前 k 个结果的小顶堆（堆顶是目前最差的结果）；空查询时以创建时间作为得分
+    private long[] heapScores = new long[0];
+    private int[] heapPositions = new int[0];
+    private int heapSize;
+
+    PinFuzzyMatcher(@Nullable String basePath) {
+        this.basePath = basePath;
+    }
+
+    /**
+     * 按得分从高到低返回最多 limit 个匹配的图钉，得分相同时按存储顺序
+     * 查询为空时所有图钉都匹配，直接按创建时间从新到旧（时间相同时按存储顺序）
+     */
+    List<PinEntry> match(String query, PinSnapshot snapshot, int limit, long now) {
+        List<PinEntry> pins = snapshot.getPins();
+        updateCandidates(snapshot);
+        char[][] tokens = tokenize(query);
+        prepareHeap(limit);
+
+        if (tokens.length == 0) {
+            // 衰减的新近加分几周后就降为 0，不能用来排序，空查询直接比较时间戳
+            for (int position = 0; position < pins.size(); position++) {
+                offer(pins.get(position).timestamp, position, limit);
+            }
+            return drainHeap(pins);
+        }
+
+        for (int position = 0; position < pins.size(); position++) {
+            Candidate candidate = byPosition[position];
+            candidate.refresh(pins.get(position), basePath);
+            int score = score(candidate, tokens);
+            if (score != Integer.MIN_VALUE) {
+                offer(score + recencyBonus(candidate.timestamp, now), position, limit);
+            }
+        }
+        return drainHeap(pins);
+    }
+
+    /**
+     * 按从好到差取出堆中的结果
+     */
+    private List<PinEntry> drainHeap(List<PinEntry> pins) {
+        List<PinEntry> result = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            result.add(null);
+        }
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result.set(i, pins.get(heapPositions[0]));
+            poll();
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------- 缓存
+
+    /**
+     * 快照变化后按图钉 ID 重建位置映射，已有的缓存数据原样复用
+     */
+    private void updateCandidates(PinSnapshot snapshot) {
+        if (snapshot.getVersion() == snapshotVersion) {
+            return;
+        }
+        List<PinEntry> pins = snapshot.getPins();
+        Map<String, Candidate> next = new HashMap<>(pins.size() * 2);
+        Candidate[] positions = new Candidate[pins.size()];
+        for (int i = 0; i < pins.size(); i++) {
+            PinEntry pin = pins.get(i);
+            Candidate candidate = candidates.get(pin.getId());
+            if (candidate == null) {
+                candidate = new Candidate();
+            }
+            next.put(pin.getId(), candidate);
+            positions[i] = candidate;
+        }
+        candidates = next;
+        byPosition = positions;
+        snapshotVersion = snapshot.getVersion();
+    }
+
+    /**
+     * 一个图钉的匹配数据；note、tags 按引用比较，图钉修改备注或标签后自动重新计算
+     */
+    private static final class Candidate {
+        PinEntry pin;
+        String note;
+        List<String> tags;
+        long timestamp;
+        final Field fileName = new Field();
+        final Field path = new Field();
+        final Field noteField = new Field();
+        final Field tagField = new Field(); // 所有标签以 TAG_SEPARATOR 连接
+
+        void refresh(PinEntry pin, String basePath) {
+            if (this.pin != pin) {
+                this.pin = pin;
+                this.timestamp = pin.timestamp;
+                String relative = pin.filePath;
+                if (relative != null && basePath != null && relative.startsWith(basePath)) {
+                    relative = relative.substring(basePath.length());
+                }
+                path.set(relative);
+                int slash = relative == null ? -1 : Math.max(relative.lastIndexOf('/'), relative.lastIndexOf('\\'));
+                fileName.set(relative == null ? null : relative.substring(slash + 1));
+                note = null;
+                tags = null;
+                noteField.set(null);
+                tagField.set(null);
+            }
+            String currentNote = pin.note;
+            if (currentNote != note) {
+                note = currentNote;
+                noteField.set(currentNote);
+            }
+            List<String> currentTags = pin.getTags();
+            if (currentTags != tags) {
+                tags = currentTags;
+                tagField.set(currentTags == null || currentTags.isEmpty()
+                        ? null : String.join(String.valueOf(TAG_SEPARATOR), currentTags));
+            }
+        }
+    }
+
+    /**
+     * 一个字段的小写字符和每个位置的边界加分
+     */
+    private static final class Field {
+        char[] chars = new char[0];
+        byte[] bonus = new byte[0];
+        int length;
+
+        void set(@Nullable String text) {
+            length = text == null ? 0 : text.length();
+            if (chars.length < length) {
+                chars = new char[length];
+                bonus = new byte[length];
+            }
+            char previous = '/';
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                chars[i] = Character.toLowerCase(c);
+                bonus[i] = (byte) boundaryBonus(previous, c);
+                previous = c;
+            }
+        }
+    }
+
+    private static int boundaryBonus(char previous, char current) {
+        if (!Character.isLetterOrDigit(current)) {
+            return 0;
+        }
+        if (!Character.isLetterOrDigit(previous)) {
+            return BONUS_BOUNDARY;
+        }
+        if (Character.isLowerCase(previous) && Character.isUpperCase(current)
+                || !Character.isDigit(previous) && Character.isDigit(current)) {
+            return BONUS_CAMEL;
+        }
+        return 0;
+    }
+
+    // ---------------------------------------------------------------- 打分
+
+    private static char[][] tokenize(String query) {
+        if (query == null) {
+            return new char[0][];
+        }
+        String[] words = query.trim().toLowerCase().split("\\s+");
+        List<char[]> tokens = new ArrayList<>(words.length);
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                tokens.add(word.toCharArray());
+            }
+        }
+        return tokens.toArray(new char[0][]);
+    }
+
+    /**
+     * 所有查询词得分之和；有查询词不匹配时返回 Integer.MIN_VALUE
+     */
+    private static int score(Candidate candidate, char[][] tokens) {
+        int total = 0;
+        for (char[] token : tokens) {
+            int best = Integer.MIN_VALUE;
+            int fileNameScore = match(candidate.fileName, token);
+            if (fileNameScore != Integer.MIN_VALUE) {
+                best = fileNameScore + BONUS_FILE_NAME;
+            }
+            best = Math.max(best, match(candidate.path, token));
+            best = Math.max(best, match(candidate.noteField, token));
+            int tagScore = match(candidate.tagField, token);
+            if (tagScore != Integer.MIN_VALUE && isTag(candidate.tagField, token)) {
+                tagScore += BONUS_TAG_HIT;
+            }
+            best = Math.max(best, tagScore);
+            if (best == Integer.MIN_VALUE) {
+                return Integer.MIN_VALUE;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * 查询词作为子序列在字段中的得分：先正向找到最早的完整匹配结尾，再反向收缩到最短的起点，
+     * 只对这一段打分（与 fzf v1 相同，不保证全局最优，但为线性时间）
+     */
+    private static int match(Field field, char[] token) {
+        char[] text = field.chars;
+        int length = field.length;
+        if (token.length == 0 || token.length > length) {
+            return token.length == 0 ? 0 : Integer.MIN_VALUE;
+        }
+
+        int t = 0;
+        int end = -1;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == token[t] && ++t == token.length) {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            return Integer.MIN_VALUE;
+        }
+        int start = end - 1;
+        t = token.length - 1;
+        for (int i = end - 1; i >= 0; i--) {
+            if (text[i] == token[t] && --t < 0) {
+                start = i;
+                break;
+            }
+        }
+
+        int score = 0;
+        int consecutive = 0;
+        int firstBonus = 0;
+        boolean inGap = false;
+        t = 0;
+        for (int i = start; i < end; i++) {
+            if (t < token.length && text[i] == token[t]) {
+                int bonus = field.bonus[i];
+                if (consecutive == 0) {
+                    firstBonus = bonus;
+                } else {
+                    // 连续匹配延续第一个字符的边界加分
+                    if (bonus >= BONUS_BOUNDARY && bonus > firstBonus) {
+                        firstBonus = bonus;
+                    }
+                    bonus = Math.max(Math.max(bonus, firstBonus), BONUS_CONSECUTIVE);
+                }
+                score += SCORE_MATCH + (t == 0 ? bonus * BONUS_FIRST_CHAR_MULTIPLIER : bonus);
+                consecutive++;
+                inGap = false;
+                t++;
+            } else {
+                score += inGap ? SCORE_GAP_EXTENSION : SCORE_GAP_START;
+                consecutive = 0;
+                firstBonus = 0;
+                inGap = true;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * 查询词是否与某个标签完全相同（忽略大小写）
+     */
+    private static boolean isTag(Field tags, char[] token) {
+        int start = 0;
+        for (int i = 0; i <= tags.length; i++) {
+            if (i == tags.length || tags.chars[i] == TAG_SEPARATOR) {
+                if (i - start == token.length) {
+                    boolean same = true;
+                    for (int j = 0; j < token.length && same; j++) {
+                        same = tags.chars[start + j] == token[j];
+                    }
+                    if (same) {
+                        return true;
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return false;
+    }
+
+    private static int recencyBonus(long timestamp, long now) {
+        long age = Math.max(0, now - timestamp);
+        return (int) (BONUS_RECENCY * Math.pow(0.5, (double) age / RECENCY_HALF_LIFE));
+    }
+
+    // ---------------------------------------------------------------- 前 k 个
+
+    private void prepareHeap(int limit) {
+        if (heapScores.length < limit) {
+            heapScores = new long[limit];
+            heapPositions = new int[limit];
+        }
+        heapSize = 0;
+    }
+
+    /**
+     * a 是否比 b 差：得分更低，或得分相同但位置更靠后
+     */
+    private boolean worse(int a, int b) {
+        return heapScores[a] < heapScores[b]
+                || heapScores[a] == heapScores[b] && heapPositions[a] > heapPositions[b];
+    }
+
+    private void offer(long score, int position, int limit) {
+        if (limit <= 0) {
+            return;
+        }
+        if (heapSize < limit) {
+            heapScores[heapSize] = score;
+            heapPositions[heapSize] = position;
+            siftUp(heapSize++);
+        } else if (score > heapScores[0]) {
+            // 位置递增，得分相同的新图钉总是更差，不替换
+            heapScores[0] = score;
+            heapPositions[0] = position;
+            siftDown(0);
+        }
+    }
+
+    private void poll() {
+        heapSize--;
+        heapScores[0] = heapScores[heapSize];
+        heapPositions[0] = heapPositions[heapSize];
+        siftDown(0);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!worse(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int right = left + 1;
+            int worst = right < heapSize && worse(right, left) ? right : left;
+            if (!worse(worst, index)) {
+                break;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long score = heapScores[a];
+        heapScores[a] = heapScores[b];
+        heapScores[b] = score;
+        int position = heapPositions[a];
+        heapPositions[a] = heapPositions[b];
+        heapPositions[b] = position;
+    }
+}
@@ -0,0 +1,320 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图钉索引（ProjectPinStore 内部使用）
+ * 按文件分组保存图钉，并为每个文件维护一棵按起始偏移量排序的区间树，
+ * 用于在对数时间内回答"某行的图钉"、"与某范围重叠的图钉"和"某文件的全部图钉"。
+ *
+ * RangeMarker 会随文档编辑移动，因此区间树保存的是某一文档修改戳下的偏移量快照；
+ * 查询时若文档修改戳已变化，则按当前 marker 位置就地刷新偏移量：编辑几乎不会改变图钉的先后顺序，
+ * 顺序不变时只需线性地更新偏移量和子树最大结束位置，只有顺序改变、marker 失效或图钉增删时才重新排序。
+ * 一次编辑后的大量查询（例如一次高亮过程）只需刷新一次。
+ *
+ * 文件表使用并发映射，单个文件的索引自带锁：后台线程（行标记、分析任务）查询时，
+ * 只会与同一文件上的重建或修改短暂互斥，不需要持有存储的写锁。
+ */
+class PinIndex {
+
+    private final Map<String, FileIndex> files = new ConcurrentHashMap<>();
+
+    /**
+     * 添加图钉到索引
+     */
+    void add(PinEntry pin) {
+        if (pin == null || pin.filePath == null) {
+            return;
+        }
+        files.computeIfAbsent(pin.filePath, k -> new FileIndex()).add(pin);
+    }
+
+    /**
+     * 从索引中移除图钉（按实例匹配）
+     */
+    void remove(PinEntry pin) {
+        if (pin == null || pin.filePath == null) {
+            return;
+        }
+        FileIndex fileIndex = files.get(pin.filePath);
+        if (fileIndex != null && fileIndex.remove(pin) && fileIndex.isEmpty()) {
+            files.remove(pin.filePath);
+        }
+    }
+
+    /**
+     * 标记指定文件的区间树需要重建（例如图钉挂接了新的 RangeMarker）
+     */
+    void invalidate(String filePath) {
+        FileIndex fileIndex = files.get(filePath);
+        if (fileIndex != null) {
+            fileIndex.invalidate();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    void clear() {
+        files.clear();
+    }
+
+    /**
+     * 获取指定文件中的所有图钉（按添加顺序）
+     */
+    List<PinEntry> pinsInFile(String filePath) {
+        FileIndex fileIndex = files.get(filePath);
+        return fileIndex == null ? Collections.emptyList() : fileIndex.all();
+    }
+
+    /**
+     * 获取起始位置位于指定行的图钉
+     *
+     * @param filePath 文件路径
+     * @param document 文件对应的文档，用于行号与偏移量换算
+     * @param line     行号（从 0 开始）
+     */
+    List<PinEntry> pinsAtLine(String filePath, Document document, int line) {
+        FileIndex fileIndex = files.get(filePath);
+        if (fileIndex == null || document == null || line < 0 || line >= document.getLineCount()) {
+            return Collections.emptyList();
+        }
+        return fileIndex.startingIn(document.getLineStartOffset(line), document.getLineEndOffset(line));
+    }
+
+    /**
+     * 获取与 [startOffset, endOffset] 重叠的图钉（闭区间，与原有重复检测逻辑一致）
+     */
+    List<PinEntry> pinsOverlapping(String filePath, int startOffset, int endOffset) {
+        FileIndex fileIndex = files.get(filePath);
+        if (fileIndex == null) {
+            return Collections.emptyList();
+        }
+        List<PinEntry> result = new ArrayList<>();
+        fileIndex.overlapping(startOffset, endOffset, result, false);
+        return result;
+    }
+
+    /**
+     * 判断是否存在与 [startOffset, endOffset] 重叠的图钉
+     */
+    boolean hasPinOverlapping(String filePath, int startOffset, int endOffset) {
+        FileIndex fileIndex = files.get(filePath);
+        if (fileIndex == null) {
+            return false;
+        }
+        List<PinEntry> result = new ArrayList<>(1);
+        fileIndex.overlapping(startOffset, endOffset, result, true);
+        return !result.isEmpty();
+    }
+
+    /**
+     * 单个文件的索引
+     * 区间树以"按起始偏移量排序的数组 + 隐式平衡二叉树"的形式存储：
+     * 区间 [lo, hi) 的根节点为其中点，maxEnd[mid] 记录该子树内最大的结束偏移量。
+     */
+    private static final class FileIndex {
+
+        private final List<PinEntry> pins = new ArrayList<>();
+
+        // 以下字段是某一文档修改戳下的快照，仅包含有效的 marker
+        private PinEntry[] sorted = new PinEntry[0];
+        private int[] starts = new int[0];
+        private int[] ends = new int[0];
+        private int[] maxEnd = new int[0];
+        private long builtStamp = -1;
+        private boolean dirty = true;
+
+        synchronized void add(PinEntry pin) {
+            pins.add(pin);
+            dirty = true;
+        }
+
+        synchronized boolean remove(PinEntry pin) {
+            for (int i = 0; i < pins.size(); i++) {
+                if (pins.get(i) == pin) {
+                    pins.remove(i);
+                    dirty = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void invalidate() {
+            dirty = true;
+        }
+
+        synchronized boolean isEmpty() {
+            return pins.isEmpty();
+        }
+
+        synchronized List<PinEntry> all() {
+            return new ArrayList<>(pins);
+        }
+
+        /**
+         * 返回起始偏移量位于 [from, to] 的图钉
+         */
+        synchronized List<PinEntry> startingIn(int from, int to) {
+            ensureBuilt();
+            int i = lowerBound(from);
+            if (i >= sorted.length || starts[i] > to) {
+                return Collections.emptyList();
+            }
+            List<PinEntry> result = new ArrayList<>(2);
+            for (; i < sorted.length && starts[i] <= to; i++) {
+                result.add(sorted[i]);
+            }
+            return result;
+        }
+
+        synchronized void overlapping(int from, int to, List<PinEntry> result, boolean firstOnly) {
+            ensureBuilt();
+            collect(0, sorted.length, from, to, result, firstOnly);
+        }
+
+        private void collect(int lo, int hi, int from, int to, List<PinEntry> result, boolean firstOnly) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            // 子树中所有区间的结束位置都早于查询起点，整棵子树可剪枝
+            if (maxEnd[mid] < from) {
+                return;
+            }
+            collect(lo, mid, from, to, result, firstOnly);
+            if (firstOnly && !result.isEmpty()) {
+                return;
+            }
+            // 起始位置已超过查询终点，右子树更不可能重叠
+            if (starts[mid] > to) {
+                return;
+            }
+            if (ends[mid] >= from) {
+                result.add(sorted[mid]);
+                if (firstOnly) {
+                    return;
+                }
+            }
+            collect(mid + 1, hi, from, to, result, firstOnly);
+        }
+
+        private int lowerBound(int offset) {
+            int lo = 0;
+            int hi = starts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] < offset) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 若图钉集合或文档内容发生变化，按当前 marker 位置更新快照
+         */
+        private void ensureBuilt() {
+            long stamp = currentStamp();
+            if (!dirty && stamp == builtStamp) {
+                return;
+            }
+            if (!dirty && refreshOffsets()) {
+                builtStamp = stamp;
+                return;
+            }
+            rebuild();
+            builtStamp = stamp;
+            dirty = false;
+        }
+
+        /**
+         * 图钉集合未变、只有文档被编辑时按原顺序就地读取 marker 的新偏移量
+         *
+         * @return 是否成功；有 marker 失效或先后顺序改变时返回 false，需要重新排序
+         */
+        private boolean refreshOffsets() {
+            // 失败时数组会由 rebuild 整体替换，这里可以直接覆盖
+            int n = sorted.length;
+            for (int i = 0; i < n; i++) {
+                RangeMarker marker = sorted[i].marker;
+                if (marker == null || !marker.isValid()) {
+                    return false;
+                }
+                starts[i] = marker.getStartOffset();
+                ends[i] = marker.getEndOffset();
+                if (i > 0 && starts[i] < starts[i - 1]) {
+                    return false;
+                }
+            }
+            buildMaxEnd(0, n);
+            return true;
+        }
+
+        /**
+         * 按当前 marker 位置重新排序（图钉增删或顺序改变后）
+         */
+        private void rebuild() {
+            List<PinEntry> valid = new ArrayList<>(pins.size());
+            for (PinEntry pin : pins) {
+                if (pin.marker != null && pin.marker.isValid()) {
+                    valid.add(pin);
+                }
+            }
+
+            // 排序键：高 32 位为起始偏移量，低 32 位为原下标（起始位置相同的图钉保持添加顺序）
+            int n = valid.size();
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) valid.get(i).marker.getStartOffset() << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            sorted = new PinEntry[n];
+            starts = new int[n];
+            ends = new int[n];
+            for (int i = 0; i < n; i++) {
+                PinEntry pin = valid.get((int) keys[i]);
+                RangeMarker marker = pin.marker;
+                sorted[i] = pin;
+                starts[i] = marker.getStartOffset();
+                ends[i] = marker.getEndOffset();
+            }
+            maxEnd = new int[n];
+            buildMaxEnd(0, n);
+        }
+
+        private int buildMaxEnd(int lo, int hi) {
+            if (lo >= hi) {
+                return Integer.MIN_VALUE;
+            }
+            int mid = (lo + hi) >>> 1;
+            int max = Math.max(ends[mid], Math.max(buildMaxEnd(lo, mid), buildMaxEnd(mid + 1, hi)));
+            maxEnd[mid] = max;
+            return max;
+        }
+
+        /**
+         * 同一文件的图钉共享同一个 Document，取任一有效 marker 的文档修改戳
+         */
+        private long currentStamp() {
+            for (PinEntry pin : pins) {
+                if (pin.marker != null && pin.marker.isValid()) {
+                    return pin.marker.getDocument().getModificationStamp();
+                }
+            }
+            return -1;
+        }
+    }
+}
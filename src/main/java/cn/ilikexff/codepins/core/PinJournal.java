@@ -0,0 +1,695 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写的图钉存储（ProjectPinStore 保存各项目的图钉，PinStateService 保存全局标签和尚未迁移的旧图钉）
+ *
+ * 磁盘上由两个文件组成：
+ * - pins.snapshot：某一时刻全部图钉与全局标签的紧凑快照，只通过"写临时文件 + 原子替换"更新；
+ * - pins.journal：快照之后的每一次增删改、移动操作，以追加方式写入。
+ * 每条记录带长度和 CRC32 校验，加载时先读快照再重放日志，遇到不完整或校验失败的记录即停止，
+ * 并把日志截断到最后一条完整记录。
+ *
+ * 修改先在内存中生效，记录攒在缓冲区里，短暂延迟后由后台线程批量写入并 fsync，
+ * 每次 fsync 构成一个持久化边界：崩溃最多丢失最后一批尚未落盘的操作，不会留下半条记录。
+ * 日志增长到超过快照大小（且不小于 COMPACT_MIN_BYTES）时，把当前状态写成新快照并清空日志。
+ * 快照和日志头部都带有代数，快照替换后、日志清空前崩溃时，旧代数的日志会在加载时被丢弃。
+ *
+ * 内存中的图钉归日志所有：put 保存调用方对象的副本，读取返回副本，调用方修改后需要重新 put，
+ * 后台线程序列化快照时不会看到修改到一半的对象。缓冲区中的记录只在写入磁盘（或被新快照覆盖）之后才丢弃，
+ * 写入失败时保留并稍后重试。
+ */
+final class PinJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x43505331; // "CPS1"
+    private static final int JOURNAL_MAGIC = 0x43504a31;  // "CPJ1"
+    private static final int HEADER_SIZE = 12;            // magic + generation
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private static final long FLUSH_DELAY_MS = 300;
+    private static final long RETRY_DELAY_MS = 5000;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+    // 记录类型
+    private static final byte OP_PUT = 1;        // 新增或整体更新图钉
+    private static final byte OP_REMOVE = 2;     // 删除图钉
+    private static final byte OP_MOVE = 3;       // 移动图钉到另一个图钉之前（旧版本写入，现在顺序由排序键决定，只在重放时读取）
+    private static final byte OP_ORDER = 4;      // 整体重排（同上）
+    private static final byte OP_CLEAR = 5;      // 清空图钉
+    private static final byte OP_TAG_ADD = 6;    // 添加全局标签
+    private static final byte OP_TAG_REMOVE = 7; // 删除全局标签
+    private static final byte OP_REMOVE_ALL = 8; // 批量删除图钉
+
+    private static final ScheduledExecutorService executor =
+            AppExecutorUtil.createBoundedScheduledExecutorService("CodePins Pin Journal", 1);
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+
+    // 内存状态（以 this 为锁）
+    private final Map<String, PinState> pins = new LinkedHashMap<>(); // 图钉 ID -> 图钉，按写入顺序；更新保持原位置
+    private final Set<String> globalTags = new LinkedHashSet<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean flushScheduled;
+    private long generation;
+
+    // 磁盘状态（以 ioLock 为锁）
+    private final Object ioLock = new Object();
+    private FileChannel journal;
+    private long snapshotSize;
+    private boolean journalStale; // 上次写入或压缩失败，日志末尾可能不完整或属于旧代数，下次刷盘直接写快照
+    private boolean closed;
+
+    private PinJournal(Path directory) {
+        this.snapshotFile = directory.resolve("pins.snapshot");
+        this.journalFile = directory.resolve("pins.journal");
+    }
+
+    /**
+     * 打开（或创建）指定目录下的存储，并加载快照和日志
+     */
+    static PinJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PinJournal store = new PinJournal(directory);
+        store.load();
+        return store;
+    }
+
+    /**
+     * 磁盘上是否还没有任何数据（用于判断是否需要从旧版 XML 迁移）
+     */
+    synchronized boolean isEmpty() {
+        return pins.isEmpty() && globalTags.isEmpty() && snapshotSize == 0;
+    }
+
+    // ---------------------------------------------------------------- 读取
+
+    /**
+     * 全部图钉的副本
+     */
+    synchronized List<PinState> getPins() {
+        List<PinState> result = new ArrayList<>(pins.size());
+        for (PinState pin : pins.values()) {
+            result.add(pin.copy());
+        }
+        return result;
+    }
+
+    /**
+     * 图钉的副本，修改后需要调用 {@link #put} 写回
+     */
+    synchronized @Nullable PinState getPin(String id) {
+        PinState pin = pins.get(id);
+        return pin != null ? pin.copy() : null;
+    }
+
+    synchronized Set<String> getGlobalTags() {
+        return new LinkedHashSet<>(globalTags);
+    }
+
+    synchronized int size() {
+        return pins.size();
+    }
+
+    // ---------------------------------------------------------------- 修改
+
+    /**
+     * 新增或更新图钉（已存在的 ID 保持原位置）
+     */
+    synchronized void put(PinState pin) {
+        PinState copy = pin.copy();
+        applyPut(copy);
+        append(OP_PUT, out -> writePin(out, copy));
+    }
+
+    synchronized @Nullable PinState remove(String id) {
+        PinState removed = applyRemove(id);
+        if (removed != null) {
+            append(OP_REMOVE, out -> writeString(out, id));
+        }
+        return removed;
+    }
+
+    /**
+     * 批量删除图钉，写成一条记录
+     */
+    synchronized void removeAll(Collection<String> ids) {
+        Set<String> targets = new HashSet<>(ids);
+        if (applyRemoveAll(targets)) {
+            append(OP_REMOVE_ALL, out -> {
+                out.writeInt(targets.size());
+                for (String id : targets) {
+                    writeString(out, id);
+                }
+            });
+        }
+    }
+
+    synchronized void clear() {
+        pins.clear();
+        append(OP_CLEAR, out -> { });
+    }
+
+    synchronized void addGlobalTag(String tag) {
+        if (globalTags.add(tag)) {
+            append(OP_TAG_ADD, out -> writeString(out, tag));
+        }
+    }
+
+    synchronized void removeGlobalTag(String tag) {
+        if (globalTags.remove(tag)) {
+            append(OP_TAG_REMOVE, out -> writeString(out, tag));
+        }
+    }
+
+    /**
+     * 批量导入图钉和标签后立即写成快照（用于迁移）
+     */
+    void importAll(Collection<PinState> states, Collection<String> tags) throws IOException {
+        synchronized (this) {
+            for (PinState state : states) {
+                applyPut(state.copy());
+            }
+            globalTags.addAll(tags);
+        }
+        compact();
+    }
+
+    // ---------------------------------------------------------------- 内存操作
+
+    // LinkedHashMap 同时负责顺序和按 ID 查找：增删改都是常数时间，覆盖已有的键保持原位置
+
+    private void applyPut(PinState pin) {
+        pins.put(pin.id, pin);
+    }
+
+    private @Nullable PinState applyRemove(String id) {
+        return pins.remove(id);
+    }
+
+    private boolean applyRemoveAll(Set<String> ids) {
+        boolean changed = false;
+        for (String id : ids) {
+            changed |= pins.remove(id) != null;
+        }
+        return changed;
+    }
+
+    /**
+     * 重放旧版本的移动记录（顺序现在由排序键决定，不再写入此类记录），需要重建顺序
+     */
+    private boolean applyMove(String id, @Nullable String beforeId) {
+        if (id.equals(beforeId) || !pins.containsKey(id)) {
+            return false;
+        }
+        PinState pin = pins.remove(id);
+        if (beforeId == null || !pins.containsKey(beforeId)) {
+            pins.put(id, pin);
+            return true;
+        }
+        List<PinState> ordered = new ArrayList<>(pins.values());
+        pins.clear();
+        for (PinState other : ordered) {
+            if (other.id.equals(beforeId)) {
+                pins.put(id, pin);
+            }
+            pins.put(other.id, other);
+        }
+        return true;
+    }
+
+    /**
+     * 重放旧版本的整体重排记录
+     */
+    private void applyOrder(List<String> ids) {
+        Map<String, PinState> ordered = new LinkedHashMap<>();
+        for (String id : ids) {
+            PinState pin = pins.get(id);
+            if (pin != null) {
+                ordered.putIfAbsent(id, pin);
+            }
+        }
+        for (PinState pin : pins.values()) {
+            ordered.putIfAbsent(pin.id, pin);
+        }
+        pins.clear();
+        pins.putAll(ordered);
+    }
+
+    // ---------------------------------------------------------------- 写入
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 把记录追加到待写缓冲区，并安排一次延迟刷盘（调用方持有 this 锁）
+     */
+    private void append(byte op, RecordWriter writer) {
+        try {
+            writeRecord(pending, op, writer);
+        } catch (IOException e) {
+            // 写入内存缓冲区不会失败
+            throw new IllegalStateException(e);
+        }
+        if (!flushScheduled && !closed) {
+            flushScheduled = true;
+            executor.schedule(this::flushQuietly, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // 记录仍在缓冲区中，稍后重试
+            System.err.println("[CodePins] 写入图钉日志失败: " + e.getMessage());
+            synchronized (this) {
+                if (!flushScheduled && !closed) {
+                    flushScheduled = true;
+                    executor.schedule(this::flushQuietly, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把缓冲的记录写入日志并 fsync，必要时压缩
+     * 记录在 fsync 之后才从缓冲区移除
+     */
+    void flush() throws IOException {
+        synchronized (ioLock) {
+            byte[] batch;
+            synchronized (this) {
+                flushScheduled = false;
+                batch = pending.toByteArray();
+            }
+            if (journal == null || (batch.length == 0 && !journalStale)) {
+                return;
+            }
+            if (journalStale) {
+                // 日志末尾可能留有半条记录，继续追加的记录在加载时会被丢弃，改为整体写快照
+                compact();
+                return;
+            }
+            long position = journal.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    position += journal.write(buffer, position);
+                }
+                journal.force(false);
+            } catch (IOException | RuntimeException e) {
+                journalStale = true;
+                throw e;
+            }
+            synchronized (this) {
+                discardPending(batch.length);
+            }
+
+            if (journal.size() > Math.max(COMPACT_MIN_BYTES, snapshotSize)) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * 移除缓冲区开头已经落盘的 length 个字节，保留之后追加的记录（调用方持有 this 锁）
+     */
+    private void discardPending(int length) {
+        if (pending.size() == length) {
+            pending.reset();
+            return;
+        }
+        byte[] remaining = pending.toByteArray();
+        pending.reset();
+        pending.write(remaining, length, remaining.length - length);
+    }
+
+    /**
+     * 把当前内存状态写成新快照，然后清空日志
+     */
+    void compact() throws IOException {
+        synchronized (ioLock) {
+            byte[] snapshot;
+            long nextGeneration;
+            int covered;
+            synchronized (this) {
+                // 快照包含了缓冲区中尚未写出的所有修改，这些记录在快照落盘后才丢弃
+                covered = pending.size();
+                nextGeneration = generation + 1;
+                snapshot = serializeSnapshot(nextGeneration);
+            }
+
+            Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // 新快照已落盘，旧代数的日志作废；在新日志头写好之前不能再向旧日志追加
+            journalStale = true;
+            synchronized (this) {
+                generation = nextGeneration;
+                discardPending(covered);
+            }
+            snapshotSize = snapshot.length;
+            resetJournal(nextGeneration);
+            journalStale = false;
+            System.out.println("[CodePins] 图钉日志已压缩，快照大小 " + snapshot.length + " 字节");
+        }
+    }
+
+    /**
+     * 刷盘并关闭日志文件
+     */
+    void close() {
+        synchronized (ioLock) {
+            try {
+                flush();
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                System.err.println("[CodePins] 关闭图钉日志失败: " + e.getMessage());
+            }
+            journal = null;
+            synchronized (this) {
+                closed = true;
+            }
+        }
+    }
+
+    private byte[] serializeSnapshot(long snapshotGeneration) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + pins.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(snapshotGeneration);
+        for (PinState pin : pins.values()) {
+            writeRecord(bytes, OP_PUT, o -> writePin(o, pin));
+        }
+        for (String tag : globalTags) {
+            writeRecord(bytes, OP_TAG_ADD, o -> writeString(o, tag));
+        }
+        return bytes.toByteArray();
+    }
+
+    private void resetJournal(long journalGeneration) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        journal.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).putLong(journalGeneration).flip();
+        while (header.hasRemaining()) {
+            journal.write(header, header.position());
+        }
+        journal.force(false);
+    }
+
+    /**
+     * 记录格式：[int 长度][int CRC32][byte 类型 + 内容]
+     */
+    private static void writeRecord(ByteArrayOutputStream target, byte op, RecordWriter writer) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(op);
+        writer.write(out);
+        out.flush();
+
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        DataOutputStream header = new DataOutputStream(target);
+        header.writeInt(bytes.length);
+        header.writeInt((int) crc.getValue());
+        header.flush();
+        target.write(bytes);
+    }
+
+    private static void writePin(DataOutputStream out, PinState pin) throws IOException {
+        writeString(out, pin.id);
+        writeString(out, pin.filePath);
+        out.writeInt(pin.line);
+        writeString(out, pin.note);
+        out.writeLong(pin.timestamp);
+        writeString(out, pin.author);
+        out.writeBoolean(pin.isBlock);
+        out.writeInt(pin.startOffset);
+        out.writeInt(pin.endOffset);
+        List<String> tags = pin.tags != null ? pin.tags : new ArrayList<>();
+        out.writeInt(tags.size());
+        for (String tag : tags) {
+            writeString(out, tag);
+        }
+        // 内容指纹追加在末尾，旧版本写入的记录没有这一段
+        out.writeInt(pin.codeLines);
+        if (pin.codeLines > 0) {
+            out.writeLong(pin.codeHash);
+            out.writeInt(pin.codeLength);
+            out.writeLong(pin.codeBefore);
+            out.writeLong(pin.codeAfter);
+            long[] marks = pin.codeMarks != null ? pin.codeMarks : new long[0];
+            out.writeInt(marks.length);
+            for (long mark : marks) {
+                out.writeLong(mark);
+            }
+        }
+        writeString(out, pin.orderKey);
+    }
+
+    private static PinState readPin(DataInputStream in) throws IOException {
+        PinState pin = new PinState();
+        pin.id = readString(in);
+        pin.filePath = readString(in);
+        pin.line = in.readInt();
+        pin.note = readString(in);
+        pin.timestamp = in.readLong();
+        pin.author = readString(in);
+        pin.isBlock = in.readBoolean();
+        pin.startOffset = in.readInt();
+        pin.endOffset = in.readInt();
+        int tagCount = in.readInt();
+        for (int i = 0; i < tagCount; i++) {
+            pin.tags.add(readString(in));
+        }
+        if (in.available() > 0) {
+            pin.codeLines = in.readInt();
+            if (pin.codeLines > 0) {
+                pin.codeHash = in.readLong();
+                pin.codeLength = in.readInt();
+                if (in.available() > 0) {
+                    pin.codeBefore = in.readLong();
+                    pin.codeAfter = in.readLong();
+                    pin.codeMarks = new long[in.readInt()];
+                    for (int i = 0; i < pin.codeMarks.length; i++) {
+                        pin.codeMarks[i] = in.readLong();
+                    }
+                } else {
+                    // 早期的整段文本哈希与按行组合的哈希不兼容，丢弃后在下次挂接时重新记录
+                    pin.codeLines = 0;
+                }
+            }
+        }
+        if (in.available() > 0) {
+            pin.orderKey = readString(in);
+        }
+        return pin;
+    }
+
+    /**
+     * 字符串以 UTF-8 字节长度 + 内容写入，-1 表示 null（不受 writeUTF 的 64KB 限制）
+     */
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------------------------------------------------------------- 加载
+
+    private void load() throws IOException {
+        long startTime = System.currentTimeMillis();
+        long snapshotGeneration = -1;
+        if (Files.exists(snapshotFile)) {
+            snapshotSize = Files.size(snapshotFile);
+            try (InputStream stream = new BufferedInputStream(Files.newInputStream(snapshotFile))) {
+                DataInputStream in = new DataInputStream(stream);
+                if (in.readInt() == SNAPSHOT_MAGIC) {
+                    snapshotGeneration = in.readLong();
+                    replay(in, HEADER_SIZE);
+                } else {
+                    System.err.println("[CodePins] 图钉快照格式无法识别，已忽略: " + snapshotFile);
+                }
+            } catch (EOFException e) {
+                System.err.println("[CodePins] 图钉快照不完整，已忽略: " + snapshotFile);
+            }
+        }
+        generation = Math.max(snapshotGeneration, 0);
+
+        int replayed = 0;
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long journalGeneration = readJournalGeneration();
+        if (journalGeneration >= 0 && journalGeneration >= snapshotGeneration) {
+            generation = journalGeneration;
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(journal.position(HEADER_SIZE))));
+            long validEnd = replay(in, HEADER_SIZE);
+            if (validEnd < journal.size()) {
+                System.err.println("[CodePins] 图钉日志末尾有不完整的记录，已截断到 " + validEnd + " 字节");
+                journal.truncate(validEnd);
+                journal.force(false);
+            }
+            replayed = (int) (validEnd - HEADER_SIZE);
+        } else {
+            // 没有日志、日志损坏或日志早于快照（压缩时在清空日志前中断）
+            resetJournal(generation);
+        }
+        System.out.println("[CodePins] 已加载图钉存储: " + pins.size() + " 个图钉，重放日志 " + replayed
+                + " 字节，耗时 " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private long readJournalGeneration() throws IOException {
+        if (journal.size() < HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        journal.read(header, 0);
+        header.flip();
+        return header.getInt() == JOURNAL_MAGIC ? header.getLong() : -1;
+    }
+
+    /**
+     * 依次读取并应用记录，遇到文件结束、长度非法或校验失败时停止
+     *
+     * @return 最后一条完整记录之后的偏移量
+     */
+    private long replay(DataInputStream in, long position) throws IOException {
+        while (true) {
+            int length;
+            int checksum;
+            byte[] payload;
+            try {
+                length = in.readInt();
+                checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    return position;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                return position;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                return position;
+            }
+            try {
+                applyRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[CodePins] 跳过无法解析的图钉日志记录: " + e.getMessage());
+            }
+            position += 8 + length;
+        }
+    }
+
+    private void applyRecord(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case OP_PUT:
+                applyPut(readPin(in));
+                break;
+            case OP_REMOVE:
+                applyRemove(readString(in));
+                break;
+            case OP_MOVE:
+                applyMove(readString(in), readString(in));
+                break;
+            case OP_ORDER:
+                int count = in.readInt();
+                List<String> ids = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ids.add(readString(in));
+                }
+                applyOrder(ids);
+                break;
+            case OP_REMOVE_ALL:
+                int removeCount = in.readInt();
+                Set<String> removeIds = new HashSet<>();
+                for (int i = 0; i < removeCount; i++) {
+                    removeIds.add(readString(in));
+                }
+                applyRemoveAll(removeIds);
+                break;
+            case OP_CLEAR:
+                pins.clear();
+                break;
+            case OP_TAG_ADD:
+                globalTags.add(readString(in));
+                break;
+            case OP_TAG_REMOVE:
+                globalTags.remove(readString(in));
+                break;
+            default:
+                throw new IOException("未知的记录类型: " + op);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按文档维护的"已钉行"位图（ProjectPinStore 内部使用）
+ * 行标记等按行查询的场景只需判断某一位，而不必对每个 PSI 叶子节点遍历图钉并换算行号。
+ *
+ * 位图在首次查询时由该文件的图钉构建，之后随文档编辑增量维护：
+ * 行内插入无需处理；其他编辑将编辑区之后的位整体平移，只重新计算编辑涉及的几行。
+ * 图钉增删改时（项目存储的变更事件）标记对应文件失效，下次查询时重建。
+ * 每个文档的监听器注册在自己的 Disposable 上，挂在项目存储之下：文件关闭、文档被替换或项目关闭时注销。
+ */
+class PinLineCache {
+
+    private final PinIndex index; // 所属项目存储的图钉索引
+    private final Disposable parent; // 所属项目存储，销毁时注销全部文档监听
+    private final Map<String, LineSet> files = new HashMap<>();
+
+    PinLineCache(PinIndex index, Disposable parent) {
+        this.index = index;
+        this.parent = parent;
+    }
+
+    /**
+     * 判断指定行是否有图钉起始
+     */
+    synchronized boolean isLinePinned(String filePath, Document document, int line) {
+        if (filePath == null || document == null || line < 0) {
+            return false;
+        }
+        return lineSet(filePath, document).lines.get(line);
+    }
+
+    /**
+     * 获取指定文件已钉行的位图副本
+     */
+    synchronized BitSet pinnedLines(String filePath, Document document) {
+        if (filePath == null || document == null) {
+            return new BitSet();
+        }
+        return (BitSet) lineSet(filePath, document).lines.clone();
+    }
+
+    /**
+     * 图钉变更时使对应文件的位图失效
+     */
+    synchronized void pinsChanged(PinChangeEvent event) {
+        switch (event.getType()) {
+            case MOVED:
+                // 仅列表顺序变化，不影响行
+                break;
+            case RELOADED:
+                for (LineSet lineSet : files.values()) {
+                    lineSet.dirty = true;
+                }
+                break;
+            default:
+                PinEntry pin = event.getPin();
+                LineSet lineSet = pin != null ? files.get(pin.filePath) : null;
+                if (lineSet != null) {
+                    lineSet.dirty = true;
+                }
+        }
+    }
+
+    /**
+     * 文件的图钉挂接了新的 marker 时调用
+     */
+    synchronized void invalidate(String filePath) {
+        LineSet lineSet = files.get(filePath);
+        if (lineSet != null) {
+            lineSet.dirty = true;
+        }
+    }
+
+    /**
+     * 文件关闭时调用：丢弃位图并注销文档监听，不再引用该文档
+     */
+    synchronized void release(String filePath) {
+        LineSet lineSet = files.remove(filePath);
+        if (lineSet != null) {
+            Disposer.dispose(lineSet.disposable);
+        }
+    }
+
+    private LineSet lineSet(String filePath, Document document) {
+        LineSet lineSet = files.get(filePath);
+        if (lineSet == null || lineSet.document != document) {
+            if (lineSet != null) {
+                // 文件对应了新的文档对象，旧文档的监听随之注销
+                Disposer.dispose(lineSet.disposable);
+            }
+            lineSet = new LineSet(filePath, document);
+            files.put(filePath, lineSet);
+            Disposer.register(parent, lineSet.disposable);
+            document.addDocumentListener(lineSet, lineSet.disposable);
+        }
+        // 文档修改戳不一致说明错过了编辑事件，整体重建
+        if (lineSet.dirty || lineSet.stamp != document.getModificationStamp()) {
+            lineSet.rebuild();
+        }
+        return lineSet;
+    }
+
+    /**
+     * 单个文档的已钉行集合
+     */
+    private final class LineSet implements DocumentListener {
+        final String filePath;
+        final Document document;
+        final Disposable disposable = Disposer.newDisposable("CodePins pinned lines");
+        final BitSet lines = new BitSet();
+        long stamp = -1;
+        boolean dirty = true;
+
+        LineSet(String filePath, Document document) {
+            this.filePath = filePath;
+            this.document = document;
+        }
+
+        /**
+         * 根据当前 marker 位置重新计算全部位
+         */
+        void rebuild() {
+            lines.clear();
+            markLines(index.pinsInFile(filePath), 0, document.getTextLength());
+            stamp = document.getModificationStamp();
+            dirty = false;
+        }
+
+        /**
+         * 标记起始偏移量位于 [from, to] 的图钉所在行
+         */
+        private void markLines(List<PinEntry> pins, int from, int to) {
+            int length = document.getTextLength();
+            for (PinEntry pin : pins) {
+                RangeMarker marker = pin.marker;
+                if (marker == null || !marker.isValid() || marker.getDocument() != document) {
+                    continue;
+                }
+                int start = marker.getStartOffset();
+                if (start >= from && start <= to && start <= length) {
+                    lines.set(document.getLineNumber(start));
+                }
+            }
+        }
+
+        @Override
+        public void documentChanged(@NotNull DocumentEvent event) {
+            synchronized (PinLineCache.this) {
+                if (dirty || files.get(filePath) != this) {
+                    return;
+                }
+
+                int oldLines = StringUtil.countNewLines(event.getOldFragment());
+                int newLines = StringUtil.countNewLines(event.getNewFragment());
+                if (oldLines == 0 && newLines == 0 && event.getOldLength() == 0) {
+                    // 行内插入既不会让图钉跨行，也不会使 marker 失效
+                    stamp = document.getModificationStamp();
+                    return;
+                }
+
+                int offset = event.getOffset();
+                int changeLine = document.getLineNumber(Math.min(offset, document.getTextLength()));
+                int delta = newLines - oldLines;
+
+                // 编辑区之后的行整体平移，编辑涉及的行重新计算
+                BitSet tail = lines.get(changeLine + oldLines + 1, Math.max(lines.length(), changeLine + oldLines + 1));
+                lines.clear(changeLine, Math.max(lines.length(), changeLine));
+                for (int bit = tail.nextSetBit(0); bit >= 0; bit = tail.nextSetBit(bit + 1)) {
+                    lines.set(changeLine + oldLines + 1 + delta + bit);
+                }
+
+                int fromOffset = document.getLineStartOffset(changeLine);
+                int lastLine = Math.min(changeLine + newLines, document.getLineCount() - 1);
+                int toOffset = document.getLineEndOffset(Math.max(lastLine, changeLine));
+                markLines(index.pinsOverlapping(filePath, fromOffset, toOffset), fromOffset, toOffset);
+                stamp = document.getModificationStamp();
+            }
+        }
+    }
+}
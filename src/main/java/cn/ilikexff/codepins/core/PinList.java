@@ -0,0 +1,138 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 写时复制的图钉列表（ProjectPinStore 内部使用）
+ * 当前内容始终是一个不可变快照，通过 volatile 字段发布；修改方法之间互斥，
+ * 每次修改复制一份列表、在副本上修改后发布为新快照，并递增版本号。
+ *
+ * 读取（snapshot/get/size/indexOf）只读 volatile 字段，从不加锁，不会被修改阻塞，也不会看到修改到一半的列表；
+ * 批量操作（addAll/removeAll/replaceAll）只复制一次，连续多次修改应尽量合并为批量操作。
+ */
+final class PinList {
+
+    private volatile PinSnapshot snapshot = PinSnapshot.EMPTY;
+
+    /**
+     * 当前快照（不加锁）
+     */
+    PinSnapshot snapshot() {
+        return snapshot;
+    }
+
+    synchronized void add(PinEntry pin) {
+        List<PinEntry> next = copy(1);
+        next.add(pin);
+        publish(next);
+    }
+
+    synchronized void add(int position, PinEntry pin) {
+        List<PinEntry> next = copy(1);
+        next.add(position, pin);
+        publish(next);
+    }
+
+    synchronized PinEntry remove(int position) {
+        List<PinEntry> next = copy(0);
+        PinEntry removed = next.remove(position);
+        publish(next);
+        return removed;
+    }
+
+    synchronized PinEntry set(int position, PinEntry pin) {
+        List<PinEntry> next = copy(0);
+        PinEntry previous = next.set(position, pin);
+        publish(next);
+        return previous;
+    }
+
+    /**
+     * 按当前顺序移动图钉
+     *
+     * @return 被移动的图钉
+     */
+    synchronized PinEntry move(int fromIndex, int toIndex) {
+        List<PinEntry> next = copy(0);
+        PinEntry pin = next.remove(fromIndex);
+        next.add(toIndex, pin);
+        publish(next);
+        return pin;
+    }
+
+    /**
+     * 批量追加图钉（只复制一次、只递增一次版本号）
+     */
+    synchronized void addAll(Collection<PinEntry> newPins) {
+        if (!newPins.isEmpty()) {
+            List<PinEntry> next = copy(newPins.size());
+            next.addAll(newPins);
+            publish(next);
+        }
+    }
+
+    /**
+     * 批量删除图钉（按 equals 匹配，一次遍历，只复制一次、只递增一次版本号）
+     *
+     * @return 实际被删除的图钉（列表中的实例）
+     */
+    synchronized List<PinEntry> removeAll(Set<PinEntry> toRemove) {
+        List<PinEntry> current = snapshot.getPins();
+        List<PinEntry> next = new ArrayList<>(current.size());
+        List<PinEntry> removed = new ArrayList<>();
+        for (PinEntry pin : current) {
+            (toRemove.contains(pin) ? removed : next).add(pin);
+        }
+        if (!removed.isEmpty()) {
+            publish(next);
+        }
+        return removed;
+    }
+
+    /**
+     * 整体替换列表内容
+     */
+    synchronized void replaceAll(Collection<PinEntry> newPins) {
+        publish(new ArrayList<>(newPins));
+    }
+
+    synchronized void clear() {
+        publish(new ArrayList<>());
+    }
+
+    /**
+     * 图钉在列表中的位置（按 equals 匹配），不存在时返回 -1
+     */
+    int indexOf(PinEntry pin) {
+        return snapshot.getPins().indexOf(pin);
+    }
+
+    PinEntry get(int position) {
+        return snapshot.getPins().get(position);
+    }
+
+    int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * 当前内容的可修改副本（只在锁内调用）
+     */
+    private List<PinEntry> copy(int extraCapacity) {
+        List<PinEntry> current = snapshot.getPins();
+        List<PinEntry> next = new ArrayList<>(current.size() + extraCapacity);
+        next.addAll(current);
+        return next;
+    }
+
+    /**
+     * 发布新快照；next 交出后不再修改（只在锁内调用）
+     */
+    private void publish(List<PinEntry> next) {
+        snapshot = new PinSnapshot(snapshot.getVersion() + 1, Collections.unmodifiableList(next));
+    }
+}
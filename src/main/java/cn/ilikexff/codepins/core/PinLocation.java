@@ -0,0 +1,56 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+
+/**
+ * 图钉在文档中某一时刻的位置（见 PinStorage.locatePin）
+ * 只保存文档和偏移量，不持有 RangeMarker：用完即丢，休眠图钉读取代码后仍保持休眠，
+ * 文档在没有编辑器和其他引用时可以被回收。文档之后被编辑时偏移量不会随之更新。
+ */
+public final class PinLocation {
+
+    private final Document document;
+    private final int startOffset;
+    private final int endOffset;
+
+    PinLocation(Document document, TextRange range) {
+        this.document = document;
+        this.startOffset = range.getStartOffset();
+        this.endOffset = range.getEndOffset();
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * 起始行号（从 0 开始）
+     */
+    public int getStartLine() {
+        return document.getLineNumber(Math.min(startOffset, document.getTextLength()));
+    }
+
+    /**
+     * 结束行号（从 0 开始）
+     */
+    public int getEndLine() {
+        return document.getLineNumber(Math.min(endOffset, document.getTextLength()));
+    }
+
+    /**
+     * 图钉范围内的代码（单行图钉的范围为空）
+     */
+    public String getText() {
+        int length = document.getTextLength();
+        return document.getText(new TextRange(Math.min(startOffset, length), Math.min(endOffset, length)));
+    }
+}
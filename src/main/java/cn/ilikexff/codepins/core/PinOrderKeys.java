@@ -0,0 +1,144 @@
+package cn.ilikexff.codepins.core;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图钉自定义顺序的排序键（ProjectPinStore 内部使用）
+ *
+ * 排序键是 62 进制小数的各位数字（"0-9A-Za-z"，按 ASCII 顺序排列，字符串比较即数值比较），
+ * 不以 '0' 结尾。任意两个不同的键之间总能生成一个新键，因此移动一个图钉只需要改写它自己的键，
+ * 不需要重写其他图钉的记录。在同一位置反复插入或不断追加到末尾会让键缓慢变长，
+ * 超过 MAX_LENGTH 时由调用方用 spread 为全部图钉重新分配一次。
+ */
+final class PinOrderKeys {
+
+    private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+
+    static final int MAX_LENGTH = 32; // 超过此长度时整体重新分配
+
+    private PinOrderKeys() {
+    }
+
+    /**
+     * 生成严格位于 before 和 after 之间的键
+     *
+     * @param before 前一个键，为 null 表示列表开头
+     * @param after  后一个键，为 null 表示列表末尾
+     * @throws IllegalArgumentException before 不小于 after 或键格式不正确时
+     */
+    static String between(@Nullable String before, @Nullable String after) {
+        String low = before != null ? before : "";
+        if (!isValid(low, true) || (after != null && !isValid(after, false))) {
+            throw new IllegalArgumentException("无效的排序键: " + before + ", " + after);
+        }
+        if (after == null) {
+            return next(low);
+        }
+        if (low.compareTo(after) >= 0) {
+            throw new IllegalArgumentException("排序键顺序错误: " + before + " >= " + after);
+        }
+        return midpoint(low, after);
+    }
+
+    /**
+     * 追加到末尾的键：把第一个不是 'z' 的位加一并截断，每多一位可以再追加 61 次
+     * （取中点的话每一位只能追加约 6 次）
+     */
+    private static String next(String key) {
+        int n = 0;
+        while (n < key.length() && key.charAt(n) == 'z') {
+            n++;
+        }
+        if (n == key.length()) {
+            return key.isEmpty() ? String.valueOf(DIGITS.charAt(BASE / 2)) : key + DIGITS.charAt(1);
+        }
+        return key.substring(0, n) + DIGITS.charAt(DIGITS.indexOf(key.charAt(n)) + 1);
+    }
+
+    /**
+     * 为 count 个图钉生成均匀分布的递增键（用于首次分配或整体重排），键长度为 O(log count)
+     */
+    static List<String> spread(int count) {
+        List<String> keys = new ArrayList<>(count);
+        if (count <= 0) {
+            return keys;
+        }
+        int width = 1;
+        long range = BASE;
+        while (range <= count) {
+            width++;
+            range *= BASE;
+        }
+        long step = range / (count + 1);
+        char[] digits = new char[width];
+        for (int i = 1; i <= count; i++) {
+            long value = step * i;
+            for (int d = width - 1; d >= 0; d--) {
+                digits[d] = DIGITS.charAt((int) (value % BASE));
+                value /= BASE;
+            }
+            int length = width;
+            while (digits[length - 1] == '0') {
+                length--;
+            }
+            keys.add(new String(digits, 0, length));
+        }
+        return keys;
+    }
+
+    /**
+     * 判断一组键是否严格递增（null 视为无效）
+     */
+    static boolean isAscending(List<String> keys) {
+        String previous = null;
+        for (String key : keys) {
+            if (key == null || !isValid(key, false) || (previous != null && previous.compareTo(key) >= 0)) {
+                return false;
+            }
+            previous = key;
+        }
+        return true;
+    }
+
+    /**
+     * 小数中点：a < b，a 可以为空串（表示 0），b 为 null 表示 1
+     */
+    private static String midpoint(String a, @Nullable String b) {
+        if (b != null) {
+            // 跳过公共前缀（a 较短时按 '0' 补齐）
+            int n = 0;
+            while (n < b.length() && (n < a.length() ? a.charAt(n) : '0') == b.charAt(n)) {
+                n++;
+            }
+            if (n > 0) {
+                return b.substring(0, n) + midpoint(a.length() > n ? a.substring(n) : "", b.substring(n));
+            }
+        }
+        int digitA = a.isEmpty() ? 0 : DIGITS.indexOf(a.charAt(0));
+        int digitB = b != null ? DIGITS.indexOf(b.charAt(0)) : BASE;
+        if (digitB - digitA > 1) {
+            return String.valueOf(DIGITS.charAt((digitA + digitB + 1) / 2));
+        }
+        // 首位相邻：b 还有后续位时取 b 的首位即可，否则保留 a 的首位并在后面继续取中点
+        if (b != null && b.length() > 1) {
+            return b.substring(0, 1);
+        }
+        return DIGITS.charAt(digitA) + midpoint(a.length() > 1 ? a.substring(1) : "", null);
+    }
+
+    private static boolean isValid(String key, boolean allowEmpty) {
+        if (key.isEmpty()) {
+            return allowEmpty;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (DIGITS.indexOf(key.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return key.charAt(key.length() - 1) != '0';
+    }
+}
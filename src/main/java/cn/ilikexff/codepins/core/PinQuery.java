@@ -0,0 +1,253 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索框的结构化查询
+ * 例如 {@code tag:perf author:alice file:*.java age:<7d block:true "cache miss"}：
+ * <ul>
+ *     <li>tag:名称 —— 包含该标签（忽略大小写）</li>
+ *     <li>author:名称 —— 创建者（忽略大小写）</li>
+ *     <li>file:模式 —— 文件名匹配通配符 * 和 ?；模式中含 / 时匹配相对路径；没有通配符时按包含匹配</li>
+ *     <li>age:&lt;7d / age:&gt;30d —— 创建时间在此之内 / 之前，单位 h、d、w；省略比较符等同于 &lt;</li>
+ *     <li>block:true / block:false —— 代码块图钉 / 单行图钉</li>
+ *     <li>"带空格的短语" —— 作为一个整体出现在备注、路径、标签或作者中</li>
+ * </ul>
+ * 其余词（包括无法识别的 key:value）按全文搜索处理，所有条件同时满足（与）。
+ * 值可以用引号括起来以包含空格，如 {@code author:"Zhang San"}。
+ */
+final class PinQuery {
+
+    final List<String> tags = new ArrayList<>();      // 小写
+    final List<String> authors = new ArrayList<>();   // 小写
+    final List<String> files = new ArrayList<>();     // 原样的文件模式
+    final List<String> phrases = new ArrayList<>();   // 小写
+    long createdAfter = Long.MIN_VALUE;                // 创建时间下界（含），按查询时刻换算
+    long createdBefore = Long.MAX_VALUE;               // 创建时间上界（不含）
+    Boolean block;                                     // null 表示不限
+    String text = "";                                  // 交给全文索引的关键字（含短语中的词）
+    boolean invalid;                                   // 有无法满足的条件（如非法的 age 值），结果为空
+
+    private PinQuery() {
+    }
+
+    /**
+     * 是否只包含全文关键字（可以直接交给全文索引）
+     */
+    boolean isPlainText() {
+        return tags.isEmpty() && authors.isEmpty() && files.isEmpty() && phrases.isEmpty()
+                && createdAfter == Long.MIN_VALUE && createdBefore == Long.MAX_VALUE && block == null && !invalid;
+    }
+
+    /**
+     * 解析查询
+     *
+     * @param now 当前时间，用于换算 age 条件
+     */
+    static PinQuery parse(String query, long now) {
+        PinQuery result = new PinQuery();
+        StringBuilder text = new StringBuilder();
+        for (String[] term : split(query)) {
+            String key = term[0];
+            String value = term[1];
+            boolean quoted = term[2] != null;
+            if (key == null) {
+                if (quoted) {
+                    result.phrases.add(value.toLowerCase(Locale.ROOT));
+                }
+                text.append(value).append(' ');
+                continue;
+            }
+            if (!result.addField(key.toLowerCase(Locale.ROOT), value, now)) {
+                text.append(key).append(':').append(value).append(' ');
+            }
+        }
+        result.text = text.toString().trim();
+        return result;
+    }
+
+    /**
+     * 处理一个 key:value 条件；不认识的键返回 false，按普通关键字处理
+     */
+    private boolean addField(String key, String value, long now) {
+        switch (key) {
+            case "tag":
+                tags.add(value.trim().toLowerCase(Locale.ROOT));
+                return true;
+            case "author":
+                authors.add(value.trim().toLowerCase(Locale.ROOT));
+                return true;
+            case "file":
+                files.add(value.trim());
+                return true;
+            case "block":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    boolean wanted = Boolean.parseBoolean(value);
+                    if (block != null && block != wanted) {
+                        invalid = true;
+                    }
+                    block = wanted;
+                } else {
+                    invalid = true;
+                }
+                return true;
+            case "age":
+                addAge(value.trim(), now);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void addAge(String value, long now) {
+        boolean older = value.startsWith(">");
+        String amount = value.startsWith("<") || older ? value.substring(1) : value;
+        long millis = parseDuration(amount);
+        if (millis < 0) {
+            invalid = true;
+            return;
+        }
+        long boundary = now - millis;
+        if (older) {
+            createdBefore = Math.min(createdBefore, boundary);
+        } else {
+            createdAfter = Math.max(createdAfter, boundary);
+        }
+    }
+
+    /**
+     * 解析 7d、12h、2w 这样的时长，无法解析时返回 -1
+     */
+    private static long parseDuration(String text) {
+        if (text.length() < 2) {
+            return -1;
+        }
+        long unit;
+        switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 'h':
+                unit = 60L * 60 * 1000;
+                break;
+            case 'd':
+                unit = 24L * 60 * 60 * 1000;
+                break;
+            case 'w':
+                unit = 7L * 24 * 60 * 60 * 1000;
+                break;
+            default:
+                return -1;
+        }
+        try {
+            long amount = Long.parseLong(text.substring(0, text.length() - 1));
+            return amount < 0 || amount > Long.MAX_VALUE / unit ? -1 : amount * unit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 按空白切分查询，引号内的空白保留
+     *
+     * @return 每项为 {键（没有时为 null）, 值, 值是否带引号（非 null 表示带引号）}
+     */
+    private static List<String[]> split(String query) {
+        List<String[]> terms = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(query.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            String key = null;
+            int start = i;
+            while (i < length && !Character.isWhitespace(query.charAt(i)) && query.charAt(i) != '"') {
+                if (query.charAt(i) == ':' && key == null && i > start) {
+                    key = query.substring(start, i);
+                    start = i + 1;
+                }
+                i++;
+            }
+            if (i < length && query.charAt(i) == '"' && i == start) {
+                // 带引号的值或短语
+                int close = query.indexOf('"', i + 1);
+                int end = close < 0 ? length : close;
+                String value = query.substring(i + 1, end);
+                i = close < 0 ? length : close + 1;
+                if (!value.trim().isEmpty()) {
+                    terms.add(new String[]{key, value, ""});
+                }
+                continue;
+            }
+            String value = query.substring(start, i);
+            if (key != null && value.isEmpty()) {
+                // "tag:" 这样没有值的条件按普通关键字处理
+                value = key + ":";
+                key = null;
+            }
+            if (!value.isEmpty()) {
+                terms.add(new String[]{key, value, null});
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 文件模式是否包含通配符（否则按包含匹配）
+     */
+    static boolean hasWildcard(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    /**
+     * 通配符文件模式对应的扩展名（形如 *.java、src/*.kt），可以直接查扩展名索引；否则返回 null
+     * 没有通配符的模式按包含匹配，最后一个点之后的内容可能只是扩展名的一部分，调用方需先用 {@link #hasWildcard} 判断
+     */
+    static String extensionOf(String pattern) {
+        int dot = pattern.lastIndexOf('.');
+        if (dot < 0 || dot == pattern.length() - 1) {
+            return null;
+        }
+        String extension = pattern.substring(dot + 1);
+        if (extension.indexOf('*') >= 0 || extension.indexOf('?') >= 0 || extension.indexOf('/') >= 0) {
+            return null;
+        }
+        return extension.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 形如 *.java 的模式：扩展名索引的结果就是最终结果，不需要逐个图钉确认
+     */
+    static boolean isExtensionOnly(String pattern) {
+        return pattern.startsWith("*.") && extensionOf(pattern) != null
+                && pattern.indexOf('*', 1) < 0 && pattern.indexOf('?') < 0;
+    }
+
+    /**
+     * 把文件模式转换为正则（忽略大小写）；没有通配符时按包含匹配
+     */
+    static Pattern compileFilePattern(String pattern) {
+        if (!hasWildcard(pattern)) {
+            return Pattern.compile(Pattern.quote(pattern), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+        boolean matchPath = pattern.indexOf('/') >= 0;
+        StringBuilder regex = new StringBuilder();
+        if (matchPath && !pattern.startsWith("/")) {
+            regex.append("(?:.*/)?");
+        }
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(matchPath ? ".*" : "[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
@@ -0,0 +1,184 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 结构化查询的执行计划（ProjectPinStore 内部使用）
+ * 标签条件在标签位图索引中、作者、扩展名、代码块和创建时间条件在字段索引中取出位图，按位图大小从小到大求交，
+ * 然后用全文索引求交剩余的关键字，最后只对剩下的图钉检查索引无法表达的条件（文件通配符、短语）。
+ * 任何一步结果为空时立即结束。
+ */
+final class PinQueryPlan {
+
+    /**
+     * 一个索引查找步骤
+     */
+    private static final class Lookup {
+        final String description;
+        final BitSet matches;
+
+        Lookup(String description, BitSet matches) {
+            this.description = description;
+            this.matches = matches;
+        }
+    }
+
+    private final List<Lookup> lookups = new ArrayList<>();
+    private final String text;
+    private final List<String> predicateDescriptions = new ArrayList<>();
+    private final List<Predicate<PinEntry>> predicates = new ArrayList<>();
+    private final boolean empty;
+
+    private PinQueryPlan(PinQuery query, PinFieldIndex fields, PinTagIndex tags, PinSnapshot snapshot, String basePath) {
+        this.text = query.text;
+        boolean empty = query.invalid;
+
+        for (String tag : query.tags) {
+            lookups.add(new Lookup("tag:" + tag, tags.positionsIgnoreCase(tag, snapshot)));
+        }
+        for (String author : query.authors) {
+            lookups.add(new Lookup("author:" + author, fields.author(author)));
+        }
+        if (query.block != null) {
+            lookups.add(new Lookup("block:" + query.block, fields.block(query.block)));
+        }
+        if (query.createdAfter != Long.MIN_VALUE || query.createdBefore != Long.MAX_VALUE) {
+            if (query.createdAfter >= query.createdBefore) {
+                empty = true;
+            } else {
+                lookups.add(new Lookup("age", fields.createdBetween(query.createdAfter, query.createdBefore)));
+            }
+        }
+        for (String file : query.files) {
+            // 只有通配符模式要求完整匹配文件名，扩展名才确定；没有通配符时按包含匹配（如 Pin.ja），不能查扩展名索引
+            String extension = PinQuery.hasWildcard(file) ? PinQuery.extensionOf(file) : null;
+            if (extension != null) {
+                lookups.add(new Lookup("ext:" + extension, fields.extension(extension)));
+            }
+            if (extension == null || !PinQuery.isExtensionOnly(file)) {
+                predicateDescriptions.add("file:" + file);
+                predicates.add(fileMatcher(file, basePath));
+            }
+        }
+        for (String phrase : query.phrases) {
+            predicateDescriptions.add("\"" + phrase + "\"");
+            predicates.add(pin -> containsPhrase(pin, phrase));
+        }
+
+        // 最便宜（结果最少）的索引先求交
+        lookups.sort(Comparator.comparingInt(lookup -> lookup.matches.cardinality()));
+        this.empty = empty;
+    }
+
+    /**
+     * 编译查询（在字段索引的锁内调用，字段索引已按 snapshot 更新）
+     */
+    static PinQueryPlan compile(PinQuery query, PinFieldIndex fields, PinTagIndex tags, PinSnapshot snapshot,
+                                String basePath) {
+        return new PinQueryPlan(query, fields, tags, snapshot, basePath);
+    }
+
+    /**
+     * 执行计划
+     *
+     * @param textSearch 全文索引查询，返回快照中位置的位图
+     * @return 匹配图钉在快照中位置的位图
+     */
+    BitSet execute(PinSnapshot snapshot, Function<String, BitSet> textSearch) {
+        BitSet result = new BitSet(snapshot.size());
+        if (empty) {
+            return result;
+        }
+        result.set(0, snapshot.size());
+        for (Lookup lookup : lookups) {
+            result.and(lookup.matches);
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        if (!text.isEmpty()) {
+            result.and(textSearch.apply(text));
+        }
+        if (!predicates.isEmpty()) {
+            List<PinEntry> pins = snapshot.getPins();
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                PinEntry pin = pins.get(i);
+                for (Predicate<PinEntry> predicate : predicates) {
+                    if (!predicate.test(pin)) {
+                        result.clear(i);
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计划的文字描述（步骤顺序和每个索引的结果数），用于调试
+     */
+    @Override
+    public String toString() {
+        if (empty) {
+            return "empty";
+        }
+        StringBuilder plan = new StringBuilder();
+        for (Lookup lookup : lookups) {
+            plan.append(lookup.description).append('(').append(lookup.matches.cardinality()).append(") -> ");
+        }
+        if (!text.isEmpty()) {
+            plan.append("text:").append(text).append(" -> ");
+        }
+        for (String description : predicateDescriptions) {
+            plan.append("check ").append(description).append(" -> ");
+        }
+        return plan.append("result").toString();
+    }
+
+    private static Predicate<PinEntry> fileMatcher(String file, String basePath) {
+        Pattern pattern = PinQuery.compileFilePattern(file);
+        boolean wildcard = PinQuery.hasWildcard(file);
+        boolean matchPath = file.indexOf('/') >= 0;
+        return pin -> {
+            String path = relativePath(pin.filePath, basePath);
+            if (!wildcard) {
+                return pattern.matcher(path).find();
+            }
+            String target = matchPath ? path : path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+            return pattern.matcher(target).matches();
+        };
+    }
+
+    private static boolean containsPhrase(PinEntry pin, String phrase) {
+        if (contains(pin.note, phrase) || contains(pin.filePath, phrase) || contains(pin.author, phrase)) {
+            return true;
+        }
+        for (String tag : pin.getTags()) {
+            if (contains(tag, phrase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String text, String phrase) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(phrase);
+    }
+
+    private static String relativePath(String filePath, String basePath) {
+        if (filePath == null) {
+            return "";
+        }
+        if (basePath != null && filePath.startsWith(basePath)) {
+            return filePath.substring(basePath.length());
+        }
+        return filePath;
+    }
+}
@@ -0,0 +1,127 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图钉后台恢复任务（ProjectPinStore.reload 的第二阶段）
+ * 按文件分组、分批校验文件是否存在，并只为已在编辑器中打开或有未保存修改的文件挂接 RangeMarker，
+ * 其余文件的图钉保持未解析状态，等文件打开或导航时再挂接，避免启动时批量加载文档。
+ */
+class PinRestoreTask extends Task.Backgroundable {
+
+    private static final int FILES_PER_BATCH = 50;
+
+    private final ProjectPinStore store;
+    private final List<PinEntry> entries;
+    private final int generation;
+
+    PinRestoreTask(@Nullable Project project, ProjectPinStore store, List<PinEntry> entries, int generation) {
+        super(project, "CodePins: 恢复图钉", true);
+        this.store = store;
+        this.entries = entries;
+        this.generation = generation;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        long startTime = System.currentTimeMillis();
+        indicator.setIndeterminate(false);
+
+        // 按文件分组，同一文件只查找一次
+        Map<String, List<PinEntry>> byFile = new LinkedHashMap<>();
+        for (PinEntry entry : entries) {
+            byFile.computeIfAbsent(entry.filePath, k -> new ArrayList<>()).add(entry);
+        }
+
+        List<String> paths = new ArrayList<>(byFile.keySet());
+        int resolvedCount = 0;
+        int missingCount = 0;
+
+        for (int from = 0; from < paths.size(); from += FILES_PER_BATCH) {
+            indicator.checkCanceled();
+            if (!store.isCurrentRestore(generation)) {
+                return;
+            }
+
+            List<String> batch = paths.subList(from, Math.min(from + FILES_PER_BATCH, paths.size()));
+            List<String> resolvedPaths = new ArrayList<>();
+            List<PinEntry> missing = new ArrayList<>();
+
+            ReadAction.run(() -> {
+                for (String path : batch) {
+                    List<PinEntry> filePins = byFile.get(path);
+                    VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(path);
+                    if (vFile == null || !vFile.isValid()) {
+                        missing.addAll(filePins);
+                        continue;
+                    }
+
+                    Document doc = loadedDocument(vFile);
+                    if (doc == null) {
+                        continue;
+                    }
+                    boolean attached = false;
+                    for (PinEntry entry : filePins) {
+                        attached |= entry.attachMarker(doc);
+                    }
+                    if (attached) {
+                        resolvedPaths.add(path);
+                    }
+                }
+            });
+
+            resolvedCount += resolvedPaths.size();
+            missingCount += missing.size();
+            if (!resolvedPaths.isEmpty() || !missing.isEmpty()) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    store.onFilesMissing(missing, generation);
+                    store.onPinsResolved(resolvedPaths, generation);
+                });
+            }
+
+            int done = Math.min(from + FILES_PER_BATCH, paths.size());
+            indicator.setFraction((double) done / paths.size());
+            indicator.setText2(done + " / " + paths.size());
+        }
+
+        System.out.println("[CodePins] 图钉恢复完成: " + entries.size() + " 个图钉, "
+                + paths.size() + " 个文件, 已挂接 " + resolvedCount + " 个文件, 缺失图钉 "
+                + missingCount + " 个, 耗时 " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * 只返回在任一项目的编辑器中打开、或有未保存修改的文档，不触发新的文档加载
+     * 仅被缓存的文档不挂接：RangeMarker 会让本可回收的文档常驻内存，这些图钉保持休眠即可
+     */
+    @Nullable
+    private static Document loadedDocument(VirtualFile vFile) {
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        Document cached = documentManager.getCachedDocument(vFile);
+        if (cached != null && documentManager.isDocumentUnsaved(cached)) {
+            return cached;
+        }
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed() && FileEditorManager.getInstance(project).isFileOpen(vFile)) {
+                return cached != null ? cached : documentManager.getDocument(vFile);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,674 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 图钉全文搜索的倒排索引（ProjectPinStore 内部使用）
+ * 索引备注、相对路径的各级目录和文件名、标签、作者，以及可选的图钉代码片段。
+ * 英文和数字按单词切分并拆出驼峰的各个部分，中日韩文字按单字和相邻两字切分；词项统一小写。
+ *
+ * 查询按同样的规则切分，每个查询词都要命中（与）：少于 3 个字符的查询词按词项的前一、两个字符做前缀匹配，
+ * 3 个字符及以上的查询词先用三元组找出候选词项，再确认包含关系，可以匹配词项中间的部分。
+ * 结果是快照中位置的位图，调用方按位取出图钉即可保持存储顺序，查询过程不遍历全部图钉。
+ *
+ * 图钉变化只登记到待处理表（不阻塞存储的锁），在下一次查询时增量更新：
+ * 单个图钉的增删改只处理该图钉，整体变化时按 ID 与快照比对，内容未变的图钉不重新切分。
+ * 图钉代码被编辑不会产生图钉事件：索引了代码片段的文档上注册文档监听器，编辑时只记下文档，
+ * 下一次搜索代码时只重新切分这些文档中的图钉，不遍历全部图钉。
+ * 移除的文档先汇总，每个受影响的倒排列表只压缩一遍，批量删除不会对每个图钉逐个扫描倒排列表。
+ * 重新切分的图钉保留原文档编号，快照中位置的映射按快照版本缓存，只在图钉列表本身变化（增删、移动）后的第一次查询时重建，
+ * 修改备注、标签或代码不需要重建。
+ */
+final class PinSearchIndex {
+
+    private static final int GRAM = 3; // 中间匹配使用的 n 元组长度
+    private static final int MAX_CODE_LENGTH = 4000; // 代码片段最多索引的字符数
+
+    private final String basePath; // 项目根目录，路径只索引其下的相对部分
+
+    // 待处理的变化（以 pending 为锁），值为 null 表示图钉已删除
+    private final Map<String, PinEntry> pending = new LinkedHashMap<>();
+    private boolean needsSync = true; // 需要与快照整体比对（以 pending 为锁）
+    private final Set<Document> editedDocuments = new HashSet<>(); // 代码片段所在文档中被编辑过的（以 pending 为锁）
+
+    // 以下字段以 this 为锁
+    private final Map<String, Doc> docs = new HashMap<>(); // 按图钉 ID
+    private final Map<String, Postings> terms = new HashMap<>(); // 词项 -> 倒排列表
+    private final Map<String, Set<Postings>> termsByKey = new HashMap<>(); // 前一、两个字符或三元组 -> 词项
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private int nextId;
+    private boolean includeCode;
+    private final Map<Document, Set<String>> codePinsByDocument = new HashMap<>(); // 索引了代码片段的文档 -> 图钉 ID
+
+    // 注册在 codePinsByDocument 中的文档上，只记下被编辑的文档
+    private final DocumentListener codeListener = new DocumentListener() {
+        @Override
+        public void documentChanged(@NotNull DocumentEvent event) {
+            synchronized (pending) {
+                editedDocuments.add(event.getDocument());
+            }
+        }
+    };
+
+    private long positionsVersion = -1; // positionByDoc 对应的快照版本
+    private int[] positionByDoc = new int[0]; // 文档编号 -> 快照中的位置，-1 表示不在快照中
+
+    private String cachedQuery; // 上一次查询及结果，同一快照上重复查询时直接返回
+    private BitSet cachedResult;
+
+    PinSearchIndex(@Nullable String basePath) {
+        this.basePath = basePath;
+    }
+
+    /**
+     * 登记图钉变化（在存储的锁内调用，只记录，不切分）
+     */
+    void pinsChanged(PinChangeEvent event) {
+        synchronized (pending) {
+            switch (event.getType()) {
+                case MOVED:
+                    // 顺序变化由快照版本反映
+                    break;
+                case RELOADED:
+                    needsSync = true;
+                    pending.clear();
+                    break;
+                case REMOVED:
+                    if (!needsSync) {
+                        pending.put(event.getPin().getId(), null);
+                    }
+                    break;
+                default:
+                    if (!needsSync) {
+                        pending.put(event.getPin().getId(), event.getPin());
+                    }
+            }
+        }
+    }
+
+    /**
+     * 在快照中查找匹配的图钉
+     *
+     * @param query       查询文本
+     * @param snapshot    当前图钉快照
+     * @param includeCode 是否同时搜索图钉的代码片段
+     * @return 匹配图钉在快照中位置的位图（调用方可以修改）
+     */
+    synchronized BitSet search(String query, PinSnapshot snapshot, boolean includeCode) {
+        boolean changed = applyPending(snapshot, includeCode);
+        updatePositions(snapshot);
+
+        if (!changed && query.equals(cachedQuery)) {
+            return (BitSet) cachedResult.clone();
+        }
+
+        List<String> tokens = new ArrayList<>();
+        tokenize(query, tokens, false);
+        BitSet result = new BitSet(snapshot.size());
+        if (tokens.isEmpty()) {
+            result.set(0, snapshot.size());
+        } else {
+            for (int i = 0; i < tokens.size(); i++) {
+                BitSet matches = match(tokens.get(i));
+                if (i == 0) {
+                    result = matches;
+                } else {
+                    result.and(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+        }
+
+        cachedQuery = query;
+        cachedResult = result;
+        return (BitSet) result.clone();
+    }
+
+    // ---------------------------------------------------------------- 增量维护
+
+    /**
+     * 处理待处理的变化，返回索引是否有变化
+     */
+    private boolean applyPending(PinSnapshot snapshot, boolean includeCode) {
+        Map<String, PinEntry> changes;
+        boolean sync;
+        synchronized (pending) {
+            if (this.includeCode != includeCode) {
+                needsSync = true;
+            }
+            sync = needsSync;
+            changes = sync || pending.isEmpty() ? null : new LinkedHashMap<>(pending);
+            needsSync = false;
+            pending.clear();
+        }
+        this.includeCode = includeCode;
+
+        if (sync) {
+            syncWith(snapshot);
+            return true;
+        }
+        boolean changed = includeCode && refreshCode();
+        if (changes == null) {
+            return changed;
+        }
+        // 删除的图钉一次性移出倒排列表，新增和修改的图钉重新切分（修改的保留原文档编号）
+        List<String> removed = new ArrayList<>();
+        List<PinEntry> updated = new ArrayList<>();
+        for (Map.Entry<String, PinEntry> change : changes.entrySet()) {
+            PinEntry pin = change.getValue();
+            if (pin == null) {
+                removed.add(change.getKey());
+            } else {
+                Doc doc = docs.get(pin.getId());
+                if (doc == null || !doc.matches(pin, includeCode)) {
+                    updated.add(pin); // 只挂接、重新定位 marker 时内容可能不变
+                }
+            }
+        }
+        removeDocs(removed);
+        reindex(updated);
+        return !removed.isEmpty() || !updated.isEmpty() || changed;
+    }
+
+    /**
+     * 与快照整体比对：新增和内容变化的图钉重新切分，快照中已不存在的图钉移除
+     */
+    private void syncWith(PinSnapshot snapshot) {
+        synchronized (pending) {
+            editedDocuments.clear(); // 下面按修改戳比对全部图钉
+        }
+        Set<String> alive = new HashSet<>(snapshot.size() * 2);
+        List<PinEntry> stale = new ArrayList<>();
+        for (PinEntry pin : snapshot.getPins()) {
+            alive.add(pin.getId());
+            Doc doc = docs.get(pin.getId());
+            if (doc == null || !doc.matches(pin, includeCode)) {
+                stale.add(pin);
+            }
+        }
+        List<String> obsolete = new ArrayList<>();
+        for (String id : docs.keySet()) {
+            if (!alive.contains(id)) {
+                obsolete.add(id);
+            }
+        }
+        removeDocs(obsolete);
+        reindex(stale);
+        System.out.println("[CodePins] 搜索索引已同步: " + docs.size() + " 个图钉, " + terms.size() + " 个词项");
+    }
+
+    /**
+     * 代码所在文档被编辑过的图钉重新切分（只在搜索代码时调用），只检查文档监听器记下的文档
+     *
+     * @return 是否有图钉被重新切分
+     */
+    private boolean refreshCode() {
+        List<Document> edited;
+        synchronized (pending) {
+            if (editedDocuments.isEmpty()) {
+                return false;
+            }
+            edited = new ArrayList<>(editedDocuments);
+            editedDocuments.clear();
+        }
+        List<PinEntry> pins = new ArrayList<>();
+        for (Document document : edited) {
+            Set<String> ids = codePinsByDocument.get(document);
+            if (ids == null) {
+                continue;
+            }
+            for (String id : ids) {
+                Doc doc = docs.get(id);
+                if (doc != null && !doc.matches(doc.codePin, true)) {
+                    pins.add(doc.codePin);
+                }
+            }
+        }
+        if (pins.isEmpty()) {
+            return false;
+        }
+        reindex(pins);
+        return true;
+    }
+
+    /**
+     * marker 所在文档的修改戳，marker 不存在或已失效时为 -1
+     */
+    private static long stampOf(@Nullable RangeMarker marker) {
+        return marker != null && marker.isValid() ? marker.getDocument().getModificationStamp() : -1;
+    }
+
+    private void updatePositions(PinSnapshot snapshot) {
+        if (positionsVersion == snapshot.getVersion()) {
+            return;
+        }
+        List<PinEntry> pins = snapshot.getPins();
+        int[] docByPosition = new int[pins.size()];
+        for (int i = 0; i < pins.size(); i++) {
+            Doc doc = docs.get(pins.get(i).getId());
+            if (doc == null) {
+                // 错过了变化事件（例如替换为新 ID 的图钉），补上
+                doc = indexPin(pins.get(i), false);
+            }
+            docByPosition[i] = doc.id;
+        }
+        if (positionByDoc.length < nextId) {
+            positionByDoc = new int[Math.max(nextId, positionByDoc.length * 2)];
+        }
+        Arrays.fill(positionByDoc, -1);
+        for (int i = 0; i < docByPosition.length; i++) {
+            positionByDoc[docByPosition[i]] = i;
+        }
+        positionsVersion = snapshot.getVersion();
+        cachedQuery = null;
+    }
+
+    /**
+     * 索引单个图钉
+     *
+     * @param force 为 false 时内容与上次索引时相同的图钉不重新切分
+     */
+    private Doc indexPin(PinEntry pin, boolean force) {
+        Doc doc = docs.get(pin.getId());
+        if (doc != null && !force && doc.matches(pin, includeCode)) {
+            return doc;
+        }
+        reindex(List.of(pin));
+        return docs.get(pin.getId());
+    }
+
+    /**
+     * 重新切分图钉：已在索引中的图钉先一次性移出倒排列表，再以原文档编号加入，新图钉分配新编号
+     */
+    private void reindex(Collection<PinEntry> pins) {
+        if (pins.isEmpty()) {
+            return;
+        }
+        List<Doc> previous = new ArrayList<>();
+        for (PinEntry pin : pins) {
+            Doc doc = docs.get(pin.getId());
+            if (doc != null) {
+                previous.add(doc);
+            }
+        }
+        unlink(previous);
+        for (PinEntry pin : pins) {
+            Doc doc = docs.get(pin.getId());
+            addDoc(pin, doc != null ? doc.id : (freeIds.isEmpty() ? nextId++ : freeIds.pop()));
+        }
+    }
+
+    /**
+     * 切分图钉并以编号 id 加入倒排列表（图钉此前不在倒排列表中）
+     */
+    private Doc addDoc(PinEntry pin, int id) {
+        Set<String> words = new HashSet<>();
+        tokenize(pin.note, words, true);
+        tokenize(relativePath(pin.filePath), words, true);
+        tokenize(pin.author, words, true);
+        for (String tag : pin.getTags()) {
+            tokenize(tag, words, true);
+        }
+        if (includeCode) {
+            tokenize(codeOf(pin), words, true);
+        }
+
+        Doc doc = new Doc(id, pin, includeCode, words.toArray(new String[0]));
+        docs.put(pin.getId(), doc);
+        if (doc.codeDocument != null) {
+            codePinsByDocument.computeIfAbsent(doc.codeDocument, document -> {
+                document.addDocumentListener(codeListener);
+                return new HashSet<>();
+            }).add(pin.getId());
+        }
+        for (String word : doc.terms) {
+            Postings postings = terms.get(word);
+            if (postings == null) {
+                postings = new Postings(word);
+                terms.put(word, postings);
+                for (String key : keys(word)) {
+                    termsByKey.computeIfAbsent(key, k -> new HashSet<>()).add(postings);
+                }
+            }
+            postings.add(doc.id);
+        }
+        return doc;
+    }
+
+    /**
+     * 批量移除图钉并回收文档编号
+     */
+    private void removeDocs(Collection<String> ids) {
+        List<Doc> removed = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Doc doc = docs.remove(id);
+            if (doc != null) {
+                removed.add(doc);
+            }
+        }
+        unlink(removed);
+        for (Doc doc : removed) {
+            if (doc.id < positionByDoc.length) {
+                positionByDoc[doc.id] = -1;
+            }
+            freeIds.push(doc.id);
+        }
+    }
+
+    /**
+     * 把文档移出倒排列表：先汇总文档编号和受影响的词项，每个倒排列表只压缩一遍；
+     * 文档所在文档中不再有索引了代码的图钉时注销文档监听器
+     */
+    private void unlink(Collection<Doc> removedDocs) {
+        if (removedDocs.isEmpty()) {
+            return;
+        }
+        BitSet removed = new BitSet();
+        Set<Postings> touched = new HashSet<>();
+        for (Doc doc : removedDocs) {
+            removed.set(doc.id);
+            for (String word : doc.terms) {
+                Postings postings = terms.get(word);
+                if (postings != null) {
+                    touched.add(postings);
+                }
+            }
+            if (doc.codeDocument != null) {
+                Set<String> ids = codePinsByDocument.get(doc.codeDocument);
+                if (ids != null && ids.remove(doc.pinId) && ids.isEmpty()) {
+                    codePinsByDocument.remove(doc.codeDocument);
+                    doc.codeDocument.removeDocumentListener(codeListener);
+                }
+            }
+        }
+        for (Postings postings : touched) {
+            postings.removeAll(removed);
+            if (postings.size == 0) {
+                terms.remove(postings.word);
+                for (String key : keys(postings.word)) {
+                    Set<Postings> owners = termsByKey.get(key);
+                    if (owners != null && owners.remove(postings) && owners.isEmpty()) {
+                        termsByKey.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 注销所有文档监听器（存储销毁时调用）
+     */
+    synchronized void dispose() {
+        for (Document document : codePinsByDocument.keySet()) {
+            document.removeDocumentListener(codeListener);
+        }
+        codePinsByDocument.clear();
+    }
+
+    private String relativePath(String filePath) {
+        if (filePath != null && basePath != null && filePath.startsWith(basePath)) {
+            return filePath.substring(basePath.length());
+        }
+        return filePath;
+    }
+
+    /**
+     * 已挂接 marker 的图钉的代码片段（截断到 MAX_CODE_LENGTH）
+     */
+    private static @Nullable String codeOf(PinEntry pin) {
+        RangeMarker marker = pin.marker;
+        if (marker == null) {
+            return null;
+        }
+        return ReadAction.compute(() -> {
+            if (!marker.isValid()) {
+                return null;
+            }
+            Document document = marker.getDocument();
+            int start = Math.min(marker.getStartOffset(), document.getTextLength());
+            int end = Math.min(marker.getEndOffset(), start + MAX_CODE_LENGTH);
+            return document.getCharsSequence().subSequence(start, Math.min(end, document.getTextLength())).toString();
+        });
+    }
+
+    // ---------------------------------------------------------------- 查询
+
+    /**
+     * 单个查询词命中的图钉位置
+     */
+    private BitSet match(String token) {
+        BitSet bits = new BitSet();
+        if (token.length() < GRAM) {
+            // 前缀表中的词项都以查询词开头
+            Set<Postings> owners = termsByKey.get(token);
+            if (owners != null) {
+                for (Postings postings : owners) {
+                    collect(postings, bits);
+                }
+            }
+            return bits;
+        }
+
+        // 从包含查询词全部三元组的词项中挑出真正包含查询词的
+        Set<Postings> candidates = null;
+        for (String gram : grams(token)) {
+            Set<Postings> owners = termsByKey.get(gram);
+            if (owners == null) {
+                return bits;
+            }
+            if (candidates == null || owners.size() < candidates.size()) {
+                candidates = owners;
+            }
+        }
+        for (Postings postings : candidates) {
+            if (postings.word.contains(token)) {
+                collect(postings, bits);
+            }
+        }
+        return bits;
+    }
+
+    private void collect(Postings postings, BitSet bits) {
+        int[] ids = postings.ids;
+        for (int i = 0; i < postings.size; i++) {
+            int position = ids[i] < positionByDoc.length ? positionByDoc[ids[i]] : -1;
+            if (position >= 0) {
+                bits.set(position);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 切分
+
+    /**
+     * 切分文本
+     *
+     * @param withParts 是否同时加入驼峰和字母数字边界拆出的各部分（索引时使用，查询时不需要）
+     */
+    static void tokenize(@Nullable String text, Collection<String> out, boolean withParts) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                addCjk(text, start, i, out, withParts);
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                out.add(text.substring(start, i).toLowerCase());
+                if (withParts) {
+                    addParts(text, start, i, out);
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 中日韩文字：查询时连续两字一组（单字时为单字），索引时另外加入每个单字
+     */
+    private static void addCjk(String text, int start, int end, Collection<String> out, boolean withParts) {
+        if (end - start == 1 || withParts) {
+            for (int i = start; i < end; i++) {
+                out.add(String.valueOf(text.charAt(i)));
+            }
+        }
+        for (int i = start; i + 1 < end; i++) {
+            out.add(text.substring(i, i + 2));
+        }
+    }
+
+    /**
+     * 驼峰和字母数字边界处拆分，例如 PinStorage2 -> pin、storage、2
+     */
+    private static void addParts(String text, int start, int end, Collection<String> out) {
+        int partStart = start;
+        for (int i = start + 1; i < end; i++) {
+            char previous = text.charAt(i - 1);
+            char current = text.charAt(i);
+            boolean boundary = (Character.isLowerCase(previous) && Character.isUpperCase(current))
+                    || (Character.isDigit(previous) != Character.isDigit(current))
+                    || (Character.isUpperCase(previous) && Character.isUpperCase(current)
+                    && i + 1 < end && Character.isLowerCase(text.charAt(i + 1)));
+            if (boundary) {
+                out.add(text.substring(partStart, i).toLowerCase());
+                partStart = i;
+            }
+        }
+        if (partStart > start) {
+            out.add(text.substring(partStart, end).toLowerCase());
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 词项在 termsByKey 中的键：前一、两个字符（前缀匹配用）和全部三元组（中间匹配用），长度不会相互冲突
+     */
+    private static List<String> keys(String word) {
+        List<String> keys = grams(word);
+        keys.add(word.substring(0, 1));
+        if (word.length() > 1) {
+            keys.add(word.substring(0, 2));
+        }
+        return keys;
+    }
+
+    private static List<String> grams(String word) {
+        List<String> grams = new ArrayList<>(Math.max(0, word.length() - GRAM + 1) + 2);
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            grams.add(word.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // ---------------------------------------------------------------- 数据结构
+
+    /**
+     * 一个图钉的索引记录，保存切分时的内容用于判断是否需要重新切分
+     */
+    private static final class Doc {
+        final int id;
+        final String pinId;
+        final String[] terms;
+        final String note;
+        final String filePath;
+        final String author;
+        final List<String> tags;
+        final PinEntry codePin; // 索引了代码片段时对应的图钉，否则为 null
+        final RangeMarker codeMarker; // 索引了代码片段时对应的 marker
+        final long codeStamp; // 索引代码片段时文档的修改戳
+        final Document codeDocument; // 代码片段所在的文档，没有索引代码时为 null
+        final boolean withCode;
+
+        Doc(int id, PinEntry pin, boolean withCode, String[] terms) {
+            this.id = id;
+            this.pinId = pin.getId();
+            this.terms = terms;
+            this.note = pin.note;
+            this.filePath = pin.filePath;
+            this.author = pin.author;
+            this.tags = new ArrayList<>(pin.getTags());
+            this.withCode = withCode;
+            this.codePin = withCode ? pin : null;
+            this.codeMarker = withCode ? pin.marker : null;
+            this.codeStamp = withCode ? stampOf(pin.marker) : -1;
+            this.codeDocument = codeMarker != null && codeMarker.isValid() ? codeMarker.getDocument() : null;
+        }
+
+        boolean matches(PinEntry other, boolean includeCode) {
+            return Objects.equals(note, other.note) && Objects.equals(filePath, other.filePath)
+                    && Objects.equals(author, other.author) && tags.equals(other.getTags())
+                    && withCode == includeCode
+                    && (!withCode || (codeMarker == other.marker && codeStamp == stampOf(other.marker)));
+        }
+    }
+
+    /**
+     * 词项的倒排列表（文档编号，无序）
+     */
+    private static final class Postings {
+        final String word;
+        int[] ids = new int[2];
+        int size;
+
+        Postings(String word) {
+            this.word = word;
+        }
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * 移除 removed 中的所有文档编号（一遍压缩）
+         */
+        void removeAll(BitSet removed) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(ids[i])) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            size = kept;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cn.ilikexff.codepins.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 图钉列表的不可变快照
+ * 每次修改图钉列表都会发布一个新的快照并递增版本号；读取方拿到的快照不会再变化，
+ * 可以在任意线程上遍历，不需要加锁，也不会看到修改到一半的列表。
+ */
+public final class PinSnapshot {
+
+    static final PinSnapshot EMPTY = new PinSnapshot(0, Collections.emptyList());
+
+    private final long version;
+    private final List<PinEntry> pins;
+
+    PinSnapshot(long version, List<PinEntry> pins) {
+        this.version = version;
+        this.pins = pins;
+    }
+
+    /**
+     * 快照版本号，列表每发生一次修改加一，可用于判断缓存是否过期
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 快照中的图钉（只读列表，按用户排序）
+     */
+    public List<PinEntry> getPins() {
+        return pins;
+    }
+
+    public int size() {
+        return pins.size();
+    }
+}
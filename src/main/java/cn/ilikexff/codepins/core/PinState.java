@@ -8,6 +8,7 @@ import java.util.List;
  * 用于保存最小必要信息以持久化到 XML 文件
  */
 public class PinState {
+    public String id;             // 图钉唯一标识（与 PinEntry.getId() 一致）
     public String filePath;       // 文件路径
     public int line;              // 图钉所在行号（静态保存）
     public String note;           // 图钉备注
@@ -17,6 +18,13 @@ public class PinState {
     public int startOffset;       // 代码块开始偏移量（仅对代码块图钉有效）
     public int endOffset;         // 代码块结束偏移量（仅对代码块图钉有效）
     public List<String> tags = new ArrayList<>();     // 图钉标签列表
+    public long codeHash;         // 代码内容指纹：去除空白后内容的哈希
+    public int codeLength;        // 代码内容指纹：去除空白后的字符数
+    public int codeLines;         // 代码内容指纹：覆盖的行数（0 表示没有指纹）
+    public long codeBefore;       // 代码内容指纹：上一行的哈希
+    public long codeAfter;        // 代码内容指纹：下一行的哈希
+    public long[] codeMarks;      // 代码内容指纹：winnowing 特征
+    public String orderKey;       // 自定义顺序的排序键（见 PinOrderKeys），按字符串升序排列
 
     public PinState() {
         // 默认构造函数（必须有）
@@ -76,4 +84,20 @@ public class PinState {
         this.endOffset = endOffset;
         this.tags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
     }
+
+    /**
+     * 深复制（标签列表和指纹数组不与原对象共享）
+     */
+    public PinState copy() {
+        PinState copy = new PinState(filePath, line, note, timestamp, author, isBlock, startOffset, endOffset, tags);
+        copy.id = id;
+        copy.codeHash = codeHash;
+        copy.codeLength = codeLength;
+        copy.codeLines = codeLines;
+        copy.codeBefore = codeBefore;
+        copy.codeAfter = codeAfter;
+        copy.codeMarks = codeMarks != null ? codeMarks.clone() : null;
+        copy.orderKey = orderKey;
+        return copy;
+    }
 }
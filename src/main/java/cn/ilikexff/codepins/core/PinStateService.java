@@ -1,41 +1,55 @@
 package cn.ilikexff.codepins.core;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 /**
- * 插件持久化服务类，实现 PersistentStateComponent 接口。
- * 该类用于保存和加载所有图钉的状态信息。
+ * 插件全局持久化服务类
+ * 保存所有项目共享的全局标签，以及尚未按项目拆分的旧图钉：图钉由各项目的 ProjectPinStore
+ * 保存，项目第一次载入时把位于其根目录下的旧图钉迁移过去；不在任何项目根目录下的旧图钉
+ * （如外部库中的图钉）留在这里，可以通过"显示未归属的旧图钉"只读查看，不会被搬进无关的项目。
+ * 仍然实现 PersistentStateComponent，用于读取旧版本 codepins.xml 中的图钉并一次性导入，
+ * 导入完成后 XML 中只保留迁移标记。
  */
 @State(
         name = "CodePinsStorage",
         storages = @Storage("codepins.xml")
 )
-public class PinStateService implements PersistentStateComponent<PinStateService.State> {
+public class PinStateService implements PersistentStateComponent<PinStateService.State>, Disposable {
 
     /**
-     * 内部状态类：用于表示插件需要保存的所有数据结构。
-     * 在这里，pins 保存了所有的图钉。
+     * 旧版本的 XML 状态：pins 与 globalTags 只在迁移前有内容
      */
     public static class State {
         public List<PinState> pins = new ArrayList<>();
         public Set<String> globalTags = new HashSet<>(); // 添加全局标签集合
+        public boolean journalMigrated = false;         // 是否已迁移到日志存储
     }
 
-    // 当前插件的持久化状态
-    private final State state = new State();
+    // XML 中读到的状态（迁移前可能包含图钉）
+    private State state = new State();
+
+    // 日志存储，首次使用时打开
+    private PinJournal journal;
 
     /**
-     * 返回当前的持久化状态（保存数据）
+     * 返回需要写入 XML 的状态：迁移后不再包含图钉
      */
     @Override
     public @Nullable State getState() {
@@ -43,12 +57,11 @@ public class PinStateService implements PersistentStateComponent<PinStateService
     }
 
     /**
-     * 加载已保存的状态（恢复数据）
+     * 加载 XML 中保存的状态，旧版本的图钉在首次访问存储时迁移
      */
     @Override
     public void loadState(@NotNull State loadedState) {
-        state.pins = loadedState.pins;
-        state.globalTags = loadedState.globalTags;
+        state = loadedState;
     }
 
     /**
@@ -59,53 +72,101 @@ public class PinStateService implements PersistentStateComponent<PinStateService
     }
 
     /**
-     * 获取当前所有保存的图钉状态
+     * 获取日志存储，首次调用时打开并在需要时从旧版 XML 迁移
+     */
+    private synchronized PinJournal journal() {
+        if (journal == null) {
+            try {
+                journal = PinJournal.open(getStorageDirectory());
+                migrateFromXml(journal);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法打开图钉存储", e);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * 存储目录：IDE 配置目录下的 codepins
+     */
+    private static Path getStorageDirectory() {
+        return Paths.get(PathManager.getConfigPath(), "codepins");
+    }
+
+    /**
+     * 把旧版 codepins.xml 中的图钉和全局标签导入日志存储（只执行一次）
+     * 旧版本数据没有 ID，导入时补齐，保证每条记录都能按 ID 定位
      */
-    public List<PinState> getPins() {
-        return state.pins;
+    private void migrateFromXml(PinJournal target) throws IOException {
+        if (state.journalMigrated) {
+            return;
+        }
+        List<PinState> legacyPins = state.pins != null ? state.pins : new ArrayList<>();
+        Set<String> legacyTags = state.globalTags != null ? state.globalTags : new HashSet<>();
+
+        if (target.isEmpty() && (!legacyPins.isEmpty() || !legacyTags.isEmpty())) {
+            Set<String> seen = new HashSet<>();
+            for (PinState pin : legacyPins) {
+                if (pin.id == null || pin.id.isEmpty() || !seen.add(pin.id)) {
+                    pin.id = PinEntry.generateId();
+                    seen.add(pin.id);
+                }
+            }
+            target.importAll(legacyPins, legacyTags);
+            System.out.println("[CodePins] 已将 codepins.xml 中的 " + legacyPins.size() + " 个图钉迁移到日志存储");
+        }
+
+        // XML 中只保留迁移标记
+        State migrated = new State();
+        migrated.journalMigrated = true;
+        state = migrated;
     }
 
     /**
-     * 添加图钉（支持 PinEntry 格式，会转换为 PinState）
+     * 获取位于指定项目根目录下、尚未迁移到项目存储的旧图钉
+     *
+     * @param basePath 项目根路径
      */
-    public void addPin(PinEntry entry) {
-        if (entry.isBlock) {
-            state.pins.add(new PinState(
-                    entry.filePath,
-                    entry.getCurrentLine(entry.marker.getDocument()),
-                    entry.note,
-                    entry.timestamp,
-                    entry.author,
-                    entry.isBlock,
-                    entry.marker.getStartOffset(),
-                    entry.marker.getEndOffset(),
-                    entry.getTags()
-            ));
-        } else {
-            state.pins.add(new PinState(
-                    entry.filePath,
-                    entry.getCurrentLine(entry.marker.getDocument()),
-                    entry.note,
-                    entry.timestamp,
-                    entry.author,
-                    entry.isBlock,
-                    entry.getTags()
-            ));
+    public List<PinState> getPinsUnder(String basePath) {
+        List<PinState> result = new ArrayList<>();
+        for (PinState pin : journal().getPins()) {
+            if (isUnder(pin.filePath, basePath)) {
+                result.add(pin);
+            }
         }
+        return result;
     }
 
     /**
-     * 添加图钉（直接使用 PinState 格式，适合更灵活调用）
+     * 获取尚未迁移到任何项目存储的旧图钉（副本，只用于只读展示）
      */
-    public void addPin(PinState pin) {
-        state.pins.add(pin);
+    public List<PinState> getUnclaimedPins() {
+        return journal().getPins();
     }
 
     /**
-     * 清除所有图钉
+     * 尚未迁移到任何项目存储的旧图钉数量
      */
-    public void clear() {
-        state.pins.clear();
+    public int getUnclaimedPinCount() {
+        return journal().size();
+    }
+
+    private static boolean isUnder(@Nullable String filePath, String basePath) {
+        if (filePath == null) {
+            return false;
+        }
+        String prefix = basePath.endsWith("/") ? basePath : basePath + "/";
+        return filePath.startsWith(prefix) || filePath.equals(basePath);
+    }
+
+    /**
+     * 删除已迁移到项目存储的旧图钉
+     */
+    public void removePins(Collection<String> ids) {
+        PinJournal target = journal();
+        for (String id : ids) {
+            target.remove(id);
+        }
     }
 
     /**
@@ -114,7 +175,7 @@ public class PinStateService implements PersistentStateComponent<PinStateService
      */
     public void addGlobalTag(String tag) {
         if (tag != null && !tag.trim().isEmpty()) {
-            state.globalTags.add(tag.trim());
+            journal().addGlobalTag(tag.trim());
         }
     }
 
@@ -124,7 +185,7 @@ public class PinStateService implements PersistentStateComponent<PinStateService
      */
     public void removeGlobalTag(String tag) {
         if (tag != null && !tag.trim().isEmpty()) {
-            state.globalTags.remove(tag.trim());
+            journal().removeGlobalTag(tag.trim());
         }
     }
 
@@ -133,6 +194,16 @@ public class PinStateService implements PersistentStateComponent<PinStateService
      * @return 全局标签集合的副本
      */
     public Set<String> getGlobalTags() {
-        return new HashSet<>(state.globalTags);
+        return new HashSet<>(journal().getGlobalTags());
+    }
+
+    /**
+     * IDE 关闭时把尚未落盘的记录写入日志
+     */
+    @Override
+    public synchronized void dispose() {
+        if (journal != null) {
+            journal.close();
+        }
     }
 }
@@ -1,133 +1,143 @@
 package cn.ilikexff.codepins.core;
 
 import cn.ilikexff.codepins.settings.CodePinsSettings;
-import cn.ilikexff.codepins.ui.TagFilterPanel;
-import cn.ilikexff.codepins.core.PinState;
-import cn.ilikexff.codepins.core.PinStateService;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectManager;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.wm.ToolWindow;
-import com.intellij.openapi.wm.ToolWindowManager;
-import com.intellij.ui.content.Content;
 
-import javax.swing.*;
-import java.awt.*;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
- * 图钉统一存储管理类（内存 + UI 模型 + 本地持久化）
+ * 图钉统一存储入口（内存 + UI 模型 + 本地持久化）
+ * 图钉按项目分别保存和载入（见 ProjectPinStore）：列表类操作需要指定项目，
+ * 针对单个图钉的操作自动转发到该图钉所在的项目；全局标签在所有项目间共享。
+ * 读取方法返回不可变快照，可以在后台线程和读操作中调用；修改方法在存储的锁内执行。
  */
 public class PinStorage {
 
-    private static final List<PinEntry> pins = new ArrayList<>();
-    private static DefaultListModel<PinEntry> model = null;
-    private static final Set<String> allTags = new HashSet<>(); // 所有标签的集合
-
     // 移除所有付费限制，插件现在完全免费开源
 
     /**
-     * 设置 UI 模型，用于同步刷新列表
+     * 订阅项目图钉变化（按帧合并后在 EDT 上回调），在 parent 销毁时自动注销
+     */
+    public static void subscribe(Project project, PinEvents listener, Disposable parent) {
+        project.getMessageBus().connect(parent).subscribe(PinEvents.TOPIC, listener);
+    }
+
+    /**
+     * 确保项目的图钉已从本地持久化数据载入（只在第一次调用时读取）
      */
-    public static void setModel(DefaultListModel<PinEntry> m) {
-        model = m;
-        refreshModel();
+    public static void ensureLoaded(Project project) {
+        ProjectPinStore.getInstance(project).ensureLoaded();
     }
 
     /**
-     * 添加图钉（包括 UI 显示 + 持久化）
+     * 添加图钉到项目（包括 UI 显示 + 持久化）
      *
      * @return 是否添加成功
      */
-    public static boolean addPin(PinEntry entry) {
+    public static boolean addPin(Project project, PinEntry entry) {
         // 插件现在完全免费，移除所有限制检查
+        return ProjectPinStore.getInstance(project).addPin(entry);
+    }
 
-        pins.add(entry);
-
-        // 获取 Document 对象，计算当前行号（用于持久化）
-        Document doc = entry.marker.getDocument();
-        int currentLine = entry.getCurrentLine(doc);
-
-        // 更新标签集合
-        allTags.addAll(entry.getTags());
-
-        // 存入持久化服务中（静态快照）
-        if (entry.isBlock) {
-            // 如果是代码块图钉，保存偏移量范围
-            PinStateService.getInstance().addPin(
-                    new PinState(
-                            entry.filePath,
-                            currentLine,
-                            entry.note,
-                            entry.timestamp,
-                            entry.author,
-                            entry.isBlock,
-                            entry.marker.getStartOffset(),
-                            entry.marker.getEndOffset(),
-                            entry.getTags()
-                    )
-            );
-            System.out.println("[CodePins] 保存代码块图钉，范围: " + entry.marker.getStartOffset() + "-" + entry.marker.getEndOffset());
-        } else {
-            // 如果是单行图钉，使用带标签的构造函数
-            PinStateService.getInstance().addPin(
-                    new PinState(entry.filePath, currentLine, entry.note, entry.timestamp, entry.author, entry.isBlock, entry.getTags())
-            );
+    /**
+     * 删除指定图钉（内存 + 持久化）
+     */
+    public static void removePin(PinEntry entry) {
+        ProjectPinStore store = ProjectPinStore.findOwner(entry);
+        if (store != null) {
+            store.removePin(entry);
         }
+    }
 
-        refreshModel();
-        return true;
+    /**
+     * 一次性提交一批图钉修改（新增、删除、修改备注和标签）
+     * 适合批量删除、批量创建等场景：只持久化一批记录、只更新一次标签集合、只发出一次界面刷新
+     *
+     * @param project 项目
+     * @param batch   收集好的修改
+     */
+    public static void applyBatch(Project project, PinBatch batch) {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        ProjectPinStore.getInstance(project).applyBatch(batch);
     }
 
     /**
-     * 删除指定图钉（内存 + 持久化）
+     * 删除项目的所有图钉（清空内存和本地）
      */
-    public static void removePin(PinEntry entry) {
-        pins.remove(entry);
+    public static void clearAll(Project project) {
+        ProjectPinStore.getInstance(project).clearAll();
+    }
+
+    /**
+     * 获取项目当前图钉列表（不可变快照，可在任意线程遍历；修改请使用本类的方法）
+     */
+    public static List<PinEntry> getPins(Project project) {
+        return ProjectPinStore.getInstance(project).getPins();
+    }
 
-        // 同时从持久化列表中删除（路径 + 行号匹配）
-        Document doc = entry.marker.getDocument();
-        int currentLine = entry.getCurrentLine(doc);
+    /**
+     * 获取项目图钉列表的版本化快照，用于需要判断列表是否变化的后台读取（例如缓存）
+     */
+    public static PinSnapshot getSnapshot(Project project) {
+        return ProjectPinStore.getInstance(project).getSnapshot();
+    }
+
+    /**
+     * 获取指定文件中的所有图钉
+     */
+    public static List<PinEntry> getPinsInFile(Project project, String filePath) {
+        return ProjectPinStore.getInstance(project).getPinsInFile(filePath);
+    }
 
-        PinStateService.getInstance().getPins().removeIf(
-                p -> p.filePath.equals(entry.filePath) && p.line == currentLine
-        );
+    /**
+     * 获取起始位置位于指定行（从 0 开始）的图钉
+     */
+    public static List<PinEntry> getPinsAtLine(Project project, String filePath, Document document, int line) {
+        return ProjectPinStore.getInstance(project).getPinsAtLine(filePath, document, line);
+    }
 
-        // 更新标签集合
-        refreshAllTags();
+    /**
+     * 获取与指定偏移量范围重叠的图钉
+     */
+    public static List<PinEntry> getPinsInRange(Project project, String filePath, int startOffset, int endOffset) {
+        return ProjectPinStore.getInstance(project).getPinsInRange(filePath, startOffset, endOffset);
+    }
 
-        refreshModel();
+    /**
+     * 判断指定偏移量范围内是否已有图钉
+     */
+    public static boolean hasPinInRange(Project project, String filePath, int startOffset, int endOffset) {
+        return ProjectPinStore.getInstance(project).hasPinInRange(filePath, startOffset, endOffset);
     }
 
     /**
-     * 删除所有图钉（清空内存和本地）
+     * 判断指定行是否有图钉起始（基于按文档增量维护的位图，适合逐行高频查询）
+     *
+     * @param project  项目
+     * @param filePath 文件路径
+     * @param document 文件对应的文档
+     * @param line     行号（从 0 开始）
      */
-    public static void clearAll() {
-        pins.clear();
-        PinStateService.getInstance().clear();
-        
-        // 使用refreshAllTags方法来处理标签，确保自定义标签得到保留
-        refreshAllTags();
-        
-        refreshModel();
+    public static boolean isLinePinned(Project project, String filePath, Document document, int line) {
+        return ProjectPinStore.getInstance(project).isLinePinned(filePath, document, line);
     }
 
     /**
-     * 获取当前图钉列表（内存）
+     * 获取指定文件中有图钉起始的所有行（位图副本，第 n 位对应第 n 行）
      */
-    public static List<PinEntry> getPins() {
-        return pins;
+    public static BitSet getPinnedLines(Project project, String filePath, Document document) {
+        return ProjectPinStore.getInstance(project).getPinnedLines(filePath, document);
     }
 
     /**
@@ -135,11 +145,11 @@ public class PinStorage {
      *
      * @return 包含当前图钉数量的Map
      */
-    public static Map<String, Integer> getPinsCountInfo() {
+    public static Map<String, Integer> getPinsCountInfo(Project project) {
         Map<String, Integer> info = new HashMap<>();
 
         // 当前图钉数量
-        info.put("current", pins.size());
+        info.put("current", getPins(project).size());
 
         // 插件现在完全免费，无数量限制
         info.put("max", -1); // -1 表示无限制
@@ -152,11 +162,11 @@ public class PinStorage {
      *
      * @return 包含当前标签种类数量的Map
      */
-    public static Map<String, Integer> getTagsCountInfo() {
+    public static Map<String, Integer> getTagsCountInfo(Project project) {
         Map<String, Integer> info = new HashMap<>();
 
         // 当前标签种类数量
-        info.put("current", allTags.size());
+        info.put("current", getAllTags(project).size());
 
         // 插件现在完全免费，无标签限制
         info.put("max", -1); // -1 表示无限制
@@ -166,95 +176,78 @@ public class PinStorage {
     }
 
     /**
-     * 从本地持久化数据恢复图钉（将 line 转为 RangeMarker）
-     */
-    public static void initFromSaved() {
-        List<PinState> saved = PinStateService.getInstance().getPins();
-        pins.clear();
-        allTags.clear();  // 清空标签集合，准备重新加载
-
-        for (PinState state : saved) {
-            // 先通过路径获取 VirtualFile
-            VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(state.filePath);
-            if (vFile == null) continue;
-
-            // 再通过 VirtualFile 获取 Document
-            Document doc = FileDocumentManager.getInstance().getDocument(vFile);
-            if (doc == null) continue;
-
-            // 创建 RangeMarker
-            int line = Math.min(state.line, doc.getLineCount() - 1); // 防止越界
-            int startOffset, endOffset;
-            int docLength = doc.getTextLength();
-
-            if (state.isBlock && state.startOffset >= 0 && state.endOffset >= 0) {
-                // 如果是代码块图钉，并且有保存的偏移量范围，则使用保存的范围
-                startOffset = Math.max(0, Math.min(state.startOffset, docLength));
-                endOffset = Math.max(0, Math.min(state.endOffset, docLength));
-                System.out.println("[CodePins] 恢复代码块图钉，使用保存的范围: " + startOffset + "-" + endOffset);
-            } else if (state.isBlock) {
-                // 如果是代码块图钉，但没有保存范围，则使用整行作为范围
-                startOffset = doc.getLineStartOffset(line);
-                endOffset = doc.getLineEndOffset(line);
-                System.out.println("[CodePins] 恢复代码块图钉，使用行范围: " + startOffset + "-" + endOffset);
-            } else {
-                // 如果是单行图钉，则使用行起始位置
-                startOffset = doc.getLineStartOffset(line);
-                endOffset = startOffset;
-            }
+     * 为未解析的图钉挂接 RangeMarker（会按需加载文档），用于导航、预览、分享等需要代码位置的操作
+     *
+     * @return 图钉是否已解析
+     */
+    public static boolean resolvePin(PinEntry entry) {
+        if (entry == null) {
+            return false;
+        }
+        if (entry.isResolved()) {
+            return true;
+        }
+        ProjectPinStore store = ProjectPinStore.findOwner(entry);
+        return store != null && store.resolvePin(entry);
+    }
 
-            // 确保范围有效0
-            if (startOffset > endOffset) {
-                startOffset = endOffset;
-            }
+    /**
+     * 图钉当前位置，不挂接 RangeMarker，用于预览、分享等只读取一次代码的操作
+     * 休眠图钉读取后仍保持休眠；需要持续追踪位置（导航、编辑）时使用 {@link #resolvePin}
+     *
+     * @return 图钉位置，文件不存在或 marker 已失效时返回 null
+     */
+    public static PinLocation locatePin(PinEntry entry) {
+        return entry != null ? ProjectPinStore.locatePin(entry) : null;
+    }
 
-            RangeMarker marker = doc.createRangeMarker(startOffset, endOffset);
-            marker.setGreedyToLeft(true);
-            marker.setGreedyToRight(true);
-
-            PinEntry entry = new PinEntry(
-                    state.filePath,
-                    marker,
-                    state.note,
-                    state.timestamp,
-                    state.author,
-                    state.isBlock,
-                    state.tags
-            );
-            pins.add(entry);
-
-            // 更新标签集合（从图钉收集标签）
-            if (state.tags != null) {
-                allTags.addAll(state.tags);
-            }
+    /**
+     * 为指定文件中所有未解析的图钉挂接 RangeMarker，在文件打开时调用
+     */
+    public static void resolvePinsInFile(Project project, VirtualFile file) {
+        if (project == null || project.isDisposed() || file == null) {
+            return;
         }
+        ProjectPinStore.getInstance(project).resolvePinsInFile(file);
+    }
 
-        // 加载全局自定义标签
-        Set<String> savedGlobalTags = PinStateService.getInstance().getGlobalTags();
-        if (savedGlobalTags != null) {
-            allTags.addAll(savedGlobalTags);
+    /**
+     * 文件关闭后释放其中图钉的 RangeMarker，转为"行号 + 内容指纹"的休眠图钉，再次打开时重新挂接
+     */
+    public static void demotePinsInFile(Project project, VirtualFile file) {
+        if (project == null || project.isDisposed() || file == null) {
+            return;
+        }
+        ProjectPinStore store = project.getServiceIfCreated(ProjectPinStore.class);
+        if (store != null) {
+            store.demotePinsInFile(file);
         }
+    }
 
-        refreshModel();
+    /**
+     * 文件内容被外部整体替换后（切换分支、拉取代码等），按内容指纹批量为这些文件中失去锚点的图钉重新定位
+     *
+     * @param filePaths 内容已重新载入的文件路径
+     */
+    public static void reanchorPinsInFiles(Collection<String> filePaths) {
+        if (filePaths == null || filePaths.isEmpty()) {
+            return;
+        }
+        for (ProjectPinStore store : ProjectPinStore.loadedStores()) {
+            store.reanchorPinsInFiles(filePaths);
+        }
     }
 
     /**
      * 更新图钉备注内容
      */
     public static void updateNote(PinEntry entry, String newNote) {
-        entry.note = newNote;
-
-        Document doc = entry.marker.getDocument();
-        int currentLine = entry.getCurrentLine(doc);
-
-        for (PinState p : PinStateService.getInstance().getPins()) {
-            if (p.filePath.equals(entry.filePath) && p.line == currentLine) {
-                p.note = newNote;
-                break;
-            }
+        ProjectPinStore store = ProjectPinStore.findOwner(entry);
+        if (store != null) {
+            store.updateNote(entry, newNote);
+        } else {
+            entry.note = newNote;
         }
-
-        refreshModel();
     }
 
     /**
@@ -264,59 +257,19 @@ public class PinStorage {
      */
     public static boolean updateTags(PinEntry entry, List<String> newTags) {
         // 插件现在完全免费，移除所有标签限制检查
-
-        // 更新内存中的图钉标签
-        entry.setTags(newTags);
-
-        // 更新持久化存储中的标签
-        Document doc = entry.marker.getDocument();
-        int currentLine = entry.getCurrentLine(doc);
-
-        for (PinState p : PinStateService.getInstance().getPins()) {
-            if (p.filePath.equals(entry.filePath) && p.line == currentLine) {
-                p.tags.clear();
-                if (newTags != null) {
-                    p.tags.addAll(newTags);
-                }
-                break;
-            }
+        ProjectPinStore store = ProjectPinStore.findOwner(entry);
+        if (store == null) {
+            return false;
         }
-
-        // 更新所有标签集合
-        refreshAllTags();
-
-        // 刷新UI
-        refreshModel();
-
+        store.updateTags(entry, newTags);
         return true;
     }
 
     /**
-     * 获取所有标签
-     */
-    public static Set<String> getAllTags() {
-        return new HashSet<>(allTags); // 返回副本，避免外部修改
-    }
-
-    /**
-     * 刷新所有标签集合
+     * 获取项目可用的所有标签（项目图钉的标签 + 全局标签）
      */
-    private static void refreshAllTags() {
-        // 先保存当前的全局自定义标签
-        Set<String> customTags = PinStateService.getInstance().getGlobalTags();
-        
-        // 清空标签集合
-        allTags.clear();
-        
-        // 加载图钉中的标签
-        for (PinEntry pin : pins) {
-            allTags.addAll(pin.getTags());
-        }
-        
-        // 恢复全局自定义标签
-        if (customTags != null && !customTags.isEmpty()) {
-            allTags.addAll(customTags);
-        }
+    public static Set<String> getAllTags(Project project) {
+        return ProjectPinStore.getInstance(project).getAllTags();
     }
 
     /**
@@ -325,10 +278,12 @@ public class PinStorage {
     public static void addGlobalTag(String tag) {
         if (tag != null && !tag.trim().isEmpty()) {
             String trimmedTag = tag.trim();
-            allTags.add(trimmedTag);
-            
+
             // 保存到持久化存储
             PinStateService.getInstance().addGlobalTag(trimmedTag);
+            for (ProjectPinStore store : ProjectPinStore.loadedStores()) {
+                store.globalTagAdded(trimmedTag);
+            }
         }
     }
 
@@ -338,142 +293,113 @@ public class PinStorage {
     public static void removeGlobalTag(String tag) {
         if (tag != null && !tag.trim().isEmpty()) {
             String trimmedTag = tag.trim();
-            allTags.remove(trimmedTag);
-            
+
             // 从持久化存储中删除
             PinStateService.getInstance().removeGlobalTag(trimmedTag);
+            for (ProjectPinStore store : ProjectPinStore.loadedStores()) {
+                store.globalTagRemoved(trimmedTag);
+            }
         }
     }
 
     /**
-     * 根据标签筛选图钉
+     * 按关键字搜索项目中的图钉（备注、路径、文件名、标签、作者，可在设置中开启代码片段）
+     * 使用增量维护的倒排索引，不逐个遍历图钉；
+     * 也接受结构化条件，如 tag:perf author:alice file:*.java age:&lt;7d block:true "cache miss"（见 PinQuery）
+     *
+     * @return 匹配的图钉，按自定义顺序
+     */
+    public static List<PinEntry> search(Project project, String query) {
+        return ProjectPinStore.getInstance(project).search(query, CodePinsSettings.getInstance().searchCodeSnippets);
+    }
+
+    /**
+     * 按模糊匹配得分搜索图钉（文件名、路径、备注、标签的子序列匹配，较新的图钉优先），用于跳转到图钉
+     *
+     * @param limit 最多返回的图钉数
+     * @return 按得分从高到低排列的图钉
+     */
+    public static List<PinEntry> fuzzySearch(Project project, String query, int limit) {
+        return ProjectPinStore.getInstance(project).fuzzySearch(query, limit);
+    }
+
+    /**
+     * 根据标签筛选项目中的图钉（包含任一标签），使用标签位图索引
      */
-    public static List<PinEntry> filterByTags(List<String> tags) {
+    public static List<PinEntry> filterByTags(Project project, List<String> tags) {
         if (tags == null || tags.isEmpty()) {
-            return new ArrayList<>(pins); // 返回所有图钉
+            return new ArrayList<>(getPins(project)); // 返回所有图钉
         }
+        return ProjectPinStore.getInstance(project).filterByTags(null, tags, null);
+    }
 
-        List<PinEntry> filtered = new ArrayList<>();
-        for (PinEntry pin : pins) {
-            boolean match = false;
-            for (String tag : tags) {
-                if (pin.hasTag(tag)) {
-                    match = true;
-                    break;
-                }
-            }
-            if (match) {
-                filtered.add(pin);
-            }
-        }
+    /**
+     * 按标签组合筛选：包含 allOf 中全部标签，且包含 anyOf 中至少一个标签，且不包含 noneOf 中任何标签
+     * 三个条件均可为 null 或空（表示不限），全部为空时返回所有图钉
+     *
+     * @return 匹配的图钉，按自定义顺序
+     */
+    public static List<PinEntry> filterByTags(Project project, Collection<String> allOf, Collection<String> anyOf,
+                                              Collection<String> noneOf) {
+        return ProjectPinStore.getInstance(project).filterByTags(allOf, anyOf, noneOf);
+    }
 
-        return filtered;
+    /**
+     * 每个标签的图钉数（按图钉数从多到少），直接取自标签位图索引
+     */
+    public static Map<String, Integer> getTagCounts(Project project) {
+        return ProjectPinStore.getInstance(project).getTagCounts();
     }
 
     /**
      * 添加图钉状态（用于导入功能）
-     * 从 PinState 创建 PinEntry 并添加到存储中
+     * 从 PinState 创建 PinEntry 并添加到项目存储中
      *
-     * @param state 图钉状态
+     * @param project 项目
+     * @param state   图钉状态
      * @return 是否添加成功
      */
-    public static boolean addPinState(PinState state) {
-        // 检查文件是否存在
-        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(state.filePath);
-        if (file == null || !file.exists()) {
-            System.out.println("[CodePins] 文件不存在: " + state.filePath);
-            return false;
-        }
-
-        try {
-            // 获取文件内容
-            Document document = FileDocumentManager.getInstance().getDocument(file);
-            if (document == null) {
-                System.out.println("[CodePins] 无法获取文件内容: " + state.filePath);
-                return false;
-            }
-
-            // 创建标记
-            RangeMarker marker;
-            if (state.isBlock && state.startOffset >= 0 && state.endOffset >= 0) {
-                // 代码块图钉
-                int startOffset = Math.min(state.startOffset, document.getTextLength());
-                int endOffset = Math.min(state.endOffset, document.getTextLength());
-                marker = document.createRangeMarker(startOffset, endOffset);
-            } else {
-                // 单行图钉
-                int line = Math.min(state.line - 1, document.getLineCount() - 1);
-                int lineStartOffset = document.getLineStartOffset(line);
-                int lineEndOffset = document.getLineEndOffset(line);
-                marker = document.createRangeMarker(lineStartOffset, lineEndOffset);
-            }
-
-            // 创建 PinEntry 并添加到存储
-            PinEntry entry = new PinEntry(
-                    state.filePath,
-                    marker,
-                    state.note,
-                    state.timestamp,
-                    state.author,
-                    state.isBlock,
-                    state.tags
-            );
-
-            pins.add(entry);
-            allTags.addAll(state.tags);
-
-            // 添加到持久化存储
-            PinStateService.getInstance().addPin(state);
-
-            refreshModel();
-            return true;
-        } catch (Exception e) {
-            System.out.println("[CodePins] 添加图钉失败: " + e.getMessage());
-            return false;
-        }
+    public static boolean addPinState(Project project, PinState state) {
+        return ProjectPinStore.getInstance(project).addPinState(state);
     }
 
     /**
-     * 更新图钉排序顺序
+     * 按给定顺序整体重排并持久化（为每个图钉重新分配排序键，每个图钉写一条记录）
+     * 只需要改变显示顺序时使用 PinListModel.setComparator；调整单个图钉的位置使用 movePin
      *
+     * @param project    项目
      * @param sortedPins 排序后的图钉列表
      */
-    public static void updatePinsOrder(List<PinEntry> sortedPins) {
+    public static void updatePinsOrder(Project project, List<PinEntry> sortedPins) {
         if (sortedPins == null || sortedPins.isEmpty()) {
             return;
         }
-
-        // 清空并重新添加所有图钉，保持新的排序顺序
-        pins.clear();
-        pins.addAll(sortedPins);
-
-        // 刷新 UI 模型
-        refreshModel();
-
-        // 保存自定义排序
-        saveCustomOrder();
+        ProjectPinStore.getInstance(project).updatePinsOrder(sortedPins);
     }
 
     /**
      * 交换两个图钉的位置
      *
+     * @param project   项目
      * @param fromIndex 起始索引
-     * @param toIndex 目标索引
+     * @param toIndex   目标索引
+     */
+    public static void movePinPosition(Project project, int fromIndex, int toIndex) {
+        ProjectPinStore.getInstance(project).movePinPosition(fromIndex, toIndex);
+    }
+
+    /**
+     * 把图钉移动到另一个图钉之前（只改写被移动图钉的排序键）
+     *
+     * @param project 项目
+     * @param pin     要移动的图钉
+     * @param before  移动到它之前，为 null 时移动到末尾
      */
-    public static void movePinPosition(int fromIndex, int toIndex) {
-        if (fromIndex < 0 || fromIndex >= pins.size() || toIndex < 0 || toIndex >= pins.size() || fromIndex == toIndex) {
+    public static void movePin(Project project, PinEntry pin, PinEntry before) {
+        if (pin == null) {
             return;
         }
-
-        // 交换内存中的图钉位置
-        PinEntry pin = pins.remove(fromIndex);
-        pins.add(toIndex, pin);
-
-        // 刷新 UI 模型
-        refreshModel();
-
-        // 保存自定义排序
-        saveCustomOrder();
+        ProjectPinStore.getInstance(project).movePin(pin, before);
     }
 
     /**
@@ -485,148 +411,21 @@ public class PinStorage {
      * @return 是否替换成功
      */
     public static boolean replacePin(PinEntry oldPin, PinEntry newPin) {
-        int index = pins.indexOf(oldPin);
-        if (index < 0) {
+        ProjectPinStore store = ProjectPinStore.findOwner(oldPin);
+        if (store == null) {
             System.out.println("[CodePins] 替换图钉失败: 找不到原始图钉");
             return false;
         }
-        
-        // 替换内存中的图钉
-        pins.set(index, newPin);
-        
-        // 更新持久化存储中的数据
-        Document doc = newPin.marker.getDocument();
-        int oldLine = oldPin.getCurrentLine(doc);
-        int newLine = newPin.getCurrentLine(doc);
-        
-        for (PinState p : PinStateService.getInstance().getPins()) {
-            if (p.filePath.equals(oldPin.filePath) && p.line == oldLine) {
-                // 更新行号
-                p.line = newLine;
-                
-                // 如果是代码块图钉，更新偏移量
-                if (newPin.isBlock) {
-                    p.startOffset = newPin.marker.getStartOffset();
-                    p.endOffset = newPin.marker.getEndOffset();
-                }
-                
-                System.out.println("[CodePins] 图钉持久化数据已更新，行号: " + oldLine + " -> " + newLine);
-                break;
-            }
-        }
-        
-        // 刷新模型
-        refreshModel();
-        
-        return true;
-    }
-
-    /**
-     * 保存自定义排序
-     */
-    private static void saveCustomOrder() {
-        // 将当前图钉顺序保存到持久化存储
-        List<PinState> states = PinStateService.getInstance().getPins();
-
-        // 清空并重新添加所有图钉，保持当前顺序
-        PinStateService.getInstance().clear();
-
-        for (PinEntry pin : pins) {
-            Document doc = pin.marker.getDocument();
-            int currentLine = pin.getCurrentLine(doc);
-
-            // 创建新的 PinState
-            PinState state;
-            if (pin.isBlock) {
-                state = new PinState(
-                        pin.filePath,
-                        currentLine,
-                        pin.note,
-                        pin.timestamp,
-                        pin.author,
-                        pin.isBlock,
-                        pin.marker.getStartOffset(),
-                        pin.marker.getEndOffset(),
-                        pin.getTags()
-                );
-            } else {
-                state = new PinState(
-                        pin.filePath,
-                        currentLine,
-                        pin.note,
-                        pin.timestamp,
-                        pin.author,
-                        pin.isBlock,
-                        pin.getTags()
-                );
-            }
-
-            PinStateService.getInstance().addPin(state);
-        }
-    }
-
-    /**
-     * 通知 UI 刷新 JList 内容
-     */
-    private static void refreshModel() {
-        if (model != null) {
-            model.clear();
-            for (PinEntry pin : pins) {
-                model.addElement(pin);
-            }
-        }
-
-        // 刷新所有标签筛选面板
-        refreshTagFilterPanels();
+        return store.replacePin(oldPin, newPin);
     }
 
     /**
      * 刷新UI显示
-     * 供外部类调用，以刷新图钉列表显示
+     * 供外部类调用，以刷新所有已载入项目的图钉列表显示
      */
     public static void refreshUI() {
-        refreshModel();
-    }
-
-    /**
-     * 刷新所有标签筛选面板
-     * 在添加、删除、更新图钉标签后调用
-     */
-    private static void refreshTagFilterPanels() {
-        // 使用SwingUtilities.invokeLater确保在EDT线程中执行UI更新
-        SwingUtilities.invokeLater(() -> {
-            // 获取所有打开的项目
-            Project[] openProjects = ProjectManager.getInstance().getOpenProjects();
-            for (Project project : openProjects) {
-                // 获取CodePins工具窗口
-                ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("CodePins");
-                if (toolWindow != null && toolWindow.isAvailable()) {
-                    // 获取工具窗口内容
-                    Content[] contents = toolWindow.getContentManager().getContents();
-                    for (Content content : contents) {
-                        // 获取内容组件
-                        JComponent component = content.getComponent();
-                        // 递归查找TagFilterPanel
-                        findAndRefreshTagFilterPanels(component);
-                    }
-                }
-            }
-        });
-    }
-
-    /**
-     * 递归查找并刷新TagFilterPanel
-     */
-    private static void findAndRefreshTagFilterPanels(Component component) {
-        if (component instanceof TagFilterPanel) {
-            // 找到TagFilterPanel，刷新它
-            ((TagFilterPanel) component).refreshTagsView();
-        } else if (component instanceof Container) {
-            // 递归查找子组件
-            Component[] children = ((Container) component).getComponents();
-            for (Component child : children) {
-                findAndRefreshTagFilterPanels(child);
-            }
+        for (ProjectPinStore store : ProjectPinStore.loadedStores()) {
+            store.refreshUI();
         }
     }
 }
@@ -0,0 +1,290 @@
+package cn.ilikexff.codepins.core;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 标签位图索引（ProjectPinStore 内部使用）
+ * 标签字典把标签映射为整数编号，每个标签对应一个压缩位图（RoaringBitmap），记录带有该标签的图钉序号；
+ * 图钉序号在图钉加入时分配、删除后回收。存储在每次增删图钉或修改标签时同步维护（在存储的锁内调用）。
+ *
+ * 多标签筛选（全部包含 / 任一包含 / 不包含）和每个标签的图钉数都是位图运算，与图钉总数无关；
+ * 结果按快照中的位置取出以保持存储顺序，序号到位置的映射按快照版本缓存。
+ * 结构化查询的 tag: 条件（忽略大小写）也由本索引回答，字段索引不再另外维护标签位图。
+ */
+final class PinTagIndex {
+
+    // 标签字典：标签 -> 编号，编号 -> 位图（已回收的编号为 null）
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<RoaringBitmap> bitmaps = new ArrayList<>();
+    private final ArrayDeque<Integer> freeTagIds = new ArrayDeque<>();
+
+    // 图钉序号：图钉 ID -> 序号，序号 -> 最后一次使用它的图钉 ID
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] idByOrdinal = new String[64];
+    private final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+    private int nextOrdinal;
+    private final RoaringBitmap allPins = new RoaringBitmap();
+    private int layoutVersion; // 序号分配给不同图钉时递增，位置映射需要重建
+
+    private long positionsVersion = -1;
+    private int positionsLayout = -1;
+    private int[] positionByOrdinal = new int[0]; // 序号 -> 快照中的位置，-1 表示不在快照中
+
+    /**
+     * 登记图钉及其标签
+     *
+     * @return 是否有标签新出现（需要重新发布标签集合）
+     */
+    synchronized boolean add(PinEntry entry) {
+        int ordinal = ordinalFor(entry.getId());
+        allPins.add(ordinal);
+        boolean changed = false;
+        for (String tag : entry.getTags()) {
+            Integer id = tagIds.get(tag);
+            if (id == null) {
+                id = newTagId(tag);
+                changed = true;
+            }
+            bitmaps.get(id).add(ordinal);
+        }
+        return changed;
+    }
+
+    /**
+     * 移除图钉及其标签（按图钉当前的标签）
+     *
+     * @return 是否有标签不再被任何图钉使用（需要重新发布标签集合）
+     */
+    synchronized boolean remove(PinEntry entry) {
+        Integer ordinal = ordinals.remove(entry.getId());
+        if (ordinal == null) {
+            return false;
+        }
+        allPins.remove(ordinal);
+        freeOrdinals.push(ordinal); // 后进先出：修改标签时先删后加，图钉拿回同一个序号
+        boolean changed = false;
+        for (String tag : entry.getTags()) {
+            Integer id = tagIds.get(tag);
+            if (id == null) {
+                continue;
+            }
+            RoaringBitmap bitmap = bitmaps.get(id);
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                tagIds.remove(tag);
+                bitmaps.set(id, null);
+                freeTagIds.push(id);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    synchronized void clear() {
+        tagIds.clear();
+        bitmaps.clear();
+        freeTagIds.clear();
+        ordinals.clear();
+        freeOrdinals.clear();
+        nextOrdinal = 0;
+        allPins.clear();
+        Arrays.fill(idByOrdinal, null);
+        layoutVersion++;
+    }
+
+    /**
+     * 图钉使用的所有标签
+     */
+    synchronized Set<String> tags() {
+        return new HashSet<>(tagIds.keySet());
+    }
+
+    /**
+     * 每个标签的图钉数，按图钉数从多到少
+     */
+    synchronized Map<String, Integer> counts() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(tagIds.size());
+        for (Map.Entry<String, Integer> tag : tagIds.entrySet()) {
+            entries.add(Map.entry(tag.getKey(), bitmaps.get(tag.getValue()).getCardinality()));
+        }
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 标签组合筛选：包含 allOf 中全部标签、至少包含 anyOf 中一个标签（为空表示不限）、不包含 noneOf 中任何标签
+     *
+     * @return 匹配的图钉，按快照中的顺序
+     */
+    synchronized List<PinEntry> filter(Collection<String> allOf, Collection<String> anyOf,
+                                       Collection<String> noneOf, PinSnapshot snapshot) {
+        BitSet positions = new BitSet(snapshot.size());
+        addPositions(select(allOf, anyOf, noneOf), snapshot, positions);
+        List<PinEntry> pins = snapshot.getPins();
+        List<PinEntry> result = new ArrayList<>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            result.add(pins.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 带有标签 tag（忽略大小写，tag 为小写）的图钉在快照中的位置，用于结构化查询
+     * 标签字典通常只有几十个词，逐个比较后把命中的位图换算成位置
+     */
+    synchronized BitSet positionsIgnoreCase(String tag, PinSnapshot snapshot) {
+        BitSet positions = new BitSet(snapshot.size());
+        for (Map.Entry<String, Integer> entry : tagIds.entrySet()) {
+            if (entry.getKey().toLowerCase(Locale.ROOT).equals(tag)) {
+                addPositions(bitmaps.get(entry.getValue()), snapshot, positions);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * 把图钉序号换算为快照中的位置并加入 positions
+     */
+    private void addPositions(RoaringBitmap ordinalsToAdd, PinSnapshot snapshot, BitSet positions) {
+        updatePositions(snapshot);
+        IntIterator iterator = ordinalsToAdd.getIntIterator();
+        while (iterator.hasNext()) {
+            int ordinal = iterator.next();
+            int position = ordinal < positionByOrdinal.length ? positionByOrdinal[ordinal] : -1;
+            if (position >= 0) {
+                positions.set(position);
+            }
+        }
+    }
+
+    /**
+     * 求出匹配的图钉序号：全部包含的标签按位图从小到大求交，任一包含的标签求并，再减去排除的标签
+     */
+    synchronized RoaringBitmap select(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        RoaringBitmap result = null;
+        if (allOf != null && !allOf.isEmpty()) {
+            List<RoaringBitmap> required = new ArrayList<>(allOf.size());
+            for (String tag : allOf) {
+                RoaringBitmap bitmap = bitmap(tag);
+                if (bitmap == null) {
+                    return new RoaringBitmap();
+                }
+                required.add(bitmap);
+            }
+            required.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+            result = required.get(0).clone();
+            for (int i = 1; i < required.size() && !result.isEmpty(); i++) {
+                result.and(required.get(i));
+            }
+        }
+        if (anyOf != null && !anyOf.isEmpty()) {
+            RoaringBitmap union = union(anyOf);
+            if (result == null) {
+                result = union;
+            } else {
+                result.and(union);
+            }
+        }
+        if (result == null) {
+            result = allPins.clone();
+        }
+        if (noneOf != null && !noneOf.isEmpty() && !result.isEmpty()) {
+            result.andNot(union(noneOf));
+        }
+        return result;
+    }
+
+    private RoaringBitmap bitmap(String tag) {
+        Integer id = tag == null ? null : tagIds.get(tag.trim());
+        return id == null ? null : bitmaps.get(id);
+    }
+
+    /**
+     * 多个标签位图的并集（新对象，调用方可以修改）
+     */
+    private RoaringBitmap union(Collection<String> tags) {
+        List<RoaringBitmap> found = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            RoaringBitmap bitmap = bitmap(tag);
+            if (bitmap != null) {
+                found.add(bitmap);
+            }
+        }
+        if (found.size() == 1) {
+            return found.get(0).clone();
+        }
+        return found.isEmpty() ? new RoaringBitmap() : FastAggregation.or(found.iterator());
+    }
+
+    private int ordinalFor(String pinId) {
+        Integer existing = ordinals.get(pinId);
+        if (existing != null) {
+            return existing;
+        }
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.pop();
+        if (ordinal >= idByOrdinal.length) {
+            idByOrdinal = Arrays.copyOf(idByOrdinal, Math.max(ordinal + 1, idByOrdinal.length * 2));
+        }
+        if (!pinId.equals(idByOrdinal[ordinal])) {
+            idByOrdinal[ordinal] = pinId;
+            layoutVersion++;
+        }
+        ordinals.put(pinId, ordinal);
+        return ordinal;
+    }
+
+    private int newTagId(String tag) {
+        int id;
+        if (freeTagIds.isEmpty()) {
+            id = bitmaps.size();
+            bitmaps.add(new RoaringBitmap());
+        } else {
+            id = freeTagIds.pop();
+            bitmaps.set(id, new RoaringBitmap());
+        }
+        tagIds.put(tag, id);
+        return id;
+    }
+
+    /**
+     * 快照或序号分配变化后重建序号到位置的映射
+     */
+    private void updatePositions(PinSnapshot snapshot) {
+        if (snapshot.getVersion() == positionsVersion && layoutVersion == positionsLayout) {
+            return;
+        }
+        if (positionByOrdinal.length < nextOrdinal) {
+            positionByOrdinal = new int[Math.max(nextOrdinal, positionByOrdinal.length * 2)];
+        }
+        Arrays.fill(positionByOrdinal, -1);
+        List<PinEntry> pins = snapshot.getPins();
+        for (int i = 0; i < pins.size(); i++) {
+            Integer ordinal = ordinals.get(pins.get(i).getId());
+            if (ordinal != null) {
+                positionByOrdinal[ordinal] = i;
+            }
+        }
+        positionsVersion = snapshot.getVersion();
+        positionsLayout = layoutVersion;
+    }
+}
@@ -0,0 +1,1222 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个项目的图钉存储（内存 + 索引 + 本地持久化），由 PinStorage 按项目转发调用
+ * 每个项目的图钉保存在以项目根路径区分的独立日志目录中，只在该项目的工具窗口或编辑器
+ * 第一次需要图钉时才载入，打开小项目不会加载其他项目的图钉。
+ *
+ * 并发模型：修改在本对象的锁内进行（通常来自 EDT），每次修改发布新的不可变快照（见 PinList）；
+ * 读取图钉列表和标签集合不加锁，后台线程读取既不会阻塞修改，也不会看到修改到一半的状态。
+ * 锁内不执行 ReadAction，避免与持有写锁的 EDT 互相等待。
+ *
+ * 自定义顺序由每个图钉持久化的排序键决定（见 PinOrderKeys）：载入时按键排序，
+ * 新增图钉取末尾之后的键，移动图钉只为它生成相邻两个键之间的新键，只改写这一条记录。
+ */
+public final class ProjectPinStore implements Disposable {
+
+    private final Project project;
+    private final PinList pins = new PinList(); // 写时复制的图钉列表
+    private final PinIndex index = new PinIndex(); // 按文件分组的图钉索引
+    private final PinLineCache lineCache; // 按文档维护的已钉行位图
+    private final PinSearchIndex searchIndex; // 全文搜索的倒排索引，首次搜索时构建
+    private final PinFieldIndex fieldIndex = new PinFieldIndex(pins); // 结构化查询的字段索引，首次结构化查询时构建，之后按事件增量维护
+    private final PinFuzzyMatcher fuzzyMatcher; // 跳转到图钉的模糊匹配，缓存每个图钉的小写字符
+    private final Object deltaLock = new Object();
+    private PinDelta.Builder pendingDelta; // 本帧内尚未发布的变化（以 deltaLock 为锁）
+    private final AtomicInteger restoreGeneration = new AtomicInteger(); // 恢复任务代数，用于丢弃过期的后台结果
+    private final PinTagIndex tagIndex = new PinTagIndex(); // 本项目图钉标签的位图索引（在锁内维护）
+    private volatile Set<String> allTags = Collections.emptySet(); // 本项目图钉标签 + 全局标签（不可变，整体替换）
+    private String maxOrderKey; // 已分配的最大排序键（包括未载入内存的图钉，在锁内维护）
+
+    private PinJournal journal; // 本项目的日志存储，首次载入时打开
+    private volatile boolean loaded;
+
+    public ProjectPinStore(Project project) {
+        this.project = project;
+        this.lineCache = new PinLineCache(index, this);
+        this.searchIndex = new PinSearchIndex(project.getBasePath());
+        this.fuzzyMatcher = new PinFuzzyMatcher(project.getBasePath());
+    }
+
+    /**
+     * 获取项目的图钉存储（不会触发载入，载入在第一次访问图钉时进行）
+     */
+    public static ProjectPinStore getInstance(@NotNull Project project) {
+        return project.getService(ProjectPinStore.class);
+    }
+
+    /**
+     * 查找已载入且包含指定图钉的项目存储（只检查已创建的存储，不会载入其他项目）
+     */
+    static @Nullable ProjectPinStore findOwner(PinEntry entry) {
+        if (entry == null) {
+            return null;
+        }
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (project.isDisposed()) {
+                continue;
+            }
+            ProjectPinStore store = project.getServiceIfCreated(ProjectPinStore.class);
+            if (store != null && store.loaded && store.index.pinsInFile(entry.filePath).contains(entry)) {
+                return store;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 对所有已载入的项目存储执行操作
+     */
+    static List<ProjectPinStore> loadedStores() {
+        List<ProjectPinStore> stores = new ArrayList<>();
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (project.isDisposed()) {
+                continue;
+            }
+            ProjectPinStore store = project.getServiceIfCreated(ProjectPinStore.class);
+            if (store != null && store.loaded) {
+                stores.add(store);
+            }
+        }
+        return stores;
+    }
+
+    // ---------------------------------------------------------------- 载入
+
+    /**
+     * 确保本项目的图钉已载入（只在第一次调用时读取存储）
+     */
+    void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭日志后重新从磁盘载入，等同于 IDE 重启后的首次载入（供性能测试使用）
+     */
+    @TestOnly
+    synchronized void reloadFromDisk() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        reload();
+    }
+
+    /**
+     * 从本地持久化数据恢复本项目的图钉（分阶段）
+     * 第一阶段在当前线程立即载入元数据，图钉处于未解析状态，不访问文件系统和文档；
+     * 第二阶段由后台任务按文件分批校验文件并为已打开的文件挂接 RangeMarker；
+     * 其余图钉在文件打开或导航时再挂接（见 resolvePin / resolvePinsInFile）。
+     */
+    synchronized void reload() {
+        long startTime = System.currentTimeMillis();
+        List<PinState> saved = sortByOrderKey(journal().getPins());
+        List<PinEntry> entries = new ArrayList<>(saved.size());
+        index.clear();
+
+        for (PinState state : saved) {
+            PinEntry entry = PinEntry.unresolved(state);
+            entries.add(entry);
+            index.add(entry);
+        }
+        pins.replaceAll(entries);
+        tagIndex.clear();
+        for (PinEntry entry : entries) {
+            countTags(entry, 1);
+        }
+        publishTags();
+        loaded = true;
+
+        fireChanged(PinChangeEvent.reloaded());
+        System.out.println("[CodePins] 项目 " + project.getName() + " 已载入 " + entries.size() + " 个图钉元数据，耗时 "
+                + (System.currentTimeMillis() - startTime) + " ms");
+
+        // 启动后台分批解析，旧的解析任务会因代数变化自行结束
+        int generation = restoreGeneration.incrementAndGet();
+        if (!entries.isEmpty()) {
+            new PinRestoreTask(project, this, entries, generation).queue();
+        }
+    }
+
+    /**
+     * 获取本项目的日志存储，首次调用时打开，并把旧版全局存储中属于本项目的图钉迁移过来
+     */
+    private synchronized PinJournal journal() {
+        if (journal == null) {
+            try {
+                journal = PinJournal.open(getStorageDirectory());
+                migrateFromGlobalStore(journal);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法打开项目图钉存储", e);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * 存储目录：IDE 配置目录下 codepins/projects/<项目名>.<根路径哈希>
+     */
+    private Path getStorageDirectory() {
+        String basePath = project.getBasePath();
+        String name = project.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        String key = basePath != null ? Integer.toHexString(basePath.hashCode()) : "default";
+        return Paths.get(PathManager.getConfigPath(), "codepins", "projects", name + "." + key);
+    }
+
+    /**
+     * 把旧版全局存储中位于项目根目录下的图钉搬到本项目的存储
+     * 其余旧图钉留在全局存储中，由对应的项目认领，或通过 PinStateService.getUnclaimedPins 只读查看。
+     * 先写入并落盘本项目的日志，再从全局存储删除，中途崩溃最多留下一份重复数据（按 ID 覆盖）
+     */
+    private void migrateFromGlobalStore(PinJournal target) throws IOException {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return;
+        }
+        PinStateService globalStore = PinStateService.getInstance();
+        List<PinState> legacy = globalStore.getPinsUnder(basePath);
+        if (legacy.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(legacy.size());
+        for (PinState state : legacy) {
+            target.put(state);
+            ids.add(state.id);
+        }
+        target.flush();
+        globalStore.removePins(ids);
+        System.out.println("[CodePins] 已将 " + legacy.size() + " 个图钉迁移到项目 " + project.getName() + " 的存储");
+    }
+
+    // ---------------------------------------------------------------- 查询
+
+    List<PinEntry> getPins() {
+        return getSnapshot().getPins();
+    }
+
+    PinSnapshot getSnapshot() {
+        ensureLoaded();
+        return pins.snapshot();
+    }
+
+    List<PinEntry> getPinsInFile(String filePath) {
+        ensureLoaded();
+        return index.pinsInFile(filePath);
+    }
+
+    List<PinEntry> getPinsAtLine(String filePath, Document document, int line) {
+        ensureLoaded();
+        return index.pinsAtLine(filePath, document, line);
+    }
+
+    List<PinEntry> getPinsInRange(String filePath, int startOffset, int endOffset) {
+        ensureLoaded();
+        return index.pinsOverlapping(filePath, startOffset, endOffset);
+    }
+
+    boolean hasPinInRange(String filePath, int startOffset, int endOffset) {
+        ensureLoaded();
+        return index.hasPinOverlapping(filePath, startOffset, endOffset);
+    }
+
+    boolean isLinePinned(String filePath, Document document, int line) {
+        ensureLoaded();
+        return lineCache.isLinePinned(filePath, document, line);
+    }
+
+    BitSet getPinnedLines(String filePath, Document document) {
+        ensureLoaded();
+        return lineCache.pinnedLines(filePath, document);
+    }
+
+    /**
+     * 搜索（不持有存储的锁，可以在后台线程调用）
+     * 只有关键字时直接查全文索引；含 tag:、author:、file:、age:、block: 或短语时编译为执行计划，
+     * 先求交字段索引，再查全文索引，最后逐个确认剩下的图钉
+     *
+     * @return 匹配的图钉，按存储顺序
+     */
+    List<PinEntry> search(String query, boolean includeCode) {
+        PinSnapshot snapshot = getSnapshot();
+        PinQuery parsed = PinQuery.parse(query, System.currentTimeMillis());
+        BitSet matches;
+        if (parsed.isPlainText()) {
+            matches = searchIndex.search(query, snapshot, includeCode);
+        } else {
+            synchronized (fieldIndex) {
+                fieldIndex.update(snapshot);
+                matches = PinQueryPlan.compile(parsed, fieldIndex, tagIndex, snapshot, project.getBasePath())
+                        .execute(snapshot, text -> searchIndex.search(text, snapshot, includeCode));
+            }
+        }
+        List<PinEntry> all = snapshot.getPins();
+        List<PinEntry> result = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            result.add(all.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 模糊匹配并按得分排序（只锁匹配器，不持有存储的锁）
+     *
+     * @return 得分最高的最多 limit 个图钉
+     */
+    List<PinEntry> fuzzySearch(String query, int limit) {
+        PinSnapshot snapshot = getSnapshot();
+        synchronized (fuzzyMatcher) {
+            return fuzzyMatcher.match(query, snapshot, limit, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 按标签组合筛选（位图运算，不逐个检查图钉）
+     *
+     * @return 匹配的图钉，按存储顺序
+     */
+    List<PinEntry> filterByTags(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        PinSnapshot snapshot = getSnapshot();
+        return tagIndex.filter(allOf, anyOf, noneOf, snapshot);
+    }
+
+    /**
+     * 每个标签的图钉数，按图钉数从多到少
+     */
+    Map<String, Integer> getTagCounts() {
+        ensureLoaded();
+        return tagIndex.counts();
+    }
+
+    Set<String> getAllTags() {
+        ensureLoaded();
+        return new HashSet<>(allTags); // 返回副本，避免外部修改
+    }
+
+    // ---------------------------------------------------------------- 修改
+
+    boolean addPin(PinEntry entry) {
+        ensureLoaded();
+        PinState state = toState(entry); // 在锁外读取 marker 位置
+        synchronized (this) {
+            state.orderKey = nextOrderKey();
+            pins.add(entry);
+            index.add(entry);
+
+            // 更新标签集合
+            if (countTags(entry, 1)) {
+                publishTags();
+            }
+
+            // 存入持久化存储（静态快照，以图钉 ID 为键）
+            journal().put(state);
+            if (entry.isBlock) {
+                System.out.println("[CodePins] 保存代码块图钉，范围: " + state.startOffset + "-" + state.endOffset);
+            }
+
+            fireChanged(PinChangeEvent.added(entry, pins.size() - 1));
+        }
+        return true;
+    }
+
+    synchronized void removePin(PinEntry entry) {
+        int position = pins.indexOf(entry);
+        PinEntry removed = null;
+        if (position >= 0) {
+            removed = pins.remove(position);
+            index.remove(removed);
+
+            // 更新标签集合
+            if (countTags(removed, -1)) {
+                publishTags();
+            }
+        }
+
+        // 同时从持久化存储中删除（按 ID 定位）
+        journal().remove(entry.getId());
+
+        if (removed != null) {
+            fireChanged(PinChangeEvent.removed(removed, position));
+        }
+    }
+
+    /**
+     * 一次性执行一批修改：一次加锁、一次标签集合发布、一批持久化记录
+     * 执行顺序为删除、修改、新增；被删除的图钉上的修改忽略。
+     * 每个受影响的图钉在锁内发出各自的删除、修改、新增事件，由 PinDelta.Builder 合并为一帧的增量变化
+     */
+    void applyBatch(PinBatch batch) {
+        ensureLoaded();
+        if (batch.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+
+        // 新增图钉的持久化快照在锁外读取 marker 位置
+        List<PinState> addedStates = new ArrayList<>(batch.added.size());
+        for (PinEntry entry : batch.added) {
+            addedStates.add(toState(entry));
+        }
+
+        synchronized (this) {
+            boolean tagsChanged = false;
+
+            // 删除：列表、索引和日志各一次批量操作
+            List<PinEntry> removed = Collections.emptyList();
+            if (!batch.removed.isEmpty()) {
+                List<PinEntry> before = pins.snapshot().getPins();
+                removed = pins.removeAll(batch.removed);
+                List<String> ids = new ArrayList<>(batch.removed.size());
+                for (PinEntry entry : batch.removed) {
+                    ids.add(entry.getId());
+                }
+                for (PinEntry entry : removed) {
+                    index.remove(entry);
+                    tagsChanged |= countTags(entry, -1);
+                }
+                journal().removeAll(ids);
+
+                // 位置按依次删除计算，与逐个删除时的事件一致
+                int shift = 0;
+                for (int i = 0; i < before.size() && shift < removed.size(); i++) {
+                    PinEntry entry = before.get(i);
+                    if (batch.removed.contains(entry)) {
+                        fireChanged(PinChangeEvent.removed(entry, i - shift++));
+                    }
+                }
+            }
+
+            // 修改备注和标签，同一个图钉只写一条记录、只发出一个事件
+            Map<String, PinState> dirty = new LinkedHashMap<>();
+            Map<PinEntry, Integer> updated = new HashMap<>(); // 图钉 -> 变化的内容
+            for (Map.Entry<PinEntry, String> change : batch.notes.entrySet()) {
+                PinEntry entry = change.getKey();
+                if (batch.removed.contains(entry)) {
+                    continue;
+                }
+                entry.note = change.getValue();
+                updated.merge(entry, PinChangeEvent.NOTE, (a, b) -> a | b);
+                PinState p = journal().getPin(entry.getId());
+                if (p != null) {
+                    p.note = change.getValue();
+                    dirty.put(p.id, p);
+                }
+            }
+            for (Map.Entry<PinEntry, List<String>> change : batch.tags.entrySet()) {
+                PinEntry entry = change.getKey();
+                if (batch.removed.contains(entry)) {
+                    continue;
+                }
+                tagsChanged |= countTags(entry, -1);
+                entry.setTags(change.getValue());
+                tagsChanged |= countTags(entry, 1);
+                updated.merge(entry, PinChangeEvent.TAGS, (a, b) -> a | b);
+                PinState p = journal().getPin(entry.getId());
+                if (p != null) {
+                    p.tags.clear();
+                    p.tags.addAll(entry.getTags());
+                    dirty.put(p.id, p);
+                }
+            }
+            for (PinState p : dirty.values()) {
+                journal().put(p);
+            }
+            if (!updated.isEmpty()) {
+                List<PinEntry> current = pins.snapshot().getPins();
+                for (int i = 0; i < current.size(); i++) {
+                    Integer changes = updated.get(current.get(i));
+                    if (changes != null) {
+                        fireChanged(PinChangeEvent.updated(current.get(i), i, changes));
+                    }
+                }
+            }
+
+            // 新增（追加到末尾）
+            int position = pins.size();
+            pins.addAll(batch.added);
+            for (PinEntry entry : batch.added) {
+                index.add(entry);
+                tagsChanged |= countTags(entry, 1);
+                fireChanged(PinChangeEvent.added(entry, position++));
+            }
+            for (PinState state : addedStates) {
+                state.orderKey = nextOrderKey();
+                journal().put(state);
+            }
+
+            if (tagsChanged) {
+                publishTags();
+            }
+
+            System.out.println("[CodePins] 批量修改图钉: 新增 " + batch.added.size() + " 个，删除 " + removed.size()
+                    + " 个，修改 " + dirty.size() + " 个，耗时 " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    synchronized void clearAll() {
+        pins.clear();
+        index.clear();
+        journal().clear();
+        maxOrderKey = null;
+        loaded = true;
+
+        // 只保留全局自定义标签
+        tagIndex.clear();
+        publishTags();
+
+        fireChanged(PinChangeEvent.reloaded());
+    }
+
+    /**
+     * 判断解析任务是否仍对应当前这次加载
+     */
+    boolean isCurrentRestore(int generation) {
+        return restoreGeneration.get() == generation;
+    }
+
+    /**
+     * 后台解析完成一批后回调（EDT）：刷新索引并通知订阅者
+     */
+    synchronized void onPinsResolved(Collection<String> filePaths, int generation) {
+        if (!isCurrentRestore(generation)) {
+            return;
+        }
+        for (String filePath : filePaths) {
+            index.invalidate(filePath);
+            lineCache.invalidate(filePath);
+        }
+        fireChanged(PinChangeEvent.reloaded());
+    }
+
+    /**
+     * 后台解析发现文件已不存在时回调（EDT）：仅从内存中移除，保留持久化数据
+     */
+    synchronized void onFilesMissing(Collection<PinEntry> missing, int generation) {
+        if (!isCurrentRestore(generation) || missing.isEmpty()) {
+            return;
+        }
+        boolean tagsChanged = false;
+        for (PinEntry entry : missing) {
+            int position = pins.indexOf(entry);
+            if (position >= 0) {
+                pins.remove(position);
+                index.remove(entry);
+                tagsChanged |= countTags(entry, -1);
+                fireChanged(PinChangeEvent.removed(entry, position));
+            }
+        }
+        if (tagsChanged) {
+            publishTags();
+        }
+    }
+
+    /**
+     * 为未解析的图钉挂接 RangeMarker（会按需加载文档）
+     */
+    boolean resolvePin(PinEntry entry) {
+        if (entry.isResolved()) {
+            return true;
+        }
+        VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(entry.filePath);
+        if (vFile == null) {
+            return false;
+        }
+        boolean attached = ReadAction.compute(() ->
+                entry.attachMarker(FileDocumentManager.getInstance().getDocument(vFile)));
+        if (attached) {
+            synchronized (this) {
+                index.invalidate(entry.filePath);
+                lineCache.invalidate(entry.filePath);
+                fireUpdated(entry, PinChangeEvent.POSITION);
+            }
+        }
+        return attached;
+    }
+
+    /**
+     * 图钉当前位置，不挂接 RangeMarker：休眠图钉按需加载文档并按指纹定位，读取后仍保持休眠
+     */
+    static @Nullable PinLocation locatePin(PinEntry entry) {
+        return ReadAction.compute(() -> {
+            RangeMarker m = entry.marker;
+            Document doc;
+            if (m != null) {
+                doc = m.getDocument();
+            } else {
+                VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(entry.filePath);
+                doc = vFile != null ? FileDocumentManager.getInstance().getDocument(vFile) : null;
+            }
+            TextRange range = entry.locate(doc);
+            return range != null ? new PinLocation(doc, range) : null;
+        });
+    }
+
+    /**
+     * 为指定文件中所有未解析的图钉挂接 RangeMarker，在文件打开时调用
+     */
+    void resolvePinsInFile(VirtualFile file) {
+        List<PinEntry> unresolved = new ArrayList<>();
+        for (PinEntry entry : getPinsInFile(file.getPath())) {
+            if (!entry.isResolved()) {
+                unresolved.add(entry);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+
+        List<PinEntry> attached = ReadAction.compute(() -> {
+            Document doc = FileDocumentManager.getInstance().getDocument(file);
+            List<PinEntry> result = new ArrayList<>();
+            for (PinEntry entry : unresolved) {
+                if (entry.attachMarker(doc)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        });
+
+        if (!attached.isEmpty()) {
+            synchronized (this) {
+                index.invalidate(file.getPath());
+                lineCache.invalidate(file.getPath());
+                for (PinEntry entry : attached) {
+                    fireUpdated(entry, PinChangeEvent.POSITION);
+                }
+            }
+        }
+    }
+
+    /**
+     * 文件关闭后把其中的活跃图钉转为休眠图钉：释放 RangeMarker，只保留行号和内容指纹，
+     * 并把最新位置写入存储，文档不再被图钉引用，可以被回收。
+     * 文档有未保存的修改时保持活跃：此时文档本来就常驻内存，而且保存的位置会与磁盘内容不一致。
+     */
+    void demotePinsInFile(VirtualFile file) {
+        if (!loaded) {
+            return;
+        }
+        // 已钉行位图在文件关闭时总是释放（行标记查询过的文件可能没有活跃图钉），再次打开后按需重建
+        lineCache.release(file.getPath());
+        List<PinEntry> live = new ArrayList<>();
+        for (PinEntry entry : getPinsInFile(file.getPath())) {
+            if (entry.isResolved()) {
+                live.add(entry);
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+
+        int[] released = new int[1];
+        List<PinEntry> demoted = ReadAction.compute(() -> {
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            Document doc = documentManager.getCachedDocument(file);
+            if (doc != null && documentManager.isDocumentUnsaved(doc)) {
+                return Collections.<PinEntry>emptyList();
+            }
+            released[0] = doc != null ? doc.getTextLength() : 0;
+            List<PinEntry> result = new ArrayList<>();
+            for (PinEntry entry : live) {
+                if (entry.detachMarker()) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        });
+        if (demoted.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            index.invalidate(file.getPath());
+            for (PinEntry entry : demoted) {
+                PinState p = journal().getPin(entry.getId());
+                if (p != null) {
+                    savePosition(p, entry);
+                    journal().put(p);
+                }
+            }
+        }
+        System.out.println("[CodePins] 文件已关闭，" + demoted.size() + " 个图钉转为休眠，不再引用 "
+                + released[0] + " 个字符的文档: " + file.getPath());
+    }
+
+    /**
+     * 批量为指定文件中失去锚点的活跃图钉重新定位，在文件内容被外部整体替换后调用（例如切换分支、拉取代码）
+     * 休眠图钉不需要处理，它们在文件打开挂接时会按指纹校验并重新定位
+     */
+    void reanchorPinsInFiles(Collection<String> filePaths) {
+        if (!loaded) {
+            return;
+        }
+        List<PinEntry> live = new ArrayList<>();
+        for (String filePath : filePaths) {
+            for (PinEntry entry : getPinsInFile(filePath)) {
+                if (entry.isResolved()) {
+                    live.add(entry);
+                }
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int[] lost = new int[1];
+        List<PinEntry> moved = ReadAction.compute(() -> {
+            List<PinEntry> result = new ArrayList<>();
+            for (PinEntry entry : live) {
+                if (!entry.isAnchored()) {
+                    lost[0]++;
+                    if (entry.reanchor()) {
+                        result.add(entry);
+                    }
+                }
+            }
+            return result;
+        });
+
+        if (!moved.isEmpty()) {
+            synchronized (this) {
+                Set<String> invalidated = new HashSet<>();
+                for (PinEntry entry : moved) {
+                    if (invalidated.add(entry.filePath)) {
+                        index.invalidate(entry.filePath);
+                        lineCache.invalidate(entry.filePath);
+                    }
+                    PinState p = journal().getPin(entry.getId());
+                    if (p != null) {
+                        savePosition(p, entry);
+                        journal().put(p);
+                    }
+                    fireUpdated(entry, PinChangeEvent.POSITION);
+                }
+            }
+        }
+        if (lost[0] > 0) {
+            System.out.println("[CodePins] 重新定位图钉: " + filePaths.size() + " 个文件中 " + lost[0]
+                    + " 个图钉失去锚点，找回 " + moved.size() + " 个，耗时 "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    synchronized void updateNote(PinEntry entry, String newNote) {
+        entry.note = newNote;
+
+        PinState p = journal().getPin(entry.getId());
+        if (p != null) {
+            p.note = newNote;
+            journal().put(p);
+        }
+
+        fireUpdated(entry, PinChangeEvent.NOTE);
+    }
+
+    synchronized void updateTags(PinEntry entry, List<String> newTags) {
+        // 更新内存中的图钉标签
+        boolean tagsChanged = countTags(entry, -1);
+        entry.setTags(newTags);
+        tagsChanged |= countTags(entry, 1);
+
+        // 更新持久化存储中的标签
+        PinState p = journal().getPin(entry.getId());
+        if (p != null) {
+            p.tags.clear();
+            p.tags.addAll(entry.getTags());
+            journal().put(p);
+        }
+
+        // 更新所有标签集合
+        if (tagsChanged) {
+            publishTags();
+        }
+
+        // 通知订阅者
+        fireUpdated(entry, PinChangeEvent.TAGS);
+    }
+
+    /**
+     * 在标签位图索引中登记（delta 为 1）或移除（delta 为 -1）图钉的标签（调用方持有锁）
+     *
+     * @return 是否有标签新出现或不再被任何图钉使用（需要重新发布标签集合）
+     */
+    private boolean countTags(PinEntry entry, int delta) {
+        return delta > 0 ? tagIndex.add(entry) : tagIndex.remove(entry);
+    }
+
+    /**
+     * 发布标签集合：本项目图钉的标签 + 全局自定义标签（开销与标签种类数成正比，与图钉数量无关）
+     */
+    private void publishTags() {
+        Set<String> tags = new HashSet<>(PinStateService.getInstance().getGlobalTags());
+        tags.addAll(tagIndex.tags());
+        allTags = Collections.unmodifiableSet(tags);
+    }
+
+    /**
+     * 全局标签变化时同步标签集合
+     */
+    synchronized void globalTagAdded(String tag) {
+        publishTags();
+    }
+
+    synchronized void globalTagRemoved(String tag) {
+        publishTags();
+    }
+
+    /**
+     * 添加图钉状态（用于导入功能）
+     */
+    boolean addPinState(PinState state) {
+        ensureLoaded();
+
+        // 检查文件是否存在
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(state.filePath);
+        if (file == null || !file.exists()) {
+            System.out.println("[CodePins] 文件不存在: " + state.filePath);
+            return false;
+        }
+
+        try {
+            // 获取文件内容
+            Document document = FileDocumentManager.getInstance().getDocument(file);
+            if (document == null) {
+                System.out.println("[CodePins] 无法获取文件内容: " + state.filePath);
+                return false;
+            }
+
+            // 创建标记
+            RangeMarker marker;
+            if (state.isBlock && state.startOffset >= 0 && state.endOffset >= 0) {
+                // 代码块图钉
+                int startOffset = Math.min(state.startOffset, document.getTextLength());
+                int endOffset = Math.min(state.endOffset, document.getTextLength());
+                marker = document.createRangeMarker(startOffset, endOffset);
+            } else {
+                // 单行图钉
+                int line = Math.min(state.line - 1, document.getLineCount() - 1);
+                int lineStartOffset = document.getLineStartOffset(line);
+                int lineEndOffset = document.getLineEndOffset(line);
+                marker = document.createRangeMarker(lineStartOffset, lineEndOffset);
+            }
+
+            // 创建 PinEntry 并添加到存储
+            PinEntry entry = new PinEntry(
+                    state.id,
+                    state.filePath,
+                    marker,
+                    state.note,
+                    state.timestamp,
+                    state.author,
+                    state.isBlock,
+                    state.tags
+            );
+
+            synchronized (this) {
+                pins.add(entry);
+                index.add(entry);
+                if (countTags(entry, 1)) {
+                    publishTags();
+                }
+
+                // 添加到持久化存储（与内存图钉共用同一个 ID），排在末尾
+                state.id = entry.getId();
+                state.orderKey = nextOrderKey();
+                journal().put(state);
+
+                fireChanged(PinChangeEvent.added(entry, pins.size() - 1));
+            }
+            return true;
+        } catch (Exception e) {
+            System.out.println("[CodePins] 添加图钉失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 按给定顺序整体重排并持久化（为全部图钉重新分配排序键）
+     * 工具窗口中的排序只改变显示顺序（见 PinListModel.setComparator），不会调用这里
+     */
+    void updatePinsOrder(List<PinEntry> sortedPins) {
+        ensureLoaded();
+        synchronized (this) {
+            // 整体替换为新的排序顺序
+            pins.replaceAll(sortedPins);
+            reassignOrderKeys();
+
+            // 通知订阅者整体刷新
+            fireChanged(PinChangeEvent.reloaded());
+        }
+    }
+
+    void movePinPosition(int fromIndex, int toIndex) {
+        ensureLoaded();
+        synchronized (this) {
+            movePinPositionLocked(fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * 把图钉移动到另一个图钉之前，before 为 null 时移动到末尾
+     * 按图钉而不是列表下标定位，列表经过过滤时也能正确移动
+     */
+    void movePin(PinEntry pin, @Nullable PinEntry before) {
+        ensureLoaded();
+        synchronized (this) {
+            int fromIndex = pins.indexOf(pin);
+            if (fromIndex < 0 || pin.equals(before)) {
+                return;
+            }
+            int toIndex = pins.size() - 1;
+            if (before != null) {
+                int beforeIndex = pins.indexOf(before);
+                if (beforeIndex < 0) {
+                    return;
+                }
+                toIndex = fromIndex < beforeIndex ? beforeIndex - 1 : beforeIndex;
+            }
+            movePinPositionLocked(fromIndex, toIndex);
+        }
+    }
+
+    private void movePinPositionLocked(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex >= pins.size() || toIndex < 0 || toIndex >= pins.size() || fromIndex == toIndex) {
+            return;
+        }
+
+        // 交换内存中的图钉位置
+        PinEntry pin = pins.move(fromIndex, toIndex);
+
+        // 通知订阅者
+        fireChanged(PinChangeEvent.moved(pin, fromIndex, toIndex));
+
+        // 保存自定义排序：只为被移动的图钉生成相邻两个图钉之间的新键
+        PinState state = journal().getPin(pin.getId());
+        String key = state != null ? orderKeyAt(toIndex) : null;
+        if (key != null) {
+            state.orderKey = key;
+            journal().put(state);
+            if (maxOrderKey == null || key.compareTo(maxOrderKey) > 0) {
+                maxOrderKey = key;
+            }
+        } else {
+            reassignOrderKeys();
+        }
+    }
+
+    // ---------------------------------------------------------------- 排序键
+
+    /**
+     * 按排序键排列持久化的图钉（相同键保持日志中的顺序）
+     * 旧版本的数据没有排序键，或键重复、格式错误时，按当前顺序重新分配一次
+     */
+    private List<PinState> sortByOrderKey(List<PinState> saved) {
+        boolean complete = true;
+        for (PinState state : saved) {
+            if (state.orderKey == null) {
+                complete = false;
+                break;
+            }
+        }
+        if (complete) {
+            saved.sort(Comparator.comparing(state -> state.orderKey));
+        }
+        List<String> keys = new ArrayList<>(saved.size());
+        for (PinState state : saved) {
+            keys.add(state.orderKey);
+        }
+        if (!complete || !PinOrderKeys.isAscending(keys)) {
+            keys = PinOrderKeys.spread(saved.size());
+            for (int i = 0; i < saved.size(); i++) {
+                saved.get(i).orderKey = keys.get(i);
+                journal().put(saved.get(i));
+            }
+            System.out.println("[CodePins] 项目 " + project.getName() + " 已为 " + saved.size() + " 个图钉分配排序键");
+        }
+        maxOrderKey = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+        return saved;
+    }
+
+    /**
+     * 末尾之后的新排序键（锁内调用）
+     */
+    private String nextOrderKey() {
+        String key = PinOrderKeys.between(maxOrderKey, null);
+        if (key.length() > PinOrderKeys.MAX_LENGTH) {
+            reassignOrderKeys();
+            key = PinOrderKeys.between(maxOrderKey, null);
+        }
+        maxOrderKey = key;
+        return key;
+    }
+
+    /**
+     * 列表中 position 处图钉的新排序键：位于前后两个图钉的键之间（锁内调用）
+     * 相邻图钉缺少键或键已经过长时返回 null，由调用方整体重新分配
+     */
+    private @Nullable String orderKeyAt(int position) {
+        String before = position > 0 ? orderKeyOf(pins.get(position - 1)) : null;
+        String after = position + 1 < pins.size() ? orderKeyOf(pins.get(position + 1)) : null;
+        if ((position > 0 && before == null) || (position + 1 < pins.size() && after == null)) {
+            return null;
+        }
+        try {
+            // 移到末尾时排在所有已分配的键之后（包括未载入内存的图钉）
+            String key = PinOrderKeys.between(after != null ? before : maxOrderKey, after);
+            return key.length() <= PinOrderKeys.MAX_LENGTH ? key : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private @Nullable String orderKeyOf(PinEntry pin) {
+        PinState state = journal().getPin(pin.getId());
+        return state != null ? state.orderKey : null;
+    }
+
+    /**
+     * 按内存中的当前顺序为全部图钉重新分配均匀分布的排序键（锁内调用，每个图钉写一条记录）
+     * 文件缺失、未载入内存的图钉保留原来的键
+     */
+    private void reassignOrderKeys() {
+        List<PinEntry> current = pins.snapshot().getPins();
+        List<String> keys = PinOrderKeys.spread(current.size());
+        for (int i = 0; i < current.size(); i++) {
+            PinState state = journal().getPin(current.get(i).getId());
+            if (state != null) {
+                state.orderKey = keys.get(i);
+                journal().put(state);
+            }
+        }
+        maxOrderKey = null;
+        for (PinState state : journal().getPins()) {
+            if (state.orderKey != null && (maxOrderKey == null || state.orderKey.compareTo(maxOrderKey) > 0)) {
+                maxOrderKey = state.orderKey;
+            }
+        }
+        System.out.println("[CodePins] 已为 " + current.size() + " 个图钉重新分配排序键");
+    }
+
+    boolean replacePin(PinEntry oldPin, PinEntry newPin) {
+        // 在锁外读取 marker 位置
+        Document doc = newPin.marker.getDocument();
+        int oldLine = oldPin.getCurrentLine(doc);
+        int newLine = newPin.getCurrentLine(doc);
+        synchronized (this) {
+            return replacePinLocked(oldPin, newPin, oldLine, newLine);
+        }
+    }
+
+    private boolean replacePinLocked(PinEntry oldPin, PinEntry newPin, int oldLine, int newLine) {
+        int position = pins.indexOf(oldPin);
+        if (position < 0) {
+            System.out.println("[CodePins] 替换图钉失败: 找不到原始图钉");
+            return false;
+        }
+
+        // 替换内存中的图钉
+        PinEntry previous = pins.set(position, newPin);
+        index.remove(previous);
+        index.add(newPin);
+        boolean tagsChanged = countTags(previous, -1);
+        tagsChanged |= countTags(newPin, 1);
+        if (tagsChanged) {
+            publishTags();
+        }
+
+        // 更新持久化存储中的数据
+
+        PinState p = journal().getPin(oldPin.getId());
+        if (p != null) {
+            // 更新行号
+            p.line = newLine;
+
+            // 如果是代码块图钉，更新偏移量
+            if (newPin.isBlock) {
+                p.startOffset = newPin.marker.getStartOffset();
+                p.endOffset = newPin.marker.getEndOffset();
+            }
+
+            // 新图钉使用了不同的 ID 时，按新 ID 重新登记（保持原位置）
+            if (!oldPin.getId().equals(newPin.getId())) {
+                PinState renamed = p.copy();
+                renamed.id = newPin.getId();
+                journal().put(renamed);
+                journal().remove(oldPin.getId());
+            } else {
+                journal().put(p);
+            }
+
+            System.out.println("[CodePins] 图钉持久化数据已更新，行号: " + oldLine + " -> " + newLine);
+        }
+
+        // 通知订阅者
+        fireChanged(PinChangeEvent.updated(newPin, position));
+
+        return true;
+    }
+
+    /**
+     * 把图钉当前的位置和内容指纹写入持久化快照
+     */
+    private static void savePosition(PinState state, PinEntry pin) {
+        state.line = pin.getLine();
+        if (pin.isBlock) {
+            state.startOffset = pin.getStartOffset();
+            state.endOffset = pin.getEndOffset();
+        }
+        PinFingerprint fingerprint = pin.getFingerprint();
+        if (fingerprint != null) {
+            state.codeHash = fingerprint.hash;
+            state.codeLength = fingerprint.length;
+            state.codeLines = fingerprint.lines;
+            state.codeBefore = fingerprint.before;
+            state.codeAfter = fingerprint.after;
+            state.codeMarks = fingerprint.marks;
+        }
+    }
+
+    /**
+     * 根据内存中的图钉生成持久化快照（保留图钉 ID）
+     */
+    private static PinState toState(PinEntry pin) {
+        int currentLine = pin.getLine();
+
+        PinState state;
+        if (pin.isBlock) {
+            // 如果是代码块图钉，保存偏移量范围
+            state = new PinState(
+                    pin.filePath,
+                    currentLine,
+                    pin.note,
+                    pin.timestamp,
+                    pin.author,
+                    pin.isBlock,
+                    pin.getStartOffset(),
+                    pin.getEndOffset(),
+                    pin.getTags()
+            );
+        } else {
+            // 如果是单行图钉，使用带标签的构造函数
+            state = new PinState(
+                    pin.filePath,
+                    currentLine,
+                    pin.note,
+                    pin.timestamp,
+                    pin.author,
+                    pin.isBlock,
+                    pin.getTags()
+            );
+        }
+        state.id = pin.getId();
+        savePosition(state, pin);
+        return state;
+    }
+
+    // ---------------------------------------------------------------- 通知
+
+    synchronized void refreshUI() {
+        fireChanged(PinChangeEvent.reloaded());
+    }
+
+    /**
+     * 通知订阅者指定图钉的内容已变化
+     */
+    private void fireUpdated(PinEntry entry, int changes) {
+        List<PinEntry> current = pins.snapshot().getPins();
+        int position = current.indexOf(entry);
+        if (position >= 0) {
+            fireChanged(PinChangeEvent.updated(current.get(position), position, changes));
+        }
+    }
+
+    /**
+     * 分发变更事件
+     * 行号位图缓存和字段索引同步更新，搜索索引登记变化后在下次搜索时增量更新；订阅者通过 PinEvents 主题接收按帧合并后的变化：
+     * 一帧内的第一个事件安排一次 EDT 回调，之后的事件只并入待发布的变化
+     */
+    private void fireChanged(PinChangeEvent event) {
+        lineCache.pinsChanged(event);
+        searchIndex.pinsChanged(event);
+        fieldIndex.pinsChanged(event);
+        synchronized (deltaLock) {
+            if (pendingDelta == null) {
+                pendingDelta = new PinDelta.Builder();
+                // 订阅者只更新界面模型和行标记，模态对话框打开时也应立即反映变化
+                ApplicationManager.getApplication().invokeLater(this::publishDelta, ModalityState.any(),
+                        project.getDisposed());
+            }
+            pendingDelta.offer(event);
+        }
+    }
+
+    private void publishDelta() {
+        PinDelta delta;
+        synchronized (deltaLock) {
+            if (pendingDelta == null || pendingDelta.isEmpty()) {
+                pendingDelta = null;
+                return;
+            }
+            delta = pendingDelta.build();
+            pendingDelta = null;
+        }
+        try {
+            project.getMessageBus().syncPublisher(PinEvents.TOPIC).pinsChanged(delta);
+        } catch (Exception e) {
+            System.out.println("[CodePins] 图钉变更通知失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 项目关闭时把尚未落盘的记录写入日志
+     */
+    @Override
+    public void dispose() {
+        restoreGeneration.incrementAndGet();
+        searchIndex.dispose();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
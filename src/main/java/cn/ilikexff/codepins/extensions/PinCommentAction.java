@@ -425,14 +425,7 @@ public class PinCommentAction extends AnAction {
         }
         
         // 检查该范围是否已有图钉
-        boolean hasPinInRange = PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(file.getPath()))
-                .anyMatch(pin -> {
-                    int pinStartOffset = pin.marker.getStartOffset();
-                    int pinEndOffset = pin.marker.getEndOffset();
-                    // 检查是否有重叠
-                    return (pinStartOffset <= endOffset && pinEndOffset >= startOffset);
-                });
+        boolean hasPinInRange = PinStorage.hasPinInRange(project, file.getPath(), startOffset, endOffset);
         
         // 如果该范围已有图钉，不重复添加
         if (hasPinInRange) {
@@ -507,7 +500,7 @@ public class PinCommentAction extends AnAction {
                             isBlock,
                             finalTags
                     );
-                    PinStorage.addPin(pinEntry);
+                    PinStorage.addPin(project, pinEntry);
                     
                     // 显示通知，确认图钉创建成功
                     if (SHOW_NOTIFICATIONS) {
@@ -553,7 +546,7 @@ public class PinCommentAction extends AnAction {
                                 isBlock,
                                 initialTags  // 使用初始标签列表，包含从注释中提取的标签和可能的快捷添加标签
                         );
-                        PinStorage.addPin(pinEntry);
+                        PinStorage.addPin(project, pinEntry);
                         
                         // 不再显示成功创建的通知，因为我们已经在开始时显示了通知
                         // 调试通知，只在开启调试模式时显示
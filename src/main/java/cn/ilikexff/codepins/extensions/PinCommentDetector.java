@@ -5,35 +5,54 @@ import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.settings.CodePinsSettings;
 import cn.ilikexff.codepins.ui.SimpleTagEditorDialog;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.psi.*;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Alarm;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 注释标记自动识别
  * 识别特定格式的注释，自动将其添加为图钉
+ *
+ * 检测是增量的：按文件合并一段时间内的变化，只检查编辑范围内的注释，
+ * 并记住已经转换为图钉的注释，在大文件中输入时不会重新扫描未改动的区域。
  */
-public class PinCommentDetector implements PsiTreeChangeListener {
+public class PinCommentDetector implements PsiTreeChangeListener, DocumentListener {
     // 注释标记正则表达式，匹配 @pin: 或 @pin 后面的内容
     private static final Pattern PIN_PATTERN = Pattern.compile("@pin:?\\s*(.*)");
     
     // 代码块注释标记正则表达式，匹配 @pin:block、@pin-block 或 @pin:block: 后面的内容
     private static final Pattern PIN_BLOCK_PATTERN = Pattern.compile("@pin[:-]block:?\\s*(.*)");
     
+    // PSI 事件的合并窗口（毫秒），连续输入时只在停顿后处理一次
+    private static final int DEBOUNCE_DELAY = 300;
+
     private final Project project;
+    private final Alarm alarm;
+
+    // 各文档自上次处理以来被编辑过的范围（仅在 EDT 上访问）
+    private final Map<Document, RangeMarker> dirtyRanges = new HashMap<>();
 
     /**
      * 构造函数
@@ -42,6 +61,7 @@ public class PinCommentDetector implements PsiTreeChangeListener {
      */
     public PinCommentDetector(Project project) {
         this.project = project;
+        this.alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
     }
 
     /**
@@ -50,10 +70,10 @@ public class PinCommentDetector implements PsiTreeChangeListener {
      * @param project 项目
      */
     public static void installOn(Project project) {
-        PsiManager.getInstance(project).addPsiTreeChangeListener(
-                new PinCommentDetector(project),
-                project
-        );
+        PinCommentDetector detector = new PinCommentDetector(project);
+        PsiManager.getInstance(project).addPsiTreeChangeListener(detector, project);
+        // 通过文档事件记录精确的编辑范围，PSI 事件只负责触发处理
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(detector, project);
         
         // 显示通知，确认检测器已安装
         Notifications.Bus.notify(new Notification(
@@ -64,6 +84,18 @@ public class PinCommentDetector implements PsiTreeChangeListener {
         ));
     }
 
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        // 监听器注册在全局的事件广播上，会收到所有项目的文档事件：
+        // 只关心本项目内容中的真实文件（忽略控制台、输入框、其他项目和库中的文件）
+        VirtualFile file = FileDocumentManager.getInstance().getFile(event.getDocument());
+        if (file == null || project.isDisposed() || !ProjectFileIndex.getInstance(project).isInContent(file)) {
+            return;
+        }
+        int startOffset = event.getOffset();
+        markDirty(event.getDocument(), startOffset, startOffset + event.getNewLength());
+    }
+
     @Override
     public void childAdded(@NotNull PsiTreeChangeEvent event) {
         processEvent(event);
@@ -80,7 +112,7 @@ public class PinCommentDetector implements PsiTreeChangeListener {
     }
 
     /**
-     * 处理 PSI 树变化事件
+     * 处理 PSI 树变化事件：记录变化范围并延迟处理，同一文件的多次变化合并为一次
      *
      * @param event PSI 树变化事件
      */
@@ -90,82 +122,148 @@ public class PinCommentDetector implements PsiTreeChangeListener {
             element = event.getParent();
         }
         
-        if (element == null) {
+        PsiFile file = event.getFile();
+        if (file == null && element != null && element.isValid()) {
+            file = element.getContainingFile();
+        }
+        if (file == null) {
             return;
         }
 
-        // 检查是否是注释元素
-        if (element instanceof PsiComment) {
-            checkComment((PsiComment) element);
-        } else {
-            // 查找元素中的所有注释
-            PsiComment[] comments = PsiTreeUtil.findChildrenOfType(element, PsiComment.class).toArray(new PsiComment[0]);
-            for (PsiComment comment : comments) {
-                checkComment(comment);
+        Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+        if (document == null) {
+            return;
+        }
+
+        // 没有对应的文档编辑时（例如直接修改 PSI），使用变化元素的范围；整个文件的变化不做全量扫描
+        if (!dirtyRanges.containsKey(document)) {
+            if (element == null || element instanceof PsiFile || !element.isValid()) {
+                return;
             }
+            TextRange range = element.getTextRange();
+            if (range == null) {
+                return;
+            }
+            markDirty(document, range.getStartOffset(), range.getEndOffset());
+        }
+
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::flush, DEBOUNCE_DELAY);
+    }
+
+    /**
+     * 合并记录文档的编辑范围，使用 RangeMarker 以便在等待期间随后续编辑移动
+     */
+    private void markDirty(Document document, int startOffset, int endOffset) {
+        if (!ApplicationManager.getApplication().isDispatchThread()) {
+            return;
+        }
+        RangeMarker previous = dirtyRanges.get(document);
+        if (previous != null && previous.isValid()) {
+            if (previous.getStartOffset() <= startOffset && previous.getEndOffset() >= endOffset) {
+                return;
+            }
+            startOffset = Math.min(startOffset, previous.getStartOffset());
+            endOffset = Math.max(endOffset, previous.getEndOffset());
         }
+        if (previous != null) {
+            previous.dispose();
+        }
+
+        int length = document.getTextLength();
+        RangeMarker marker = document.createRangeMarker(Math.min(startOffset, length), Math.min(endOffset, length));
+        marker.setGreedyToLeft(true);
+        marker.setGreedyToRight(true);
+        dirtyRanges.put(document, marker);
+    }
+
+    /**
+     * 处理所有待检查的文档，只检查编辑范围内的注释
+     */
+    private void flush() {
+        if (project.isDisposed()) {
+            dirtyRanges.clear();
+            return;
+        }
+
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        List<Map.Entry<Document, RangeMarker>> pending = new ArrayList<>(dirtyRanges.entrySet());
+        dirtyRanges.clear();
+
+        for (Map.Entry<Document, RangeMarker> entry : pending) {
+            Document document = entry.getKey();
+            RangeMarker range = entry.getValue();
+            // 等文档提交到 PSI 后再检查
+            documentManager.performForCommittedDocument(document, () -> {
+                try {
+                    if (range.isValid()) {
+                        inspectRange(document, range.getStartOffset(), range.getEndOffset());
+                    }
+                } finally {
+                    range.dispose();
+                }
+            });
+        }
+    }
+
+    private void inspectRange(Document document, int startOffset, int endOffset) {
+        ReadAction.run(() -> {
+            PsiFile file = PsiDocumentManager.getInstance(project).getPsiFile(document);
+            if (file == null || !file.isValid()) {
+                return;
+            }
+            for (PsiComment comment : PinCommentFinder.findPinComments(
+                    file, document.getImmutableCharSequence(), startOffset, endOffset)) {
+                if (PinCommentFinder.isProcessed(project, document, comment)) {
+                    continue;
+                }
+                // 先登记为处理中，图钉创建成功后保留，否则移除
+                RangeMarker claim = PinCommentFinder.startProcessing(project, document, comment);
+                if (!checkComment(comment, claim)) {
+                    PinCommentFinder.finishProcessing(document, claim, false);
+                }
+            }
+        });
     }
 
     /**
      * 检查注释是否包含图钉标记
      *
      * @param comment 注释元素
+     * @param claim   注释的处理登记，交给图钉创建流程后由它结束
+     * @return 是否识别为图钉标记并已交给图钉创建流程
      */
-    private void checkComment(PsiComment comment) {
+    private boolean checkComment(PsiComment comment, RangeMarker claim) {
         String commentText = comment.getText();
         
-        // 显示通知，确认注释被检测到
-        Notifications.Bus.notify(new Notification(
-                "CodePins",
-                "CodePins 注释检测",
-                "检测到注释: " + commentText,
-                NotificationType.INFORMATION
-        ));
-        
         // 检查是否是代码块标记
         Matcher blockMatcher = PIN_BLOCK_PATTERN.matcher(commentText);
         if (blockMatcher.find()) {
-            // 显示通知，确认代码块标记被检测到
-            Notifications.Bus.notify(new Notification(
-                    "CodePins",
-                    "CodePins 代码块标记",
-                    "检测到代码块标记: " + blockMatcher.group(1).trim(),
-                    NotificationType.INFORMATION
-            ));
-            
             // 处理代码块标记
-            processBlockPin(comment, blockMatcher.group(1).trim());
-            return;
+            return processBlockPin(comment, blockMatcher.group(1).trim(), claim);
         }
         
         // 检查是否是普通图钉标记
         Matcher matcher = PIN_PATTERN.matcher(commentText);
         if (matcher.find()) {
-            // 显示通知，确认普通图钉标记被检测到
-            Notifications.Bus.notify(new Notification(
-                    "CodePins",
-                    "CodePins 普通图钉标记",
-                    "检测到普通图钉标记: " + matcher.group(1).trim(),
-                    NotificationType.INFORMATION
-            ));
             // 提取注释中的备注内容
             String note = matcher.group(1).trim();
             
             // 获取注释所在文件
             PsiFile file = comment.getContainingFile();
             if (file == null) {
-                return;
+                return false;
             }
             
             VirtualFile virtualFile = file.getVirtualFile();
             if (virtualFile == null) {
-                return;
+                return false;
             }
             
             // 获取文档
             Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
             if (document == null) {
-                return;
+                return false;
             }
             
             // 获取注释的文本范围
@@ -177,8 +275,10 @@ public class PinCommentDetector implements PsiTreeChangeListener {
             int lineEndOffset = document.getLineEndOffset(lineNumber);
             
             // 使用通用方法创建图钉
-            createPinWithCheck(virtualFile, document, lineStartOffset, lineEndOffset, note, false);
+            createPinWithCheck(virtualFile, document, lineStartOffset, lineEndOffset, note, false, claim);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -186,23 +286,25 @@ public class PinCommentDetector implements PsiTreeChangeListener {
      *
      * @param comment 注释元素
      * @param note    备注内容
+     * @param claim   注释的处理登记
+     * @return 是否已交给图钉创建流程
      */
-    private void processBlockPin(PsiComment comment, String note) {
+    private boolean processBlockPin(PsiComment comment, String note, RangeMarker claim) {
         // 获取注释所在文件
         PsiFile file = comment.getContainingFile();
         if (file == null) {
-            return;
+            return false;
         }
         
         VirtualFile virtualFile = file.getVirtualFile();
         if (virtualFile == null) {
-            return;
+            return false;
         }
         
         // 获取文档
         Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
         if (document == null) {
-            return;
+            return false;
         }
         
         // 获取注释的文本范围
@@ -221,8 +323,8 @@ public class PinCommentDetector implements PsiTreeChangeListener {
             // 如果没有下一个元素，则只标记注释所在行
             int lineStartOffset = document.getLineStartOffset(lineNumber);
             int lineEndOffset = document.getLineEndOffset(lineNumber);
-            createPinWithCheck(virtualFile, document, lineStartOffset, lineEndOffset, note, false);
-            return;
+            createPinWithCheck(virtualFile, document, lineStartOffset, lineEndOffset, note, false, claim);
+            return true;
         }
         
         // 获取下一个元素的范围
@@ -240,7 +342,8 @@ public class PinCommentDetector implements PsiTreeChangeListener {
         }
         
         // 创建图钉，并检查是否已存在
-        createPinWithCheck(virtualFile, document, blockStartOffset, blockEndOffset, note, true);
+        createPinWithCheck(virtualFile, document, blockStartOffset, blockEndOffset, note, true, claim);
+        return true;
     }
     
     /**
@@ -252,20 +355,16 @@ public class PinCommentDetector implements PsiTreeChangeListener {
      * @param endOffset    结束偏移量
      * @param note         备注内容
      * @param isBlock      是否是代码块
+     * @param claim        注释的处理登记：图钉存在时保留，取消或失败时移除
      */
-    private void createPinWithCheck(VirtualFile virtualFile, Document document, int startOffset, int endOffset, String note, boolean isBlock) {
+    private void createPinWithCheck(VirtualFile virtualFile, Document document, int startOffset, int endOffset, String note, boolean isBlock,
+                                    RangeMarker claim) {
         // 检查该范围是否已有图钉
-        boolean hasPinInRange = PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(virtualFile.getPath()))
-                .anyMatch(pin -> {
-                    int pinStartOffset = pin.marker.getStartOffset();
-                    int pinEndOffset = pin.marker.getEndOffset();
-                    // 检查是否有重叠
-                    return (pinStartOffset <= endOffset && pinEndOffset >= startOffset);
-                });
+        boolean hasPinInRange = PinStorage.hasPinInRange(project, virtualFile.getPath(), startOffset, endOffset);
         
         // 如果该范围已有图钉，不重复添加
         if (hasPinInRange) {
+            PinCommentFinder.finishProcessing(document, claim, true);
             return;
         }
         
@@ -288,6 +387,7 @@ public class PinCommentDetector implements PsiTreeChangeListener {
 
                 // 如果用户取消了输入，不添加图钉
                 if (confirmedNote == null) {
+                    PinCommentFinder.finishProcessing(document, claim, false);
                     return;
                 }
 
@@ -308,24 +408,35 @@ public class PinCommentDetector implements PsiTreeChangeListener {
 
                 // 在写入操作中添加图钉，确保线程安全
                 ApplicationManager.getApplication().runWriteAction(() -> {
-                    // 添加图钉
-                    PinEntry pinEntry = new PinEntry(
-                            virtualFile.getPath(),
-                            document.createRangeMarker(startOffset, endOffset),
-                            confirmedNote,
-                            System.currentTimeMillis(),
-                            System.getProperty("user.name"),
-                            isBlock,
-                            finalTags
-                    );
-                    PinStorage.addPin(pinEntry);
+                    boolean created = false;
+                    try {
+                        // 添加图钉
+                        PinEntry pinEntry = new PinEntry(
+                                virtualFile.getPath(),
+                                document.createRangeMarker(startOffset, endOffset),
+                                confirmedNote,
+                                System.currentTimeMillis(),
+                                System.getProperty("user.name"),
+                                isBlock,
+                                finalTags
+                        );
+                        created = PinStorage.addPin(project, pinEntry);
+                    } finally {
+                        PinCommentFinder.finishProcessing(document, claim, created);
+                    }
                 });
             } else {
                 // 直接创建图钉，不显示备注框和标签框
                 // 在写入操作中创建图钉，确保线程安全
                 ApplicationManager.getApplication().runWriteAction(() -> {
-                    // 创建图钉
-                    PinEntry.createPin(project, virtualFile.getPath(), document, startOffset, endOffset, note, isBlock);
+                    boolean created = false;
+                    try {
+                        // 创建图钉
+                        PinEntry.createPin(project, virtualFile.getPath(), document, startOffset, endOffset, note, isBlock);
+                        created = PinStorage.hasPinInRange(project, virtualFile.getPath(), startOffset, endOffset);
+                    } finally {
+                        PinCommentFinder.finishProcessing(document, claim, created);
+                    }
                 });
             }
         });
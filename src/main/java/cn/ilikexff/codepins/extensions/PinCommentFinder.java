@@ -0,0 +1,180 @@
+package cn.ilikexff.codepins.extensions;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 图钉注释查找工具
+ * 先在文档文本中查找 "@pin"，只对命中位置所在的注释做 PSI 定位，避免遍历整棵 PSI 树；
+ * 同时按文档记录已经转换为图钉的注释，编辑时不会重复处理。
+ *
+ * 记录保存在文档的用户数据中，随文档一起回收，并按项目区分。注释开始处理时先登记（避免确认对话框打开期间重复提示），
+ * 图钉创建成功后保留，取消或失败时移除，下次编辑该注释时会重新识别。
+ */
+final class PinCommentFinder {
+
+    private static final String PIN_MARKER = "@pin";
+
+    // 已处理（或正在处理）的注释范围：marker 随编辑移动，注释被整体删除后失效
+    private static final Key<List<Processed>> PROCESSED = Key.create("CodePins.processedPinComments");
+
+    private static final class Processed {
+        final String projectId; // 项目的位置哈希，不直接引用项目
+        final RangeMarker marker;
+
+        Processed(String projectId, RangeMarker marker) {
+            this.projectId = projectId;
+            this.marker = marker;
+        }
+    }
+
+    private PinCommentFinder() {
+    }
+
+    /**
+     * 查找与 [startOffset, endOffset] 相交且包含 "@pin" 的注释
+     * 范围两端若落在注释内部，会扩展到整个注释，以便识别在注释中间输入的内容
+     *
+     * @param file        PSI 文件（需已与文档同步）
+     * @param text        文档文本
+     * @param startOffset 起始偏移量
+     * @param endOffset   结束偏移量
+     * @return 包含图钉标记的注释，按出现顺序排列
+     */
+    static List<PsiComment> findPinComments(PsiFile file, CharSequence text, int startOffset, int endOffset) {
+        List<PsiComment> result = new ArrayList<>();
+        int length = text.length();
+        // 多取几个字符，避免漏掉跨越范围边界的标记
+        int from = Math.max(0, Math.min(startOffset, length) - PIN_MARKER.length() + 1);
+        int to = Math.max(from, Math.min(endOffset + PIN_MARKER.length() - 1, length));
+
+        // 扩展到两端所在注释的边界
+        from = Math.min(from, commentStart(file, from - 1, from));
+        from = Math.min(from, commentStart(file, from, from));
+        to = Math.max(to, commentEnd(file, to - 1, to));
+        to = Math.max(to, commentEnd(file, to, to));
+
+        int index = indexOf(text, from, to);
+        while (index >= 0) {
+            PsiComment comment = PsiTreeUtil.getParentOfType(file.findElementAt(index), PsiComment.class, false);
+            int next = index + PIN_MARKER.length();
+            if (comment != null) {
+                if (result.isEmpty() || result.get(result.size() - 1) != comment) {
+                    result.add(comment);
+                }
+                // 同一注释中的其他标记由注释整体处理
+                next = Math.max(next, comment.getTextRange().getEndOffset());
+            }
+            index = indexOf(text, next, to);
+        }
+        return result;
+    }
+
+    /**
+     * 注释在本项目中是否已经处理过（或正在处理）
+     */
+    static synchronized boolean isProcessed(Project project, Document document, PsiComment comment) {
+        List<Processed> entries = document.getUserData(PROCESSED);
+        if (entries == null) {
+            return false;
+        }
+        String projectId = project.getLocationHash();
+        TextRange range = comment.getTextRange();
+        Iterator<Processed> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Processed entry = iterator.next();
+            if (!entry.marker.isValid()) {
+                iterator.remove();
+                entry.marker.dispose();
+            } else if (entry.projectId.equals(projectId) && entry.marker.getStartOffset() == range.getStartOffset()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 登记注释开始处理，处理结束时必须调用 {@link #finishProcessing}
+     *
+     * @return 跟踪注释位置的 marker；注释范围超出文档时返回 null
+     */
+    static synchronized RangeMarker startProcessing(Project project, Document document, PsiComment comment) {
+        TextRange range = comment.getTextRange();
+        if (range.getEndOffset() > document.getTextLength()) {
+            return null;
+        }
+        List<Processed> entries = document.getUserData(PROCESSED);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            document.putUserData(PROCESSED, entries);
+        }
+        RangeMarker marker = document.createRangeMarker(range.getStartOffset(), range.getEndOffset());
+        entries.add(new Processed(project.getLocationHash(), marker));
+        return marker;
+    }
+
+    /**
+     * 结束注释处理：图钉已存在时保留记录，否则移除记录并释放 marker
+     */
+    static synchronized void finishProcessing(Document document, RangeMarker marker, boolean pinExists) {
+        if (marker == null || pinExists) {
+            return;
+        }
+        List<Processed> entries = document.getUserData(PROCESSED);
+        if (entries != null) {
+            entries.removeIf(entry -> entry.marker == marker);
+        }
+        marker.dispose();
+    }
+
+    private static int commentStart(PsiFile file, int offset, int fallback) {
+        PsiComment comment = commentAt(file, offset);
+        return comment != null ? comment.getTextRange().getStartOffset() : fallback;
+    }
+
+    private static int commentEnd(PsiFile file, int offset, int fallback) {
+        PsiComment comment = commentAt(file, offset);
+        return comment != null ? comment.getTextRange().getEndOffset() : fallback;
+    }
+
+    private static PsiComment commentAt(PsiFile file, int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        PsiElement element = file.findElementAt(offset);
+        return PsiTreeUtil.getParentOfType(element, PsiComment.class, false);
+    }
+
+    /**
+     * 在 [from, to) 中查找 "@pin"，不复制文本
+     */
+    private static int indexOf(CharSequence text, int from, int to) {
+        int last = to - PIN_MARKER.length();
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) == '@' && regionMatches(text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset) {
+        for (int j = 1; j < PIN_MARKER.length(); j++) {
+            if (text.charAt(offset + j) != PIN_MARKER.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -9,14 +9,13 @@ import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
-import com.intellij.psi.util.PsiTreeUtil;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,8 +46,9 @@ public class PinCommentScanner {
             return;
         }
         
-        // 查找文件中的所有注释
-        Collection<PsiComment> comments = PsiTreeUtil.findChildrenOfType(psiFile, PsiComment.class);
+        // 只定位包含 "@pin" 的注释，不遍历整棵 PSI 树
+        List<PsiComment> comments = PinCommentFinder.findPinComments(
+                psiFile, document.getImmutableCharSequence(), 0, document.getTextLength());
         
         if (SHOW_NOTIFICATIONS) {
             // 显示通知，报告找到的注释数量
@@ -60,9 +60,15 @@ public class PinCommentScanner {
             ));
         }
 
-        // 检查每个注释
+        // 检查每个注释，跳过已经转换为图钉的注释；先登记为处理中，图钉创建成功后保留，否则移除
         for (PsiComment comment : comments) {
-            checkComment(comment, document, project);
+            if (PinCommentFinder.isProcessed(project, document, comment)) {
+                continue;
+            }
+            RangeMarker claim = PinCommentFinder.startProcessing(project, document, comment);
+            if (!checkComment(comment, document, project, claim)) {
+                PinCommentFinder.finishProcessing(document, claim, false);
+            }
         }
     }
 
@@ -72,8 +78,10 @@ public class PinCommentScanner {
      * @param comment  注释元素
      * @param document 文档
      * @param project  项目
+     * @param claim    注释的处理登记，交给图钉创建流程后由它结束
+     * @return 是否识别为图钉标记并已交给图钉创建流程
      */
-    private static void checkComment(PsiComment comment, Document document, Project project) {
+    private static boolean checkComment(PsiComment comment, Document document, Project project, RangeMarker claim) {
         String commentText = comment.getText();
         
         if (SHOW_NOTIFICATIONS) {
@@ -100,8 +108,7 @@ public class PinCommentScanner {
             }
             
             // 处理代码块标记
-            processBlockPin(comment, blockMatcher.group(1).trim(), document, project);
-            return;
+            return processBlockPin(comment, blockMatcher.group(1).trim(), document, project, claim);
         }
         
         // 检查是否是普通图钉标记
@@ -121,8 +128,9 @@ public class PinCommentScanner {
             String note = matcher.group(1).trim();
             
             // 处理普通图钉标记
-            processSingleLinePin(comment, note, document, project);
+            return processSingleLinePin(comment, note, document, project, claim);
         }
+        return false;
     }
 
     /**
@@ -132,8 +140,11 @@ public class PinCommentScanner {
      * @param note     备注内容
      * @param document 文档
      * @param project  项目
+     * @param claim    注释的处理登记
+     * @return 是否已交给图钉创建流程
      */
-    private static void processSingleLinePin(PsiComment comment, String note, Document document, Project project) {
+    private static boolean processSingleLinePin(PsiComment comment, String note, Document document, Project project,
+                                                RangeMarker claim) {
         // 获取注释所在行
         int lineNumber = document.getLineNumber(comment.getTextOffset());
         int lineStartOffset = document.getLineStartOffset(lineNumber);
@@ -142,11 +153,12 @@ public class PinCommentScanner {
         // 获取文件
         VirtualFile file = comment.getContainingFile().getVirtualFile();
         if (file == null) {
-            return;
+            return false;
         }
         
         // 创建图钉
-        createPinWithCheck(file, document, lineStartOffset, lineEndOffset, note, false, project);
+        createPinWithCheck(file, document, lineStartOffset, lineEndOffset, note, false, project, claim);
+        return true;
     }
 
     /**
@@ -156,15 +168,18 @@ public class PinCommentScanner {
      * @param note     备注内容
      * @param document 文档
      * @param project  项目
+     * @param claim    注释的处理登记
+     * @return 是否已交给图钉创建流程
      */
-    private static void processBlockPin(PsiComment comment, String note, Document document, Project project) {
+    private static boolean processBlockPin(PsiComment comment, String note, Document document, Project project,
+                                           RangeMarker claim) {
         // 获取注释所在行
         int lineNumber = document.getLineNumber(comment.getTextOffset());
         
         // 获取文件
         VirtualFile file = comment.getContainingFile().getVirtualFile();
         if (file == null) {
-            return;
+            return false;
         }
         
         // 尝试找到下一个元素
@@ -177,8 +192,8 @@ public class PinCommentScanner {
             // 如果没有下一个元素，则只标记当前行
             int lineStartOffset = document.getLineStartOffset(lineNumber);
             int lineEndOffset = document.getLineEndOffset(lineNumber);
-            createPinWithCheck(file, document, lineStartOffset, lineEndOffset, note, false, project);
-            return;
+            createPinWithCheck(file, document, lineStartOffset, lineEndOffset, note, false, project, claim);
+            return true;
         }
         
         // 获取下一个元素的范围
@@ -196,7 +211,8 @@ public class PinCommentScanner {
         }
         
         // 创建图钉
-        createPinWithCheck(file, document, blockStartOffset, blockEndOffset, note, true, project);
+        createPinWithCheck(file, document, blockStartOffset, blockEndOffset, note, true, project, claim);
+        return true;
     }
 
     /**
@@ -209,8 +225,10 @@ public class PinCommentScanner {
      * @param note         备注内容
      * @param isBlock      是否是代码块
      * @param project      项目
+     * @param claim        注释的处理登记：图钉存在时保留，取消或失败时移除
      */
-    private static void createPinWithCheck(VirtualFile file, Document document, int startOffset, int endOffset, String note, boolean isBlock, Project project) {
+    private static void createPinWithCheck(VirtualFile file, Document document, int startOffset, int endOffset, String note, boolean isBlock,
+                                           Project project, RangeMarker claim) {
         if (SHOW_NOTIFICATIONS) {
             // 显示通知，确认准备创建图钉
             Notifications.Bus.notify(new Notification(
@@ -225,14 +243,7 @@ public class PinCommentScanner {
         }
         
         // 检查该范围是否已有图钉
-        boolean hasPinInRange = PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(file.getPath()))
-                .anyMatch(pin -> {
-                    int pinStartOffset = pin.marker.getStartOffset();
-                    int pinEndOffset = pin.marker.getEndOffset();
-                    // 检查是否有重叠
-                    return (pinStartOffset <= endOffset && pinEndOffset >= startOffset);
-                });
+        boolean hasPinInRange = PinStorage.hasPinInRange(project, file.getPath(), startOffset, endOffset);
         
         // 如果该范围已有图钉，不重复添加
         if (hasPinInRange) {
@@ -244,6 +255,7 @@ public class PinCommentScanner {
                         NotificationType.WARNING
                 ));
             }
+            PinCommentFinder.finishProcessing(document, claim, true);
             return;
         }
         
@@ -266,6 +278,7 @@ public class PinCommentScanner {
 
                 // 如果用户取消了输入，不添加图钉
                 if (confirmedNote == null) {
+                    PinCommentFinder.finishProcessing(document, claim, false);
                     return;
                 }
 
@@ -296,7 +309,12 @@ public class PinCommentScanner {
                             isBlock,
                             finalTags
                     );
-                    PinStorage.addPin(pinEntry);
+                    boolean created = false;
+                    try {
+                        created = PinStorage.addPin(project, pinEntry);
+                    } finally {
+                        PinCommentFinder.finishProcessing(document, claim, created);
+                    }
                     
                     if (SHOW_NOTIFICATIONS) {
                         // 显示通知，确认图钉创建成功
@@ -322,9 +340,11 @@ public class PinCommentScanner {
                         ));
                     }
                     
+                    boolean created = false;
                     try {
                         // 创建图钉
                         PinEntry pin = PinEntry.createPin(project, file.getPath(), document, startOffset, endOffset, note, isBlock);
+                        created = PinStorage.hasPinInRange(project, file.getPath(), startOffset, endOffset);
                         
                         if (SHOW_NOTIFICATIONS) {
                             // 显示通知，确认图钉创建成功
@@ -344,6 +364,8 @@ public class PinCommentScanner {
                                 NotificationType.ERROR
                         ));
                         e.printStackTrace();
+                    } finally {
+                        PinCommentFinder.finishProcessing(document, claim, created);
                     }
                 });
             }
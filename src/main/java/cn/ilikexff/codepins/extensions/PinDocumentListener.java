@@ -4,9 +4,6 @@ import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.settings.CodePinsSettings;
 import cn.ilikexff.codepins.ui.SimpleTagEditorDialog;
-import com.intellij.notification.Notification;
-import com.intellij.notification.NotificationType;
-import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.event.DocumentEvent;
@@ -24,6 +21,7 @@ import java.util.regex.Pattern;
 
 /**
  * 文档监听器，用于检测注释标记
+ * 只处理插入内容包含 "@pin" 的编辑，通过 CharSequence 视图读取文档，不复制整个文本
  */
 public class PinDocumentListener implements DocumentListener {
     // 注释标记正则表达式，匹配 @pin: 或 @pin 后面的内容
@@ -31,6 +29,9 @@ public class PinDocumentListener implements DocumentListener {
     
     // 代码块注释标记正则表达式，匹配 @pin:block、@pin-block 或 @pin:block: 后面的内容
     private static final Pattern PIN_BLOCK_PATTERN = Pattern.compile("@pin[:-]block:?\\s*(.*)");
+
+    // 注释标记前缀，用于在正则匹配前快速过滤编辑
+    private static final String PIN_MARKER = "@pin";
     
     private final Project project;
     private final Document document;
@@ -48,39 +49,49 @@ public class PinDocumentListener implements DocumentListener {
 
     @Override
     public void documentChanged(@NotNull DocumentEvent event) {
-        // 获取变化的文本
-        String newText = event.getNewFragment().toString();
-        
-        // 显示通知，确认文档变化被检测到
-        Notifications.Bus.notify(new Notification(
-                "CodePins",
-                "CodePins 文档变化",
-                "检测到文档变化: " + newText,
-                NotificationType.INFORMATION
-        ));
-        
+        // 只处理插入内容中包含 "@pin" 的编辑，其余编辑直接忽略（不复制文本）
+        CharSequence newFragment = event.getNewFragment();
+        int markerIndex = indexOfMarker(newFragment);
+        if (markerIndex < 0) {
+            return;
+        }
+
         // 检查是否包含注释标记
-        checkForPinMarkers(newText, event.getOffset());
+        checkForPinMarkers(newFragment, event.getOffset() + markerIndex);
+    }
+
+    /**
+     * 在文本中查找 "@pin"
+     *
+     * @return 首次出现的位置，未找到返回 -1
+     */
+    private static int indexOfMarker(CharSequence text) {
+        int last = text.length() - PIN_MARKER.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.charAt(i) != '@') {
+                continue;
+            }
+            int j = 1;
+            while (j < PIN_MARKER.length() && text.charAt(i + j) == PIN_MARKER.charAt(j)) {
+                j++;
+            }
+            if (j == PIN_MARKER.length()) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     /**
      * 检查文本是否包含注释标记
      *
-     * @param text   文本
-     * @param offset 偏移量
+     * @param text   插入的文本
+     * @param offset 标记在文档中的偏移量
      */
-    private void checkForPinMarkers(String text, int offset) {
+    private void checkForPinMarkers(CharSequence text, int offset) {
         // 检查是否是代码块标记
         Matcher blockMatcher = PIN_BLOCK_PATTERN.matcher(text);
         if (blockMatcher.find()) {
-            // 显示通知，确认代码块标记被检测到
-            Notifications.Bus.notify(new Notification(
-                    "CodePins",
-                    "CodePins 代码块标记",
-                    "检测到代码块标记: " + blockMatcher.group(1).trim(),
-                    NotificationType.INFORMATION
-            ));
-            
             // 处理代码块标记
             processBlockPin(blockMatcher.group(1).trim(), offset);
             return;
@@ -89,14 +100,6 @@ public class PinDocumentListener implements DocumentListener {
         // 检查是否是普通图钉标记
         Matcher matcher = PIN_PATTERN.matcher(text);
         if (matcher.find()) {
-            // 显示通知，确认普通图钉标记被检测到
-            Notifications.Bus.notify(new Notification(
-                    "CodePins",
-                    "CodePins 普通图钉标记",
-                    "检测到普通图钉标记: " + matcher.group(1).trim(),
-                    NotificationType.INFORMATION
-            ));
-            
             // 处理普通图钉标记
             processSingleLinePin(matcher.group(1).trim(), offset);
         }
@@ -150,46 +153,53 @@ public class PinDocumentListener implements DocumentListener {
             return;
         }
         
-        // 获取下一行的文本
+        // 通过不可变视图读取文本，避免复制整个文档
+        CharSequence text = document.getImmutableCharSequence();
         int blockStartOffset = document.getLineStartOffset(blockStartLine);
-        String nextLineText = document.getText().substring(
-                blockStartOffset,
-                Math.min(blockStartOffset + 100, document.getTextLength())
-        );
+        int nextLineEndOffset = document.getLineEndOffset(blockStartLine);
+        int firstChar = blockStartOffset;
+        while (firstChar < nextLineEndOffset && Character.isWhitespace(text.charAt(firstChar))) {
+            firstChar++;
+        }
         
         // 检查是否是代码块的开始
-        if (nextLineText.trim().startsWith("{")) {
-            // 尝试找到代码块的结束
-            int openBraces = 1;
-            int blockEndLine = blockStartLine;
-            
-            for (int i = blockStartLine + 1; i < document.getLineCount() && openBraces > 0; i++) {
-                int lineStartOffset = document.getLineStartOffset(i);
-                int lineEndOffset = document.getLineEndOffset(i);
-                String lineText = document.getText().substring(lineStartOffset, lineEndOffset);
-                
-                for (char c : lineText.toCharArray()) {
-                    if (c == '{') openBraces++;
-                    if (c == '}') openBraces--;
-                    
-                    if (openBraces == 0) {
-                        blockEndLine = i;
-                        break;
-                    }
-                }
-                
-                if (openBraces == 0) break;
-            }
+        if (firstChar < nextLineEndOffset && text.charAt(firstChar) == '{') {
+            // 从左花括号开始单次扫描，找到与之匹配的右花括号
+            int closeOffset = findMatchingBrace(text, firstChar);
+            int blockEndLine = closeOffset >= 0 ? document.getLineNumber(closeOffset) : blockStartLine;
             
             // 创建图钉
             int blockEndOffset = document.getLineEndOffset(blockEndLine);
             createPinWithCheck(file, blockStartOffset, blockEndOffset, note, true);
         } else {
             // 如果不是代码块，则标记下一行
-            int nextLineEndOffset = document.getLineEndOffset(blockStartLine);
             createPinWithCheck(file, blockStartOffset, nextLineEndOffset, note, false);
         }
     }
+
+    /**
+     * 从左花括号开始查找匹配的右花括号
+     *
+     * @param text      文档文本
+     * @param openBrace 左花括号的偏移量
+     * @return 匹配的右花括号偏移量，未闭合时返回 -1
+     */
+    private static int findMatchingBrace(CharSequence text, int openBrace) {
+        int depth = 0;
+        int length = text.length();
+        for (int i = openBrace; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
     
     /**
      * 创建图钉，并检查是否已存在
@@ -201,35 +211,11 @@ public class PinDocumentListener implements DocumentListener {
      * @param isBlock      是否是代码块
      */
     private void createPinWithCheck(VirtualFile file, int startOffset, int endOffset, String note, boolean isBlock) {
-        // 显示通知，确认准备创建图钉
-        Notifications.Bus.notify(new Notification(
-                "CodePins",
-                "CodePins 准备创建图钉",
-                "文件: " + file.getPath() + "\n" +
-                "偏移量: " + startOffset + "-" + endOffset + "\n" +
-                "备注: " + note + "\n" +
-                "是否代码块: " + isBlock,
-                NotificationType.INFORMATION
-        ));
-        
         // 检查该范围是否已有图钉
-        boolean hasPinInRange = PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(file.getPath()))
-                .anyMatch(pin -> {
-                    int pinStartOffset = pin.marker.getStartOffset();
-                    int pinEndOffset = pin.marker.getEndOffset();
-                    // 检查是否有重叠
-                    return (pinStartOffset <= endOffset && pinEndOffset >= startOffset);
-                });
+        boolean hasPinInRange = PinStorage.hasPinInRange(project, file.getPath(), startOffset, endOffset);
         
         // 如果该范围已有图钉，不重复添加
         if (hasPinInRange) {
-            Notifications.Bus.notify(new Notification(
-                    "CodePins",
-                    "CodePins 图钉已存在",
-                    "该范围已有图钉，不重复添加",
-                    NotificationType.WARNING
-            ));
             return;
         }
         
@@ -282,39 +268,17 @@ public class PinDocumentListener implements DocumentListener {
                             isBlock,
                             finalTags
                     );
-                    PinStorage.addPin(pinEntry);
+                    PinStorage.addPin(project, pinEntry);
                 });
             } else {
                 // 直接创建图钉，不显示备注框和标签框
                 // 在写入操作中创建图钉，确保线程安全
                 ApplicationManager.getApplication().runWriteAction(() -> {
-                    // 显示通知，确认正在创建图钉
-                    Notifications.Bus.notify(new Notification(
-                            "CodePins",
-                            "CodePins 正在创建图钉",
-                            "正在创建图钉...",
-                            NotificationType.INFORMATION
-                    ));
-                    
                     try {
                         // 创建图钉
-                        PinEntry pin = PinEntry.createPin(project, file.getPath(), document, startOffset, endOffset, note, isBlock);
-                        
-                        // 显示通知，确认图钉创建成功
-                        Notifications.Bus.notify(new Notification(
-                                "CodePins",
-                                "CodePins 图钉创建成功",
-                                "图钉已成功创建: " + pin.note,
-                                NotificationType.INFORMATION
-                        ));
+                        PinEntry.createPin(project, file.getPath(), document, startOffset, endOffset, note, isBlock);
                     } catch (Exception e) {
-                        // 显示通知，报告错误
-                        Notifications.Bus.notify(new Notification(
-                                "CodePins",
-                                "CodePins 图钉创建失败",
-                                "创建图钉时发生错误: " + e.getMessage(),
-                                NotificationType.ERROR
-                        ));
+                        System.err.println("[CodePins] 创建图钉时发生错误: " + e.getMessage());
                         e.printStackTrace();
                     }
                 });
@@ -0,0 +1,28 @@
+package cn.ilikexff.codepins.extensions;
+
+import cn.ilikexff.codepins.core.PinStorage;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 文件打开/关闭监听器
+ * 未解析（休眠）的图钉在其所在文件打开时挂接 RangeMarker；
+ * 文件在所有编辑器中关闭后图钉转为休眠，释放 RangeMarker，使文档可以被回收
+ */
+public class PinFileOpenListener implements FileEditorManagerListener {
+
+    @Override
+    public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        PinStorage.resolvePinsInFile(source.getProject(), file);
+    }
+
+    @Override
+    public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        // 同一文件可能还在其他分屏中打开
+        if (!source.isFileOpen(file)) {
+            PinStorage.demotePinsInFile(source.getProject(), file);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package cn.ilikexff.codepins.extensions;
+
+import cn.ilikexff.codepins.core.PinStorage;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManagerListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 文件重新载入监听器
+ * 切换分支、拉取代码等外部修改会让已打开文件的文档整体重新载入，图钉的 RangeMarker 随之失效或错位。
+ * 同一批外部修改中重新载入的文件先收集起来，在 EDT 空闲时一次性按内容指纹为其中的图钉重新定位。
+ */
+public class PinFileReloadListener implements FileDocumentManagerListener {
+
+    private final Set<String> pendingPaths = new LinkedHashSet<>(); // 仅在 EDT 上访问
+
+    @Override
+    public void fileContentReloaded(@NotNull VirtualFile file, @NotNull Document document) {
+        boolean schedule = pendingPaths.isEmpty();
+        pendingPaths.add(file.getPath());
+        if (schedule) {
+            ApplicationManager.getApplication().invokeLater(this::reanchorPending);
+        }
+    }
+
+    private void reanchorPending() {
+        List<String> paths = new ArrayList<>(pendingPaths);
+        pendingPaths.clear();
+        PinStorage.reanchorPinsInFiles(paths);
+    }
+}
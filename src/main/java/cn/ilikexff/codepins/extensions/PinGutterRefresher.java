@@ -0,0 +1,46 @@
+package cn.ilikexff.codepins.extensions;
+
+import cn.ilikexff.codepins.core.PinDelta;
+import cn.ilikexff.codepins.core.PinEvents;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * 图钉变化后刷新编辑器行号槽中的图钉图标
+ * 只重新计算已打开且图钉所在行可能变化（增删、位置变化）的文件的行标记；
+ * 只修改备注、标签或顺序时行标记不变，不刷新
+ */
+public class PinGutterRefresher implements PinEvents {
+
+    private final Project project;
+
+    public PinGutterRefresher(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void pinsChanged(@NotNull PinDelta delta) {
+        if (project.isDisposed() || !delta.affectsPositions()) {
+            return;
+        }
+        Set<String> files = delta.getPositionChangedFiles();
+        PsiManager psiManager = PsiManager.getInstance(project);
+        DaemonCodeAnalyzer daemon = DaemonCodeAnalyzer.getInstance(project);
+        for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+            if (!file.isValid() || (!delta.isReloaded() && !files.contains(file.getPath()))) {
+                continue;
+            }
+            PsiFile psiFile = psiManager.findFile(file);
+            if (psiFile != null) {
+                daemon.restart(psiFile);
+            }
+        }
+    }
+}
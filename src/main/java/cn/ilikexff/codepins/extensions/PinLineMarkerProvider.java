@@ -3,16 +3,16 @@ package cn.ilikexff.codepins.extensions;
 import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
 import com.intellij.codeInsight.daemon.LineMarkerInfo;
-import com.intellij.codeInsight.daemon.LineMarkerProvider;
+import com.intellij.codeInsight.daemon.LineMarkerProviderDescriptor;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.util.text.CharArrayUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -24,16 +24,29 @@ import java.util.List;
 /**
  * 图钉行标记提供者
  * 在编辑器行号槽区域显示图钉图标，用户可以直接点击添加图钉
+ * 作为 LineMarkerProviderDescriptor 注册，用户可以在行号槽图标设置中单独关闭
  */
-public class PinLineMarkerProvider implements LineMarkerProvider {
+public class PinLineMarkerProvider extends LineMarkerProviderDescriptor {
+
+    // 图标只加载一次
+    private static final Icon PINNED_ICON = IconLoader.getIcon("/icons/pin-filled.svg", PinLineMarkerProvider.class);
+    private static final Icon UNPINNED_ICON = IconLoader.getIcon("/icons/pin-outline.svg", PinLineMarkerProvider.class);
+
+    @Override
+    public @NotNull String getName() {
+        return "CodePins";
+    }
+
+    @Override
+    public @NotNull Icon getIcon() {
+        return PINNED_ICON;
+    }
 
     @Nullable
     @Override
     public LineMarkerInfo<?> getLineMarkerInfo(@NotNull PsiElement element) {
-        // 只处理叶子节点，以确保每行只有一个标记
-        if (element.getFirstChild() == null) {
-            // 继续处理
-        } else {
+        // 只处理非空白的叶子节点
+        if (element.getFirstChild() != null || element instanceof PsiWhiteSpace) {
             return null;
         }
 
@@ -47,27 +60,33 @@ public class PinLineMarkerProvider implements LineMarkerProvider {
             return null;
         }
 
-        Project project = element.getProject();
-        Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
+        Document document = file.getViewProvider().getDocument();
         if (document == null) {
             return null;
         }
 
-        int lineNumber = document.getLineNumber(element.getTextOffset());
-        
-        // 检查该行是否已有图钉
-        boolean hasPinAtLine = PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(virtualFile.getPath()))
-                .anyMatch(pin -> {
-                    int pinLine = document.getLineNumber(pin.marker.getStartOffset());
-                    return pinLine == lineNumber;
-                });
+        // 每行只在第一个叶子节点（行首缩进之后）上显示标记
+        int startOffset = element.getTextRange().getStartOffset();
+        if (startOffset >= document.getTextLength()) {
+            return null;
+        }
+        int lineNumber = document.getLineNumber(startOffset);
+        int firstNonSpace = CharArrayUtil.shiftForward(document.getCharsSequence(),
+                document.getLineStartOffset(lineNumber), " \t");
+        if (startOffset != firstNonSpace) {
+            return null;
+        }
+
+        Project project = element.getProject();
+
+        // 检查该行是否已有图钉（按文档缓存的位图）
+        boolean hasPinAtLine = PinStorage.isLinePinned(project, virtualFile.getPath(), document, lineNumber);
 
         // 创建行标记信息
         return new LineMarkerInfo<>(
                 element,
                 element.getTextRange(),
-                hasPinAtLine ? getPinIcon(true) : getPinIcon(false),
+                hasPinAtLine ? PINNED_ICON : UNPINNED_ICON,
                 psiElement -> hasPinAtLine ? "移除图钉" : "添加图钉",
                 (e, elt) -> {
                     if (hasPinAtLine) {
@@ -86,18 +105,6 @@ public class PinLineMarkerProvider implements LineMarkerProvider {
         // 不需要收集慢速行标记
     }
 
-    /**
-     * 获取图钉图标
-     *
-     * @param isPinned 是否已添加图钉
-     * @return 图标
-     */
-    private Icon getPinIcon(boolean isPinned) {
-        return isPinned
-                ? IconLoader.getIcon("/icons/pin-filled.svg", PinLineMarkerProvider.class)
-                : IconLoader.getIcon("/icons/pin-outline.svg", PinLineMarkerProvider.class);
-    }
-
     /**
      * 在指定行添加图钉
      *
@@ -113,8 +120,7 @@ public class PinLineMarkerProvider implements LineMarkerProvider {
         // 创建图钉
         PinEntry.createPin(project, virtualFile.getPath(), document, startOffset, endOffset, "", false);
 
-        // 刷新行标记
-        refreshLineMarkers(project, virtualFile);
+        // 行标记由 PinGutterRefresher 在图钉变化后刷新
     }
 
     /**
@@ -126,32 +132,11 @@ public class PinLineMarkerProvider implements LineMarkerProvider {
      * @param lineNumber  行号
      */
     private void removePinAtLine(Project project, Document document, VirtualFile virtualFile, int lineNumber) {
-        int offset = document.getLineStartOffset(lineNumber);
-
-        // 查找并移除图钉
-        PinStorage.getPins().stream()
-                .filter(pin -> pin.filePath.equals(virtualFile.getPath()) &&
-                        pin.marker.getStartOffset() <= offset &&
-                        pin.marker.getEndOffset() >= offset)
+        // 查找并移除图钉（与行标记一致，按图钉起始行匹配）
+        PinStorage.getPinsAtLine(project, virtualFile.getPath(), document, lineNumber).stream()
                 .findFirst()
                 .ifPresent(PinStorage::removePin);
 
-        // 刷新行标记
-        refreshLineMarkers(project, virtualFile);
-    }
-
-    /**
-     * 刷新行标记
-     *
-     * @param project     项目
-     * @param virtualFile 虚拟文件
-     */
-    private void refreshLineMarkers(Project project, VirtualFile virtualFile) {
-        // 获取PSI文件
-        PsiFile psiFile = PsiManager.getInstance(project).findFile(virtualFile);
-        if (psiFile != null) {
-            // 请求重新计算行标记
-            com.intellij.codeInsight.daemon.DaemonCodeAnalyzer.getInstance(project).restart(psiFile);
-        }
+        // 行标记由 PinGutterRefresher 在图钉变化后刷新
     }
 }
@@ -239,7 +239,7 @@ public class PinSelectionPopup implements SelectionListener {
                     true,
                     tags
             );
-            PinStorage.addPin(pinEntry);
+            PinStorage.addPin(project, pinEntry);
         } else {
             // 直接创建图钉，不显示备注框和标签框
             PinEntry.createPin(project, file.getPath(), document, startOffset, endOffset, "", true);
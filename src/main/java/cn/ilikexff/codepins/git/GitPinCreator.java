@@ -1,5 +1,6 @@
 package cn.ilikexff.codepins.git;
 
+import cn.ilikexff.codepins.core.PinBatch;
 import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
 import com.intellij.openapi.editor.Document;
@@ -28,17 +29,31 @@ public class GitPinCreator {
      * 从建议创建图钉
      */
     public boolean createPinFromSuggestion(PinSuggestion suggestion) {
+        PinEntry pin = buildPinFromSuggestion(suggestion);
+        if (pin == null) {
+            return false;
+        }
+        
+        // 保存图钉
+        PinStorage.addPin(project, pin);
+        return true;
+    }
+    
+    /**
+     * 根据建议构造图钉（不保存），无法定位到文件时返回 null
+     */
+    private PinEntry buildPinFromSuggestion(PinSuggestion suggestion) {
         try {
             // 获取文件
             VirtualFile file = VirtualFileManager.getInstance().findFileByUrl("file://" + suggestion.getFilePath());
             if (file == null) {
-                return false;
+                return null;
             }
             
             // 获取文档
             Document document = FileDocumentManager.getInstance().getDocument(file);
             if (document == null) {
-                return false;
+                return null;
             }
             
             // 创建范围标记
@@ -74,35 +89,33 @@ public class GitPinCreator {
             pin.addTag("GIT_SUGGESTION");
             pin.addTag(suggestion.getType().name());
             
-            // 保存图钉
-            PinStorage.addPin(pin);
-            
-            return true;
+            return pin;
             
         } catch (Exception e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
     
     /**
      * 批量创建图钉
+     * 先构造全部图钉，再一次性提交，只持久化一次并只刷新一次界面
      */
     public List<PinEntry> createPinsFromSuggestions(List<PinSuggestion> suggestions) {
         List<PinEntry> createdPins = new ArrayList<>();
+        PinBatch batch = new PinBatch();
         
         for (PinSuggestion suggestion : suggestions) {
             if (suggestion.shouldCreatePin()) {
-                if (createPinFromSuggestion(suggestion)) {
-                    // 获取刚创建的图钉（简化实现）
-                    List<PinEntry> allPins = PinStorage.getPins();
-                    if (!allPins.isEmpty()) {
-                        createdPins.add(allPins.get(allPins.size() - 1));
-                    }
+                PinEntry pin = buildPinFromSuggestion(suggestion);
+                if (pin != null) {
+                    batch.add(pin);
+                    createdPins.add(pin);
                 }
             }
         }
         
+        PinStorage.applyBatch(project, batch);
         return createdPins;
     }
     
@@ -141,7 +154,7 @@ public class GitPinCreator {
             pin.addTag("GIT_COMMIT");
             pin.addTag("HISTORY");
             
-            PinStorage.addPin(pin);
+            PinStorage.addPin(project, pin);
             return true;
             
         } catch (Exception e) {
@@ -185,7 +198,7 @@ public class GitPinCreator {
             pin.addTag("GIT_CHANGE");
             pin.addTag(changeType.toUpperCase());
             
-            PinStorage.addPin(pin);
+            PinStorage.addPin(project, pin);
             return true;
             
         } catch (Exception e) {
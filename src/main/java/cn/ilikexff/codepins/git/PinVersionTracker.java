@@ -42,7 +42,7 @@ public class PinVersionTracker {
      */
     public boolean saveSnapshot(String commitHash, String message) {
         try {
-            List<PinEntry> currentPins = PinStorage.getPins();
+            List<PinEntry> currentPins = PinStorage.getPins(project);
             
             PinSnapshot snapshot = new PinSnapshot(
                 commitHash,
@@ -20,6 +20,7 @@ public class CodePinsSettings implements PersistentStateComponent<CodePinsSettin
     // 常规设置
     public String previewHeight = "300";
     public boolean confirmDelete = true;
+    public boolean searchCodeSnippets = false; // 搜索时是否包含图钉的代码片段（索引占用更多内存）
     
     // 图钉添加设置
     public boolean showNoteDialogOnQuickAdd = false; // 默认不弹出备注框和标签框
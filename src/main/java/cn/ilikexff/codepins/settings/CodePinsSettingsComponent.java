@@ -24,6 +24,7 @@ import java.awt.*;
 public class CodePinsSettingsComponent {
     private final JPanel mainPanel;
     private final JBCheckBox confirmDeleteCheckBox = new JBCheckBox(CodePinsBundle.message("settings.general.confirm.delete"));
+    private final JBCheckBox searchCodeSnippetsCheckBox = new JBCheckBox(CodePinsBundle.message("settings.general.search.code"));
     private final JBTextField previewHeightTextField = new JBTextField();
     private final JBCheckBox showNoteDialogOnQuickAddCheckBox = new JBCheckBox(CodePinsBundle.message("settings.pin.add.show.note.dialog"));
     
@@ -38,6 +39,8 @@ public class CodePinsSettingsComponent {
         JPanel generalPanel = FormBuilder.createFormBuilder()
                 .addLabeledComponent(new JBLabel(CodePinsBundle.message("settings.general.preview.height")), previewHeightTextField, 1, false)
                 .addComponent(confirmDeleteCheckBox)
+                .addComponent(searchCodeSnippetsCheckBox)
+                .addComponent(new JBLabel("<html><small>" + CodePinsBundle.message("settings.general.search.code.desc") + "</small></html>"))
                 .getPanel();
         generalPanel.setBorder(BorderFactory.createTitledBorder(CodePinsBundle.message("settings.general")));
         
@@ -219,6 +222,14 @@ public class CodePinsSettingsComponent {
         showNoteDialogOnQuickAddCheckBox.setSelected(newStatus);
     }
     
+    public boolean getSearchCodeSnippets() {
+        return searchCodeSnippetsCheckBox.isSelected();
+    }
+    
+    public void setSearchCodeSnippets(boolean newStatus) {
+        searchCodeSnippetsCheckBox.setSelected(newStatus);
+    }
+    
     public boolean getShowNoteDialogOnCommentPin() {
         return showNoteDialogOnCommentPinCheckBox.isSelected();
     }
@@ -37,6 +37,7 @@ public class CodePinsSettingsConfigurable implements Configurable {
         boolean modified = !mySettingsComponent.getPreviewHeight().equals(settings.previewHeight);
         modified |= mySettingsComponent.getConfirmDelete() != settings.confirmDelete;
         modified |= mySettingsComponent.getShowNoteDialogOnQuickAdd() != settings.showNoteDialogOnQuickAdd;
+        modified |= mySettingsComponent.getSearchCodeSnippets() != settings.searchCodeSnippets;
         
         // 检查注释指令设置是否修改
         modified |= mySettingsComponent.getShowNoteDialogOnCommentPin() != settings.showNoteDialogOnCommentPin;
@@ -53,6 +54,7 @@ public class CodePinsSettingsConfigurable implements Configurable {
         settings.previewHeight = mySettingsComponent.getPreviewHeight();
         settings.confirmDelete = mySettingsComponent.getConfirmDelete();
         settings.showNoteDialogOnQuickAdd = mySettingsComponent.getShowNoteDialogOnQuickAdd();
+        settings.searchCodeSnippets = mySettingsComponent.getSearchCodeSnippets();
         
         // 保存注释指令设置
         settings.showNoteDialogOnCommentPin = mySettingsComponent.getShowNoteDialogOnCommentPin();
@@ -67,6 +69,7 @@ public class CodePinsSettingsConfigurable implements Configurable {
         mySettingsComponent.setPreviewHeight(settings.previewHeight);
         mySettingsComponent.setConfirmDelete(settings.confirmDelete);
         mySettingsComponent.setShowNoteDialogOnQuickAdd(settings.showNoteDialogOnQuickAdd);
+        mySettingsComponent.setSearchCodeSnippets(settings.searchCodeSnippets);
         
         // 重置注释指令设置
         mySettingsComponent.setShowNoteDialogOnCommentPin(settings.showNoteDialogOnCommentPin);
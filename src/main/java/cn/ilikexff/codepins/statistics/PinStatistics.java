@@ -2,124 +2,161 @@ package cn.ilikexff.codepins.statistics;
 
 import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
+import com.intellij.openapi.project.Project;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 图钉统计数据计算类
- * 提供各种维度的图钉统计信息
+ * 提供各种维度的图钉统计信息（按项目统计），统计面板通过 Counts 增量维护
  */
 public class PinStatistics {
     
     /**
      * 获取总体统计信息
      */
-    public static OverallStats getOverallStats() {
-        List<PinEntry> pins = PinStorage.getPins();
-        
-        int totalPins = pins.size();
-        int singleLinePins = (int) pins.stream().filter(pin -> !pin.isBlock).count();
-        int blockPins = (int) pins.stream().filter(pin -> pin.isBlock).count();
-        
-        Set<String> uniqueFiles = pins.stream()
-                .map(pin -> pin.filePath)
-                .collect(Collectors.toSet());
-        
-        Set<String> uniqueAuthors = pins.stream()
-                .map(pin -> pin.author)
-                .collect(Collectors.toSet());
-        
-        Set<String> allTags = pins.stream()
-                .flatMap(pin -> pin.getTags().stream())
-                .collect(Collectors.toSet());
-        
-        return new OverallStats(totalPins, singleLinePins, blockPins, 
-                               uniqueFiles.size(), uniqueAuthors.size(), allTags.size());
+    public static OverallStats getOverallStats(Project project) {
+        return Counts.of(PinStorage.getPins(project)).getOverallStats(getTagStats(project).size());
     }
     
     /**
      * 获取标签使用统计
      */
-    public static Map<String, Integer> getTagStats() {
-        List<PinEntry> pins = PinStorage.getPins();
-        Map<String, Integer> tagCounts = new HashMap<>();
-        
-        for (PinEntry pin : pins) {
-            for (String tag : pin.getTags()) {
-                tagCounts.put(tag, tagCounts.getOrDefault(tag, 0) + 1);
-            }
-        }
-        
-        // 按使用频率排序
-        LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<>();
-        tagCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
-        return sortedMap;
+    public static Map<String, Integer> getTagStats(Project project) {
+        // 标签位图索引已维护每个标签的图钉数，并按使用频率排序
+        return PinStorage.getTagCounts(project);
     }
     
     /**
      * 获取文件分布统计
      */
-    public static Map<String, Integer> getFileStats() {
-        List<PinEntry> pins = PinStorage.getPins();
-        Map<String, Integer> fileCounts = new HashMap<>();
-        
-        for (PinEntry pin : pins) {
-            String fileName = new File(pin.filePath).getName();
-            fileCounts.put(fileName, fileCounts.getOrDefault(fileName, 0) + 1);
-        }
-        
-        // 按图钉数量排序
-        LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<>();
-        fileCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
-        return sortedMap;
+    public static Map<String, Integer> getFileStats(Project project) {
+        return Counts.of(PinStorage.getPins(project)).getFileStats();
     }
     
     /**
      * 获取作者统计
      */
-    public static Map<String, Integer> getAuthorStats() {
-        List<PinEntry> pins = PinStorage.getPins();
-        Map<String, Integer> authorCounts = new HashMap<>();
-        
-        for (PinEntry pin : pins) {
-            String author = pin.author != null ? pin.author : "Unknown";
-            authorCounts.put(author, authorCounts.getOrDefault(author, 0) + 1);
-        }
-        
-        // 按图钉数量排序
-        LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<>();
-        authorCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
-        return sortedMap;
+    public static Map<String, Integer> getAuthorStats(Project project) {
+        return Counts.of(PinStorage.getPins(project)).getAuthorStats();
     }
     
     /**
      * 获取时间分布统计（按天）
      */
-    public static Map<String, Integer> getTimeStats() {
-        List<PinEntry> pins = PinStorage.getPins();
-        Map<String, Integer> timeCounts = new HashMap<>();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    public static Map<String, Integer> getTimeStats(Project project) {
+        return Counts.of(PinStorage.getPins(project)).getTimeStats();
+    }
+    
+    /**
+     * 可增量维护的统计计数（按文件、作者、日期）
+     * 统计面板只在整体重载时遍历全部图钉，之后按每帧的新增、删除图钉调整计数；
+     * 文件、作者、创建时间和类型创建后不会变化，修改备注、标签、位置不影响这些计数。
+     * 同一个图钉重复新增或删除时忽略，不会重复计数。非线程安全，由调用方在 EDT 上使用
+     */
+    public static class Counts {
+        private final Set<PinEntry> pins = new HashSet<>();
+        private final Map<String, Integer> byFilePath = new HashMap<>();
+        private final Map<String, Integer> byFileName = new HashMap<>();
+        private final Map<String, Integer> byAuthor = new HashMap<>();
+        private final Map<String, Integer> byDate = new HashMap<>();
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        private int blockPins;
         
-        for (PinEntry pin : pins) {
-            String date = dateFormat.format(new Date(pin.timestamp));
-            timeCounts.put(date, timeCounts.getOrDefault(date, 0) + 1);
+        public static Counts of(Collection<PinEntry> pins) {
+            Counts counts = new Counts();
+            for (PinEntry pin : pins) {
+                counts.add(pin);
+            }
+            return counts;
         }
         
-        // 按日期排序
-        LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<>();
-        timeCounts.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
-        return sortedMap;
+        /**
+         * 计入图钉
+         *
+         * @return 图钉是否为新计入
+         */
+        public boolean add(PinEntry pin) {
+            if (!pins.add(pin)) {
+                return false;
+            }
+            count(pin, 1);
+            return true;
+        }
+        
+        /**
+         * 移除图钉的计数
+         *
+         * @return 图钉此前是否已计入
+         */
+        public boolean remove(PinEntry pin) {
+            if (!pins.remove(pin)) {
+                return false;
+            }
+            count(pin, -1);
+            return true;
+        }
+        
+        private void count(PinEntry pin, int delta) {
+            if (pin.isBlock) {
+                blockPins += delta;
+            }
+            increment(byFilePath, pin.filePath, delta);
+            increment(byFileName, new File(pin.filePath).getName(), delta);
+            increment(byAuthor, pin.author != null ? pin.author : "Unknown", delta);
+            increment(byDate, dateFormat.format(new Date(pin.timestamp)), delta);
+        }
+        
+        private static int increment(Map<String, Integer> counts, String key, int delta) {
+            int value = counts.getOrDefault(key, 0) + delta;
+            if (value <= 0) {
+                counts.remove(key);
+                return 0;
+            }
+            counts.put(key, value);
+            return value;
+        }
+        
+        /**
+         * 总体统计
+         *
+         * @param uniqueTags 标签种类数（由标签索引提供）
+         */
+        public OverallStats getOverallStats(int uniqueTags) {
+            return new OverallStats(pins.size(), pins.size() - blockPins, blockPins,
+                    byFilePath.size(), byAuthor.size(), uniqueTags);
+        }
+        
+        /**
+         * 按文件名统计，按图钉数量排序
+         */
+        public Map<String, Integer> getFileStats() {
+            return sortedByCount(byFileName);
+        }
+        
+        /**
+         * 按作者统计，按图钉数量排序
+         */
+        public Map<String, Integer> getAuthorStats() {
+            return sortedByCount(byAuthor);
+        }
+        
+        /**
+         * 按创建日期统计，按日期排序
+         */
+        public Map<String, Integer> getTimeStats() {
+            return new TreeMap<>(byDate);
+        }
+        
+        private static Map<String, Integer> sortedByCount(Map<String, Integer> counts) {
+            LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
+            return sortedMap;
+        }
     }
     
     /**
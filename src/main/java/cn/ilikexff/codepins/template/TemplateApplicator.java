@@ -62,7 +62,7 @@ public class TemplateApplicator {
             template.getTags()
         );
         
-        boolean success = PinStorage.addPin(pin);
+        boolean success = PinStorage.addPin(project, pin);
         
         if (success) {
             // 显示成功消息
@@ -208,7 +208,7 @@ public class TemplateApplicator {
                 template.getTags()
             );
             
-            if (PinStorage.addPin(pin)) {
+            if (PinStorage.addPin(project, pin)) {
                 successCount++;
             }
         }
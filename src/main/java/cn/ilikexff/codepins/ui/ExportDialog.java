@@ -45,7 +45,7 @@ public class ExportDialog extends DialogWrapper {
     public ExportDialog(Project project) {
         super(project);
         this.project = project;
-        this.allPins = PinStorage.getPins();
+        this.allPins = PinStorage.getPins(project);
 
         // 创建图钉列表模型
         pinsModel = new DefaultListModel<>();
@@ -0,0 +1,170 @@
+package cn.ilikexff.codepins.ui;
+
+import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinStorage;
+import cn.ilikexff.codepins.i18n.CodePinsBundle;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopup;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBTextField;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.List;
+
+/**
+ * 跳转到图钉弹窗
+ * 输入关键字即按模糊匹配得分列出最相关的图钉，回车或双击跳转，不需要在工具窗口中滚动查找
+ */
+public class GoToPinPopup {
+
+    private static final int MAX_RESULTS = 50; // 只显示得分最高的这些图钉
+
+    private final Project project;
+    private final JBTextField queryField = new JBTextField();
+    private final CollectionListModel<PinEntry> listModel = new CollectionListModel<>();
+    private final JBList<PinEntry> list = new JBList<>(listModel);
+    private JBPopup popup;
+
+    private GoToPinPopup(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * 在当前窗口中央显示弹窗
+     */
+    public static void show(@NotNull Project project) {
+        new GoToPinPopup(project).showPopup();
+    }
+
+    private void showPopup() {
+        queryField.getEmptyText().setText(CodePinsBundle.message("goto.pin.placeholder"));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new PinRenderer());
+        list.getEmptyText().setText(CodePinsBundle.message("goto.pin.empty"));
+
+        JPanel panel = new JPanel(new BorderLayout(0, JBUI.scale(4)));
+        panel.setBorder(JBUI.Borders.empty(6));
+        panel.add(queryField, BorderLayout.NORTH);
+        JScrollPane scrollPane = ScrollPaneFactory.createScrollPane(list);
+        scrollPane.setPreferredSize(JBUI.size(560, 320));
+        panel.add(scrollPane, BorderLayout.CENTER);
+
+        queryField.getDocument().addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull DocumentEvent e) {
+                updateResults();
+            }
+        });
+        // 焦点留在输入框，上下键移动列表选中项，回车跳转
+        queryField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                int size = listModel.getSize();
+                int selected = list.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN && size > 0) {
+                    select(Math.min(selected + 1, size - 1));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_UP && size > 0) {
+                    select(Math.max(selected - 1, 0));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    navigateToSelected();
+                    e.consume();
+                }
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    navigateToSelected();
+                }
+            }
+        });
+
+        popup = JBPopupFactory.getInstance()
+                .createComponentPopupBuilder(panel, queryField)
+                .setTitle(CodePinsBundle.message("goto.pin.title"))
+                .setRequestFocus(true)
+                .setFocusable(true)
+                .setMovable(true)
+                .setResizable(true)
+                .setCancelOnClickOutside(true)
+                .setCancelKeyEnabled(true)
+                .createPopup();
+        popup.showCenteredInCurrentWindow(project);
+        updateResults();
+    }
+
+    /**
+     * 在后台计算匹配结果，新的输入取消尚未完成的计算
+     */
+    private void updateResults() {
+        String query = queryField.getText();
+        ReadAction.nonBlocking(() -> PinStorage.fuzzySearch(project, query, MAX_RESULTS))
+                .coalesceBy(this)
+                .expireWith(popup)
+                .finishOnUiThread(ModalityState.any(), this::showResults)
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    private void showResults(List<PinEntry> pins) {
+        listModel.replaceAll(pins);
+        if (!pins.isEmpty()) {
+            select(0);
+        }
+    }
+
+    private void select(int index) {
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void navigateToSelected() {
+        PinEntry pin = list.getSelectedValue();
+        if (pin == null) {
+            return;
+        }
+        popup.closeOk(null);
+        pin.navigate(project);
+    }
+
+    /**
+     * 备注（为空时显示文件名）+ 文件名:行号 + 标签
+     */
+    private static class PinRenderer extends ColoredListCellRenderer<PinEntry> {
+        private final Icon pinIcon = IconLoader.getIcon("/icons/pin.svg", GoToPinPopup.class);
+
+        @Override
+        protected void customizeCellRenderer(@NotNull JList<? extends PinEntry> list, PinEntry pin,
+                                             int index, boolean selected, boolean hasFocus) {
+            setIcon(pinIcon);
+            String fileName = new File(pin.filePath).getName();
+            String note = pin.note != null && !pin.note.trim().isEmpty() ? pin.note.trim() : fileName;
+            append(note, SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
+            append("  " + fileName + ":" + (pin.getLine() + 1), SimpleTextAttributes.GRAYED_ATTRIBUTES);
+            for (String tag : pin.getTags()) {
+                append("  #" + tag, SimpleTextAttributes.GRAYED_SMALL_ATTRIBUTES);
+            }
+        }
+    }
+}
@@ -1,32 +1,48 @@
 package cn.ilikexff.codepins.ui;
 
+import cn.ilikexff.codepins.core.PinDelta;
 import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinEvents;
 import cn.ilikexff.codepins.settings.CodePinsSettings;
 import cn.ilikexff.codepins.utils.IconUtil;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.ui.JBColor;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import javax.swing.border.Border;
 import java.awt.*;
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * 自定义图钉列表单元格渲染器
  * 使用现代卡片式设计，提供更丰富的视觉信息
+ *
+ * 为了在大量图钉时流畅滚动，渲染器复用固定的组件树，只在绘制时更新文本和图标；
+ * 每个图钉的文件名、时间、标签组件和行号缓存在视图模型中，内容或文档变化时才重新计算。
+ * 视图模型按图钉 ID 缓存，订阅图钉变化后随图钉删除、更新和整体重载清除，不再使用的标签组件随之清理。
  */
-public class PinListCellRenderer extends DefaultListCellRenderer {
+public class PinListCellRenderer extends DefaultListCellRenderer implements PinEvents {
 
     // 缓存图标
     private final Icon blockIcon = IconUtil.loadIcon("/icons/code.svg", getClass());
     private final Icon lineIcon = IconUtil.loadIcon("/icons/bookmark.svg", getClass());
     private final Icon fileIcon = IconUtil.loadIcon("/icons/file.svg", getClass());
     private final Icon timeIcon = IconUtil.loadIcon("/icons/clock.svg", getClass());
+    private final Icon tagIcon = IconUtil.loadIcon("/icons/tag-small.svg", getClass());
 
     // 颜色常量 - 优化了亮色主题支持
     // 选中背景色：亮色主题下使用浅蓝色，暗色主题下使用深蓝色
@@ -38,6 +54,18 @@ public class PinListCellRenderer extends DefaultListCellRenderer {
     // 边框颜色：亮色主题下使用浅灰色，暗色主题下使用深灰色
     private static final Color BORDER_COLOR = new JBColor(new Color(220, 220, 220), new Color(80, 80, 90, 120));
 
+    // 备注颜色：亮色主题下使用深色，暗色主题下使用浅色
+    private static final Color NOTE_FG = new JBColor(new Color(30, 30, 30), new Color(220, 220, 220));
+    // 无备注提示颜色：亮色主题下使用深灰色，暗色主题下使用浅灰色
+    private static final Color EMPTY_NOTE_FG = new JBColor(new Color(120, 120, 120), new Color(150, 150, 150));
+    // 文件名和时间颜色：亮色主题下使用深灰色，暗色主题下使用浅灰色
+    private static final Color SECONDARY_FG = new JBColor(new Color(100, 100, 100), new Color(150, 150, 150));
+    // 行号颜色：亮色主题下使用深橙色，暗色主题下使用浅橙色
+    private static final Color LINE_FG = new JBColor(new Color(200, 80, 40), new Color(247, 140, 108));
+
+    // 时间格式（仅在 EDT 上使用，每个图钉只格式化一次）
+    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("MM-dd HH:mm");
+
     // 边框常量
     private static final Border NORMAL_BORDER = BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(BORDER_COLOR, 1),
@@ -58,6 +86,14 @@ public class PinListCellRenderer extends DefaultListCellRenderer {
             JBUI.Borders.empty(7, 9)
     );
 
+    // 渲染缓存：每个图钉的视图模型（按图钉 ID）、按标签名缓存的标签组件、两套复用的单元格组件
+    private final Map<String, PinCellModel> cellModels = new HashMap<>();
+    private final Map<String, JLabel> tagChips = new HashMap<>();
+    private final Font noteFont = UIUtil.getLabelFont().deriveFont(Font.BOLD, 14f);
+    private final Font emptyNoteFont = UIUtil.getLabelFont().deriveFont(Font.ITALIC, 14f);
+    private final CellView plainView = new CellView(false);
+    private final CellView taggedView = new CellView(true);
+
     public void setHoverIndex(int index) {
         this.hoverIndex = index;
     }
@@ -70,217 +106,282 @@ public class PinListCellRenderer extends DefaultListCellRenderer {
         this.dragOverIndex = index;
     }
 
+    /**
+     * 清除已删除、已更新图钉的视图模型（更新后的图钉可能换了 marker，不能继续持有旧文档），
+     * 整体重载时清空；标签变化时清理不再被任何视图模型使用的标签组件
+     */
+    @Override
+    public void pinsChanged(@NotNull PinDelta delta) {
+        if (delta.isReloaded()) {
+            cellModels.clear();
+            tagChips.clear();
+            return;
+        }
+        for (PinEntry pin : delta.getRemoved()) {
+            cellModels.remove(pin.getId());
+        }
+        for (PinEntry pin : delta.getUpdated()) {
+            cellModels.remove(pin.getId());
+        }
+        if (delta.affectsTags() || !delta.getRemoved().isEmpty()) {
+            pruneTagChips();
+        }
+    }
+
+    private void pruneTagChips() {
+        Set<String> used = new HashSet<>();
+        for (PinCellModel cellModel : cellModels.values()) {
+            if (cellModel.tags != null) {
+                used.addAll(cellModel.tags);
+            }
+        }
+        tagChips.keySet().retainAll(used);
+    }
+
     @Override
     public Component getListCellRendererComponent(JList<?> list, Object value, int index,
                                                   boolean isSelected, boolean cellHasFocus) {
-        JPanel panel = new JPanel(new BorderLayout(10, 0));
-        panel.setOpaque(true);
+        if (!(value instanceof PinEntry entry)) {
+            // 非图钉元素沿用默认渲染
+            return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        }
+
+        PinCellModel cellModel = cellModelFor(entry);
+        CellView view = cellModel.chips.isEmpty() ? plainView : taggedView;
 
         // 设置背景颜色和边框
         if (isSelected) {
-            panel.setBackground(SELECTED_BG);
-            panel.setBorder(SELECTED_BORDER);
+            view.root.setBackground(SELECTED_BG);
+            view.root.setBorder(SELECTED_BORDER);
         } else if (index == dragOverIndex) {
             // 拖放目标项的样式
-            panel.setBackground(DRAG_OVER_BG);
-            panel.setBorder(DRAG_OVER_BORDER);
+            view.root.setBackground(DRAG_OVER_BG);
+            view.root.setBorder(DRAG_OVER_BORDER);
         } else if (index == hoverIndex) {
-            panel.setBackground(HOVER_BG);
-            panel.setBorder(NORMAL_BORDER);
+            view.root.setBackground(HOVER_BG);
+            view.root.setBorder(NORMAL_BORDER);
         } else {
-            panel.setBackground(NORMAL_BG);
-            panel.setBorder(NORMAL_BORDER);
+            view.root.setBackground(NORMAL_BG);
+            view.root.setBorder(NORMAL_BORDER);
         }
 
-        if (value instanceof PinEntry entry) {
-            // 使用 ReadAction 包装文档访问操作，确保线程安全
-            com.intellij.openapi.application.ReadAction.run(() -> {
-                try {
-                    // 左侧图标面板
-                    JPanel iconPanel = createIconPanel(entry);
-                    panel.add(iconPanel, BorderLayout.WEST);
-
-                    // 中间内容面板
-                    JPanel contentPanel = createContentPanel(entry);
-                    panel.add(contentPanel, BorderLayout.CENTER);
-
-                    // 右侧信息面板
-                    JPanel infoPanel = createInfoPanel(entry);
-                    panel.add(infoPanel, BorderLayout.EAST);
-
-                } catch (Exception e) {
-                    // 如果发生异常，显示简化的面板
-                    JLabel errorLabel = new JLabel("加载图钉信息失败");
-                    errorLabel.setForeground(JBColor.RED);
-                    panel.add(errorLabel, BorderLayout.CENTER);
-                    e.printStackTrace();
-                }
-            });
+        try {
+            view.bind(entry, cellModel);
+        } catch (Exception e) {
+            // 如果发生异常，显示简化的内容
+            view.showError("加载图钉信息失败");
+            e.printStackTrace();
         }
 
-        return panel;
+        return view.root;
     }
 
     /**
-     * 创建左侧图标面板
+     * 获取图钉的视图模型，图钉内容变化时重新计算对应部分
      */
-    private JPanel createIconPanel(PinEntry entry) {
-        JPanel iconPanel = new JPanel(new BorderLayout());
-        iconPanel.setOpaque(false);
+    private PinCellModel cellModelFor(PinEntry entry) {
+        PinCellModel cellModel = cellModels.get(entry.getId());
+        // 相同 ID 的图钉换了文件或时间（如被替换）时重新计算
+        if (cellModel == null || !cellModel.describes(entry)) {
+            cellModel = new PinCellModel(entry);
+            cellModels.put(entry.getId(), cellModel);
+        }
 
-        // 选择适当的图标
-        Icon icon = entry.isBlock ? blockIcon : lineIcon;
-        JLabel iconLabel = new JLabel(icon);
-        iconLabel.setBorder(JBUI.Borders.empty(0, 5, 0, 5));
+        List<String> tags = entry.getTags();
+        if (!tags.equals(cellModel.tags)) {
+            cellModel.tags = new ArrayList<>(tags); // getTags 返回的是只读视图，需要保存快照
+            cellModel.chips = new ArrayList<>(tags.size());
+            for (String tag : tags) {
+                cellModel.chips.add(tagChips.computeIfAbsent(tag, this::createTagLabel));
+            }
+        }
+        refreshLine(entry, cellModel);
+        return cellModel;
+    }
 
-        iconPanel.add(iconLabel, BorderLayout.CENTER);
-        return iconPanel;
+    /**
+     * 仅在 marker 位置、文档或文档修改戳变化时重新计算行号文本
+     * 视图模型只记录这些数值，不持有 marker 和文档，文件关闭后文档可以被回收
+     */
+    private void refreshLine(PinEntry entry, PinCellModel cellModel) {
+        RangeMarker marker = entry.marker;
+        if (marker != null && marker.isValid()) {
+            Document doc = marker.getDocument();
+            long stamp = doc.getModificationStamp();
+            int documentId = System.identityHashCode(doc);
+            if (cellModel.lineText != null && stamp == cellModel.lineStamp && documentId == cellModel.lineDocument
+                    && marker.getStartOffset() == cellModel.lineStart && marker.getEndOffset() == cellModel.lineEnd) {
+                return;
+            }
+            // 渲染在 EDT 上进行，已具备读权限
+            int startLine = doc.getLineNumber(marker.getStartOffset()) + 1; // 转为1开始的行号
+            if (entry.isBlock) {
+                // 如果是代码块，显示起始和结束行号
+                int endLine = doc.getLineNumber(marker.getEndOffset()) + 1;
+                cellModel.lineText = "Line " + startLine + "-" + endLine;
+            } else {
+                // 如果是单行，只显示当前行号
+                cellModel.lineText = "Line " + startLine;
+            }
+            cellModel.lineDocument = documentId;
+            cellModel.lineStart = marker.getStartOffset();
+            cellModel.lineEnd = marker.getEndOffset();
+            cellModel.lineStamp = stamp;
+        } else {
+            // 尚未挂接 marker 的图钉显示保存时的行号
+            cellModel.lineText = !entry.isResolved() && entry.getLine() >= 0
+                    ? "Line " + (entry.getLine() + 1)
+                    : "Line ?";
+            cellModel.lineDocument = 0;
+            cellModel.lineStamp = -1;
+        }
     }
 
     /**
-     * 创建中间内容面板
+     * 单个图钉的渲染数据
+     * 文件名和时间只计算一次；标签和行号在对应内容变化时更新
      */
-    private JPanel createContentPanel(PinEntry entry) {
-        JPanel contentPanel = new JPanel();
-        contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
-        contentPanel.setOpaque(false);
+    private static final class PinCellModel {
+        final String filePath;
+        final long timestamp;
+        final String fileName;
+        final String timeText;
+        List<String> tags;
+        List<JLabel> chips = new ArrayList<>();
+        String lineText;
+        int lineDocument;
+        int lineStart = -1;
+        int lineEnd = -1;
+        long lineStamp = -1;
+
+        PinCellModel(PinEntry pin) {
+            this.filePath = pin.filePath;
+            this.timestamp = pin.timestamp;
+            this.fileName = getFileName(pin.filePath);
+            this.timeText = TIME_FORMAT.format(new Date(pin.timestamp));
+        }
+
+        boolean describes(PinEntry pin) {
+            return timestamp == pin.timestamp && Objects.equals(filePath, pin.filePath);
+        }
+    }
+
+    /**
+     * 复用的单元格组件树
+     * 有标签和无标签的图钉布局不同，各使用一套组件，渲染时只更新文本、图标和标签
+     */
+    private final class CellView {
+        final JPanel root = new JPanel(new BorderLayout(10, 0));
+        final JLabel iconLabel = new JLabel();
+        final JLabel noteLabel = new JLabel();
+        final JLabel fileNameLabel = new JLabel();
+        final JPanel tagsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        final JLabel lineLabel = new JLabel();
+        final JLabel timeLabel = new JLabel();
+        private List<JLabel> shownChips = Collections.emptyList();
+
+        CellView(boolean withTags) {
+            root.setOpaque(true);
+
+            // 左侧图标面板
+            JPanel iconPanel = new JPanel(new BorderLayout());
+            iconPanel.setOpaque(false);
+            iconLabel.setBorder(JBUI.Borders.empty(0, 5, 0, 5));
+            iconPanel.add(iconLabel, BorderLayout.CENTER);
+
+            // 中间内容面板：备注为主，文件名变小，标签在下方
+            JPanel contentPanel = new JPanel();
+            contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
+            contentPanel.setOpaque(false);
 
-        try {
-            // 备注作为主标题（如果有）
             JPanel notePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
             notePanel.setOpaque(false);
             notePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            notePanel.add(noteLabel);
 
-            if (entry.note != null && !entry.note.isEmpty()) {
-                JLabel noteLabel = new JLabel(entry.note);
-                noteLabel.setFont(noteLabel.getFont().deriveFont(Font.BOLD, 14f));
-                // 备注颜色：亮色主题下使用深色，暗色主题下使用浅色
-                noteLabel.setForeground(new JBColor(new Color(30, 30, 30), new Color(220, 220, 220)));
-                notePanel.add(noteLabel);
-            } else {
-                JLabel emptyNoteLabel = new JLabel("(无备注)");
-                emptyNoteLabel.setFont(emptyNoteLabel.getFont().deriveFont(Font.ITALIC, 14f));
-                // 无备注提示颜色：亮色主题下使用深灰色，暗色主题下使用浅灰色
-                emptyNoteLabel.setForeground(new JBColor(new Color(120, 120, 120), new Color(150, 150, 150)));
-                notePanel.add(emptyNoteLabel);
-            }
-
-            // 文件名（变小，作为次要信息）
-            String fileName = getFileName(entry.filePath);
-            JLabel fileNameLabel = new JLabel(fileName);
             fileNameLabel.setFont(fileNameLabel.getFont().deriveFont(Font.PLAIN, 11f));
-            // 文件名颜色：亮色主题下使用深灰色，暗色主题下使用浅灰色
-            fileNameLabel.setForeground(new JBColor(new Color(100, 100, 100), new Color(150, 150, 150)));
+            fileNameLabel.setForeground(SECONDARY_FG);
             fileNameLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
-            // 标签面板
-            JPanel tagsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
-            tagsPanel.setOpaque(false);
-            tagsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-
-            List<String> tags = entry.getTags();
-            if (!tags.isEmpty()) {
-                for (String tag : tags) {
-                    JLabel tagLabel = createTagLabel(tag);
-                    tagsPanel.add(tagLabel);
-                }
-            }
-
-            // 添加到内容面板（调整顺序：备注为主，文件名变小）
             contentPanel.add(notePanel);
             contentPanel.add(Box.createVerticalStrut(3));
             contentPanel.add(fileNameLabel);
-
-            if (!tags.isEmpty()) {
+            if (withTags) {
+                tagsPanel.setOpaque(false);
+                tagsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
                 contentPanel.add(Box.createVerticalStrut(5));
                 contentPanel.add(tagsPanel);
             }
 
-        } catch (Exception e) {
-            JLabel errorLabel = new JLabel("内容加载失败");
-            errorLabel.setForeground(JBColor.RED);
-            contentPanel.add(errorLabel);
-            e.printStackTrace();
-        }
-
-        return contentPanel;
-    }
+            // 右侧信息面板：行号和时间
+            JPanel infoPanel = new JPanel();
+            infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+            infoPanel.setOpaque(false);
 
-    /**
-     * 创建右侧信息面板
-     */
-    private JPanel createInfoPanel(PinEntry entry) {
-        JPanel infoPanel = new JPanel();
-        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
-        infoPanel.setOpaque(false);
-
-        try {
-            // 行号信息
             JPanel linePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 2, 0));
             linePanel.setOpaque(false);
             linePanel.setAlignmentX(Component.RIGHT_ALIGNMENT);
-
-            String lineInfo = "Line ?";
-            if (entry.marker != null && entry.marker.isValid()) {
-                Document doc = entry.marker.getDocument();
-                if (doc != null) {
-                    // 获取当前行号
-                    int startLine = doc.getLineNumber(entry.marker.getStartOffset()) + 1; // 转为1开始的行号
-
-                    if (entry.isBlock) {
-                        // 如果是代码块，显示起始和结束行号
-                        int endLine = doc.getLineNumber(entry.marker.getEndOffset()) + 1;
-                        lineInfo = "Line " + startLine + "-" + endLine;
-                    } else {
-                        // 如果是单行，只显示当前行号
-                        lineInfo = "Line " + startLine;
-                    }
-                }
-            }
-
-            JLabel lineLabel = new JLabel(lineInfo);
             lineLabel.setFont(lineLabel.getFont().deriveFont(12f));
-            // 行号颜色：亮色主题下使用深橙色，暗色主题下使用浅橙色
-            lineLabel.setForeground(new JBColor(new Color(200, 80, 40), new Color(247, 140, 108)));
-
+            lineLabel.setForeground(LINE_FG);
             linePanel.add(lineLabel);
 
-            // 时间信息
             JPanel timePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 2, 0));
             timePanel.setOpaque(false);
             timePanel.setAlignmentX(Component.RIGHT_ALIGNMENT);
-
-            JLabel timeIcon = new JLabel(this.timeIcon);
-            timeIcon.setPreferredSize(new Dimension(12, 12));
-
-            String timeStr = new SimpleDateFormat("MM-dd HH:mm").format(new Date(entry.timestamp));
-            JLabel timeLabel = new JLabel(timeStr);
+            JLabel timeIconLabel = new JLabel(timeIcon);
+            timeIconLabel.setPreferredSize(new Dimension(12, 12));
             timeLabel.setFont(timeLabel.getFont().deriveFont(11f));
-            // 时间颜色：亮色主题下使用深灰色，暗色主题下使用浅灰色
-            timeLabel.setForeground(new JBColor(new Color(100, 100, 100), new Color(150, 150, 150)));
-
-            timePanel.add(timeIcon);
+            timeLabel.setForeground(SECONDARY_FG);
+            timePanel.add(timeIconLabel);
             timePanel.add(timeLabel);
 
-            // 添加到信息面板
             infoPanel.add(linePanel);
             infoPanel.add(Box.createVerticalStrut(3));
             infoPanel.add(timePanel);
 
-        } catch (Exception e) {
-            JLabel errorLabel = new JLabel("信息加载失败");
-            errorLabel.setForeground(JBColor.RED);
-            infoPanel.add(errorLabel);
-            e.printStackTrace();
+            root.add(iconPanel, BorderLayout.WEST);
+            root.add(contentPanel, BorderLayout.CENTER);
+            root.add(infoPanel, BorderLayout.EAST);
+        }
+
+        void bind(PinEntry entry, PinCellModel cellModel) {
+            iconLabel.setIcon(entry.isBlock ? blockIcon : lineIcon);
+
+            if (entry.note != null && !entry.note.isEmpty()) {
+                noteLabel.setText(entry.note);
+                noteLabel.setFont(noteFont);
+                noteLabel.setForeground(NOTE_FG);
+            } else {
+                noteLabel.setText("(无备注)");
+                noteLabel.setFont(emptyNoteFont);
+                noteLabel.setForeground(EMPTY_NOTE_FG);
+            }
+
+            fileNameLabel.setText(cellModel.fileName);
+            lineLabel.setText(cellModel.lineText);
+            timeLabel.setText(cellModel.timeText);
+
+            // 标签组件按标签名缓存，相邻单元格标签相同时不重建子组件
+            if (shownChips != cellModel.chips) {
+                tagsPanel.removeAll();
+                for (JLabel chip : cellModel.chips) {
+                    tagsPanel.add(chip);
+                }
+                shownChips = cellModel.chips;
+            }
         }
 
-        return infoPanel;
+        void showError(String message) {
+            noteLabel.setText(message);
+            noteLabel.setFont(noteFont);
+            noteLabel.setForeground(JBColor.RED);
+        }
     }
 
     /**
      * 获取文件名
      */
-    private String getFileName(String path) {
+    private static String getFileName(String path) {
         if (path == null || path.isEmpty()) {
             return "未知文件";
         }
@@ -320,7 +421,7 @@ public class PinListCellRenderer extends DefaultListCellRenderer {
         ));
 
         // 添加标签图标
-        tagLabel.setIcon(IconUtil.loadIcon("/icons/tag-small.svg", getClass()));
+        tagLabel.setIcon(tagIcon);
         tagLabel.setIconTextGap(4);
 
         return tagLabel;
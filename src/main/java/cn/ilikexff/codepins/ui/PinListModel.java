@@ -0,0 +1,480 @@
+package cn.ilikexff.codepins.ui;
+
+import cn.ilikexff.codepins.core.PinDelta;
+import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinEvents;
+import cn.ilikexff.codepins.core.PinStorage;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 图钉列表模型
+ * 订阅 PinEvents 主题，每帧收到一次合并后的变化：只有内容变化时原位重绘对应的项；
+ * 增删和移动时与存储快照比对，只比较首尾相同部分，对中间差异区间发出最少的事件，避免 clear + 逐个 add。
+ *
+ * 设置排序方式后模型是存储顺序之上的一个排序视图，不修改存储中的自定义顺序；
+ * 排序状态下单个图钉的增删改只调整对应的一项（插入位置按二分查找），不需要整体重排。
+ *
+ * 搜索关键字通过存储的全文索引求出匹配的图钉，标签筛选通过存储的标签位图索引求出匹配的图钉，
+ * 两者同时存在时求交；其他筛选条件只对这些图钉求值，输入时不遍历全部图钉。
+ *
+ * 有搜索、筛选或排序时，列表内容在后台读操作中计算，不阻塞 EDT：输入关键字先合并 SEARCH_DELAY 毫秒，
+ * 新的计算会取消尚未完成的旧计算；结果较多时先显示第一页，全部算完后再追加其余部分。
+ */
+public class PinListModel extends AbstractListModel<PinEntry> implements PinEvents {
+
+    private static final int SEARCH_DELAY = 150; // 输入关键字后等待的时间（毫秒），连续输入只计算一次
+    private static final int FIRST_PAGE = 200; // 先显示的结果数
+    private static final int BULK_CHANGE = 256; // 一帧内变化的图钉超过此数量时整体重新计算，而不是逐项调整
+
+    private final Project project;
+    private final Disposable parent;
+    private final Alarm searchAlarm;
+    private final List<PinEntry> items = new ArrayList<>();
+    private Predicate<PinEntry> filter; // 当前筛选条件，为 null 表示不筛选
+    private List<String> tagFilter = Collections.emptyList(); // 当前筛选的标签（包含任一即可），为空表示不筛选
+    private String searchText; // 当前搜索关键字，为 null 表示不搜索
+    private Comparator<PinEntry> comparator; // 当前排序方式，为 null 时按存储中的自定义顺序
+    private int generation; // 最近一次计算的编号，旧计算的结果到达时直接丢弃（只在 EDT 上访问）
+    private boolean updating; // 是否有尚未显示完整结果的计算
+
+    /**
+     * @param parent 后台计算和延迟任务随其销毁而取消（如工具窗口）
+     */
+    public PinListModel(Project project, Disposable parent) {
+        this.project = project;
+        this.parent = parent;
+        this.searchAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, parent);
+    }
+
+    /**
+     * 设置筛选条件并重新计算列表内容
+     *
+     * @param filter 筛选条件，为 null 表示显示全部图钉
+     */
+    public void setFilter(Predicate<PinEntry> filter) {
+        this.filter = filter;
+        reload();
+    }
+
+    /**
+     * 设置标签筛选并重新计算列表内容，结果由存储的标签位图索引求出
+     *
+     * @param tags 显示包含其中任一标签的图钉，为 null 或空表示不按标签筛选
+     */
+    public void setTagFilter(Collection<String> tags) {
+        setTagFilter(tags, searchText);
+    }
+
+    /**
+     * 同时设置标签筛选和搜索关键字，只重新计算一次
+     */
+    public void setTagFilter(Collection<String> tags, String searchText) {
+        List<String> newTags = tags == null ? Collections.emptyList() : new ArrayList<>(tags);
+        update(filter, newTags, searchText);
+    }
+
+    /**
+     * 设置搜索关键字并重新计算列表内容
+     *
+     * @param searchText 搜索关键字，为空表示不搜索
+     */
+    public void setSearchText(String searchText) {
+        update(filter, tagFilter, searchText);
+    }
+
+    /**
+     * 同时设置筛选条件和搜索关键字，只重新计算一次
+     */
+    public void setFilter(Predicate<PinEntry> filter, String searchText) {
+        update(filter, tagFilter, searchText);
+    }
+
+    private void update(Predicate<PinEntry> filter, List<String> tags, String searchText) {
+        String text = searchText == null || searchText.trim().isEmpty() ? null : searchText.trim();
+        boolean typing = filter == this.filter && tags.equals(tagFilter) && text != null;
+        this.filter = filter;
+        this.tagFilter = tags;
+        this.searchText = text;
+        if (typing) {
+            // 只有关键字变化：等待输入停顿后再计算
+            scheduleUpdate(SEARCH_DELAY);
+        } else {
+            reload();
+        }
+    }
+
+    /**
+     * 是否处于筛选状态（筛选条件或搜索关键字）
+     */
+    public boolean isFiltered() {
+        return filter != null || !tagFilter.isEmpty() || searchText != null;
+    }
+
+    /**
+     * 设置排序方式并重新计算列表内容（只影响显示顺序）
+     *
+     * @param comparator 排序方式，为 null 表示按自定义顺序显示
+     */
+    public void setComparator(Comparator<PinEntry> comparator) {
+        this.comparator = comparator;
+        reload();
+    }
+
+    /**
+     * 是否处于排序视图（此时列表顺序与自定义顺序无关，不能拖拽调整）
+     */
+    public boolean isSorted() {
+        return comparator != null;
+    }
+
+    /**
+     * 是否有尚未完成的后台计算（此时列表内容可能还不是最新的）
+     */
+    public boolean isUpdating() {
+        return updating;
+    }
+
+    /**
+     * 按当前筛选条件和排序方式从存储重新读取图钉
+     * 不搜索、不筛选、不排序时直接显示存储快照，否则在后台计算
+     */
+    public void reload() {
+        if (!isFiltered() && comparator == null) {
+            cancelUpdate();
+            setPins(PinStorage.getPins(project));
+            return;
+        }
+        scheduleUpdate(0);
+    }
+
+    private void cancelUpdate() {
+        generation++;
+        updating = false;
+        searchAlarm.cancelAllRequests();
+    }
+
+    /**
+     * 按当前条件安排一次后台计算，取代尚未完成的计算
+     */
+    private void scheduleUpdate(int delay) {
+        cancelUpdate();
+        int requestId = generation;
+        updating = true;
+        Query query = new Query(project, searchText, tagFilter, filter, comparator);
+        if (delay > 0) {
+            searchAlarm.addRequest(() -> submit(query, requestId), delay);
+        } else {
+            submit(query, requestId);
+        }
+    }
+
+    private void submit(Query query, int requestId) {
+        ReadAction.nonBlocking(() -> query.run(page -> showFirstPage(page, requestId)))
+                .coalesceBy(this) // 同一模型的新计算取消旧计算
+                .expireWith(parent)
+                .finishOnUiThread(ModalityState.any(), result -> {
+                    if (requestId == generation) {
+                        updating = false;
+                        setPins(result); // 与第一页前缀相同，只追加其余部分
+                    }
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    private void showFirstPage(List<PinEntry> page, int requestId) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (requestId == generation && updating) {
+                setPins(page);
+            }
+        }, ModalityState.any(), project.getDisposed());
+    }
+
+    /**
+     * 一次列表计算的条件（提交时的快照），在后台读操作中执行
+     */
+    private static final class Query {
+        private final Project project;
+        private final String searchText;
+        private final List<String> tags;
+        private final Predicate<PinEntry> filter;
+        private final Comparator<PinEntry> comparator;
+
+        Query(Project project, String searchText, List<String> tags, Predicate<PinEntry> filter,
+              Comparator<PinEntry> comparator) {
+            this.project = project;
+            this.searchText = searchText;
+            this.tags = tags;
+            this.filter = filter;
+            this.comparator = comparator;
+        }
+
+        /**
+         * 计算完整的可见列表；结果超过一页时先把第一页交给 firstPage
+         */
+        List<PinEntry> run(Consumer<List<PinEntry>> firstPage) {
+            // 有搜索关键字或标签筛选时只处理索引命中的图钉（都按存储顺序排列）
+            List<PinEntry> candidates;
+            if (tags.isEmpty()) {
+                candidates = searchText != null ? PinStorage.search(project, searchText) : PinStorage.getPins(project);
+            } else {
+                List<PinEntry> tagged = PinStorage.filterByTags(project, null, tags, null);
+                candidates = searchText != null ? intersect(PinStorage.search(project, searchText), tagged) : tagged;
+            }
+            ProgressManager.checkCanceled();
+
+            List<PinEntry> visible = new ArrayList<>();
+            boolean pageShown = comparator != null; // 排序时第一页要在全部筛选完后才能确定
+            for (int i = 0; i < candidates.size(); i++) {
+                if ((i & 0xFF) == 0) {
+                    ProgressManager.checkCanceled();
+                }
+                PinEntry pin = candidates.get(i);
+                if (filter == null || filter.test(pin)) {
+                    visible.add(pin);
+                    if (!pageShown && visible.size() == FIRST_PAGE && i + 1 < candidates.size()) {
+                        firstPage.accept(new ArrayList<>(visible));
+                        pageShown = true;
+                    }
+                }
+            }
+            if (comparator == null) {
+                return visible;
+            }
+
+            if (visible.size() > FIRST_PAGE) {
+                firstPage.accept(firstSorted(visible));
+            }
+            visible.sort((a, b) -> {
+                ProgressManager.checkCanceled();
+                return comparator.compare(a, b);
+            }); // 稳定排序，相同时保持自定义顺序
+            return visible;
+        }
+
+        /**
+         * 两个按存储顺序排列的结果求交，保持 ordered 的顺序
+         */
+        private static List<PinEntry> intersect(List<PinEntry> ordered, List<PinEntry> other) {
+            Set<PinEntry> members = Collections.newSetFromMap(new IdentityHashMap<>(other.size()));
+            members.addAll(other);
+            List<PinEntry> result = new ArrayList<>(Math.min(ordered.size(), other.size()));
+            for (PinEntry pin : ordered) {
+                if (members.contains(pin)) {
+                    result.add(pin);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 排序后的前 FIRST_PAGE 项（小顶堆选取，不对全部结果排序），相等时按原顺序，与稳定排序一致
+         */
+        private List<PinEntry> firstSorted(List<PinEntry> visible) {
+            Comparator<Integer> order = (x, y) -> {
+                int result = comparator.compare(visible.get(x), visible.get(y));
+                return result != 0 ? result : Integer.compare(x, y);
+            };
+            PriorityQueue<Integer> heap = new PriorityQueue<>(FIRST_PAGE + 1, order.reversed());
+            for (int i = 0; i < visible.size(); i++) {
+                if ((i & 0xFF) == 0) {
+                    ProgressManager.checkCanceled();
+                }
+                heap.add(i);
+                if (heap.size() > FIRST_PAGE) {
+                    heap.poll();
+                }
+            }
+            List<Integer> top = new ArrayList<>(heap);
+            top.sort(order);
+            List<PinEntry> page = new ArrayList<>(top.size());
+            for (int index : top) {
+                page.add(visible.get(index));
+            }
+            return page;
+        }
+    }
+
+    /**
+     * 用新列表替换模型内容，仅对发生变化的区间发出通知
+     */
+    public void setPins(List<PinEntry> newItems) {
+        int oldSize = items.size();
+        int newSize = newItems.size();
+
+        // 相同的前缀
+        int prefix = 0;
+        int limit = Math.min(oldSize, newSize);
+        while (prefix < limit && items.get(prefix) == newItems.get(prefix)) {
+            prefix++;
+        }
+
+        // 相同的后缀（不与前缀重叠）
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && items.get(oldSize - 1 - suffix) == newItems.get(newSize - 1 - suffix)) {
+            suffix++;
+        }
+
+        int oldMiddle = oldSize - prefix - suffix;
+        int newMiddle = newSize - prefix - suffix;
+        if (oldMiddle == 0 && newMiddle == 0) {
+            return;
+        }
+
+        items.subList(prefix, prefix + oldMiddle).clear();
+        items.addAll(prefix, newItems.subList(prefix, prefix + newMiddle));
+
+        int common = Math.min(oldMiddle, newMiddle);
+        if (common > 0) {
+            fireContentsChanged(this, prefix, prefix + common - 1);
+        }
+        if (oldMiddle > newMiddle) {
+            fireIntervalRemoved(this, prefix + common, prefix + oldMiddle - 1);
+        } else if (newMiddle > oldMiddle) {
+            fireIntervalAdded(this, prefix + common, prefix + newMiddle - 1);
+        }
+    }
+
+    @Override
+    public void pinsChanged(@NotNull PinDelta delta) {
+        int changed = delta.getAdded().size() + delta.getRemoved().size() + delta.getUpdated().size();
+        if (delta.isReloaded() || changed > BULK_CHANGE) {
+            reload();
+            // 整体重载或批量修改时图钉实例可能未变但内容（如恢复后的行号、备注）已变化，需要重绘
+            if (!items.isEmpty()) {
+                fireContentsChanged(this, 0, items.size() - 1);
+            }
+            return;
+        }
+
+        if (updating) {
+            // 后台计算尚未完成，逐项调整会与即将到达的结果冲突，按新数据重新计算
+            scheduleUpdate(0);
+            return;
+        }
+
+        if (comparator != null && searchText == null) {
+            // 排序视图：自定义顺序的移动不影响显示顺序，增删改逐项调整
+            for (PinEntry pin : delta.getRemoved()) {
+                removeSorted(pin);
+            }
+            for (PinEntry pin : delta.getUpdated()) {
+                removeSorted(pin);
+                insertSorted(pin);
+            }
+            for (PinEntry pin : delta.getAdded()) {
+                insertSorted(pin);
+            }
+            return;
+        }
+
+        // 只有内容变化且未筛选时原位重绘（筛选状态下修改可能改变图钉是否可见）
+        if (!isFiltered() && delta.getAdded().isEmpty() && delta.getRemoved().isEmpty()
+                && delta.getMoved().isEmpty()) {
+            for (PinEntry pin : delta.getUpdated()) {
+                repaintPin(pin);
+            }
+            return;
+        }
+
+        reload();
+        for (PinEntry pin : delta.getUpdated()) {
+            repaintPin(pin);
+        }
+    }
+
+    /**
+     * 单个图钉是否满足标签筛选（逐项调整时使用，整体计算走标签索引）
+     */
+    private boolean matchesTags(PinEntry pin) {
+        if (tagFilter.isEmpty()) {
+            return true;
+        }
+        for (String tag : tagFilter) {
+            if (pin.hasTag(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重绘单个图钉（修改事件中的图钉可能是新实例，同时替换）
+     */
+    private void repaintPin(PinEntry pin) {
+        int index = items.indexOf(pin);
+        if (index >= 0) {
+            items.set(index, pin);
+            fireContentsChanged(this, index, index);
+        }
+    }
+
+    private void insertSorted(PinEntry pin) {
+        if ((filter != null && !filter.test(pin)) || !matchesTags(pin)) {
+            return;
+        }
+        // 插入到所有相等元素之后，与稳定排序的结果一致
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(items.get(mid), pin) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        items.add(low, pin);
+        fireIntervalAdded(this, low, low);
+    }
+
+    private void removeSorted(PinEntry pin) {
+        // 修改事件中的图钉可能是新实例，内容（排序依据）也可能已变化，按 equals 查找
+        int index = items.indexOf(pin);
+        if (index >= 0) {
+            items.remove(index);
+            fireIntervalRemoved(this, index, index);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public PinEntry getElementAt(int index) {
+        return items.get(index);
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * 当前显示的图钉（副本）
+     */
+    public List<PinEntry> getPins() {
+        return new ArrayList<>(items);
+    }
+}
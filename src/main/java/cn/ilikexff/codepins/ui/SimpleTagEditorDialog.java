@@ -43,7 +43,7 @@ public class SimpleTagEditorDialog extends DialogWrapper {
         this.currentTags = new ArrayList<>(pinEntry.getTags());
 
         // 获取所有已有标签
-        this.existingTags = PinStorage.getAllTags();
+        this.existingTags = PinStorage.getAllTags(project);
 
         // 创建标签列表模型和列表
         tagsModel = new DefaultListModel<>();
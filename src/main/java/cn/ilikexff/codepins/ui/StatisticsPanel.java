@@ -1,7 +1,11 @@
 package cn.ilikexff.codepins.ui;
 
+import cn.ilikexff.codepins.core.PinEntry;
+import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.i18n.CodePinsBundle;
 import cn.ilikexff.codepins.statistics.PinStatistics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBPanel;
@@ -22,6 +26,8 @@ import java.util.Map;
  */
 public class StatisticsPanel extends JBPanel<StatisticsPanel> {
     
+    private final Project project;
+    
     private JBLabel totalPinsLabel;
     private JBLabel singleLinePinsLabel;
     private JBLabel blockPinsLabel;
@@ -34,7 +40,20 @@ public class StatisticsPanel extends JBPanel<StatisticsPanel> {
     private JPanel authorStatsPanel;
     private JPanel timeStatsPanel;
     
-    public StatisticsPanel() {
+    // 统计分区，用于只刷新受变化影响的部分
+    private static final int OVERALL = 1;
+    private static final int TAGS = 1 << 1;
+    private static final int FILES = 1 << 2;
+    private static final int AUTHORS = 1 << 3;
+    private static final int TIME = 1 << 4;
+    private static final int ALL = OVERALL | TAGS | FILES | AUTHORS | TIME;
+    
+    private PinStatistics.Counts counts; // 增量维护的计数，为 null 时下次刷新重新统计全部图钉
+    private int dirty; // 待刷新的分区（面板不可见期间累积，下次显示时刷新）
+    private boolean updateScheduled;
+    
+    public StatisticsPanel(Project project) {
+        this.project = project;
         setLayout(new BorderLayout());
         initComponents();
         refreshStatistics();
@@ -144,19 +163,100 @@ public class StatisticsPanel extends JBPanel<StatisticsPanel> {
     }
     
     /**
-     * 刷新统计数据
+     * 订阅图钉变化：按每帧新增、删除的图钉增量调整计数，只重绘受影响的分区；
+     * 面板不可见时只记下待刷新的分区，parent 销毁时自动注销
+     * 文件、作者、时间分布只随图钉增删变化；标签修改只影响标签统计和标签种类数；
+     * 只修改备注、位置或顺序时统计结果不变，不需要刷新
+     */
+    public void listenToPinChanges(Disposable parent) {
+        PinStorage.subscribe(project, delta -> {
+            if (delta.isReloaded() || counts == null) {
+                counts = null;
+                markDirty(ALL);
+                return;
+            }
+            boolean membershipChanged = false;
+            for (PinEntry pin : delta.getRemoved()) {
+                membershipChanged |= counts.remove(pin);
+            }
+            for (PinEntry pin : delta.getAdded()) {
+                membershipChanged |= counts.add(pin);
+            }
+            int sections = 0;
+            if (membershipChanged) {
+                sections |= OVERALL | FILES | AUTHORS | TIME;
+            }
+            if (delta.affectsTags()) {
+                sections |= OVERALL | TAGS;
+            }
+            if (sections != 0) {
+                markDirty(sections);
+            }
+        }, parent);
+    }
+    
+    private void markDirty(int sections) {
+        dirty |= sections;
+        if (isShowing()) {
+            scheduleUpdate();
+        }
+    }
+    
+    /**
+     * 面板重新显示时，如果期间图钉发生过变化则刷新对应分区
+     */
+    public void refreshIfStale() {
+        if (dirty != 0) {
+            scheduleUpdate();
+        }
+    }
+    
+    /**
+     * 重新统计全部图钉并刷新所有分区
      */
     public void refreshStatistics() {
+        counts = null;
+        dirty = ALL;
+        scheduleUpdate();
+    }
+    
+    /**
+     * 同一帧内多次请求只刷新一次
+     */
+    private void scheduleUpdate() {
+        if (updateScheduled) {
+            return;
+        }
+        updateScheduled = true;
         SwingUtilities.invokeLater(() -> {
+            updateScheduled = false;
+            int sections = dirty;
+            dirty = 0;
             try {
+                if (counts == null) {
+                    counts = PinStatistics.Counts.of(PinStorage.getPins(project));
+                }
+                Map<String, Integer> tagStats = (sections & (OVERALL | TAGS)) != 0
+                        ? PinStatistics.getTagStats(project) : null;
+                
                 // 更新总体统计
-                updateOverallStats();
+                if ((sections & OVERALL) != 0) {
+                    updateOverallStats(counts.getOverallStats(tagStats.size()));
+                }
                 
                 // 更新详细统计
-                updateTagStats();
-                updateFileStats();
-                updateAuthorStats();
-                updateTimeStats();
+                if ((sections & TAGS) != 0) {
+                    updateTagDetailStats(tagStatsPanel, tagStats);
+                }
+                if ((sections & FILES) != 0) {
+                    updateDetailStats(fileStatsPanel, counts.getFileStats(), false);
+                }
+                if ((sections & AUTHORS) != 0) {
+                    updateDetailStats(authorStatsPanel, counts.getAuthorStats(), false);
+                }
+                if ((sections & TIME) != 0) {
+                    updateDetailStats(timeStatsPanel, counts.getTimeStats(), false);
+                }
                 
                 // 重绘界面
                 revalidate();
@@ -168,9 +268,7 @@ public class StatisticsPanel extends JBPanel<StatisticsPanel> {
         });
     }
     
-    private void updateOverallStats() {
-        PinStatistics.OverallStats stats = PinStatistics.getOverallStats();
-        
+    private void updateOverallStats(PinStatistics.OverallStats stats) {
         updateStatLabel(totalPinsLabel, "总图钉数", String.valueOf(stats.totalPins));
         updateStatLabel(singleLinePinsLabel, "单行图钉", String.valueOf(stats.singleLinePins));
         updateStatLabel(blockPinsLabel, "代码块图钉", String.valueOf(stats.blockPins));
@@ -186,22 +284,6 @@ public class StatisticsPanel extends JBPanel<StatisticsPanel> {
                 "</div></html>");
     }
     
-    private void updateTagStats() {
-        updateTagDetailStats(tagStatsPanel, PinStatistics.getTagStats());
-    }
-
-    private void updateFileStats() {
-        updateDetailStats(fileStatsPanel, PinStatistics.getFileStats(), false);
-    }
-
-    private void updateAuthorStats() {
-        updateDetailStats(authorStatsPanel, PinStatistics.getAuthorStats(), false);
-    }
-
-    private void updateTimeStats() {
-        updateDetailStats(timeStatsPanel, PinStatistics.getTimeStats(), false);
-    }
-    
     private void updateDetailStats(JPanel panel, Map<String, Integer> stats, boolean isTagStats) {
         // 获取内容面板
         JBScrollPane scrollPane = (JBScrollPane) panel.getComponent(0);
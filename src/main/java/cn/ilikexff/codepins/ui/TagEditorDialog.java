@@ -30,6 +30,7 @@ import java.util.Set;
  */
 public class TagEditorDialog extends DialogWrapper {
 
+    private final Project project;
     private final PinEntry pinEntry;
     private final DefaultListModel<String> tagsModel;
     private final JBList<String> tagsList;
@@ -41,6 +42,7 @@ public class TagEditorDialog extends DialogWrapper {
 
     public TagEditorDialog(Project project, PinEntry pinEntry) {
         super(project);
+        this.project = project;
         this.pinEntry = pinEntry;
         this.currentTags = new ArrayList<>(pinEntry.getTags());
 
@@ -250,7 +252,7 @@ public class TagEditorDialog extends DialogWrapper {
         }
 
         // 获取所有标签
-        Set<String> allTags = PinStorage.getAllTags();
+        Set<String> allTags = PinStorage.getAllTags(project);
         boolean hasSuggestions = false;
 
         // 添加匹配的标签
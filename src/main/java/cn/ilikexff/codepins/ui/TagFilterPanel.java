@@ -1,10 +1,13 @@
 package cn.ilikexff.codepins.ui;
 
+import cn.ilikexff.codepins.core.PinBatch;
 import cn.ilikexff.codepins.core.PinEntry;
 import cn.ilikexff.codepins.core.PinStorage;
 import cn.ilikexff.codepins.i18n.CodePinsBundle;
 import cn.ilikexff.codepins.services.LicenseService;
 import cn.ilikexff.codepins.utils.IconUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBPanel;
@@ -26,11 +29,13 @@ import java.util.function.Consumer;
  */
 public class TagFilterPanel extends JPanel {
 
+    private final Project project;
     private final List<String> selectedTags = new ArrayList<>();
     private final Consumer<List<String>> onTagSelectionChanged;
     private final JPanel tagsContainer;
 
-    public TagFilterPanel(Consumer<List<String>> onTagSelectionChanged) {
+    public TagFilterPanel(Project project, Consumer<List<String>> onTagSelectionChanged) {
+        this.project = project;
         this.onTagSelectionChanged = onTagSelectionChanged;
 
         setLayout(new BorderLayout());
@@ -109,6 +114,18 @@ public class TagFilterPanel extends JPanel {
         refreshTagsView();
     }
 
+    /**
+     * 订阅图钉变化，标签可能变化时（新增、删除、修改标签）自动刷新（每帧最多一次），parent 销毁时自动注销
+     * 只修改备注或位置时标签集合和计数不变，不重建标签视图
+     */
+    public void listenToPinChanges(Disposable parent) {
+        PinStorage.subscribe(project, delta -> {
+            if (delta.affectsTags()) {
+                refreshTagsView();
+            }
+        }, parent);
+    }
+
     /**
      * 刷新标签视图
      */
@@ -116,7 +133,7 @@ public class TagFilterPanel extends JPanel {
         tagsContainer.removeAll();
 
         // 获取标签限制信息
-        Map<String, Integer> tagsInfo = PinStorage.getTagsCountInfo();
+        Map<String, Integer> tagsInfo = PinStorage.getTagsCountInfo(project);
         int currentTagTypes = tagsInfo.get("current");
         int maxTagTypes = tagsInfo.get("max");
         boolean isPremiumUser = LicenseService.getInstance().isPremiumUser();
@@ -147,7 +164,7 @@ public class TagFilterPanel extends JPanel {
             tagsContainer.add(countPanel);
         }
 
-        Set<String> allTags = PinStorage.getAllTags();
+        Set<String> allTags = PinStorage.getAllTags(project);
         if (allTags.isEmpty()) {
             JLabel emptyLabel = new JLabel(CodePinsBundle.message("tag.empty"));
             emptyLabel.setForeground(JBColor.GRAY);
@@ -211,13 +228,7 @@ public class TagFilterPanel extends JPanel {
                     PinStorage.removeGlobalTag(tag);
                     
                     // 从所有图钉中移除该标签
-                    for (PinEntry pin : PinStorage.getPins()) {
-                        if (pin.hasTag(tag)) {
-                            List<String> tags = new ArrayList<>(pin.getTags());
-                            tags.remove(tag);
-                            PinStorage.updateTags(pin, tags);
-                        }
-                    }
+                    replaceTag(tag, null);
                     
                     // 刷新标签视图
                     refreshTagsView();
@@ -320,14 +331,7 @@ public class TagFilterPanel extends JPanel {
                 selectedTags.remove(tag);
                 
                 // 更新所有包含此标签的图钉
-                for (PinEntry pin : PinStorage.getPins()) {
-                    if (pin.hasTag(tag)) {
-                        List<String> tags = new ArrayList<>(pin.getTags());
-                        tags.remove(tag);
-                        tags.add(newTag.trim());
-                        PinStorage.updateTags(pin, tags);
-                    }
-                }
+                replaceTag(tag, newTag.trim());
                 
                 // 从全局标签中移除旧标签并添加新标签
                 PinStorage.removeGlobalTag(tag);
@@ -358,13 +362,7 @@ public class TagFilterPanel extends JPanel {
                 selectedTags.remove(tag);
                 
                 // 从所有图钉中移除该标签
-                for (PinEntry pin : PinStorage.getPins()) {
-                    if (pin.hasTag(tag)) {
-                        List<String> tags = new ArrayList<>(pin.getTags());
-                        tags.remove(tag);
-                        PinStorage.updateTags(pin, tags);
-                    }
-                }
+                replaceTag(tag, null);
                 
                 // 从全局标签集合中删除
                 PinStorage.removeGlobalTag(tag);
@@ -379,6 +377,23 @@ public class TagFilterPanel extends JPanel {
         return menu;
     }
 
+    /**
+     * 把所有图钉中的标签 tag 替换为 replacement（为 null 时删除），合并为一次批量提交：
+     * 只持久化一批记录、只更新一次标签集合、只刷新一次界面
+     */
+    private void replaceTag(String tag, String replacement) {
+        PinBatch batch = new PinBatch();
+        for (PinEntry pin : PinStorage.filterByTags(project, List.of(tag))) {
+            List<String> tags = new ArrayList<>(pin.getTags());
+            tags.remove(tag);
+            if (replacement != null && !tags.contains(replacement)) {
+                tags.add(replacement);
+            }
+            batch.updateTags(pin, tags);
+        }
+        PinStorage.applyBatch(project, batch);
+    }
+
     /**
      * 获取标签颜色
      */
@@ -475,12 +490,7 @@ public class TagFilterPanel extends JPanel {
         // 创建一个临时的空PinEntry对象，仅用于打开对话框
         PinEntry dummyPin = new PinEntry();
         
-        SimpleTagEditorDialog dialog = new SimpleTagEditorDialog(
-            SwingUtilities.getWindowAncestor(this) instanceof com.intellij.openapi.project.Project ? 
-            (com.intellij.openapi.project.Project) SwingUtilities.getWindowAncestor(this) : 
-            com.intellij.openapi.project.ProjectManager.getInstance().getOpenProjects()[0],
-            dummyPin
-        );
+        SimpleTagEditorDialog dialog = new SimpleTagEditorDialog(project, dummyPin);
         
         dialog.setTitle(CodePinsBundle.message("tag.create.custom"));
         
@@ -488,7 +498,7 @@ public class TagFilterPanel extends JPanel {
             List<String> newTags = dialog.getTags();
             // 将新创建的标签添加到所有标签集合中
             for (String tag : newTags) {
-                if (!PinStorage.getAllTags().contains(tag)) {
+                if (!PinStorage.getAllTags(project).contains(tag)) {
                     // 添加到全局标签集合中
                     PinStorage.addGlobalTag(tag);
                 }
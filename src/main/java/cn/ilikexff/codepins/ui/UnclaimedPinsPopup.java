@@ -0,0 +1,68 @@
+package cn.ilikexff.codepins.ui;
+
+import cn.ilikexff.codepins.core.PinState;
+import cn.ilikexff.codepins.core.PinStateService;
+import cn.ilikexff.codepins.i18n.CodePinsBundle;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.SimpleTextAttributes;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * 未归属的旧图钉弹窗（只读）
+ * 列出旧版全局存储中不属于任何已打开项目的图钉（如外部库中的图钉），选中后打开对应文件；
+ * 这些图钉不会被搬进当前项目，也不能在这里修改，打开其所在的项目时会自动迁移过去。
+ */
+public class UnclaimedPinsPopup {
+
+    /**
+     * 在当前窗口中央显示弹窗
+     */
+    public static void show(@NotNull Project project) {
+        List<PinState> pins = PinStateService.getInstance().getUnclaimedPins();
+        JBPopupFactory.getInstance()
+                .createPopupChooserBuilder(pins)
+                .setTitle(CodePinsBundle.message("unclaimed.pins.title", pins.size()))
+                .setRenderer(new PinStateRenderer())
+                .setNamerForFiltering(pin -> pin.note + " " + pin.filePath)
+                .setItemChosenCallback(pin -> open(project, pin))
+                .setResizable(true)
+                .setMovable(true)
+                .createPopup()
+                .showCenteredInCurrentWindow(project);
+    }
+
+    private static void open(Project project, PinState pin) {
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(pin.filePath);
+        if (file != null) {
+            new OpenFileDescriptor(project, file, Math.max(0, pin.line), 0).navigate(true);
+        }
+    }
+
+    /**
+     * 备注（为空时显示文件名）+ 完整路径:行号，文件已不存在时置灰
+     */
+    private static class PinStateRenderer extends ColoredListCellRenderer<PinState> {
+        private final Icon pinIcon = IconLoader.getIcon("/icons/pin.svg", UnclaimedPinsPopup.class);
+
+        @Override
+        protected void customizeCellRenderer(@NotNull JList<? extends PinState> list, PinState pin,
+                                             int index, boolean selected, boolean hasFocus) {
+            setIcon(pinIcon);
+            String path = pin.filePath != null ? pin.filePath : "";
+            String note = pin.note != null && !pin.note.trim().isEmpty()
+                    ? pin.note.trim() : path.substring(path.lastIndexOf('/') + 1);
+            boolean exists = LocalFileSystem.getInstance().findFileByPath(path) != null;
+            append(note, exists ? SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES : SimpleTextAttributes.GRAYED_BOLD_ATTRIBUTES);
+            append("  " + path + ":" + (Math.max(0, pin.line) + 1), SimpleTextAttributes.GRAYED_ATTRIBUTES);
+        }
+    }
+}
@@ -56,7 +56,7 @@ public class ImportExportUtil {
 
                 // 基本信息
                 pinObject.addProperty("filePath", pin.filePath);
-                pinObject.addProperty("line", pin.getCurrentLine(pin.marker.getDocument()));
+                pinObject.addProperty("line", pin.getLine());
                 pinObject.addProperty("note", pin.note != null ? pin.note : "");
                 pinObject.addProperty("timestamp", pin.timestamp);
                 pinObject.addProperty("author", pin.author);
@@ -64,8 +64,8 @@ public class ImportExportUtil {
 
                 // 如果是代码块，添加偏移量
                 if (pin.isBlock) {
-                    pinObject.addProperty("startOffset", pin.marker.getStartOffset());
-                    pinObject.addProperty("endOffset", pin.marker.getEndOffset());
+                    pinObject.addProperty("startOffset", pin.getStartOffset());
+                    pinObject.addProperty("endOffset", pin.getEndOffset());
                 }
 
                 // 添加标签
@@ -122,7 +122,7 @@ public class ImportExportUtil {
 
             // 如果是替换模式，先清空现有图钉
             if (mode == ImportMode.REPLACE) {
-                PinStorage.clearAll();
+                PinStorage.clearAll(project);
             }
 
             // 导入图钉数据
@@ -160,7 +160,7 @@ public class ImportExportUtil {
                 }
 
                 // 添加到存储
-                PinStorage.addPinState(pinState);
+                PinStorage.addPinState(project, pinState);
                 importCount++;
             }
 
@@ -1,7 +1,8 @@
 package cn.ilikexff.codepins.utils;
 
 import cn.ilikexff.codepins.core.PinEntry;
-import com.intellij.openapi.editor.Document;
+import cn.ilikexff.codepins.core.PinLocation;
+import cn.ilikexff.codepins.core.PinStorage;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.LocalFileSystem;
@@ -679,27 +680,26 @@ public class SharingUtil {
         // 获取文件名
         String fileName = new File(pin.filePath).getName();
 
-        // 获取代码片段
-        String codeSnippet = getCodeSnippet(project, pin);
+        // 获取位置和代码片段（不为休眠图钉挂接 marker）
+        PinLocation location = PinStorage.locatePin(pin);
+        String codeSnippet = location != null ? location.getText() : "";
         String language = getFileLanguage(pin.filePath);
 
         // 格式化为Markdown
         md.append("### ").append(fileName).append("\n\n");
         md.append("**路径:** `").append(pin.filePath).append("`\n");
 
-        // 行号信息
-        Document doc = pin.marker.getDocument();
+        // 行号信息（无法定位时使用保存的行号）
+        int startLine = (location != null ? location.getStartLine() : pin.getLine()) + 1;
+        int endLine = (location != null ? location.getEndLine() : pin.getLine()) + 1;
         if (pin.isBlock) {
-            int startLine = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            int endLine = doc.getLineNumber(pin.marker.getEndOffset()) + 1;
             md.append("**位置:** 第 ").append(startLine);
             if (startLine != endLine) {
                 md.append("-").append(endLine);
             }
             md.append(" 行\n");
         } else {
-            int line = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            md.append("**位置:** 第 ").append(line).append(" 行\n");
+            md.append("**位置:** 第 ").append(startLine).append(" 行\n");
         }
 
         // 时间信息
@@ -733,10 +733,6 @@ public class SharingUtil {
                 // 分割代码行
                 String[] lines = codeSnippet.split("\\n");
 
-                // 获取起始行号
-                // 使用已有的doc变量
-                int startLine = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-
                 // 构建带行号的代码
                 StringBuilder codeWithLineNumbers = new StringBuilder();
                 for (int i = 0; i < lines.length; i++) {
@@ -783,8 +779,9 @@ public class SharingUtil {
         // 获取文件名
         String fileName = new File(pin.filePath).getName();
 
-        // 获取代码片段
-        String codeSnippet = getCodeSnippet(project, pin);
+        // 获取位置和代码片段（不为休眠图钉挂接 marker）
+        PinLocation location = PinStorage.locatePin(pin);
+        String codeSnippet = location != null ? location.getText() : "";
         String language = getFileLanguage(pin.filePath);
 
         // 格式化为HTML
@@ -792,19 +789,17 @@ public class SharingUtil {
         html.append("<h3>").append(fileName).append("</h3>\n");
         html.append("<p class=\"pin-meta\">路径: <code>").append(pin.filePath).append("</code></p>\n");
 
-        // 行号信息
-        Document doc = pin.marker.getDocument();
+        // 行号信息（无法定位时使用保存的行号）
+        int startLine = (location != null ? location.getStartLine() : pin.getLine()) + 1;
+        int endLine = (location != null ? location.getEndLine() : pin.getLine()) + 1;
         if (pin.isBlock) {
-            int startLine = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            int endLine = doc.getLineNumber(pin.marker.getEndOffset()) + 1;
             html.append("<p class=\"pin-meta\">位置: 第 ").append(startLine);
             if (startLine != endLine) {
                 html.append("-").append(endLine);
             }
             html.append(" 行</p>\n");
         } else {
-            int line = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            html.append("<p class=\"pin-meta\">位置: 第 ").append(line).append(" 行</p>\n");
+            html.append("<p class=\"pin-meta\">位置: 第 ").append(startLine).append(" 行</p>\n");
         }
 
         // 时间信息
@@ -848,10 +843,6 @@ public class SharingUtil {
                 // 分割代码行
                 String[] lines = codeSnippet.split("\\n");
 
-                // 获取起始行号
-                // 使用已有的doc变量
-                int startLine = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-
                 // 构建带行号的代码
                 StringBuilder codeWithLineNumbers = new StringBuilder();
                 for (int i = 0; i < lines.length; i++) {
@@ -885,6 +876,9 @@ public class SharingUtil {
      * @return 格式化后的JSON内容
      */
     private static String formatPinAsJSON(Project project, PinEntry pin) {
+        // 获取位置（不为休眠图钉挂接 marker）
+        PinLocation location = PinStorage.locatePin(pin);
+
         StringBuilder json = new StringBuilder();
         json.append("{");
 
@@ -901,17 +895,15 @@ public class SharingUtil {
         json.append("\"name\": \"").append(escapeJson(new File(pin.filePath).getName())).append("\"");
         json.append("}, ");
 
-        // 位置信息
-        Document doc = pin.marker.getDocument();
+        // 位置信息（无法定位时使用保存的行号）
+        int startLine = (location != null ? location.getStartLine() : pin.getLine()) + 1;
+        int endLine = (location != null ? location.getEndLine() : pin.getLine()) + 1;
         json.append("\"location\": {");
         if (pin.isBlock) {
-            int startLine = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            int endLine = doc.getLineNumber(pin.marker.getEndOffset()) + 1;
             json.append("\"start_line\": ").append(startLine).append(", ");
             json.append("\"end_line\": ").append(endLine);
         } else {
-            int line = doc.getLineNumber(pin.marker.getStartOffset()) + 1;
-            json.append("\"line\": ").append(line);
+            json.append("\"line\": ").append(startLine);
         }
         json.append("}, ");
 
@@ -935,7 +927,7 @@ public class SharingUtil {
         json.append("\"note\": \"").append(pin.note != null ? escapeJson(pin.note) : "").append("\", ");
 
         // 代码内容
-        String codeSnippet = getCodeSnippet(project, pin);
+        String codeSnippet = location != null ? location.getText() : "";
         json.append("\"code\": \"").append(escapeJson(codeSnippet)).append("\"");
 
         json.append("}");
@@ -961,12 +953,10 @@ public class SharingUtil {
      */
     public static String getCodeSnippet(Project project, PinEntry pin) {
         try {
-            Document doc = pin.marker.getDocument();
-            int startOffset = pin.marker.getStartOffset();
-            int endOffset = pin.marker.getEndOffset();
-
-            if (startOffset >= 0 && endOffset >= startOffset && endOffset <= doc.getTextLength()) {
-                return doc.getText(new com.intellij.openapi.util.TextRange(startOffset, endOffset));
+            // 只读取当前位置，不为休眠图钉挂接 marker
+            PinLocation location = PinStorage.locatePin(pin);
+            if (location != null) {
+                return location.getText();
             }
         } catch (Exception e) {
             System.out.println("[CodePins] 获取代码片段失败: " + e.getMessage());
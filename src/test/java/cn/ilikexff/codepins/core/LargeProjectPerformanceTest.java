@@ -0,0 +1,479 @@
+package cn.ilikexff.codepins.core;
+
+import cn.ilikexff.codepins.PinsToolWindow;
+import cn.ilikexff.codepins.extensions.PinCommentAction;
+import cn.ilikexff.codepins.extensions.PinLineMarkerProvider;
+import cn.ilikexff.codepins.utils.ImportExportUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.impl.ToolWindowHeadlessManagerImpl;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.SyntaxTraverser;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.intellij.testFramework.fixtures.TempDirTestFixture;
+import com.intellij.testFramework.fixtures.impl.TempDirTestFixtureImpl;
+import com.intellij.ui.SearchTextField;
+import com.intellij.util.TimeoutUtil;
+import com.intellij.util.ref.GCUtil;
+import com.intellij.util.ui.UIUtil;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 大项目性能测试
+ * 生成包含数千个文件、数万个图钉的合成项目，对图钉载入、工具窗口创建、搜索筛选、行标记、
+ * 注释扫描和导入导出分别计时，与预算比较；并测量休眠图钉、预览和打开文件后的堆占用。
+ * 结果写成 JSON 报告（同时追加到历史记录），用于跟踪各版本之间的变化。
+ *
+ * 平台测试环境只包含平台自带的语言，合成文件使用 XML（注释为 PsiComment，可以被注释扫描识别）；
+ * 文件写在本地磁盘的临时目录中，因为图钉的恢复和导入按本地路径查找文件。
+ *
+ * 运行：./gradlew perfTest，可选 -PperfFiles=文件数 -PperfPins=图钉数 -PperfBudgetScale=预算倍数
+ * 报告：build/reports/codepins-perf/report.json 和 history.jsonl
+ */
+public class LargeProjectPerformanceTest extends BasePlatformTestCase {
+
+    private static final int FILE_COUNT = Integer.getInteger("codepins.perf.files", 2000);
+    private static final int PIN_COUNT = Integer.getInteger("codepins.perf.pins", 20000);
+    private static final double BUDGET_SCALE = Double.parseDouble(System.getProperty("codepins.perf.budgetScale", "1"));
+    private static final String REPORT_PATH = System.getProperty("codepins.perf.report", "build/reports/codepins-perf/report.json");
+
+    private static final int LINES_PER_FILE = 200;
+    private static final int LARGE_FILE_LINES = 5000; // 行标记测试使用的大文件
+    private static final int SCANNED_FILES = 100; // 注释扫描的文件数，每个文件 10 个 @cp 注释
+    private static final int HEAP_FILES = 200; // 堆占用测量使用的文件数（取列表末尾，不与注释扫描重叠）
+    private static final String[] TAGS = {"todo", "bug", "review", "perf", "api", "ui", "docs", "test"};
+
+    // 预算（毫秒，按中位数比较），可以通过 budgetScale 整体放宽
+    private static final long LOAD_BUDGET = 2000;
+    private static final long TOOL_WINDOW_BUDGET = 3000;
+    private static final long SEARCH_KEYSTROKE_BUDGET = 150;
+    private static final long SEARCH_RESULTS_BUDGET = 500; // 含输入停顿等待
+    private static final long GUTTER_BUDGET = 500;
+    private static final long COMMENT_SCAN_BUDGET = 5000;
+    private static final long EXPORT_BUDGET = 3000;
+    private static final long IMPORT_BUDGET = 15000;
+
+    private final List<Measurement> measurements = new ArrayList<>();
+    private final JsonObject heap = new JsonObject();
+    private final List<VirtualFile> files = new ArrayList<>();
+    private VirtualFile largeFile;
+
+    @Override
+    protected TempDirTestFixture createTempDirTestFixture() {
+        return new TempDirTestFixtureImpl();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            PinStorage.clearAll(getProject());
+            PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testLargeProject() throws Exception {
+        try {
+            generateProject();
+            measureLoad();
+            ToolWindowHeadlessManagerImpl.MockToolWindow toolWindow = measureToolWindow();
+            measureSearch(toolWindow);
+            measureGutter();
+            measureHeap();
+            measureCommentScan();
+            measureImportExport();
+        } finally {
+            writeReport();
+        }
+
+        List<String> overBudget = new ArrayList<>();
+        for (Measurement m : measurements) {
+            if (!m.withinBudget()) {
+                overBudget.add(m.name + ": " + m.median() + " ms > " + m.budgetMs + " ms");
+            }
+        }
+        assertTrue("超出预算: " + overBudget, overBudget.isEmpty());
+    }
+
+    // ---------------------------------------------------------------- 合成项目
+
+    /**
+     * 生成合成文件并写入图钉（图钉为未解析状态，和从磁盘载入后的状态相同）
+     */
+    private void generateProject() throws IOException {
+        PinStorage.clearAll(getProject());
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            String path = "src/module" + (i % 50) + "/File" + i + ".xml";
+            files.add(myFixture.getTempDirFixture().createFile(path, xmlSource(i, LINES_PER_FILE, i < SCANNED_FILES)));
+        }
+        largeFile = myFixture.getTempDirFixture().createFile("src/Large.xml", xmlSource(-1, LARGE_FILE_LINES, false));
+
+        Random random = new Random(42);
+        PinBatch batch = new PinBatch();
+        for (int i = 0; i < PIN_COUNT; i++) {
+            VirtualFile file = files.get(i % FILE_COUNT);
+            batch.add(newPin(i, file.getPath(), 1 + random.nextInt(LINES_PER_FILE - 2), random));
+        }
+        for (int line = 10; line < LARGE_FILE_LINES; line += 10) {
+            batch.add(newPin(PIN_COUNT + line, largeFile.getPath(), line, random));
+        }
+        PinStorage.applyBatch(getProject(), batch);
+        PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+    }
+
+    private static PinEntry newPin(int i, String filePath, int line, Random random) {
+        List<String> tags = new ArrayList<>();
+        for (String tag : TAGS) {
+            if (random.nextInt(4) == 0) {
+                tags.add(tag);
+            }
+        }
+        PinState state = new PinState(filePath, line, "note " + i + " for line " + line,
+                1_700_000_000_000L + i, "perf", i % 7 == 0, tags);
+        state.id = "perf-" + i;
+        return PinEntry.unresolved(state);
+    }
+
+    /**
+     * 合成 XML 源文件；需要扫描的文件每 20 行有一个 @cp 注释
+     */
+    private static String xmlSource(int index, int lines, boolean withComments) {
+        StringBuilder text = new StringBuilder(lines * 48);
+        text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        text.append("<module name=\"file").append(index).append("\">\n");
+        for (int line = 2; line < lines - 1; line++) {
+            if (withComments && line % 20 == 0) {
+                text.append("    <!-- @cp check entry ").append(line).append(" #perf -->\n");
+            } else {
+                text.append("    <entry id=\"e").append(line).append("\" value=\"").append(line * 31 % 997).append("\"/>\n");
+            }
+        }
+        text.append("</module>\n");
+        return text.toString();
+    }
+
+    // ---------------------------------------------------------------- 各项计时
+
+    /**
+     * 图钉载入：关闭日志后从磁盘重新载入（相当于 IDE 启动后第一次打开工具窗口）
+     */
+    private void measureLoad() {
+        ProjectPinStore store = ProjectPinStore.getInstance(getProject());
+        measure("pinStorage.load", LOAD_BUDGET, 3, null, store::reloadFromDisk);
+        assertEquals(PIN_COUNT + (LARGE_FILE_LINES - 1) / 10, PinStorage.getPins(getProject()).size());
+    }
+
+    /**
+     * 工具窗口创建：列表模型、渲染器、标签筛选面板和统计面板
+     */
+    private ToolWindowHeadlessManagerImpl.MockToolWindow measureToolWindow() {
+        ToolWindowHeadlessManagerImpl.MockToolWindow[] created = new ToolWindowHeadlessManagerImpl.MockToolWindow[1];
+        measure("toolWindow.create", TOOL_WINDOW_BUDGET, 3, () -> {
+            if (created[0] != null) {
+                Disposer.dispose(created[0].getContentManager());
+            }
+            created[0] = new ToolWindowHeadlessManagerImpl.MockToolWindow(getProject());
+        }, () -> new PinsToolWindow().createToolWindowContent(getProject(), created[0]));
+        Disposer.register(getTestRootDisposable(), created[0].getContentManager());
+        return created[0];
+    }
+
+    /**
+     * 搜索筛选：在工具窗口的搜索框中逐字输入关键字，每次按键（EDT 上的耗时）为一次计时；
+     * 再计时从输入完整关键字到列表显示全部结果的时间
+     */
+    private void measureSearch(ToolWindowHeadlessManagerImpl.MockToolWindow toolWindow) {
+        JComponent root = toolWindow.getContentManager().getContent(0).getComponent();
+        SearchTextField searchField = UIUtil.findComponentOfType(root, SearchTextField.class);
+        assertNotNull(searchField);
+
+        String keyword = "file12";
+        int[] typed = new int[1];
+        measure("search.keystroke", SEARCH_KEYSTROKE_BUDGET, keyword.length(), null,
+                () -> searchField.setText(keyword.substring(0, ++typed[0])));
+
+        JList<?> list = findPinList(root);
+        cn.ilikexff.codepins.ui.PinListModel model = (cn.ilikexff.codepins.ui.PinListModel) list.getModel();
+        String[] keywords = {"file12", "perf", "file1"};
+        int[] round = new int[1];
+        measure("search.results", SEARCH_RESULTS_BUDGET, keywords.length, () -> searchField.setText(""), () -> {
+            searchField.setText(keywords[round[0]++]);
+            waitForModel(model);
+        });
+
+        searchField.setText("file12");
+        waitForModel(model);
+        assertTrue(model.getSize() > 0);
+        searchField.setText("");
+    }
+
+    private static void waitForModel(cn.ilikexff.codepins.ui.PinListModel model) {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (model.isUpdating()) {
+            assertTrue("搜索结果超时", System.currentTimeMillis() < deadline);
+            PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+            TimeoutUtil.sleep(1);
+        }
+    }
+
+    private static JList<?> findPinList(JComponent root) {
+        for (JList<?> list : UIUtil.findComponentsOfType(root, JList.class)) {
+            if (list.getModel() instanceof cn.ilikexff.codepins.ui.PinListModel) {
+                return list;
+            }
+        }
+        throw new AssertionError("未找到图钉列表");
+    }
+
+    /**
+     * 行标记：对大文件的每个叶子节点调用行标记提供者（图钉变化后位图重建的一整遍）
+     */
+    private void measureGutter() {
+        myFixture.configureFromExistingVirtualFile(largeFile);
+        PinStorage.resolvePinsInFile(getProject(), largeFile);
+        PsiFile psiFile = myFixture.getFile();
+        List<PsiElement> leaves = SyntaxTraverser.psiTraverser(psiFile).filter(e -> e.getFirstChild() == null).toList();
+        PinEntry touched = PinStorage.getPinsInFile(getProject(), largeFile.getPath()).get(0);
+        PinLineMarkerProvider provider = new PinLineMarkerProvider();
+
+        int[] markers = new int[1];
+        int[] round = new int[1];
+        measure("gutter.fullPass", GUTTER_BUDGET, 3,
+                () -> PinStorage.updateNote(touched, "touched " + round[0]++), // 使该文件的位图失效
+                () -> {
+                    markers[0] = 0;
+                    for (PsiElement leaf : leaves) {
+                        if (provider.getLineMarkerInfo(leaf) != null) {
+                            markers[0]++;
+                        }
+                    }
+                });
+        assertTrue(markers[0] > 0);
+    }
+
+    /**
+     * 堆占用：休眠图钉不引用文档；预览（只读取位置）后仍保持休眠，文档可以被回收；
+     * 打开文件挂接 marker 后文档被图钉引用，关闭文件转为休眠后再次释放。
+     * 每一步之后回收软引用并记录已用堆和仍被缓存的文档数
+     */
+    private void measureHeap() {
+        List<VirtualFile> sample = files.subList(FILE_COUNT - Math.min(HEAP_FILES, FILE_COUNT / 2), FILE_COUNT);
+        List<PinEntry> pins = new ArrayList<>();
+        long chars = 0;
+        for (VirtualFile file : sample) {
+            pins.addAll(PinStorage.getPinsInFile(getProject(), file.getPath()));
+            chars += file.getLength();
+        }
+        heap.addProperty("files", sample.size());
+        heap.addProperty("pins", pins.size());
+        heap.addProperty("fileChars", chars);
+
+        long dormant = recordHeap("dormant", sample);
+        assertEquals(0, heap.get("dormantDocuments").getAsInt());
+
+        for (PinEntry pin : pins) {
+            assertNotNull(PinStorage.locatePin(pin));
+            assertFalse("预览不应为休眠图钉挂接 marker", pin.isResolved());
+        }
+        long preview = recordHeap("preview", sample);
+        assertEquals(0, heap.get("previewDocuments").getAsInt());
+
+        for (VirtualFile file : sample) {
+            PinStorage.resolvePinsInFile(getProject(), file);
+        }
+        long active = recordHeap("active", sample);
+        assertEquals(sample.size(), heap.get("activeDocuments").getAsInt());
+
+        for (VirtualFile file : sample) {
+            PinStorage.demotePinsInFile(getProject(), file);
+        }
+        long demoted = recordHeap("demoted", sample);
+        assertEquals(0, heap.get("demotedDocuments").getAsInt());
+
+        System.out.println("[CodePins] 堆占用（" + sample.size() + " 个文件，" + pins.size() + " 个图钉）: 休眠 "
+                + dormant / 1024 + " KB，预览后 " + preview / 1024 + " KB，打开后 " + active / 1024
+                + " KB，关闭后 " + demoted / 1024 + " KB");
+        assertTrue("活跃图钉引用的文档应占用更多堆: " + heap, active - dormant > (preview - dormant) * 2);
+        assertTrue("转为休眠后应释放文档: " + heap, active - demoted > (active - dormant) / 2);
+    }
+
+    /**
+     * 回收软引用后记录已用堆（字节）和 files 中仍被缓存的文档数
+     */
+    private long recordHeap(String phase, List<VirtualFile> files) {
+        GCUtil.tryGcSoftlyReachableObjects();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int documents = 0;
+        for (VirtualFile file : files) {
+            if (FileDocumentManager.getInstance().getCachedDocument(file) != null) {
+                documents++;
+            }
+        }
+        heap.addProperty(phase + "HeapBytes", used);
+        heap.addProperty(phase + "Documents", documents);
+        return used;
+    }
+
+    /**
+     * 注释扫描：扫描含 @cp 注释的文件并等待图钉创建完成（不包含 PSI 解析）
+     */
+    private void measureCommentScan() {
+        List<PsiFile> psiFiles = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < SCANNED_FILES; i++) {
+            PsiFile psiFile = PsiManager.getInstance(getProject()).findFile(files.get(i));
+            assertNotNull(psiFile);
+            PsiTreeUtil.findChildrenOfType(psiFile, PsiComment.class); // 预先解析
+            psiFiles.add(psiFile);
+            documents.add(FileDocumentManager.getInstance().getDocument(files.get(i)));
+        }
+
+        int before = PinStorage.getPins(getProject()).size();
+        PinCommentAction action = new PinCommentAction();
+        measure("commentScan.files", COMMENT_SCAN_BUDGET, 1, null, () -> {
+            for (int i = 0; i < psiFiles.size(); i++) {
+                action.scanFile(psiFiles.get(i), documents.get(i), getProject());
+            }
+            PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue(); // 图钉在 EDT 上创建
+        });
+        assertTrue(PinStorage.getPins(getProject()).size() > before);
+    }
+
+    /**
+     * 导出全部图钉为 JSON，再以替换模式导入
+     */
+    private void measureImportExport() throws IOException {
+        File exportFile = FileUtil.createTempFile("codepins-perf", ".json");
+        List<PinEntry> pins = PinStorage.getPins(getProject());
+        measure("importExport.export", EXPORT_BUDGET, 3, null,
+                () -> assertTrue(ImportExportUtil.exportPins(getProject(), exportFile, pins)));
+
+        int[] imported = new int[1];
+        measure("importExport.importReplace", IMPORT_BUDGET, 1, null,
+                () -> imported[0] = ImportExportUtil.importPins(getProject(), exportFile, ImportExportUtil.ImportMode.REPLACE));
+        assertEquals(pins.size(), imported[0]);
+    }
+
+    // ---------------------------------------------------------------- 计时与报告
+
+    /**
+     * 执行若干次并记录每次耗时；每次之前执行 prepare（不计时），之后处理 EDT 上排队的事件（不计时）
+     */
+    private void measure(String name, long budgetMs, int iterations, Runnable prepare, Runnable action) {
+        Measurement measurement = new Measurement(name, Math.round(budgetMs * BUDGET_SCALE));
+        for (int i = 0; i < iterations; i++) {
+            if (prepare != null) {
+                prepare.run();
+            }
+            long start = System.nanoTime();
+            action.run();
+            measurement.samplesMs.add((System.nanoTime() - start) / 1_000_000.0);
+            PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+        }
+        measurements.add(measurement);
+        System.out.println("[CodePins] 性能 " + name + ": 中位数 " + measurement.median() + " ms（预算 " + measurement.budgetMs + " ms）");
+    }
+
+    /**
+     * 写出本次运行的报告，并把同样的内容压缩为一行追加到 history.jsonl
+     */
+    private void writeReport() throws IOException {
+        JsonObject report = new JsonObject();
+        report.addProperty("version", System.getProperty("codepins.perf.version", "dev"));
+        report.addProperty("timestamp", System.currentTimeMillis());
+        report.addProperty("javaVersion", System.getProperty("java.version"));
+        report.addProperty("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        report.addProperty("processors", Runtime.getRuntime().availableProcessors());
+        report.addProperty("maxMemoryMb", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        report.addProperty("files", FILE_COUNT);
+        report.addProperty("pins", PIN_COUNT);
+        report.addProperty("budgetScale", BUDGET_SCALE);
+
+        JsonArray results = new JsonArray();
+        for (Measurement m : measurements) {
+            JsonObject result = new JsonObject();
+            result.addProperty("name", m.name);
+            result.addProperty("iterations", m.samplesMs.size());
+            result.addProperty("minMs", m.min());
+            result.addProperty("medianMs", m.median());
+            result.addProperty("maxMs", m.max());
+            result.addProperty("budgetMs", m.budgetMs);
+            result.addProperty("withinBudget", m.withinBudget());
+            results.add(result);
+        }
+        report.add("measurements", results);
+        report.add("heap", heap);
+
+        Path reportFile = Paths.get(REPORT_PATH).toAbsolutePath();
+        Files.createDirectories(reportFile.getParent());
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Files.write(reportFile, gson.toJson(report).getBytes(StandardCharsets.UTF_8));
+        Files.write(reportFile.resolveSibling("history.jsonl"),
+                (new Gson().toJson(report) + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("[CodePins] 性能报告已写入 " + reportFile);
+    }
+
+    /**
+     * 一项计时的所有样本
+     */
+    private static final class Measurement {
+        final String name;
+        final long budgetMs;
+        final List<Double> samplesMs = new ArrayList<>();
+
+        Measurement(String name, long budgetMs) {
+            this.name = name;
+            this.budgetMs = budgetMs;
+        }
+
+        double min() {
+            return samplesMs.stream().mapToDouble(Double::doubleValue).min().orElse(0);
+        }
+
+        double max() {
+            return samplesMs.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        }
+
+        double median() {
+            if (samplesMs.isEmpty()) {
+                return 0;
+            }
+            double[] sorted = samplesMs.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+            double median = sorted.length % 2 == 1
+                    ? sorted[sorted.length / 2]
+                    : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+            return Math.round(median * 10) / 10.0;
+        }
+
+        boolean withinBudget() {
+            return median() <= budgetMs;
+        }
+    }
+}
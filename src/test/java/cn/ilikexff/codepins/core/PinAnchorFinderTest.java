@@ -0,0 +1,175 @@
+package cn.ilikexff.codepins.core;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PinFingerprint 与 PinAnchorFinder 的单元测试
+ * 直接在 DocumentImpl 上计算指纹和查找，不需要启动平台；文档由若干行拼成，行号从 0 开始。
+ */
+public class PinAnchorFinderTest {
+
+    private static Document document(String... lines) {
+        return new DocumentImpl(String.join("\n", lines) + "\n");
+    }
+
+    /**
+     * 生成 count 行互不相同的填充代码
+     */
+    private static String[] filler(String prefix, int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = "    void " + prefix + i + "() {}";
+        }
+        return lines;
+    }
+
+    private static String[] concat(String[]... parts) {
+        int length = 0;
+        for (String[] part : parts) {
+            length += part.length;
+        }
+        String[] result = new String[length];
+        int i = 0;
+        for (String[] part : parts) {
+            System.arraycopy(part, 0, result, i, part.length);
+            i += part.length;
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------- PinFingerprint
+
+    @Test
+    public void fingerprintIgnoresWhitespace() {
+        Document plain = document("a();", "int total = compute(a, b);", "b();");
+        Document reformatted = document("a();", "\t  int total=compute(a,b);   ", "b();");
+
+        PinFingerprint expected = PinFingerprint.of(plain, 1, 1);
+        PinFingerprint actual = PinFingerprint.of(reformatted, 1, 1);
+
+        assertNotNull(expected);
+        assertEquals(expected.hash, actual.hash);
+        assertEquals(expected.length, actual.length);
+        assertEquals(expected.before, actual.before);
+        assertEquals(expected.after, actual.after);
+        assertTrue(expected.matches(reformatted, 1));
+        assertFalse(expected.matches(reformatted, 0));
+    }
+
+    @Test
+    public void fingerprintOfBlankOrOutOfRangeLinesIsNull() {
+        Document doc = document("a();", "   ", "", "b();");
+
+        assertNull(PinFingerprint.of(doc, 1, 2));
+        assertNull(PinFingerprint.of(doc, -1, 0));
+        assertNull(PinFingerprint.of(doc, 2, 1));
+        assertNull(PinFingerprint.of(doc, 3, 10));
+        assertNull(PinFingerprint.of(null, 0, 0));
+    }
+
+    @Test
+    public void fingerprintRecordsContextAndLineCount() {
+        Document doc = document("", "first();", "second();", "third();");
+
+        PinFingerprint block = PinFingerprint.of(doc, 1, 2);
+
+        assertEquals(2, block.lines);
+        assertEquals(0, block.before); // 上一行是空行
+        assertEquals(PinFingerprint.of(doc, 3, 3).hash, block.after);
+        assertTrue(block.marks.length > 0);
+    }
+
+    // ---------------------------------------------------------------- PinAnchorFinder
+
+    @Test
+    public void exactMatchFollowsShiftedCode() {
+        String[] pinned = {"int total = compute(a, b);"};
+        Document original = document(concat(filler("head", 10), pinned, filler("tail", 10)));
+        PinFingerprint fingerprint = PinFingerprint.of(original, 10, 10);
+
+        // 文件开头插入 25 行，图钉代码整体下移
+        Document shifted = document(concat(filler("inserted", 25), filler("head", 10), pinned, filler("tail", 10)));
+
+        assertEquals(10, PinAnchorFinder.find(original, fingerprint, 10));
+        assertEquals(35, PinAnchorFinder.find(shifted, fingerprint, 10));
+    }
+
+    @Test
+    public void exactMatchPrefersMatchingContextOverDistance() {
+        // 同一行代码出现两次，只有第二处的上下文与记录一致
+        Document doc = document(concat(
+                filler("a", 5), new String[]{"return value;"}, filler("b", 30),
+                new String[]{"before();", "return value;", "after();"}, filler("c", 5)));
+        PinFingerprint fingerprint = PinFingerprint.of(doc, 37, 37);
+
+        assertEquals(37, PinAnchorFinder.find(doc, fingerprint, 5));
+    }
+
+    @Test
+    public void contextOnlyMatchWhenCodeWasRewritten() {
+        String[] context = {"before();", "return value;", "after();"};
+        Document original = document(concat(filler("a", 20), context, filler("b", 20)));
+        PinFingerprint fingerprint = PinFingerprint.of(original, 21, 21);
+
+        // 图钉代码被改写，原来的代码还出现在离提示行更近的另一处，但上下文只有原位置一致
+        Document rewritten = document(concat(
+                filler("a", 12), new String[]{"return value;"}, filler("x", 7),
+                new String[]{"before();", "return cache.computeIfAbsent(key, this::load);", "after();"},
+                filler("b", 20)));
+
+        assertEquals(21, PinAnchorFinder.find(rewritten, fingerprint, 14));
+    }
+
+    @Test
+    public void fuzzyMatchWhenBlockWasPartlyEdited() {
+        String[] block = new String[8];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = "long unique" + i + " = seed * " + (i * 31) + ";";
+        }
+        Document original = document(concat(filler("a", 30), block, filler("b", 30)));
+        PinFingerprint fingerprint = PinFingerprint.of(original, 30, 37);
+
+        // 代码块下移 10 行、其中一行被改写，下一行的上下文也变了：既没有完全一致的代码，也不能只靠上下文
+        String[] edited = block.clone();
+        edited[5] = "int changed = compute(5);";
+        Document doc = document(concat(filler("inserted", 10), filler("a", 30), edited,
+                new String[]{"changedContext();"}, filler("b", 30)));
+
+        assertFalse(fingerprint.matches(doc, 40));
+        assertEquals(40, PinAnchorFinder.find(doc, fingerprint, 30));
+    }
+
+    @Test
+    public void equalCandidatesPickTheOneNearestTheHint() {
+        // 两处完全相同的代码和上下文，离提示行都超过最大扣分距离，得分相同时取较近的一处
+        String[] copy = {"before();", "return value;", "after();"};
+        Document doc = document(concat(filler("a", 100), copy, filler("b", 2800), copy, filler("c", 100)));
+        PinFingerprint fingerprint = PinFingerprint.of(doc, 101, 101);
+        int second = 100 + 3 + 2800 + 1;
+
+        assertEquals(101, PinAnchorFinder.find(doc, fingerprint, 1400));
+        assertEquals(second, PinAnchorFinder.find(doc, fingerprint, 1600));
+        // 距离在扣分范围内时同样取较近的一处
+        assertEquals(second, PinAnchorFinder.find(doc, fingerprint, second - 10));
+    }
+
+    @Test
+    public void missingCodeIsNotFound() {
+        Document original = document(concat(filler("a", 10), new String[]{"int total = compute(a, b);"}, filler("b", 10)));
+        PinFingerprint fingerprint = PinFingerprint.of(original, 10, 10);
+
+        Document other = document(filler("other", 30));
+
+        assertEquals(-1, PinAnchorFinder.find(other, fingerprint, 10));
+        assertEquals(-1, PinAnchorFinder.find(null, fingerprint, 10));
+        assertEquals(-1, PinAnchorFinder.find(other, null, 10));
+    }
+}
@@ -0,0 +1,235 @@
+package cn.ilikexff.codepins.core;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PinDelta.Builder 的单元测试：同一个图钉在一帧内的各种事件序列合并后的结果
+ */
+public class PinDeltaBuilderTest {
+
+    private static PinEntry pin(String id) {
+        return new PinEntry(id, "/project/src/" + id + ".java", null, "note", 0, "tester", false, List.of());
+    }
+
+    private static PinDelta merge(PinChangeEvent... events) {
+        PinDelta.Builder builder = new PinDelta.Builder();
+        for (PinChangeEvent event : events) {
+            builder.offer(event);
+        }
+        return builder.build();
+    }
+
+    private static void assertDelta(PinDelta delta, List<PinEntry> added, List<PinEntry> removed,
+                                    List<PinEntry> updated, List<PinEntry> moved) {
+        assertFalse(delta.isReloaded());
+        assertEquals(added, delta.getAdded());
+        assertEquals(removed, delta.getRemoved());
+        assertEquals(updated, delta.getUpdated());
+        assertEquals(moved, delta.getMoved());
+    }
+
+    @Test
+    public void emptyBuilder() {
+        PinDelta.Builder builder = new PinDelta.Builder();
+        assertTrue(builder.isEmpty());
+        assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void singleEventsPassThrough() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.added(a, 0)), List.of(a), List.of(), List.of(), List.of());
+        assertDelta(merge(PinChangeEvent.removed(a, 0)), List.of(), List.of(a), List.of(), List.of());
+        assertDelta(merge(PinChangeEvent.updated(a, 0)), List.of(), List.of(), List.of(a), List.of());
+        assertDelta(merge(PinChangeEvent.moved(a, 0, 1)), List.of(), List.of(), List.of(), List.of(a));
+    }
+
+    @Test
+    public void addThenRemoveCancelsOut() {
+        PinEntry a = pin("a");
+        PinDelta.Builder builder = new PinDelta.Builder();
+        builder.offer(PinChangeEvent.added(a, 0));
+        builder.offer(PinChangeEvent.removed(a, 0));
+
+        assertTrue(builder.isEmpty());
+        assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void addThenUpdateIsAnAddOfTheLatestInstance() {
+        PinEntry a = pin("a");
+        PinEntry replacement = pin("a");
+        PinDelta delta = merge(PinChangeEvent.added(a, 0), PinChangeEvent.updated(replacement, 0));
+
+        assertDelta(delta, List.of(a), List.of(), List.of(), List.of());
+        assertSame(replacement, delta.getAdded().get(0));
+    }
+
+    @Test
+    public void addThenMoveIsOnlyAnAdd() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.added(a, 0), PinChangeEvent.moved(a, 0, 3)),
+                List.of(a), List.of(), List.of(), List.of());
+    }
+
+    @Test
+    public void removeThenAddIsAnUpdateAndMove() {
+        PinEntry a = pin("a");
+        PinEntry restored = pin("a");
+        PinDelta delta = merge(PinChangeEvent.removed(a, 2), PinChangeEvent.added(restored, 0));
+
+        assertDelta(delta, List.of(), List.of(), List.of(a), List.of(a));
+        assertSame(restored, delta.getUpdated().get(0));
+    }
+
+    @Test
+    public void removeThenUpdateStaysRemoved() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.removed(a, 0), PinChangeEvent.updated(pin("a"), 0)),
+                List.of(), List.of(a), List.of(), List.of());
+    }
+
+    @Test
+    public void removeAddRemoveIsARemove() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.removed(a, 0), PinChangeEvent.added(a, 1), PinChangeEvent.removed(a, 1)),
+                List.of(), List.of(a), List.of(), List.of());
+    }
+
+    @Test
+    public void updateThenRemoveIsARemove() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.updated(a, 0), PinChangeEvent.removed(a, 0)),
+                List.of(), List.of(a), List.of(), List.of());
+    }
+
+    @Test
+    public void updateThenMoveIsAnUpdateAndMove() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.updated(a, 0), PinChangeEvent.moved(a, 0, 2)),
+                List.of(), List.of(), List.of(a), List.of(a));
+    }
+
+    @Test
+    public void moveThenUpdateIsAnUpdateAndMoveOfTheLatestInstance() {
+        PinEntry a = pin("a");
+        PinEntry replacement = pin("a");
+        PinDelta delta = merge(PinChangeEvent.moved(a, 0, 2), PinChangeEvent.updated(replacement, 2));
+
+        assertDelta(delta, List.of(), List.of(), List.of(a), List.of(a));
+        assertSame(replacement, delta.getUpdated().get(0));
+        assertSame(replacement, delta.getMoved().get(0));
+    }
+
+    @Test
+    public void repeatedMovesAreReportedOnce() {
+        PinEntry a = pin("a");
+        PinDelta delta = merge(PinChangeEvent.moved(a, 0, 2), PinChangeEvent.moved(a, 2, 5));
+
+        assertDelta(delta, List.of(), List.of(), List.of(), List.of(a));
+        assertTrue(delta.isOrderOnly());
+        assertFalse(delta.affectsTags());
+        assertFalse(delta.isEmpty());
+    }
+
+    @Test
+    public void moveThenRemoveIsOnlyARemove() {
+        PinEntry a = pin("a");
+        assertDelta(merge(PinChangeEvent.moved(a, 0, 2), PinChangeEvent.removed(a, 2)),
+                List.of(), List.of(a), List.of(), List.of());
+    }
+
+    @Test
+    public void reloadDiscardsEarlierAndLaterEvents() {
+        PinEntry a = pin("a");
+        PinEntry b = pin("b");
+        PinDelta.Builder builder = new PinDelta.Builder();
+        builder.offer(PinChangeEvent.added(a, 0));
+        builder.offer(PinChangeEvent.reloaded());
+        builder.offer(PinChangeEvent.removed(b, 0));
+        builder.offer(PinChangeEvent.moved(a, 0, 1));
+
+        assertFalse(builder.isEmpty());
+        PinDelta delta = builder.build();
+        assertTrue(delta.isReloaded());
+        assertTrue(delta.getAdded().isEmpty());
+        assertTrue(delta.getRemoved().isEmpty());
+        assertTrue(delta.getUpdated().isEmpty());
+        assertTrue(delta.getMoved().isEmpty());
+        assertTrue(delta.affectsTags());
+        assertTrue(delta.affectsPositions());
+        assertFalse(delta.isEmpty());
+    }
+
+    @Test
+    public void noteOnlyUpdateAffectsNeitherTagsNorPositions() {
+        PinEntry a = pin("a");
+        PinDelta delta = merge(PinChangeEvent.updated(a, 0, PinChangeEvent.NOTE));
+
+        assertDelta(delta, List.of(), List.of(), List.of(a), List.of());
+        assertFalse(delta.affectsTags());
+        assertFalse(delta.affectsPositions());
+        assertTrue(delta.getPositionChangedFiles().isEmpty());
+    }
+
+    @Test
+    public void updateChangesAreCombined() {
+        PinEntry a = pin("a");
+        PinEntry b = pin("b");
+        PinDelta delta = merge(PinChangeEvent.updated(a, 0, PinChangeEvent.TAGS),
+                PinChangeEvent.updated(b, 1, PinChangeEvent.NOTE),
+                PinChangeEvent.updated(b, 1, PinChangeEvent.POSITION));
+
+        assertTrue(delta.affectsTags());
+        assertTrue(delta.affectsPositions());
+        assertEquals(List.of(b.filePath), List.copyOf(delta.getPositionChangedFiles()));
+    }
+
+    @Test
+    public void addAndRemoveAffectTagsAndPositions() {
+        PinEntry a = pin("a");
+        PinEntry b = pin("b");
+        PinDelta delta = merge(PinChangeEvent.added(a, 0), PinChangeEvent.removed(b, 1));
+
+        assertTrue(delta.affectsTags());
+        assertEquals(List.of(a.filePath, b.filePath), List.copyOf(delta.getPositionChangedFiles()));
+    }
+
+    @Test
+    public void removeThenAddAffectsEverything() {
+        PinEntry a = pin("a");
+        PinDelta delta = merge(PinChangeEvent.removed(a, 2), PinChangeEvent.added(pin("a"), 0));
+
+        assertTrue(delta.affectsTags());
+        assertTrue(delta.affectsPositions());
+    }
+
+    @Test
+    public void movesAffectNeitherTagsNorPositions() {
+        PinEntry a = pin("a");
+        PinDelta delta = merge(PinChangeEvent.moved(a, 0, 2), PinChangeEvent.updated(a, 2, PinChangeEvent.NOTE));
+
+        assertDelta(delta, List.of(), List.of(), List.of(a), List.of(a));
+        assertFalse(delta.affectsTags());
+        assertFalse(delta.affectsPositions());
+    }
+
+    @Test
+    public void differentPinsKeepEventOrderAndAffectedFiles() {
+        PinEntry a = pin("a");
+        PinEntry b = pin("b");
+        PinEntry c = pin("c");
+        PinDelta delta = merge(PinChangeEvent.added(b, 0), PinChangeEvent.added(a, 1),
+                PinChangeEvent.updated(c, 2), PinChangeEvent.moved(c, 2, 0));
+
+        assertDelta(delta, List.of(b, a), List.of(), List.of(c), List.of(c));
+        assertEquals(List.of(b.filePath, a.filePath, c.filePath), List.copyOf(delta.getAffectedFiles()));
+    }
+}
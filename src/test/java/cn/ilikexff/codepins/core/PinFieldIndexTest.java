@@ -0,0 +1,147 @@
+package cn.ilikexff.codepins.core;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PinFieldIndex 的单元测试：首次查询时按列表构建，之后按事件增量维护，移动顺序只影响序号到位置的映射
+ */
+public class PinFieldIndexTest {
+
+    private final PinList pins = new PinList();
+    private final PinFieldIndex index = new PinFieldIndex(pins);
+
+    private static PinEntry pin(String id, String file, long timestamp, String author, boolean block) {
+        return new PinEntry(id, "/project/src/" + file, null, "note", timestamp, author, block, List.of());
+    }
+
+    private static BitSet positions(int... values) {
+        BitSet result = new BitSet();
+        for (int value : values) {
+            result.set(value);
+        }
+        return result;
+    }
+
+    private void add(PinEntry pin) {
+        pins.add(pin);
+        index.pinsChanged(PinChangeEvent.added(pin, pins.size() - 1));
+    }
+
+    private PinSnapshot snapshot() {
+        PinSnapshot snapshot = pins.snapshot();
+        index.update(snapshot);
+        return snapshot;
+    }
+
+    @Test
+    public void firstQueryBuildsFromTheList() {
+        pins.add(pin("a", "A.java", 10, "Alice", false));
+        pins.add(pin("b", "B.kt", 20, "bob", true));
+        pins.add(pin("c", "C.JAVA", 30, "alice", false));
+        snapshot();
+
+        assertEquals(positions(0, 2), index.author("alice"));
+        assertEquals(positions(1), index.author("bob"));
+        assertEquals(positions(0, 2), index.extension("java"));
+        assertEquals(positions(1), index.block(true));
+        assertEquals(positions(0, 2), index.block(false));
+        assertEquals(positions(1, 2), index.createdBetween(20, 31));
+        assertTrue(index.author("carol").isEmpty());
+    }
+
+    @Test
+    public void eventsUpdateTheIndexIncrementally() {
+        snapshot();
+        PinEntry a = pin("a", "A.java", 10, "alice", false);
+        PinEntry b = pin("b", "B.java", 20, "bob", false);
+        add(a);
+        add(b);
+        snapshot();
+        assertEquals(positions(0, 1), index.extension("java"));
+
+        pins.remove(0);
+        index.pinsChanged(PinChangeEvent.removed(a, 0));
+        add(pin("c", "C.java", 15, "alice", true));
+        snapshot();
+
+        assertEquals(positions(1), index.author("alice"));
+        assertEquals(positions(0), index.author("bob"));
+        assertEquals(positions(1), index.block(true));
+        assertEquals(positions(1), index.createdBetween(0, 20));
+    }
+
+    @Test
+    public void movesOnlyRemapPositions() {
+        snapshot();
+        add(pin("a", "A.java", 10, "alice", false));
+        add(pin("b", "B.kt", 20, "bob", false));
+        add(pin("c", "C.kt", 30, "bob", false));
+        snapshot();
+
+        PinEntry moved = pins.move(2, 0);
+        index.pinsChanged(PinChangeEvent.moved(moved, 2, 0));
+        snapshot();
+
+        assertEquals(positions(0, 2), index.author("bob"));
+        assertEquals(positions(1), index.extension("java"));
+        assertEquals(positions(0), index.createdBetween(25, 35));
+    }
+
+    @Test
+    public void replacedPinIsReindexed() {
+        snapshot();
+        add(pin("a", "A.java", 10, "alice", false));
+        snapshot();
+
+        PinEntry replacement = pin("a", "A.py", 40, "bob", true);
+        pins.set(0, replacement);
+        index.pinsChanged(PinChangeEvent.updated(replacement, 0));
+        snapshot();
+
+        assertTrue(index.author("alice").isEmpty());
+        assertEquals(positions(0), index.author("bob"));
+        assertTrue(index.extension("java").isEmpty());
+        assertEquals(positions(0), index.extension("py"));
+        assertEquals(positions(0), index.block(true));
+        assertTrue(index.createdBetween(0, 20).isEmpty());
+        assertEquals(positions(0), index.createdBetween(40, 41));
+    }
+
+    @Test
+    public void reloadReconcilesWithTheList() {
+        snapshot();
+        add(pin("a", "A.java", 10, "alice", false));
+        add(pin("b", "B.java", 20, "bob", false));
+        snapshot();
+
+        pins.replaceAll(List.of(pin("c", "C.java", 30, "carol", false), pin("a", "A.java", 10, "alice", false)));
+        index.pinsChanged(PinChangeEvent.reloaded());
+        snapshot();
+
+        assertTrue(index.author("bob").isEmpty());
+        assertEquals(positions(0), index.author("carol"));
+        assertEquals(positions(1), index.author("alice"));
+        assertEquals(positions(0, 1), index.extension("java"));
+        assertEquals(positions(1), index.createdBetween(0, 20));
+    }
+
+    @Test
+    public void pinsWithTheSameTimestampAreAllFound() {
+        snapshot();
+        for (int i = 0; i < 5; i++) {
+            add(pin("p" + i, "P.java", 100, "alice", false));
+        }
+        PinEntry removed = pins.remove(2);
+        index.pinsChanged(PinChangeEvent.removed(removed, 2));
+        snapshot();
+
+        assertEquals(positions(0, 1, 2, 3), index.createdBetween(100, 101));
+        assertTrue(index.createdBetween(101, 200).isEmpty());
+    }
+}
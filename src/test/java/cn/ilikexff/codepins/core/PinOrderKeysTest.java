@@ -0,0 +1,171 @@
+package cn.ilikexff.codepins.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PinOrderKeys 的单元测试：中点、追加、整体重新分配和非法输入
+ */
+public class PinOrderKeysTest {
+
+    /**
+     * 断言 key 严格位于 before 和 after 之间且格式有效
+     */
+    private static void assertBetween(String before, String key, String after) {
+        List<String> keys = new ArrayList<>();
+        if (before != null) {
+            keys.add(before);
+        }
+        keys.add(key);
+        if (after != null) {
+            keys.add(after);
+        }
+        assertTrue(before + " < " + key + " < " + after, PinOrderKeys.isAscending(keys));
+    }
+
+    @Test
+    public void betweenDistantDigitsTakesTheMiddleDigit() {
+        assertEquals("S", PinOrderKeys.between("A", "k"));
+        assertEquals("V", PinOrderKeys.between(null, null));
+        assertBetween("1", PinOrderKeys.between("1", "9"), "9");
+    }
+
+    @Test
+    public void betweenAdjacentDigitsAddsADigit() {
+        String key = PinOrderKeys.between("A", "B");
+        assertEquals("AV", key);
+        assertBetween("A", key, "B");
+
+        assertBetween("y", PinOrderKeys.between("y", "z"), "z");
+        assertBetween(null, PinOrderKeys.between(null, "1"), "1");
+    }
+
+    @Test
+    public void betweenKeysThatDifferOnlyInLength() {
+        // 一个键是另一个键的前缀
+        String key = PinOrderKeys.between("A", "AB");
+        assertBetween("A", key, "AB");
+        assertTrue(key.startsWith("A"));
+
+        assertBetween("A", PinOrderKeys.between("A", "A1"), "A1");
+        assertBetween("AB", PinOrderKeys.between("AB", "AB1"), "AB1");
+        assertBetween("Az", PinOrderKeys.between("Az", "Azz"), "Azz");
+    }
+
+    @Test
+    public void nextIncrementsTheFirstDigitBelowZ() {
+        assertEquals("V", PinOrderKeys.between(null, null));
+        assertEquals("W", PinOrderKeys.between("V", null));
+        assertEquals("B", PinOrderKeys.between("Aa", null));
+        assertEquals("zB", PinOrderKeys.between("zA5x", null));
+        assertEquals("z1", PinOrderKeys.between("z", null));
+        assertEquals("zz1", PinOrderKeys.between("zz", null));
+    }
+
+    @Test
+    public void repeatedAppendsStayAscendingAndShort() {
+        List<String> keys = new ArrayList<>();
+        String last = null;
+        for (int i = 0; i < 1000; i++) {
+            last = PinOrderKeys.between(last, null);
+            keys.add(last);
+        }
+        assertTrue(PinOrderKeys.isAscending(keys));
+        // 每多一位可以再追加 61 次
+        assertTrue(last, last.length() <= 1000 / 61 + 2);
+    }
+
+    @Test
+    public void repeatedInsertsAtTheFrontStayAscending() {
+        List<String> keys = new ArrayList<>();
+        keys.add(PinOrderKeys.between(null, null));
+        for (int i = 0; i < 200; i++) {
+            keys.add(0, PinOrderKeys.between(null, keys.get(0)));
+        }
+        assertTrue(PinOrderKeys.isAscending(keys));
+    }
+
+    @Test
+    public void repeatedInsertsAtTheSamePositionStayAscending() {
+        List<String> keys = new ArrayList<>(Arrays.asList("A", "B"));
+        // 每次都插在 "A" 之后，新键不断逼近 "A"
+        for (int i = 0; i < 100; i++) {
+            keys.add(1, PinOrderKeys.between(keys.get(0), keys.get(1)));
+        }
+        assertTrue(PinOrderKeys.isAscending(keys));
+        // 每次都插在 "B" 之前的最后一个位置
+        for (int i = 0; i < 100; i++) {
+            int at = keys.size() - 1;
+            keys.add(at, PinOrderKeys.between(keys.get(at - 1), keys.get(at)));
+        }
+        assertTrue(PinOrderKeys.isAscending(keys));
+    }
+
+    @Test
+    public void frontInsertsEventuallyExceedMaxLengthAndSpreadRestoresShortKeys() {
+        List<String> keys = new ArrayList<>(PinOrderKeys.spread(10));
+        int inserts = 0;
+        while (keys.get(0).length() <= PinOrderKeys.MAX_LENGTH) {
+            keys.add(0, PinOrderKeys.between(null, keys.get(0)));
+            inserts++;
+            assertTrue("键长度应随插入次数缓慢增长", inserts < 10_000);
+        }
+        assertTrue(PinOrderKeys.isAscending(keys));
+
+        // 与存储中的处理相同：超过 MAX_LENGTH 后为全部图钉重新分配
+        List<String> spread = PinOrderKeys.spread(keys.size());
+        assertEquals(keys.size(), spread.size());
+        assertTrue(PinOrderKeys.isAscending(spread));
+        for (String key : spread) {
+            assertTrue(key, key.length() <= 2);
+        }
+        assertBetween(null, PinOrderKeys.between(null, spread.get(0)), spread.get(0));
+        assertBetween(spread.get(spread.size() - 1), PinOrderKeys.between(spread.get(spread.size() - 1), null), null);
+    }
+
+    @Test
+    public void spreadProducesAscendingKeysOfLogarithmicLength() {
+        assertTrue(PinOrderKeys.spread(0).isEmpty());
+        assertEquals(1, PinOrderKeys.spread(1).size());
+        for (int count : new int[]{1, 2, 61, 62, 3843, 3844, 100_000}) {
+            List<String> keys = PinOrderKeys.spread(count);
+            assertEquals(count, keys.size());
+            assertTrue("spread(" + count + ")", PinOrderKeys.isAscending(keys));
+            int width = count < 62 ? 1 : count < 62 * 62 ? 2 : 3;
+            for (String key : keys) {
+                assertTrue(key, key.length() <= width);
+            }
+        }
+    }
+
+    @Test
+    public void isAscendingRejectsInvalidOrUnorderedKeys() {
+        assertTrue(PinOrderKeys.isAscending(Arrays.asList("1", "A", "a")));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("A", "A")));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("B", "A")));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("A", null)));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("A", "B0")));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("A", "B-")));
+        assertFalse(PinOrderKeys.isAscending(Arrays.asList("A", "")));
+    }
+
+    @Test
+    public void betweenRejectsInvalidInput() {
+        // 顺序错误或相等
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between("B", "A"));
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between("A", "A"));
+        // 以 '0' 结尾、含非法字符或为空串
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between("A0", "B"));
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between("A", "B0"));
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between("A-", null));
+        assertThrows(IllegalArgumentException.class, () -> PinOrderKeys.between(null, ""));
+    }
+}
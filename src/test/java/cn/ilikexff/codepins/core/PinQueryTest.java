@@ -0,0 +1,199 @@
+package cn.ilikexff.codepins.core;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PinQuery 的单元测试：查询切分与解析（引号、没有值的键、age 上下界、冲突的 block）以及文件模式编译
+ */
+public class PinQueryTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    private static PinQuery parse(String query) {
+        return PinQuery.parse(query, NOW);
+    }
+
+    // ---------------------------------------------------------------- 切分与解析
+
+    @Test
+    public void plainWordsGoToTheTextIndex() {
+        PinQuery query = parse("  cache   miss ");
+
+        assertTrue(query.isPlainText());
+        assertEquals("cache miss", query.text);
+    }
+
+    @Test
+    public void fieldsAreLowerCasedAndKeysAreCaseInsensitive() {
+        PinQuery query = parse("TAG:Perf author:Alice File:*.Java word");
+
+        assertEquals(List.of("perf"), query.tags);
+        assertEquals(List.of("alice"), query.authors);
+        assertEquals(List.of("*.Java"), query.files); // 文件模式保持原样，匹配时忽略大小写
+        assertEquals("word", query.text);
+        assertFalse(query.isPlainText());
+    }
+
+    @Test
+    public void quotedValuesKeepSpaces() {
+        PinQuery query = parse("author:\"Zhang San\" tag:\"needs review\"");
+
+        assertEquals(List.of("zhang san"), query.authors);
+        assertEquals(List.of("needs review"), query.tags);
+        assertEquals("", query.text);
+    }
+
+    @Test
+    public void quotedPhrasesAreAlsoSearchedAsText() {
+        PinQuery query = parse("fix \"Cache Miss\" later");
+
+        assertEquals(List.of("cache miss"), query.phrases);
+        assertEquals("fix Cache Miss later", query.text);
+    }
+
+    @Test
+    public void unterminatedAndEmptyQuotes() {
+        assertEquals(List.of("open phrase"), parse("\"open phrase").phrases);
+
+        PinQuery empty = parse("a \"  \" b");
+        assertTrue(empty.phrases.isEmpty());
+        assertEquals("a b", empty.text);
+    }
+
+    @Test
+    public void keyWithoutValueIsPlainText() {
+        PinQuery query = parse("tag: author:");
+
+        assertTrue(query.tags.isEmpty());
+        assertTrue(query.authors.isEmpty());
+        assertTrue(query.isPlainText());
+        assertEquals("tag: author:", query.text);
+    }
+
+    @Test
+    public void unknownKeysAndLeadingColonsArePlainText() {
+        PinQuery query = parse("foo:bar :tag http://host");
+
+        assertTrue(query.isPlainText());
+        assertEquals("foo:bar :tag http://host", query.text);
+    }
+
+    @Test
+    public void ageBounds() {
+        assertEquals(NOW - 7 * DAY, parse("age:<7d").createdAfter);
+        assertEquals(NOW - 7 * DAY, parse("age:7d").createdAfter); // 省略比较符等同于 <
+        assertEquals(NOW - 12 * HOUR, parse("age:12h").createdAfter);
+        assertEquals(NOW - 14 * DAY, parse("age:<2W").createdAfter);
+
+        PinQuery older = parse("age:>30d");
+        assertEquals(Long.MIN_VALUE, older.createdAfter);
+        assertEquals(NOW - 30 * DAY, older.createdBefore);
+    }
+
+    @Test
+    public void repeatedAgeBoundsKeepTheTightest() {
+        PinQuery query = parse("age:<7d age:<1d age:>2h age:>3h");
+
+        assertEquals(NOW - DAY, query.createdAfter);
+        assertEquals(NOW - 3 * HOUR, query.createdBefore);
+        assertFalse(query.invalid);
+    }
+
+    @Test
+    public void invalidAgeMakesTheQueryEmpty() {
+        for (String age : new String[]{"age:7", "age:d", "age:7x", "age:<", "age:-1d", "age:99999999999999999w"}) {
+            assertTrue(age, parse(age).invalid);
+        }
+    }
+
+    @Test
+    public void blockValues() {
+        assertEquals(Boolean.TRUE, parse("block:true").block);
+        assertEquals(Boolean.FALSE, parse("block:FALSE").block);
+        assertFalse(parse("block:true block:TRUE").invalid);
+        assertTrue(parse("block:maybe").invalid);
+    }
+
+    @Test
+    public void conflictingBlockMakesTheQueryEmpty() {
+        PinQuery query = parse("block:true block:false");
+
+        assertTrue(query.invalid);
+        assertFalse(query.isPlainText());
+    }
+
+    // ---------------------------------------------------------------- 文件模式
+
+    @Test
+    public void wildcardAndExtensionHelpers() {
+        assertTrue(PinQuery.hasWildcard("*.java"));
+        assertTrue(PinQuery.hasWildcard("Pin?.java"));
+        assertFalse(PinQuery.hasWildcard("Pin.ja"));
+
+        assertEquals("java", PinQuery.extensionOf("*.JAVA"));
+        assertEquals("kt", PinQuery.extensionOf("src/*.kt"));
+        assertNull(PinQuery.extensionOf("*.*"));
+        assertNull(PinQuery.extensionOf("*.ja?"));
+        assertNull(PinQuery.extensionOf("src.d/*"));
+        assertNull(PinQuery.extensionOf("Makefile"));
+        assertNull(PinQuery.extensionOf("file."));
+
+        assertTrue(PinQuery.isExtensionOnly("*.java"));
+        assertFalse(PinQuery.isExtensionOnly("*Test.java"));
+        assertFalse(PinQuery.isExtensionOnly("*.*.java"));
+        assertFalse(PinQuery.isExtensionOnly("src/*.kt"));
+        assertFalse(PinQuery.isExtensionOnly("*.ja?"));
+    }
+
+    @Test
+    public void patternWithoutWildcardMatchesAsSubstring() {
+        Pattern pattern = PinQuery.compileFilePattern("Query.ja");
+
+        assertTrue(pattern.matcher("src/core/PinQuery.java").find());
+        assertTrue(pattern.matcher("src/core/PINQUERY.JAVA").find());
+        assertFalse(pattern.matcher("src/core/PinQuery.kt").find());
+        // 正则特殊字符按字面匹配
+        assertTrue(PinQuery.compileFilePattern("a+b.c").matcher("x/a+b.c").find());
+        assertFalse(PinQuery.compileFilePattern("a+b.c").matcher("x/aab.c").find());
+    }
+
+    @Test
+    public void fileNameGlobDoesNotCrossDirectories() {
+        Pattern pattern = PinQuery.compileFilePattern("Pin*.java");
+
+        assertTrue(pattern.matcher("PinQuery.java").matches());
+        assertTrue(pattern.matcher("pinquery.JAVA").matches());
+        assertFalse(pattern.matcher("Pin/Query.java").matches());
+        assertFalse(pattern.matcher("APinQuery.java").matches());
+
+        Pattern single = PinQuery.compileFilePattern("Pin?.java");
+        assertTrue(single.matcher("PinX.java").matches());
+        assertFalse(single.matcher("Pin.java").matches());
+        assertFalse(single.matcher("PinXY.java").matches());
+    }
+
+    @Test
+    public void pathGlobMatchesAnyParentDirectory() {
+        Pattern pattern = PinQuery.compileFilePattern("src/*.kt");
+
+        assertTrue(pattern.matcher("src/Main.kt").matches());
+        assertTrue(pattern.matcher("module/src/Main.kt").matches());
+        assertTrue(pattern.matcher("src/deep/nested/Main.kt").matches()); // 含 / 的模式中 * 可以跨目录
+        assertFalse(pattern.matcher("mysrc/Main.kt").matches());
+        assertFalse(pattern.matcher("src/Main.java").matches());
+
+        Pattern rooted = PinQuery.compileFilePattern("/src/*.kt");
+        assertTrue(rooted.matcher("/src/Main.kt").matches());
+        assertFalse(rooted.matcher("/module/src/Main.kt").matches());
+    }
+}